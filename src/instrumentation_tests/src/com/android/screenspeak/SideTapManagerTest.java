@@ -19,6 +19,7 @@ package com.android.screenspeak;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.res.Configuration;
 import android.hardware.SensorManager;
 import android.preference.PreferenceManager;
 import android.test.suitebuilder.annotation.MediumTest;
@@ -352,4 +353,7 @@ final class MockGestureController implements GestureController {
     public String gestureDescriptionFromAction(String action) {
         return "";
     }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
 }
@@ -25,16 +25,24 @@ import android.util.Log;
 import com.android.utils.LogUtils;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * {@link BroadcastReceiver} for detecting incoming calls.
  */
 public class CallStateMonitor extends BroadcastReceiver {
+    public interface OnCallStateChangedListener {
+        public void onCallStateChanged(int newCallState);
+    }
+
     private static final IntentFilter STATE_CHANGED_FILTER = new IntentFilter(
             TelephonyManager.ACTION_PHONE_STATE_CHANGED);
 
     private final ScreenSpeakService mService;
     private int mLastCallState;
     private boolean mIsStarted;
+    private final List<OnCallStateChangedListener> mListeners = new ArrayList<>();
 
     public CallStateMonitor(ScreenSpeakService context) {
         mService = context;
@@ -51,6 +59,7 @@ public class CallStateMonitor extends BroadcastReceiver {
         }
 
         final String state = intent.getStringExtra(TelephonyManager.EXTRA_STATE);
+        final int previousCallState = mLastCallState;
 
         if (TelephonyManager.EXTRA_STATE_IDLE.equals(state)) {
             mLastCallState = TelephonyManager.CALL_STATE_IDLE;
@@ -60,6 +69,12 @@ public class CallStateMonitor extends BroadcastReceiver {
             mLastCallState = TelephonyManager.CALL_STATE_RINGING;
         }
 
+        if (mLastCallState != previousCallState) {
+            for (OnCallStateChangedListener listener : mListeners) {
+                listener.onCallStateChanged(mLastCallState);
+            }
+        }
+
         if (TelephonyManager.EXTRA_STATE_RINGING.equals(state)) {
             mService.interruptAllFeedback();
         }
@@ -75,6 +90,14 @@ public class CallStateMonitor extends BroadcastReceiver {
         }
     }
 
+    public void addOnCallStateChangedListener(OnCallStateChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnCallStateChangedListener(OnCallStateChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
     public boolean isStarted() {
         return mIsStarted;
     }
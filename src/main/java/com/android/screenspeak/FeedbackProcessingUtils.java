@@ -190,10 +190,8 @@ class FeedbackProcessingUtils {
     private static void cleanupItemText(Context context, FeedbackItem item) {
         for (FeedbackFragment fragment : item.getFragments()) {
             if (!TextUtils.isEmpty(fragment.getText())) {
-                CharSequence processedText = SpeechCleanupUtils.collapseRepeatedCharacters(
-                        context, fragment.getText());
-                processedText = SpeechCleanupUtils.cleanUp(context, processedText);
-                fragment.setText(processedText);
+                fragment.setText(SpeechCleanupUtils.collapseAndCleanUp(
+                        context, fragment.getText()));
             }
         }
     }
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queue of {@link FeedbackItem}s waiting to be spoken by {@link SpeechController}. Alongside the
+ * queue order, items are indexed by utterance group and by a fingerprint of their fragment text,
+ * so that removing an utterance group and looking for duplicates don't need to scan the whole
+ * queue. Items must not be changed while they are queued.
+ */
+/* package */ class FeedbackQueue {
+    /* Queued items in order, with the fingerprint each was indexed under. */
+    private final LinkedHashMap<FeedbackItem, Integer> mItems = new LinkedHashMap<>();
+
+    /* Queued items by utterance group, for groups other than the default. */
+    private final SparseArray<LinkedHashSet<FeedbackItem>> mGroups = new SparseArray<>();
+
+    /* Queued items by fingerprint. */
+    private final SparseArray<ArrayList<FeedbackItem>> mFingerprints = new SparseArray<>();
+
+    /** Number of queued items that can't be interrupted. */
+    private int mUninterruptibleCount;
+
+    /**
+     * Adds an item to the end of the queue.
+     */
+    public void add(FeedbackItem item) {
+        final int fingerprint = getFingerprint(item);
+        mItems.put(item, fingerprint);
+
+        ArrayList<FeedbackItem> sameFingerprint = mFingerprints.get(fingerprint);
+        if (sameFingerprint == null) {
+            sameFingerprint = new ArrayList<>(1);
+            mFingerprints.put(fingerprint, sameFingerprint);
+        }
+        sameFingerprint.add(item);
+
+        final int group = item.getUtteranceGroup();
+        if (group != SpeechController.UTTERANCE_GROUP_DEFAULT) {
+            LinkedHashSet<FeedbackItem> groupItems = mGroups.get(group);
+            if (groupItems == null) {
+                groupItems = new LinkedHashSet<>();
+                mGroups.put(group, groupItems);
+            }
+            groupItems.add(item);
+        }
+
+        if (!item.isInterruptible()) {
+            mUninterruptibleCount++;
+        }
+    }
+
+    /**
+     * Removes and returns the item at the front of the queue.
+     *
+     * @return The first item, or {@code null} if the queue is empty.
+     */
+    public FeedbackItem removeFirst() {
+        final Iterator<Map.Entry<FeedbackItem, Integer>> iterator = mItems.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+
+        final Map.Entry<FeedbackItem, Integer> first = iterator.next();
+        iterator.remove();
+        removeFromIndexes(first.getKey(), first.getValue());
+        return first.getKey();
+    }
+
+    /**
+     * Removes queued items that can be interrupted, or that belong to an
+     * utterance group, or both.
+     *
+     * @param interruptible Whether to remove items that can be interrupted.
+     * @param utteranceGroup The utterance group to remove, or
+     *            {@link SpeechController#UTTERANCE_GROUP_DEFAULT} to remove no
+     *            group.
+     * @param removed Receives the removed items, in queue order.
+     */
+    public void removeMatching(boolean interruptible, int utteranceGroup,
+            List<FeedbackItem> removed) {
+        final LinkedHashSet<FeedbackItem> groupItems =
+                (utteranceGroup == SpeechController.UTTERANCE_GROUP_DEFAULT)
+                        ? null : mGroups.get(utteranceGroup);
+
+        if (interruptible && (mUninterruptibleCount == 0)) {
+            // Everything goes.
+            removed.addAll(mItems.keySet());
+            clear();
+            return;
+        }
+
+        if (interruptible) {
+            final Iterator<Map.Entry<FeedbackItem, Integer>> iterator =
+                    mItems.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<FeedbackItem, Integer> entry = iterator.next();
+                final FeedbackItem item = entry.getKey();
+                if (item.isInterruptible()
+                        || ((groupItems != null) && groupItems.contains(item))) {
+                    iterator.remove();
+                    removeFromIndexes(item, entry.getValue());
+                    removed.add(item);
+                }
+            }
+        } else if (groupItems != null) {
+            // Copy the group, since removing items changes it.
+            final ArrayList<FeedbackItem> toRemove = new ArrayList<>(groupItems);
+            for (FeedbackItem item : toRemove) {
+                removeFromIndexes(item, mItems.remove(item));
+                removed.add(item);
+            }
+        }
+    }
+
+    /**
+     * Returns whether there is a queued item with the same fragments and
+     * interruptibility as {@code item}.
+     */
+    public boolean containsDuplicateOf(FeedbackItem item) {
+        final ArrayList<FeedbackItem> sameFingerprint = mFingerprints.get(getFingerprint(item));
+        if (sameFingerprint == null) {
+            return false;
+        }
+
+        for (FeedbackItem queuedItem : sameFingerprint) {
+            if (isSameFeedback(item, queuedItem)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return mItems.isEmpty();
+    }
+
+    public int size() {
+        return mItems.size();
+    }
+
+    public void clear() {
+        mItems.clear();
+        mGroups.clear();
+        mFingerprints.clear();
+        mUninterruptibleCount = 0;
+    }
+
+    /**
+     * Returns whether two items have the same fragments and interruptibility.
+     */
+    public static boolean isSameFeedback(FeedbackItem item1, FeedbackItem item2) {
+        if (item1 == null || item2 == null) {
+            return false;
+        }
+
+        if (item1.isInterruptible() != item2.isInterruptible()) {
+            return false;
+        }
+
+        List<FeedbackFragment> fragments1 = item1.getFragments();
+        List<FeedbackFragment> fragments2 = item2.getFragments();
+
+        if (fragments1.size() != fragments2.size()) {
+            return false;
+        }
+
+        int size = fragments1.size();
+        for (int i = 0; i < size; i++) {
+            FeedbackFragment fragment1 = fragments1.get(i);
+            FeedbackFragment fragment2 = fragments2.get(i);
+            if (fragment1 != null && fragment2 != null && !fragment1.equals(fragment2)) {
+                return false;
+            }
+
+            if ((fragment1 == null && fragment2 != null)
+                    || (fragment1 != null && fragment2 == null)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void removeFromIndexes(FeedbackItem item, int fingerprint) {
+        final ArrayList<FeedbackItem> sameFingerprint = mFingerprints.get(fingerprint);
+        if (sameFingerprint != null) {
+            sameFingerprint.remove(item);
+            if (sameFingerprint.isEmpty()) {
+                mFingerprints.remove(fingerprint);
+            }
+        }
+
+        final int group = item.getUtteranceGroup();
+        if (group != SpeechController.UTTERANCE_GROUP_DEFAULT) {
+            final LinkedHashSet<FeedbackItem> groupItems = mGroups.get(group);
+            if (groupItems != null) {
+                groupItems.remove(item);
+                if (groupItems.isEmpty()) {
+                    mGroups.remove(group);
+                }
+            }
+        }
+
+        if (!item.isInterruptible()) {
+            mUninterruptibleCount--;
+        }
+    }
+
+    /**
+     * Returns a hash of the text of an item's fragments. Items that
+     * {@link #isSameFeedback} considers equal always have the same
+     * fingerprint, whatever kind of {@link CharSequence} holds their text.
+     */
+    private static int getFingerprint(FeedbackItem item) {
+        int fingerprint = 17;
+        for (FeedbackFragment fragment : item.getFragments()) {
+            final CharSequence text = (fragment == null) ? null : fragment.getText();
+            int textHash = 0;
+            if (text != null) {
+                final int length = text.length();
+                for (int i = 0; i < length; i++) {
+                    textHash = 31 * textHash + text.charAt(i);
+                }
+            }
+
+            fingerprint = 31 * fingerprint + textHash;
+        }
+
+        return fingerprint;
+    }
+}
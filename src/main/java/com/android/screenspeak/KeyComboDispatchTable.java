@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import java.util.Arrays;
+
+/**
+ * Lookup table from key combo codes to the indices of the combos that use them. Combos are
+ * identified by their index in the array the table was built from. Lookups use open addressing
+ * over primitive arrays, so dispatching a key press neither scans every combo nor allocates.
+ * <p>
+ * When several combos share a code, the first one registered is returned by
+ * {@link #getFirstIndex(long)} and the rest are chained in registration order through
+ * {@link #getNextIndex(int)}. Those combos are reported as conflicts.
+ * <p>
+ * The table also keeps the union of the modifiers used by all combos, so that a key press with
+ * modifiers held can be recognized as the start of some combo without a scan.
+ */
+public class KeyComboDispatchTable {
+    public static final int NO_INDEX = -1;
+
+    private static final int EMPTY = -1;
+
+    /* Hash slots. A slot is empty when its entry in mSlotIndices is EMPTY. */
+    private long[] mSlotCodes = new long[0];
+    private int[] mSlotIndices = new int[0];
+
+    /* For each combo, the next combo with the same code, or NO_INDEX */
+    private int[] mNextIndices = new int[0];
+
+    /* For each combo, whether another combo shares its code */
+    private boolean[] mConflicts = new boolean[0];
+
+    private int mConflictCount;
+
+    private int mModifierPrefixMask;
+
+    /**
+     * Rebuild the table.
+     *
+     * @param codes The combo codes, indexed by combo
+     * @param ignoredCode A code, such as the code for unassigned combos, that is left out of the
+     * table
+     */
+    public void build(long[] codes, long ignoredCode) {
+        int capacity = Integer.highestOneBit(Math.max(codes.length, 1) * 4);
+        mSlotCodes = new long[capacity];
+        mSlotIndices = new int[capacity];
+        Arrays.fill(mSlotIndices, EMPTY);
+        mNextIndices = new int[codes.length];
+        Arrays.fill(mNextIndices, NO_INDEX);
+        mConflicts = new boolean[codes.length];
+        mConflictCount = 0;
+        mModifierPrefixMask = 0;
+
+        for (int index = 0; index < codes.length; index++) {
+            long code = codes[index];
+            if (code == ignoredCode) {
+                continue;
+            }
+            mModifierPrefixMask |= KeyComboManager.getModifier(code);
+
+            int slot = findSlot(code);
+            if (mSlotIndices[slot] == EMPTY) {
+                mSlotCodes[slot] = code;
+                mSlotIndices[slot] = index;
+                continue;
+            }
+
+            /* Another combo already uses this code; append to the end of its chain */
+            int last = mSlotIndices[slot];
+            if (!mConflicts[last]) {
+                mConflicts[last] = true;
+                mConflictCount++;
+            }
+            while (mNextIndices[last] != NO_INDEX) {
+                last = mNextIndices[last];
+            }
+            mNextIndices[last] = index;
+            mConflicts[index] = true;
+            mConflictCount++;
+        }
+    }
+
+    /**
+     * @return The index of the first combo registered with the code, or {@link #NO_INDEX}
+     */
+    public int getFirstIndex(long code) {
+        if (mSlotIndices.length == 0) {
+            return NO_INDEX;
+        }
+        int slot = findSlot(code);
+        return (mSlotIndices[slot] == EMPTY) ? NO_INDEX : mSlotIndices[slot];
+    }
+
+    /**
+     * @return The index of the next combo with the same code as the specified one, or
+     * {@link #NO_INDEX}
+     */
+    public int getNextIndex(int index) {
+        return mNextIndices[index];
+    }
+
+    /**
+     * @return The union of the modifiers of all combos in the table
+     */
+    public int getModifierPrefixMask() {
+        return mModifierPrefixMask;
+    }
+
+    /**
+     * @return {@code true} if another combo uses the same code as the specified one
+     */
+    public boolean hasConflict(int index) {
+        return mConflicts[index];
+    }
+
+    /**
+     * @return The number of combos that share their code with another combo
+     */
+    public int getConflictCount() {
+        return mConflictCount;
+    }
+
+    /* Linear probing. The table is never more than half full, so this terminates quickly. */
+    private int findSlot(long code) {
+        int mask = mSlotIndices.length - 1;
+        int slot = hash(code) & mask;
+        while ((mSlotIndices[slot] != EMPTY) && (mSlotCodes[slot] != code)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long code) {
+        long h = code * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -22,7 +22,9 @@ import android.preference.PreferenceManager;
 
 import android.annotation.TargetApi;
 import android.os.Build;
+import android.util.Log;
 import android.view.KeyEvent;
+import com.android.utils.LogUtils;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 
 import java.util.ArrayList;
@@ -39,10 +41,6 @@ public class KeyComboManager implements ScreenSpeakService.KeyEventListener {
 
     public static final int MIN_API_LEVEL = Build.VERSION_CODES.JELLY_BEAN_MR2;
 
-    public static final int NO_MATCH = -1;
-    public static final int PARTIAL_MATCH = 1;
-    public static final int EXACT_MATCH = 2;
-
     public static final int ACTION_NAVIGATE_NEXT = 1;
     public static final int ACTION_NAVIGATE_PREVIOUS = 2;
     public static final int ACTION_NAVIGATE_FIRST = 3;
@@ -87,7 +85,7 @@ public class KeyComboManager implements ScreenSpeakService.KeyEventListener {
         return (((long) modifier) << 32) + keycode;
     }
 
-    private static int getModifier(long keyComboCode) {
+    static int getModifier(long keyComboCode) {
         return (int) (keyComboCode >> 32);
     }
 
@@ -100,6 +98,9 @@ public class KeyComboManager implements ScreenSpeakService.KeyEventListener {
 
     private Map<String, KeyCombo> mKeyComboMap = new HashMap<>();
 
+    /** Lookup table from combo codes to indices in {@link #mKeyCombos}. */
+    private final KeyComboDispatchTable mDispatchTable = new KeyComboDispatchTable();
+
     /** The number of keys currently being pressed. */
     private int mKeyCount;
 
@@ -120,6 +121,7 @@ public class KeyComboManager implements ScreenSpeakService.KeyEventListener {
         mContext = context;
         mPersister = new KeyComboPersister(context);
         loadCombos();
+        rebuildDispatchTable();
     }
 
     /**
@@ -267,13 +269,17 @@ public class KeyComboManager implements ScreenSpeakService.KeyEventListener {
     }
 
     /**
-     * get key for preference that is assigned for keyComboCode
+     * get key for preference that is assigned for keyComboCode. Returns null for
+     * {@link #KEY_COMBO_CODE_UNASSIGNED}, since it is not a combo that can be assigned.
      */
     public String getKeyForKeyComboCode(long keyComboCode) {
-        for (KeyCombo keyCombo : mKeyCombos) {
-            if (keyCombo.keyComboCode == keyComboCode) {
-                return keyCombo.key;
-            }
+        if (keyComboCode == KEY_COMBO_CODE_UNASSIGNED) {
+            return null;
+        }
+
+        int index = mDispatchTable.getFirstIndex(keyComboCode);
+        if (index != KeyComboDispatchTable.NO_INDEX) {
+            return mKeyCombos.get(index).key;
         }
 
         return null;
@@ -309,6 +315,23 @@ public class KeyComboManager implements ScreenSpeakService.KeyEventListener {
         KeyCombo keyCombo = mKeyComboMap.get(key);
         if (keyCombo != null) {
             keyCombo.keyComboCode = keyComboCode;
+            rebuildDispatchTable();
+        }
+    }
+
+    /**
+     * Rebuilds the lookup table used to match key events. Must be called whenever the code of
+     * any combo changes.
+     */
+    private void rebuildDispatchTable() {
+        long[] codes = new long[mKeyCombos.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = mKeyCombos.get(i).keyComboCode;
+        }
+        mDispatchTable.build(codes, KEY_COMBO_CODE_UNASSIGNED);
+        if (mDispatchTable.getConflictCount() > 0) {
+            LogUtils.log(this, Log.WARN, "%d actions share key combos with other actions",
+                    mDispatchTable.getConflictCount());
         }
     }
 
@@ -415,23 +438,24 @@ public class KeyComboManager implements ScreenSpeakService.KeyEventListener {
     private boolean onKeyDown(KeyEvent event) {
         mKeyCount++;
 
-        // If the current set of keys is a partial combo, consume the event.
-        mHasPartialMatch = false;
-
-        for (KeyCombo keyCombo : mKeyCombos) {
-            final int match = keyCombo.matches(event);
-            if (match == EXACT_MATCH) {
-                for (KeyComboListener listener : mListeners) {
-                    if (listener.onComboPerformed(keyCombo.id)) {
-                        mPerformedCombo = true;
-                        return true;
-                    }
+        int keyCode = event.getKeyCode();
+        int metaState = event.getMetaState() & KEY_EVENT_MODIFIER_MASK;
+
+        // If the current set of keys is a partial combo, consume the event. A modifier key that
+        // shares a modifier with any combo is the start of that combo.
+        mHasPartialMatch = (metaState != 0) && KeyEvent.isModifierKey(keyCode)
+                && (mDispatchTable.getModifierPrefixMask() & metaState) != 0;
+
+        int index = mDispatchTable.getFirstIndex(getKeyComboCode(metaState, keyCode));
+        while (index != KeyComboDispatchTable.NO_INDEX) {
+            int id = mKeyCombos.get(index).id;
+            for (KeyComboListener listener : mListeners) {
+                if (listener.onComboPerformed(id)) {
+                    mPerformedCombo = true;
+                    return true;
                 }
             }
-
-            if (match == PARTIAL_MATCH) {
-                mHasPartialMatch = true;
-            }
+            index = mDispatchTable.getNextIndex(index);
         }
 
         return mHasPartialMatch;
@@ -465,33 +489,6 @@ public class KeyComboManager implements ScreenSpeakService.KeyEventListener {
             this.key = key;
             this.keyComboCode = keyComboCode;
         }
-
-        public int matches(KeyEvent event) {
-            int keyCode = event.getKeyCode();
-            int metaState = event.getMetaState() & KEY_EVENT_MODIFIER_MASK;
-
-            int targetKeyCode = getKeyCode(keyComboCode);
-            int targetMetaState = getModifier(keyComboCode);
-
-            // Handle exact matches first.
-            if (metaState == targetMetaState && keyCode == targetKeyCode) {
-                return EXACT_MATCH;
-            }
-
-            if (targetMetaState != 0 && metaState == 0) {
-                return NO_MATCH;
-            }
-
-            // Otherwise, all modifiers must be down.
-            if (KeyEvent.isModifierKey(keyCode) && targetMetaState != 0 &&
-                    (targetMetaState & metaState) != 0) {
-                // Partial match.
-                return PARTIAL_MATCH;
-            }
-
-            // No match.
-            return NO_MATCH;
-        }
     }
 
     private static class KeyComboPersister {
@@ -35,6 +35,9 @@ import com.android.utils.LogUtils;
 import com.android.utils.StringBuilderUtils;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 
+import java.util.ArrayList;
+import java.util.List;
+
 // TODO(CB): Refactor this class into two separate receivers
 // with listener interfaces. This will remove the need to hold dependencies
 // and call into other classes.
@@ -43,6 +46,10 @@ import com.google.android.marvin.screenspeak.ScreenSpeakService;
  * state
  */
 public class RingerModeAndScreenMonitor extends BroadcastReceiver {
+    public interface OnScreenStateChangedListener {
+        public void onScreenStateChanged(boolean isScreenOn);
+    }
+
     /** The intent filter to match phone and screen state changes. */
     private static final IntentFilter STATE_CHANGE_FILTER = new IntentFilter();
 
@@ -65,6 +72,7 @@ public class RingerModeAndScreenMonitor extends BroadcastReceiver {
     private int mRingerMode = AudioManager.RINGER_MODE_NORMAL;
 
     private boolean mIsScreenOn;
+    private final List<OnScreenStateChangedListener> mListeners = new ArrayList<>();
 
     /**
      * Creates a new instance.
@@ -104,11 +112,11 @@ public class RingerModeAndScreenMonitor extends BroadcastReceiver {
                         AudioManager.EXTRA_RINGER_MODE, AudioManager.RINGER_MODE_NORMAL));
                 break;
             case Intent.ACTION_SCREEN_ON:
-                mIsScreenOn = true;
+                setScreenOn(true);
                 handleScreenOn();
                 break;
             case Intent.ACTION_SCREEN_OFF:
-                mIsScreenOn = false;
+                setScreenOn(false);
                 handleScreenOff();
                 break;
             case Intent.ACTION_USER_PRESENT:
@@ -118,9 +126,29 @@ public class RingerModeAndScreenMonitor extends BroadcastReceiver {
     }
 
     public void updateScreenState() {
+        final PowerManager powerManager =
+                (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
         //noinspection deprecation
-        mIsScreenOn =
-                ((PowerManager) mContext.getSystemService(Context.POWER_SERVICE)).isScreenOn();
+        setScreenOn(powerManager.isScreenOn());
+    }
+
+    public void addOnScreenStateChangedListener(OnScreenStateChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnScreenStateChangedListener(OnScreenStateChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void setScreenOn(boolean isScreenOn) {
+        if (isScreenOn == mIsScreenOn) {
+            return;
+        }
+
+        mIsScreenOn = isScreenOn;
+        for (OnScreenStateChangedListener listener : mListeners) {
+            listener.onScreenStateChanged(isScreenOn);
+        }
     }
 
     public boolean isScreenOn() {
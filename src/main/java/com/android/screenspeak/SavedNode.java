@@ -22,17 +22,21 @@ import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 import com.android.utils.AccessibilityEventListener;
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import com.android.utils.AccessibilityNodeInfoUtils;
 
 public class SavedNode implements AccessibilityEventListener {
     private AccessibilityNodeInfoCompat mNode;
     private Selection mSelection;
     private CursorGranularity mGranularity;
-    private Map<AccessibilityNodeInfoCompat, Selection> mSelectionCache = new HashMap<>();
+    private final SelectionCache mSelectionCache = new SelectionCache();
+
+    /** Keeps cached nodes that still exist and are visible. */
+    private final SelectionCache.NodeFilter mVisibleNodeFilter = new SelectionCache.NodeFilter() {
+        @Override
+        public boolean accept(AccessibilityNodeInfoCompat node) {
+            return refreshNode(node) && node.isVisibleToUser();
+        }
+    };
 
     public void saveNodeState(AccessibilityNodeInfoCompat node, CursorGranularity granularity) {
         if (node == null) {
@@ -62,18 +66,14 @@ public class SavedNode implements AccessibilityEventListener {
     }
 
     private void clearCache() {
-        List<AccessibilityNodeInfoCompat> toRemove = new ArrayList<>();
-        for (AccessibilityNodeInfoCompat node : mSelectionCache.keySet()) {
-            boolean refreshed = refreshNode(node);
-            if (!refreshed || !node.isVisibleToUser()) {
-                toRemove.add(node);
-            }
-        }
+        mSelectionCache.retain(mVisibleNodeFilter);
+    }
 
-        for (AccessibilityNodeInfoCompat node : toRemove) {
-            mSelectionCache.remove(node);
-            node.recycle();
-        }
+    /**
+     * @return The selection cache, for tests.
+     */
+    /* package */ SelectionCache getSelectionCache() {
+        return mSelectionCache;
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
@@ -88,7 +88,13 @@ public class SavedNode implements AccessibilityEventListener {
             return null;
         }
 
-        return mSelectionCache.get(targetNode);
+        final AccessibilityNodeInfo info = (AccessibilityNodeInfo) targetNode.getInfo();
+        final long sourceId = AccessibilityNodeInfoUtils.getSourceNodeId(info);
+        if (sourceId == AccessibilityNodeInfoUtils.UNKNOWN_SOURCE_NODE_ID) {
+            return null;
+        }
+
+        return mSelectionCache.get(info.getWindowId(), sourceId);
     }
 
     public void recycle() {
@@ -108,10 +114,16 @@ public class SavedNode implements AccessibilityEventListener {
             case AccessibilityEvent.TYPE_VIEW_TEXT_SELECTION_CHANGED:
                 AccessibilityNodeInfo source = event.getSource();
                 if (source != null) {
-                    AccessibilityNodeInfoCompat copyNode = new AccessibilityNodeInfoCompat(
-                            AccessibilityNodeInfo.obtain(source));
+                    final long sourceId = AccessibilityNodeInfoUtils.getSourceNodeId(source);
+                    if (sourceId == AccessibilityNodeInfoUtils.UNKNOWN_SOURCE_NODE_ID) {
+                        source.recycle();
+                        break;
+                    }
+
+                    // The cache takes ownership of the source node.
                     Selection selection = new Selection(event.getFromIndex(), event.getToIndex());
-                    mSelectionCache.put(copyNode, selection);
+                    mSelectionCache.put(source.getWindowId(), sourceId,
+                            new AccessibilityNodeInfoCompat(source), selection);
                 }
                 break;
         }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The last known selection of recently edited nodes, keyed by window id and source node id.
+ * Holds at most {@link #MAX_SIZE} nodes; when full, the least recently used entry is evicted.
+ * The cache owns the node copies passed to it and recycles them when they are evicted, replaced
+ * or removed.
+ */
+/* package */ class SelectionCache {
+    /** Maximum number of nodes to remember selections for. */
+    public static final int MAX_SIZE = 16;
+
+    private final int mMaxSize;
+
+    private final LinkedHashMap<NodeKey, Entry> mEntries;
+
+    private int mEvictionCount;
+
+    public SelectionCache() {
+        this(MAX_SIZE);
+    }
+
+    /* package */ SelectionCache(int maxSize) {
+        mMaxSize = maxSize;
+        mEntries = new LinkedHashMap<NodeKey, Entry>(maxSize + 1, 1.0f, true /* accessOrder */) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<NodeKey, Entry> eldest) {
+                if (size() <= mMaxSize) {
+                    return false;
+                }
+
+                eldest.getValue().node.recycle();
+                mEvictionCount++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Stores the selection of a node, replacing any earlier selection for it.
+     *
+     * @param windowId The id of the node's window.
+     * @param sourceId The source node id of the node.
+     * @param node A copy of the node, which the cache takes ownership of.
+     * @param selection The node's selection.
+     */
+    public void put(int windowId, long sourceId, AccessibilityNodeInfoCompat node,
+            SavedNode.Selection selection) {
+        final Entry previous = mEntries.put(new NodeKey(windowId, sourceId),
+                new Entry(node, selection));
+        if ((previous != null) && (previous.node != node)) {
+            previous.node.recycle();
+        }
+    }
+
+    /**
+     * @return The selection of the node, or {@code null} if it isn't cached.
+     */
+    public SavedNode.Selection get(int windowId, long sourceId) {
+        final Entry entry = mEntries.get(new NodeKey(windowId, sourceId));
+        return (entry == null) ? null : entry.selection;
+    }
+
+    /**
+     * Removes and recycles the entries whose nodes are rejected by a filter.
+     *
+     * @param filter Returns {@code true} for nodes to keep.
+     */
+    public void retain(NodeFilter filter) {
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (!filter.accept(entry.node)) {
+                iterator.remove();
+                entry.node.recycle();
+            }
+        }
+    }
+
+    /**
+     * Removes and recycles all entries.
+     */
+    public void clear() {
+        for (Entry entry : mEntries.values()) {
+            entry.node.recycle();
+        }
+
+        mEntries.clear();
+    }
+
+    /**
+     * @return The number of nodes in the cache.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return The number of entries evicted because the cache was full.
+     */
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /** Decides which cached nodes to keep. */
+    public interface NodeFilter {
+        public boolean accept(AccessibilityNodeInfoCompat node);
+    }
+
+    private static final class Entry {
+        public final AccessibilityNodeInfoCompat node;
+        public final SavedNode.Selection selection;
+
+        public Entry(AccessibilityNodeInfoCompat node, SavedNode.Selection selection) {
+            this.node = node;
+            this.selection = selection;
+        }
+    }
+
+    private static final class NodeKey {
+        private final int mWindowId;
+        private final long mSourceId;
+
+        public NodeKey(int windowId, long sourceId) {
+            mWindowId = windowId;
+            mSourceId = sourceId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mWindowId + (int) (mSourceId ^ (mSourceId >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof NodeKey)) {
+                return false;
+            }
+
+            final NodeKey other = (NodeKey) o;
+            return (mWindowId == other.mWindowId) && (mSourceId == other.mSourceId);
+        }
+    }
+}
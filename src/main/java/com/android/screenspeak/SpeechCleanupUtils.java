@@ -17,26 +17,36 @@
 package com.android.screenspeak;
 
 import android.content.Context;
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
 import android.text.TextUtils;
+import android.util.SparseArray;
 import android.util.SparseIntArray;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
 
 /**
  * Utilities for cleaning up speech text.
  */
 public class SpeechCleanupUtils {
-    /** The regular expression used to match consecutive identical characters */
-    // Double escaping of regex characters is required. "\\1" refers to the
-    // first capturing group between the outer nesting of "[]"s and "{2,}"
-    // refers to two or more additional repetitions thereof.
-    private static final
-            String CONSECUTIVE_CHARACTER_REGEX = "([\\-\\\\/|!@#$%^&*\\(\\)=_+\\[\\]\\{\\}.?;'\":<>])\\1{2,}";
+    /** Characters that are collapsed when repeated */
+    private static final String COLLAPSIBLE_CHARACTERS = "-\\/|!@#$%^&*()=_+[]{}.?;'\":<>";
 
-    /** The Pattern used to match consecutive identical characters */
-    private static Pattern CONSECUTIVE_CHARACTER_PATTERN = Pattern.compile(
-            CONSECUTIVE_CHARACTER_REGEX);
+    /** The shortest run of identical characters that is collapsed */
+    private static final int MIN_COLLAPSED_RUN_LENGTH = 3;
+
+    /** Whether each ASCII character is in {@link #COLLAPSIBLE_CHARACTERS} */
+    private static final boolean[] IS_COLLAPSIBLE = new boolean[128];
+
+    static {
+        for (int i = 0; i < COLLAPSIBLE_CHARACTERS.length(); i++) {
+            IS_COLLAPSIBLE[COLLAPSIBLE_CHARACTERS.charAt(i)] = true;
+        }
+    }
+
+    /** Symbol names resolved for the most recently used locale */
+    private static volatile SymbolTable sSymbolTable;
 
     /** Map containing string to speech conversions. */
     private static final SparseIntArray UNICODE_MAP = new SparseIntArray();
@@ -162,47 +172,140 @@ public class SpeechCleanupUtils {
     }
 
     /**
-     * Collapses repeated consecutive characters in a CharSequence by matching
-     * against {@link #CONSECUTIVE_CHARACTER_REGEX}.
+     * Collapses repeated characters and then cleans up text for speech, in a
+     * single pass over the text. Equivalent to calling
+     * {@link #collapseRepeatedCharacters} followed by {@link #cleanUp}.
+     *
+     * @param context The context used to resolve string resources.
+     * @param text The text to clean up.
+     * @return Cleaned up text, or {@code null} if the text is empty.
+     */
+    public static CharSequence collapseAndCleanUp(Context context, CharSequence text) {
+        if (TextUtils.isEmpty(text)) {
+            return null;
+        }
+
+        // A single character can't be a repeated run.
+        if (text.length() == 1) {
+            return getCleanValueFor(context, text.charAt(0));
+        }
+
+        return collapseRepeatedCharacters(context, text);
+    }
+
+    /**
+     * Collapses runs of three or more identical characters from
+     * {@link #COLLAPSIBLE_CHARACTERS} into a count and the name of the
+     * character. Spans outside the collapsed runs are kept.
      *
      * @param context Context for retrieving resources
      * @param text The text to process
-     * @return The text with consecutive identical characters collapsed
+     * @return The text with consecutive identical characters collapsed. This is
+     *         the original text if nothing was collapsed.
      */
     public static CharSequence collapseRepeatedCharacters(Context context, CharSequence text) {
         if (TextUtils.isEmpty(text)) {
             return null;
         }
 
-        // TODO(CB): Add tests
-        Matcher matcher = CONSECUTIVE_CHARACTER_PATTERN.matcher(text);
-        while (matcher.find()) {
-            final String replacement = context.getString(R.string.character_collapse_template,
-                    matcher.group().length(), getCleanValueFor(context, matcher.group().charAt(0)));
-            final int matchFromIndex = matcher.end() - matcher.group().length()
-                    + replacement.length();
-            text = matcher.replaceFirst(replacement);
-            matcher = CONSECUTIVE_CHARACTER_PATTERN.matcher(text);
-            matcher.region(matchFromIndex, text.length());
+        final int length = text.length();
+        SymbolTable symbols = null;
+        Editable collapsed = null;
+        int copiedUpTo = 0;
+        int runStart = 0;
+        while (runStart < length) {
+            final char c = text.charAt(runStart);
+            int runEnd = runStart + 1;
+            if (c < IS_COLLAPSIBLE.length && IS_COLLAPSIBLE[c]) {
+                while (runEnd < length && text.charAt(runEnd) == c) {
+                    runEnd++;
+                }
+            }
+
+            if (runEnd - runStart >= MIN_COLLAPSED_RUN_LENGTH) {
+                if (collapsed == null) {
+                    symbols = getSymbolTable(context);
+                    collapsed = new SpannableStringBuilder();
+                }
+
+                collapsed.append(text, copiedUpTo, runStart);
+                collapsed.append(symbols.formatCollapsedRun(runEnd - runStart, c));
+                copiedUpTo = runEnd;
+            }
+
+            runStart = runEnd;
+        }
+
+        if (collapsed == null) {
+            return text;
         }
 
-        return text;
+        collapsed.append(text, copiedUpTo, length);
+        return (text instanceof Spanned) ? collapsed : collapsed.toString();
     }
 
     /**
      * Returns the "clean" value for the specified character.
      */
     public static String getCleanValueFor(Context context, char key) {
-        final int resId = UNICODE_MAP.get(key);
+        return getSymbolTable(context).getCleanValueFor(key);
+    }
+
+    private static SymbolTable getSymbolTable(Context context) {
+        final Locale locale = context.getResources().getConfiguration().locale;
+        SymbolTable symbols = sSymbolTable;
+        if ((symbols == null) || !symbols.isForLocale(locale)) {
+            symbols = new SymbolTable(context, locale);
+            sSymbolTable = symbols;
+        }
+
+        return symbols;
+    }
 
-        if (resId != 0) {
-            return context.getString(resId);
+    /**
+     * Spoken names for symbols and the templates that use them, resolved once
+     * per locale rather than on every lookup.
+     */
+    private static class SymbolTable {
+        private final Locale mLocale;
+        private final SparseArray<String> mNames;
+        private final String mCapitalLetterTemplate;
+        private final String mCollapseTemplate;
+
+        public SymbolTable(Context context, Locale locale) {
+            mLocale = locale;
+            mNames = new SparseArray<>(UNICODE_MAP.size());
+            for (int i = 0; i < UNICODE_MAP.size(); i++) {
+                mNames.put(UNICODE_MAP.keyAt(i), context.getString(UNICODE_MAP.valueAt(i)));
+            }
+            mCapitalLetterTemplate = context.getString(R.string.template_capital_letter);
+            mCollapseTemplate = context.getString(R.string.character_collapse_template);
+        }
+
+        public boolean isForLocale(Locale locale) {
+            return (mLocale == null) ? (locale == null) : mLocale.equals(locale);
         }
 
-        if (Character.isUpperCase(key)) {
-            return context.getString(R.string.template_capital_letter, Character.toString(key));
+        public String getCleanValueFor(char key) {
+            final String name = mNames.get(key);
+            if (name != null) {
+                return name;
+            }
+
+            if (Character.isUpperCase(key)) {
+                return format(mCapitalLetterTemplate, Character.toString(key));
+            }
+
+            return Character.toString(key);
         }
 
-        return Character.toString(key);
+        public String formatCollapsedRun(int count, char key) {
+            return format(mCollapseTemplate, count, getCleanValueFor(key));
+        }
+
+        private String format(String template, Object... args) {
+            return (mLocale == null) ? String.format(template, args)
+                    : String.format(mLocale, template, args);
+        }
     }
 }
@@ -42,11 +42,9 @@ import com.android.utils.StringBuilderUtils;
 import com.android.utils.compat.media.AudioSystemCompatUtils;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.PriorityQueue;
 import java.util.Set;
 
@@ -108,7 +106,7 @@ public class SpeechController {
             new PriorityQueue<>();
 
     /** The list of items to be spoken. */
-    private final LinkedList<FeedbackItem> mFeedbackQueue = new LinkedList<>();
+    private final FeedbackQueue mFeedbackQueue = new FeedbackQueue();
 
     /** The parent service. */
     private final ScreenSpeakService mService;
@@ -465,19 +463,22 @@ public class SpeechController {
         item.setCompletedAction(completedAction);
 
         boolean currentFeedbackInterrupted = false;
-        if(shouldClearQueue(item, queueMode)) {
-            FeedbackItemFilter filter = getFeedbackItemFilter(item, queueMode);
+        if (shouldClearQueue(item, queueMode)) {
+            final boolean clearInterruptible =
+                    (queueMode != QUEUE_MODE_QUEUE && queueMode != QUEUE_MODE_UNINTERRUPTIBLE);
+            final int utteranceGroup = item.getUtteranceGroup();
+            final int clearedGroup = item.hasFlag(
+                    FeedbackItem.FLAG_CLEAR_QUEUED_UTTERANCES_WITH_SAME_UTTERANCE_GROUP)
+                    ? utteranceGroup : UTTERANCE_GROUP_DEFAULT;
+
             // Call onUtteranceComplete on each queue item to be cleared.
-            ListIterator<FeedbackItem> iterator = mFeedbackQueue.listIterator(0);
-            while (iterator.hasNext()) {
-                FeedbackItem currentItem = iterator.next();
-                if (filter.accept(currentItem)) {
-                    iterator.remove();
-                    notifyItemInterrupted(currentItem);
-                }
+            final ArrayList<FeedbackItem> removedItems = new ArrayList<>();
+            mFeedbackQueue.removeMatching(clearInterruptible, clearedGroup, removedItems);
+            for (FeedbackItem removedItem : removedItems) {
+                notifyItemInterrupted(removedItem);
             }
 
-            if (mCurrentFeedbackItem != null && filter.accept(mCurrentFeedbackItem)) {
+            if (shouldInterruptCurrentItem(item, clearInterruptible)) {
                 notifyItemInterrupted(mCurrentFeedbackItem);
                 currentFeedbackInterrupted = true;
             }
@@ -526,36 +527,23 @@ public class SpeechController {
         return false;
     }
 
-    private FeedbackItemFilter getFeedbackItemFilter(FeedbackItem item, int queueMode) {
-        FeedbackItemFilter filter = new FeedbackItemFilter();
-        if (queueMode != QUEUE_MODE_QUEUE && queueMode != QUEUE_MODE_UNINTERRUPTIBLE) {
-            filter.addFeedbackItemPredicate(new FeedbackItemInterruptiblePredicate());
-        }
-
-        if (item.getUtteranceGroup() != UTTERANCE_GROUP_DEFAULT &&
-                item.hasFlag(FeedbackItem.FLAG_CLEAR_QUEUED_UTTERANCES_WITH_SAME_UTTERANCE_GROUP)) {
-            FeedbackItemPredicate notCurrentItemPredicate = new FeedbackItemEqualSamplePredicate(
-                    mCurrentFeedbackItem, false);
-            FeedbackItemPredicate sameUtteranceGroupPredicate =
-                    new FeedbackItemUtteranceGroupPredicate(item.getUtteranceGroup());
-            FeedbackItemPredicate clearQueuePredicate = new FeedbackItemConjunctionPredicateSet(
-                    notCurrentItemPredicate, sameUtteranceGroupPredicate);
-            filter.addFeedbackItemPredicate(clearQueuePredicate);
+    /**
+     * Returns whether queuing {@code item} should interrupt the item that is
+     * currently being spoken.
+     */
+    private boolean shouldInterruptCurrentItem(FeedbackItem item, boolean clearInterruptible) {
+        if (mCurrentFeedbackItem == null) {
+            return false;
         }
 
-        if (item.getUtteranceGroup() != UTTERANCE_GROUP_DEFAULT &&
-                item.hasFlag(
-                        FeedbackItem.FLAG_INTERRUPT_CURRENT_UTTERANCE_WITH_SAME_UTTERANCE_GROUP)) {
-            FeedbackItemPredicate currentItemPredicate = new FeedbackItemEqualSamplePredicate(
-                    mCurrentFeedbackItem, true);
-            FeedbackItemPredicate sameUtteranceGroupPredicate =
-                    new FeedbackItemUtteranceGroupPredicate(item.getUtteranceGroup());
-            FeedbackItemPredicate clearQueuePredicate = new FeedbackItemConjunctionPredicateSet(
-                    currentItemPredicate, sameUtteranceGroupPredicate);
-            filter.addFeedbackItemPredicate(clearQueuePredicate);
+        if (clearInterruptible && mCurrentFeedbackItem.isInterruptible()) {
+            return true;
         }
 
-        return filter;
+        return item.getUtteranceGroup() != UTTERANCE_GROUP_DEFAULT
+                && item.hasFlag(
+                        FeedbackItem.FLAG_INTERRUPT_CURRENT_UTTERANCE_WITH_SAME_UTTERANCE_GROUP)
+                && mCurrentFeedbackItem.getUtteranceGroup() == item.getUtteranceGroup();
     }
 
     private void notifyItemInterrupted(FeedbackItem item) {
@@ -571,50 +559,8 @@ public class SpeechController {
             return false;
         }
 
-        if (isSameFeedbackFragments(item, mCurrentFeedbackItem)) {
-            return true;
-        }
-
-        for (FeedbackItem queuedItem : mFeedbackQueue) {
-            if(isSameFeedbackFragments(item, queuedItem)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    private boolean isSameFeedbackFragments(FeedbackItem item1, FeedbackItem item2) {
-        if (item1 == null || item2 == null) {
-            return false;
-        }
-
-        if (item1.isInterruptible() != item2.isInterruptible()) {
-            return false;
-        }
-
-        List<FeedbackFragment> fragments1 = item1.getFragments();
-        List<FeedbackFragment> fragments2 = item2.getFragments();
-
-        if (fragments1.size() != fragments2.size()) {
-            return false;
-        }
-
-        int size = fragments1.size();
-        for (int i = 0; i < size; i++) {
-            FeedbackFragment fragment1 = fragments1.get(i);
-            FeedbackFragment fragment2 = fragments2.get(i);
-            if (fragment1 != null && fragment2 != null && !fragment1.equals(fragment2)) {
-                return false;
-            }
-
-            if ((fragment1 == null && fragment2 != null)
-                    || (fragment1 != null && fragment2 == null)) {
-                return false;
-            }
-        }
-
-        return true;
+        return FeedbackQueue.isSameFeedback(item, mCurrentFeedbackItem)
+                || mFeedbackQueue.containsDuplicateOf(item);
     }
 
     /**
@@ -1253,107 +1199,4 @@ public class SpeechController {
             }
         }
     }
-
-    private interface FeedbackItemPredicate {
-        public boolean accept(FeedbackItem item);
-    }
-
-    private class FeedbackItemDisjunctionPredicateSet implements FeedbackItemPredicate {
-        private FeedbackItemPredicate mPredicate1;
-        private FeedbackItemPredicate mPredicate2;
-
-        public FeedbackItemDisjunctionPredicateSet(FeedbackItemPredicate predicate1,
-                                                   FeedbackItemPredicate predicate2) {
-            mPredicate1 = predicate1;
-            mPredicate2 = predicate2;
-        }
-
-        @Override
-        public boolean accept(FeedbackItem item) {
-            return mPredicate1.accept(item) || mPredicate2.accept(item);
-        }
-    }
-
-    private class FeedbackItemConjunctionPredicateSet implements FeedbackItemPredicate {
-        private FeedbackItemPredicate mPredicate1;
-        private FeedbackItemPredicate mPredicate2;
-
-        public FeedbackItemConjunctionPredicateSet(FeedbackItemPredicate predicate1,
-                                                   FeedbackItemPredicate predicate2) {
-            mPredicate1 = predicate1;
-            mPredicate2 = predicate2;
-        }
-
-        @Override
-        public boolean accept(FeedbackItem item) {
-            return mPredicate1.accept(item) && mPredicate2.accept(item);
-        }
-    }
-
-    private class FeedbackItemInterruptiblePredicate implements FeedbackItemPredicate {
-        public boolean accept(FeedbackItem item) {
-            if (item == null) {
-                return false;
-            }
-
-            return item.isInterruptible();
-        }
-    }
-
-    private class FeedbackItemEqualSamplePredicate implements FeedbackItemPredicate {
-
-        private FeedbackItem mSample;
-        private boolean mEqual;
-
-        public FeedbackItemEqualSamplePredicate(FeedbackItem sample, boolean equal) {
-            mSample = sample;
-            mEqual = equal;
-        }
-
-        public boolean accept(FeedbackItem item) {
-            if (mEqual) {
-                return mSample == item;
-            }
-
-            return mSample != item;
-        }
-    }
-
-    private class FeedbackItemUtteranceGroupPredicate implements FeedbackItemPredicate {
-
-        private int mUtteranceGroup;
-
-        public FeedbackItemUtteranceGroupPredicate(int utteranceGroup) {
-            mUtteranceGroup = utteranceGroup;
-        }
-
-        public boolean accept(FeedbackItem item) {
-            if (item == null) {
-                return false;
-            }
-
-            return item.getUtteranceGroup() == mUtteranceGroup;
-        }
-    }
-
-    private class FeedbackItemFilter {
-
-        private FeedbackItemPredicate mPredicate;
-
-        public void addFeedbackItemPredicate(FeedbackItemPredicate predicate) {
-            if (predicate == null) {
-                return;
-            }
-
-            if (mPredicate == null) {
-                mPredicate = predicate;
-            } else {
-                mPredicate = new FeedbackItemDisjunctionPredicateSet(mPredicate, predicate);
-            }
-        }
-
-        public boolean accept(FeedbackItem item) {
-            return mPredicate != null && mPredicate.accept(item);
-        }
-    }
 }
@@ -17,16 +17,12 @@
 package com.android.screenspeak;
 
 import android.content.Context;
-import android.graphics.Color;
 import android.graphics.PixelFormat;
 import android.os.Build;
 import android.os.Message;
 import android.text.TextUtils;
 import android.view.Gravity;
-import android.view.ViewGroup;
 import android.view.WindowManager;
-import android.widget.FrameLayout;
-import android.widget.TextView;
 import com.android.utils.WeakReferenceHandler;
 import com.android.utils.widget.SimpleOverlay;
 
@@ -36,7 +32,7 @@ import com.android.utils.widget.SimpleOverlay;
 public class TextToSpeechOverlay extends SimpleOverlay {
     private static final int MSG_CLEAR_TEXT = 1;
 
-    private TextView mText;
+    private final TextToSpeechOverlayView mText;
 
     public TextToSpeechOverlay(Context context) {
         super(context);
@@ -53,26 +49,17 @@ public class TextToSpeechOverlay extends SimpleOverlay {
         params.width = WindowManager.LayoutParams.WRAP_CONTENT;
         params.height = WindowManager.LayoutParams.WRAP_CONTENT;
         params.gravity = Gravity.CENTER_HORIZONTAL | Gravity.BOTTOM;
+        params.y = context.getResources()
+                .getDimensionPixelSize(R.dimen.tts_overlay_text_bottom_margin);
         setParams(params);
 
         int padding = context.getResources()
                 .getDimensionPixelSize(R.dimen.tts_overlay_text_padding);
-        int bottomMargin = context.getResources()
-                .getDimensionPixelSize(R.dimen.tts_overlay_text_bottom_margin);
 
-        mText = new TextView(context);
-        mText.setBackgroundColor(0xAA000000);
-        mText.setTextColor(Color.WHITE);
+        mText = new TextToSpeechOverlayView(context);
         mText.setPadding(padding, padding, padding, padding);
-        mText.setGravity(Gravity.CENTER);
-
-        FrameLayout layout = new FrameLayout(context);
-        FrameLayout.LayoutParams layoutParams = new FrameLayout.LayoutParams(
-                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-        layoutParams.setMargins(0, 0, 0, bottomMargin);
-        layout.addView(mText, layoutParams);
 
-        setContentView(layout);
+        setContentView(mText);
     }
 
     public void speak(CharSequence text) {
@@ -86,7 +73,7 @@ public class TextToSpeechOverlay extends SimpleOverlay {
         final long displayTime = Math.max(2000, text.length() * 100);
 
         mHandler.removeMessages(MSG_CLEAR_TEXT);
-        mText.setText(text.toString().trim());
+        mText.setText(text);
         mHandler.sendEmptyMessageDelayed(MSG_CLEAR_TEXT, displayTime);
     }
 
@@ -101,7 +88,7 @@ public class TextToSpeechOverlay extends SimpleOverlay {
         protected void handleMessage(Message msg, TextToSpeechOverlay parent) {
             switch (msg.what) {
                 case MSG_CLEAR_TEXT:
-                    parent.mText.setText("");
+                    parent.mText.clearText();
                     parent.hide();
                     break;
             }
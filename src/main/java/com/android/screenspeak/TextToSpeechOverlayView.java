@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.view.View;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws spoken text centered over a translucent background. Text is laid out
+ * with {@link StaticLayout}s that are cached by text for the current width,
+ * so repeated utterances are not measured again. The view spans the available
+ * width, so only a change in text height requires a layout pass. Text set
+ * several times within one frame is only applied once, on the next frame.
+ */
+public class TextToSpeechOverlayView extends View {
+    /** Maximum number of layouts kept for the current width. */
+    private static final int MAX_CACHED_LAYOUTS = 16;
+
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBackgroundPaint = new Paint();
+
+    /** Layouts for recently displayed text, laid out at {@link #mCacheWidth}. */
+    private final LinkedHashMap<String, StaticLayout> mLayoutCache =
+            new LinkedHashMap<String, StaticLayout>(MAX_CACHED_LAYOUTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, StaticLayout> eldest) {
+                    return size() > MAX_CACHED_LAYOUTS;
+                }
+            };
+
+    /** The width that cached layouts were laid out at. */
+    private int mCacheWidth;
+
+    /** The text currently displayed. */
+    private String mText = "";
+
+    /** The text to display on the next frame, or {@code null} if none. */
+    private String mPendingText;
+
+    /** The layout of {@link #mText}, or {@code null} if not laid out yet. */
+    private StaticLayout mLayout;
+
+    /** The width of the widest line of {@link #mLayout}. */
+    private int mLineWidth;
+
+    public TextToSpeechOverlayView(Context context) {
+        super(context);
+
+        mTextPaint.setColor(0xFFFFFFFF);
+        mTextPaint.setTextSize(context.getResources()
+                .getDimension(R.dimen.tts_overlay_text_size));
+        mBackgroundPaint.setColor(0xAA000000);
+    }
+
+    /**
+     * Sets the text to display. The text is applied on the next frame, and
+     * only the most recent text set before then is displayed.
+     *
+     * @param text The text to display.
+     */
+    public void setText(CharSequence text) {
+        final boolean isFrameScheduled = (mPendingText != null);
+
+        mPendingText = text.toString().trim();
+
+        if (!isFrameScheduled) {
+            postOnAnimation(mApplyPendingText);
+        }
+    }
+
+    /**
+     * Removes the displayed text and any text waiting for the next frame.
+     */
+    public void clearText() {
+        if (mPendingText != null) {
+            removeCallbacks(mApplyPendingText);
+            mPendingText = null;
+        }
+
+        applyText("");
+    }
+
+    private void applyText(String text) {
+        if (text.equals(mText)) {
+            return;
+        }
+
+        mText = text;
+
+        final int textWidth = getTextWidth(getWidth());
+        if (textWidth <= 0) {
+            // Not measured yet, so onMeasure() will lay out the text.
+            mLayout = null;
+            requestLayout();
+            return;
+        }
+
+        final StaticLayout layout = getLayout(text, textWidth);
+        final boolean heightChanged =
+                (mLayout == null) || (mLayout.getHeight() != layout.getHeight());
+
+        setLayout(layout);
+
+        if (heightChanged) {
+            requestLayout();
+        }
+
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width;
+        if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED) {
+            width = getResources().getDisplayMetrics().widthPixels;
+        } else {
+            width = MeasureSpec.getSize(widthMeasureSpec);
+        }
+
+        final int textWidth = getTextWidth(width);
+        if ((mLayout == null) || (mLayout.getWidth() != textWidth)) {
+            setLayout(getLayout(mText, textWidth));
+        }
+
+        final int height = mLayout.getHeight() + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if ((mLayout == null) || mText.isEmpty()) {
+            return;
+        }
+
+        // Only the area behind the text gets a background.
+        final float left = ((getWidth() - mLineWidth) / 2f) - getPaddingLeft();
+        final float right = left + mLineWidth + getPaddingLeft() + getPaddingRight();
+        canvas.drawRect(left, 0, right, getHeight(), mBackgroundPaint);
+
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        mLayout.draw(canvas);
+        canvas.restore();
+    }
+
+    private int getTextWidth(int width) {
+        return Math.max(0, width - getPaddingLeft() - getPaddingRight());
+    }
+
+    private void setLayout(StaticLayout layout) {
+        mLayout = layout;
+
+        float lineWidth = 0;
+        for (int i = 0; i < layout.getLineCount(); i++) {
+            lineWidth = Math.max(lineWidth, layout.getLineWidth(i));
+        }
+
+        mLineWidth = (int) Math.ceil(lineWidth);
+    }
+
+    private StaticLayout getLayout(String text, int width) {
+        if (width != mCacheWidth) {
+            mLayoutCache.clear();
+            mCacheWidth = width;
+        }
+
+        StaticLayout layout = mLayoutCache.get(text);
+        if (layout == null) {
+            layout = new StaticLayout(text, mTextPaint, width, Layout.Alignment.ALIGN_CENTER,
+                    1.0f, 0.0f, false);
+            mLayoutCache.put(text, layout);
+        }
+
+        return layout;
+    }
+
+    private final Runnable mApplyPendingText = new Runnable() {
+        @Override
+        public void run() {
+            final String text = mPendingText;
+            mPendingText = null;
+
+            if (text != null) {
+                applyText(text);
+            }
+        }
+    };
+}
@@ -133,7 +133,8 @@ public class ListMenuManager implements MenuManager, AccessibilityEventListener
                 if (mMenuShown == 0) {
                     long delay = 0;
                     if (mDeferredAction != null) {
-                        mService.addEventListener(ListMenuManager.this);
+                        mService.addEventListener(ListMenuManager.this,
+                                AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
 
                         if (needFocusDelay(mDeferredAction.actionId)) {
                             delay = RESET_FOCUS_DELAY;
@@ -216,6 +217,11 @@ public class ListMenuManager implements MenuManager, AccessibilityEventListener
         // NoOp
     }
 
+    @Override
+    public void setOnMenuShowingChangedListener(OnMenuShowingChangedListener listener) {
+        // NoOp, list menus are dialogs and never report as showing.
+    }
+
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
         if (event.getEventType() == AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED &&
@@ -23,10 +23,20 @@ import android.content.IntentFilter;
 
 public interface MenuManager {
 
+    interface OnMenuShowingChangedListener {
+        void onMenuShowingChanged(boolean isMenuShowing);
+    }
+
     boolean showMenu(int menuId);
     boolean isMenuShowing();
     void dismissAll();
     void clearCache();
 
     void onGesture(int gestureId);
+
+    /**
+     * Sets the listener told when {@link #isMenuShowing()} changes, or
+     * {@code null} to remove it.
+     */
+    void setOnMenuShowingChangedListener(OnMenuShowingChangedListener listener);
 }
@@ -19,9 +19,22 @@ package com.android.screenspeak.contextmenu;
 public class MenuManagerWrapper implements MenuManager {
 
     private MenuManager mMenuManager;
+    private OnMenuShowingChangedListener mMenuShowingListener;
 
     public void setMenuManager(MenuManager menuManager) {
+        final boolean wasMenuShowing = isMenuShowing();
+        if (mMenuManager != null) {
+            mMenuManager.setOnMenuShowingChangedListener(null);
+        }
+
         mMenuManager = menuManager;
+        if (mMenuManager != null) {
+            mMenuManager.setOnMenuShowingChangedListener(mMenuShowingListener);
+        }
+
+        if ((mMenuShowingListener != null) && (wasMenuShowing != isMenuShowing())) {
+            mMenuShowingListener.onMenuShowingChanged(isMenuShowing());
+        }
     }
 
     @Override
@@ -50,6 +63,14 @@ public class MenuManagerWrapper implements MenuManager {
         }
     }
 
+    @Override
+    public void setOnMenuShowingChangedListener(OnMenuShowingChangedListener listener) {
+        mMenuShowingListener = listener;
+        if (mMenuManager != null) {
+            mMenuManager.setOnMenuShowingChangedListener(listener);
+        }
+    }
+
     @Override
     public void onGesture(int gesture) {
         if (mMenuManager != null) {
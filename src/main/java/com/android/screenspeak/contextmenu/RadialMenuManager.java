@@ -57,6 +57,9 @@ public class RadialMenuManager implements MenuManager {
     /** How many radial menus are showing. */
     private int mIsRadialMenuShowing;
 
+    /** Listener told when the first menu is shown or the last is hidden. */
+    private OnMenuShowingChangedListener mMenuShowingListener;
+
     /** Whether we have queued hint speech and it has not completed yet. */
     private boolean mHintSpeechPending;
 
@@ -145,6 +148,11 @@ public class RadialMenuManager implements MenuManager {
         return (mIsRadialMenuShowing > 0);
     }
 
+    @Override
+    public void setOnMenuShowingChangedListener(OnMenuShowingChangedListener listener) {
+        mMenuShowingListener = listener;
+    }
+
     @Override
     public void onGesture(int gestureId) {
         dismissAll();
@@ -253,6 +261,9 @@ public class RadialMenuManager implements MenuManager {
             playScaleForMenu(menu);
 
             mIsRadialMenuShowing++;
+            if ((mIsRadialMenuShowing == 1) && (mMenuShowingListener != null)) {
+                mMenuShowingListener.onMenuShowingChanged(true);
+            }
 
             // Broadcast a notification that the menu was shown.
             Intent intent = new Intent(ContextMenuMonitor.ACTION_CONTEXT_MENU_SHOWN);
@@ -269,6 +280,9 @@ public class RadialMenuManager implements MenuManager {
             }
 
             mIsRadialMenuShowing--;
+            if ((mIsRadialMenuShowing == 0) && (mMenuShowingListener != null)) {
+                mMenuShowingListener.onMenuShowingChanged(false);
+            }
 
             // Broadcast a notification that the menu was hidden.
             Intent intent = new Intent(ContextMenuMonitor.ACTION_CONTEXT_MENU_HIDDEN);
@@ -670,33 +670,58 @@ public class CursorControllerApp implements
             return true;
         }
 
-        WindowManager windowsManager = new WindowManager();
-        windowsManager.setWindows(mService.getWindows());
+        WindowManager windowsManager = mService.getWindowSnapshotCache().getWindowManager();
+        AccessibilityWindowInfo currentWindow = getAccessibilityFocusedWindow(windowsManager);
 
-        if (!windowsManager.isApplicationWindowFocused()) {
+        if (!isApplicationWindow(currentWindow)) {
             // need pause before looping traversal in non-application window
             return true;
         }
 
         if (direction == NodeFocusFinder.SEARCH_FORWARD) {
-            return windowsManager.isLastWindow(windowsManager.getCurrentWindow(),
+            return windowsManager.isLastWindow(currentWindow,
                     AccessibilityWindowInfo.TYPE_APPLICATION);
         } else {
-            return windowsManager.isFirstWindow(windowsManager.getCurrentWindow(),
+            return windowsManager.isFirstWindow(currentWindow,
                     AccessibilityWindowInfo.TYPE_APPLICATION);
         }
     }
 
+    /**
+     * Returns the window that holds accessibility focus. Focus is queried from the system, since
+     * it may have moved since the window snapshot was taken. The window itself is taken from the
+     * snapshot, which is refreshed if it doesn't contain the focused window yet.
+     */
+    @SuppressLint("InlinedApi")
+    private AccessibilityWindowInfo getAccessibilityFocusedWindow(WindowManager windowsManager) {
+        AccessibilityNodeInfo focusedNode =
+                mService.findFocus(AccessibilityNodeInfo.FOCUS_ACCESSIBILITY);
+        if (focusedNode == null) {
+            return null;
+        }
+
+        int windowId = focusedNode.getWindowId();
+        focusedNode.recycle();
+
+        AccessibilityWindowInfo window = windowsManager.getWindowById(windowId);
+        if (window == null) {
+            mService.getWindowSnapshotCache().invalidate();
+            window = mService.getWindowSnapshotCache().getWindowManager().getWindowById(windowId);
+        }
+
+        return window;
+    }
+
+    @SuppressLint("InlinedApi")
+    private static boolean isApplicationWindow(AccessibilityWindowInfo window) {
+        return (window != null) && (window.getType() == AccessibilityWindowInfo.TYPE_APPLICATION);
+    }
+
     private boolean navigateToNextApplicationWindow(int direction) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
-            WindowManager windowsManager = new WindowManager();
-            windowsManager.setWindows(mService.getWindows());
-            if (!windowsManager.isApplicationWindowFocused()) {
-                return false;
-            }
-
-            AccessibilityWindowInfo currentWindow = windowsManager.getCurrentWindow();
-            if (currentWindow == null) {
+            WindowManager windowsManager = mService.getWindowSnapshotCache().getWindowManager();
+            AccessibilityWindowInfo currentWindow = getAccessibilityFocusedWindow(windowsManager);
+            if (!isApplicationWindow(currentWindow)) {
                 return false;
             }
 
@@ -19,6 +19,7 @@ package com.android.screenspeak.controller;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.os.Build;
+import android.os.Message;
 import android.os.PowerManager;
 import android.support.v4.view.accessibility.AccessibilityEventCompat;
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
@@ -33,6 +34,8 @@ import com.android.utils.AccessibilityEventListener;
 import com.android.utils.AccessibilityEventUtils;
 import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.LogUtils;
+import com.android.utils.NodeFilter;
+import com.android.utils.WeakReferenceHandler;
 import com.android.utils.WebInterfaceUtils;
 import com.android.utils.compat.accessibilityservice.AccessibilityServiceCompatUtils;
 import com.android.utils.traversal.OrderedTraversalStrategy;
@@ -63,6 +66,15 @@ public class FullScreenReadControllerApp implements
             AccessibilityEventCompat.TYPE_VIEW_HOVER_ENTER |
             AccessibilityEventCompat.TYPE_VIEW_TEXT_SELECTION_CHANGED;
 
+    /** Number of nodes to find ahead of the node being read. */
+    private static final int READ_AHEAD_SIZE = 8;
+
+    /**
+     * Delay before reading ahead, so that the search doesn't hold up feedback
+     * for the node that was just focused.
+     */
+    private static final long READ_AHEAD_DELAY = 200;
+
     /**
      * The current state of the controller. Should only be updated through
      * {@link FullScreenReadControllerApp#setReadingState(int)}
@@ -81,6 +93,16 @@ public class FullScreenReadControllerApp implements
     /** Wake lock for keeping the device unlocked while reading */
     private PowerManager.WakeLock mWakeLock;
 
+    /**
+     * Nodes that follow the node being read, found while it is spoken. Only
+     * the traversal is done ahead of time; each node is still described and
+     * spoken from its accessibility focus event.
+     */
+    private final ReadAheadBuffer mReadAhead = new ReadAheadBuffer(READ_AHEAD_SIZE);
+
+    /** Handler for finding nodes to read ahead after the current node is focused */
+    private final ReadAheadHandler mHandler = new ReadAheadHandler(this);
+
     @SuppressWarnings("deprecation")
     public FullScreenReadControllerApp(FeedbackController feedbackController,
                                        CursorController cursorController,
@@ -190,20 +212,139 @@ public class FullScreenReadControllerApp implements
     public void interrupt() {
         setReadingState(STATE_STOPPED);
 
+        mHandler.removeMessages(ReadAheadHandler.MSG_READ_AHEAD);
+        mReadAhead.clear();
+
         if (mWakeLock.isHeld()) {
             mWakeLock.release();
         }
     }
 
     private void moveForward() {
-        if (!mCursorController.next(false /* shouldWrap */, false /* shouldScroll */,
-                false /*useInputFocusAsPivotIfEmpty*/)) {
+        if (!moveToReadAheadNode()
+                && !mCursorController.next(false /* shouldWrap */, false /* shouldScroll */,
+                        false /*useInputFocusAsPivotIfEmpty*/)) {
             mFeedbackController.playAuditory(R.raw.complete, 1.3f, 1);
             interrupt();
         }
 
-        if (currentNodeHasWebContent()) {
+        final AccessibilityNodeInfoCompat currentNode = mCursorController.getCursor();
+        if (currentNode == null) {
+            return;
+        }
+
+        if (WebInterfaceUtils.hasLegacyWebContent(currentNode)) {
             moveIntoWebContent();
+        } else if (isActive() && mReadAhead.isEmpty()) {
+            // Find the next nodes while the current one is spoken.
+            mReadAhead.reset(currentNode);
+            mHandler.removeMessages(ReadAheadHandler.MSG_READ_AHEAD);
+            mHandler.sendEmptyMessageDelayed(ReadAheadHandler.MSG_READ_AHEAD,
+                    READ_AHEAD_DELAY);
+        }
+
+        currentNode.recycle();
+    }
+
+    /**
+     * Moves accessibility focus to the next node that was read ahead, if
+     * focus hasn't moved since the last node was read and the next node is
+     * still on screen.
+     *
+     * @return {@code true} if focus was moved.
+     */
+    private boolean moveToReadAheadNode() {
+        if (mReadAhead.isEmpty()) {
+            return false;
+        }
+
+        AccessibilityNodeInfoCompat cursor = null;
+        AccessibilityNodeInfoCompat next = null;
+        AccessibilityNodeInfoCompat refreshed = null;
+
+        try {
+            cursor = mCursorController.getCursor();
+
+            // Navigation within web content is left to the cursor controller.
+            if ((cursor == null) || WebInterfaceUtils.supportsWebActions(cursor)) {
+                mReadAhead.clear();
+                return false;
+            }
+
+            next = mReadAhead.poll(cursor);
+            if (next == null) {
+                return false;
+            }
+
+            refreshed = AccessibilityNodeInfoUtils.refreshNode(next);
+            if ((refreshed == null) || !refreshed.isVisibleToUser()
+                    || !mCursorController.setCursor(refreshed)) {
+                mReadAhead.clear();
+                return false;
+            }
+
+            return true;
+        } finally {
+            AccessibilityNodeInfoUtils.recycleNodes(cursor, next, refreshed);
+        }
+    }
+
+    /**
+     * Fills the read-ahead buffer with the nodes that follow its anchor in
+     * traversal order, using a single traversal of the anchor's window.
+     */
+    private void readAhead() {
+        final AccessibilityNodeInfoCompat anchor = mReadAhead.getAnchor();
+        if (!isActive() || isReadingLegacyWebContent() || (anchor == null)
+                || mReadAhead.isFull()) {
+            return;
+        }
+
+        AccessibilityNodeInfoCompat rootNode = null;
+        AccessibilityNodeInfoCompat current = null;
+        TraversalStrategy traversal = null;
+
+        try {
+            rootNode = AccessibilityNodeInfoUtils.getRoot(anchor);
+            if (rootNode == null) {
+                return;
+            }
+
+            traversal = new OrderedTraversalStrategy(rootNode);
+            final TraversalStrategy traversalStrategy = traversal;
+            final NodeFilter filter = new NodeFilter() {
+                @Override
+                public boolean accept(AccessibilityNodeInfoCompat node) {
+                    return node != null && AccessibilityNodeInfoUtils.shouldFocusNode(node,
+                            traversalStrategy.getSpeakingNodesCache());
+                }
+            };
+
+            current = AccessibilityNodeInfoCompat.obtain(anchor);
+            while (!mReadAhead.isFull()) {
+                final AccessibilityNodeInfoCompat next = AccessibilityNodeInfoUtils.searchFocus(
+                        traversal, current, OrderedTraversalStrategy.SEARCH_FOCUS_FORWARD,
+                        filter);
+                current.recycle();
+                current = next;
+                if (next == null) {
+                    break;
+                }
+
+                mReadAhead.add(AccessibilityNodeInfoCompat.obtain(next));
+
+                // Nodes after web content depend on how it is navigated.
+                if (WebInterfaceUtils.supportsWebActions(next)) {
+                    break;
+                }
+            }
+
+            LogUtils.log(TAG, Log.VERBOSE, "Read ahead %d nodes", mReadAhead.size());
+        } finally {
+            AccessibilityNodeInfoUtils.recycleNodes(rootNode, current);
+            if (traversal != null) {
+                traversal.recycle();
+            }
         }
     }
 
@@ -257,17 +398,6 @@ public class FullScreenReadControllerApp implements
         return mCurrentState != STATE_STOPPED;
     }
 
-    private boolean currentNodeHasWebContent() {
-        final AccessibilityNodeInfoCompat currentNode = mCursorController.getCursor();
-        if (currentNode == null) {
-            return false;
-        }
-
-        final boolean isWebContent = WebInterfaceUtils.hasLegacyWebContent(currentNode);
-        currentNode.recycle();
-        return isWebContent;
-    }
-
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
         if (!isActive()) {
@@ -279,6 +409,51 @@ public class FullScreenReadControllerApp implements
         if (AccessibilityEventUtils.eventMatchesAnyType(
                 event, MASK_EVENT_TYPES_INTERRUPT_CONTINUOUS)) {
             interrupt();
+            return;
+        }
+
+        if (invalidatesReadAhead(event)) {
+            mReadAhead.clear();
+        }
+    }
+
+    /**
+     * Determines whether an event may have changed the traversal order of the
+     * nodes read ahead. Text and content description changes don't, and other
+     * content changes and scrolls only do if they are within the part of the
+     * window that was read ahead.
+     */
+    private boolean invalidatesReadAhead(AccessibilityEvent event) {
+        final AccessibilityNodeInfoCompat anchor = mReadAhead.getAnchor();
+        if ((anchor == null) || (event.getWindowId() != anchor.getWindowId())) {
+            return false;
+        }
+
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+                return true;
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+                return !AccessibilityEventUtils.isNodeOnlyContentChange(event)
+                        && isReadAheadAffectedBySource(event);
+            case AccessibilityEvent.TYPE_VIEW_SCROLLED:
+                return isReadAheadAffectedBySource(event);
+            default:
+                return false;
+        }
+    }
+
+    private boolean isReadAheadAffectedBySource(AccessibilityEvent event) {
+        final AccessibilityNodeInfoCompat source =
+                AccessibilityEventCompat.asRecord(event).getSource();
+        if (source == null) {
+            // The change could be anywhere in the window.
+            return true;
+        }
+
+        try {
+            return mReadAhead.isAffectedBy(source);
+        } finally {
+            source.recycle();
         }
     }
 
@@ -292,4 +467,21 @@ public class FullScreenReadControllerApp implements
             }
         }
     };
+
+    private static class ReadAheadHandler
+            extends WeakReferenceHandler<FullScreenReadControllerApp> {
+        /** Message to fill the read-ahead buffer */
+        public static final int MSG_READ_AHEAD = 1;
+
+        public ReadAheadHandler(FullScreenReadControllerApp parent) {
+            super(parent);
+        }
+
+        @Override
+        protected void handleMessage(Message msg, FullScreenReadControllerApp parent) {
+            if (msg.what == MSG_READ_AHEAD) {
+                parent.readAhead();
+            }
+        }
+    }
 }
@@ -16,9 +16,12 @@
 
 package com.android.screenspeak.controller;
 
+import android.content.res.Configuration;
+
 public interface GestureController {
     void onGesture(int gestureId);
     void performAction(String action);
     String gestureFromAction(String action);
     String gestureDescriptionFromAction(String action);
+    void onConfigurationChanged(Configuration newConfig);
 }
@@ -28,19 +28,142 @@ import com.android.screenspeak.contextmenu.MenuManager;
 import com.android.utils.TreeDebug;
 import com.android.utils.compat.accessibilityservice.AccessibilityServiceCompatUtils;
 
+import java.util.HashMap;
+
 /**
  * Class to handle incoming gestures to ScreenSpeak.
+ * <p>
+ * The action assigned to each gesture is read from preferences into a table indexed by gesture
+ * id, along with a reverse index from actions to gesture descriptions. The tables are rebuilt
+ * when preferences or the configuration change, rather than on every gesture.
  * TODO(KM): Remove Shortcut gesture action
  * TODO(KM): Make sure tutorial still works
- * TODO(KM): Map action to string description of gesture
- * TODO(KM): Map actions to ints, and store in a map that changes with prefs
  */
 public class GestureControllerApp implements GestureController {
+    /** Largest gesture id defined by {@link AccessibilityService}. */
+    private static final int MAX_GESTURE_ID = AccessibilityService.GESTURE_SWIPE_DOWN_AND_RIGHT;
+
+    /* Actions that can be assigned to gestures. */
+    private static final int ACTION_UNKNOWN = -1;
+    private static final int ACTION_UNASSIGNED = 0;
+    private static final int ACTION_PREVIOUS = 1;
+    private static final int ACTION_NEXT = 2;
+    private static final int ACTION_SCROLL_BACK = 3;
+    private static final int ACTION_SCROLL_FORWARD = 4;
+    private static final int ACTION_FIRST_IN_SCREEN = 5;
+    private static final int ACTION_LAST_IN_SCREEN = 6;
+    private static final int ACTION_BACK = 7;
+    private static final int ACTION_HOME = 8;
+    private static final int ACTION_OVERVIEW = 9;
+    private static final int ACTION_NOTIFICATIONS = 10;
+    private static final int ACTION_SCREENSPEAK_BREAKOUT = 11;
+    private static final int ACTION_LOCAL_BREAKOUT = 12;
+    private static final int ACTION_PREVIOUS_GRANULARITY = 13;
+    private static final int ACTION_NEXT_GRANULARITY = 14;
+    private static final int ACTION_READ_FROM_TOP = 15;
+    private static final int ACTION_READ_FROM_CURRENT = 16;
+    private static final int ACTION_PRINT_NODE_TREE = 17;
+
+    /** Pairs of action preference values and the actions they map to. */
+    private static final int[][] ACTION_VALUES = {
+            {R.string.shortcut_value_unassigned, ACTION_UNASSIGNED},
+            {R.string.shortcut_value_previous, ACTION_PREVIOUS},
+            {R.string.shortcut_value_next, ACTION_NEXT},
+            {R.string.shortcut_value_scroll_back, ACTION_SCROLL_BACK},
+            {R.string.shortcut_value_scroll_forward, ACTION_SCROLL_FORWARD},
+            {R.string.shortcut_value_first_in_screen, ACTION_FIRST_IN_SCREEN},
+            {R.string.shortcut_value_last_in_screen, ACTION_LAST_IN_SCREEN},
+            {R.string.shortcut_value_back, ACTION_BACK},
+            {R.string.shortcut_value_home, ACTION_HOME},
+            {R.string.shortcut_value_overview, ACTION_OVERVIEW},
+            {R.string.shortcut_value_notifications, ACTION_NOTIFICATIONS},
+            {R.string.shortcut_value_screenspeak_breakout, ACTION_SCREENSPEAK_BREAKOUT},
+            {R.string.shortcut_value_local_breakout, ACTION_LOCAL_BREAKOUT},
+            {R.string.shortcut_value_previous_granularity, ACTION_PREVIOUS_GRANULARITY},
+            {R.string.shortcut_value_next_granularity, ACTION_NEXT_GRANULARITY},
+            {R.string.shortcut_value_read_from_top, ACTION_READ_FROM_TOP},
+            {R.string.shortcut_value_read_from_current, ACTION_READ_FROM_CURRENT},
+            {R.string.shortcut_value_print_node_tree, ACTION_PRINT_NODE_TREE},
+    };
+
+    /** Pairs of action preference values and their labels, for actions that have labels. */
+    private static final int[][] ACTION_LABELS = {
+            {R.string.shortcut_value_unassigned, R.string.shortcut_unassigned},
+            {R.string.shortcut_value_back, R.string.shortcut_back},
+            {R.string.shortcut_value_home, R.string.shortcut_home},
+            {R.string.shortcut_value_overview, R.string.shortcut_overview},
+            {R.string.shortcut_value_notifications, R.string.shortcut_notifications},
+            {R.string.shortcut_value_screenspeak_breakout, R.string.shortcut_screenspeak_breakout},
+            {R.string.shortcut_value_local_breakout, R.string.shortcut_local_breakout},
+            {R.string.shortcut_value_read_from_top, R.string.shortcut_read_from_top},
+            {R.string.shortcut_value_read_from_current, R.string.shortcut_read_from_current},
+            {R.string.shortcut_value_print_node_tree, R.string.shortcut_print_node_tree},
+    };
+
+    /**
+     * Pairs of gestures and their descriptions, in the order used to pick a
+     * description when several gestures share an action.
+     */
+    private static final int[][] GESTURE_DESCRIPTIONS = {
+            {AccessibilityService.GESTURE_SWIPE_UP, R.string.value_direction_up},
+            {AccessibilityService.GESTURE_SWIPE_DOWN, R.string.value_direction_down},
+            {AccessibilityService.GESTURE_SWIPE_LEFT, R.string.value_direction_left},
+            {AccessibilityService.GESTURE_SWIPE_RIGHT, R.string.value_direction_right},
+            {AccessibilityService.GESTURE_SWIPE_UP_AND_DOWN,
+                    R.string.value_direction_up_and_down},
+            {AccessibilityService.GESTURE_SWIPE_DOWN_AND_UP,
+                    R.string.value_direction_down_and_up},
+            {AccessibilityService.GESTURE_SWIPE_LEFT_AND_RIGHT,
+                    R.string.value_direction_left_and_right},
+            {AccessibilityService.GESTURE_SWIPE_RIGHT_AND_LEFT,
+                    R.string.value_direction_right_and_left},
+            {AccessibilityService.GESTURE_SWIPE_UP_AND_LEFT,
+                    R.string.value_direction_up_and_left},
+            {AccessibilityService.GESTURE_SWIPE_UP_AND_RIGHT,
+                    R.string.value_direction_up_and_right},
+            {AccessibilityService.GESTURE_SWIPE_DOWN_AND_LEFT,
+                    R.string.value_direction_down_and_left},
+            {AccessibilityService.GESTURE_SWIPE_DOWN_AND_RIGHT,
+                    R.string.value_direction_down_and_right},
+            {AccessibilityService.GESTURE_SWIPE_RIGHT_AND_DOWN,
+                    R.string.value_direction_right_and_down},
+            {AccessibilityService.GESTURE_SWIPE_RIGHT_AND_UP,
+                    R.string.value_direction_right_and_up},
+            {AccessibilityService.GESTURE_SWIPE_LEFT_AND_DOWN,
+                    R.string.value_direction_left_and_down},
+            {AccessibilityService.GESTURE_SWIPE_LEFT_AND_UP,
+                    R.string.value_direction_left_and_up},
+    };
+
     private final AccessibilityService mService;
     private final CursorController mCursorController;
     private final FeedbackController mFeedbackController;
     private final FullScreenReadController mFullScreenReadController;
     private final MenuManager mMenuManager;
+    private final SharedPreferences mPrefs;
+
+    /* Action preference values to actions, and to their labels. */
+    private final HashMap<String, Integer> mActionIds = new HashMap<>();
+    private final HashMap<String, String> mActionLabels = new HashMap<>();
+
+    /* Action preference values and actions, indexed by gesture id. */
+    private final String[] mGestureActionValues = new String[MAX_GESTURE_ID + 1];
+    private final int[] mGestureActions = new int[MAX_GESTURE_ID + 1];
+
+    /* Action preference values to the description of the first gesture assigned to them. */
+    private final HashMap<String, String> mGestureDescriptions = new HashMap<>();
+
+    /** Whether the tables above need to be rebuilt before use. */
+    private boolean mTablesDirty = true;
+
+    /* Holds the listener, since preferences only keep weak references to listeners. */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    mTablesDirty = true;
+                }
+            };
 
     public GestureControllerApp(AccessibilityService service,
                                 CursorController cursorController,
@@ -57,105 +180,31 @@ public class GestureControllerApp implements GestureController {
         mFullScreenReadController = fullScreenReadController;
         mMenuManager = menuManager;
         mService = service;
+
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(service);
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
     }
 
     @Override
     public String gestureDescriptionFromAction(String action) {
         if (action == null) return null;
 
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_UP))) {
-            return mService.getString(R.string.value_direction_up);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_DOWN))) {
-            return mService.getString(R.string.value_direction_down);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_LEFT))) {
-            return mService.getString(R.string.value_direction_left);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_RIGHT))) {
-            return mService.getString(R.string.value_direction_right);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_UP_AND_DOWN))) {
-            return mService.getString(R.string.value_direction_up_and_down);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_DOWN_AND_UP))) {
-            return mService.getString(R.string.value_direction_down_and_up);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_LEFT_AND_RIGHT))) {
-            return mService.getString(R.string.value_direction_down_and_up);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_RIGHT_AND_LEFT))) {
-            return mService.getString(R.string.value_direction_right_and_left);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_UP_AND_LEFT))) {
-            return mService.getString(R.string.value_direction_up_and_left);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_UP_AND_RIGHT))) {
-            return mService.getString(R.string.value_direction_up_and_right);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_DOWN_AND_LEFT))) {
-            return mService.getString(R.string.value_direction_down_and_left);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_DOWN_AND_RIGHT))) {
-            return mService.getString(R.string.value_direction_down_and_right);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_RIGHT_AND_DOWN))) {
-            return mService.getString(R.string.value_direction_right_and_down);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_RIGHT_AND_UP))) {
-            return mService.getString(R.string.value_direction_right_and_up);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_LEFT_AND_DOWN))) {
-            return mService.getString(R.string.value_direction_left_and_down);
-        }
-
-        if (action.equals(actionFromGesture(AccessibilityService.GESTURE_SWIPE_LEFT_AND_UP))) {
-            return mService.getString(R.string.value_direction_left_and_up);
-        }
-
-        return null;
+        ensureTables();
+        return mGestureDescriptions.get(action);
     }
 
     @Override
     public String gestureFromAction(String action) {
         if (action == null) return null;
 
-        if (action.equals(mService.getString(R.string.shortcut_value_unassigned)))
-            return mService.getString(R.string.shortcut_unassigned);
-        if (action.equals(mService.getString(R.string.shortcut_value_back)))
-            return mService.getString(R.string.shortcut_back);
-        if (action.equals(mService.getString(R.string.shortcut_value_home)))
-            return mService.getString(R.string.shortcut_home);
-        if (action.equals(mService.getString(R.string.shortcut_value_overview)))
-            return mService.getString(R.string.shortcut_overview);
-        if (action.equals(mService.getString(R.string.shortcut_value_notifications)))
-            return mService.getString(R.string.shortcut_notifications);
-        if (action.equals(mService.getString(R.string.shortcut_value_screenspeak_breakout)))
-            return mService.getString(R.string.shortcut_screenspeak_breakout);
-        if (action.equals(mService.getString(R.string.shortcut_value_local_breakout)))
-            return mService.getString(R.string.shortcut_local_breakout);
-        if (action.equals(mService.getString(R.string.shortcut_value_read_from_top)))
-            return mService.getString(R.string.shortcut_read_from_top);
-        if (action.equals(mService.getString(R.string.shortcut_value_read_from_current)))
-            return mService.getString(R.string.shortcut_read_from_current);
-        if (action.equals(mService.getString(R.string.shortcut_value_print_node_tree)))
-            return mService.getString(R.string.shortcut_print_node_tree);
-
-        return null;
+        ensureTables();
+        return mActionLabels.get(action);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // The layout direction and the localized labels may have changed.
+        mTablesDirty = true;
     }
 
     private boolean isScreenLayoutRTL() {
@@ -167,8 +216,46 @@ public class GestureControllerApp implements GestureController {
             Configuration.SCREENLAYOUT_LAYOUTDIR_RTL;
     }
 
-    private String actionFromGesture(int gesture) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mService);
+    /**
+     * Rebuilds the gesture and action tables if preferences or the
+     * configuration have changed since they were last built.
+     */
+    private void ensureTables() {
+        if (!mTablesDirty) {
+            return;
+        }
+
+        mTablesDirty = false;
+
+        mActionIds.clear();
+        for (int[] pair : ACTION_VALUES) {
+            mActionIds.put(mService.getString(pair[0]), pair[1]);
+        }
+
+        mActionLabels.clear();
+        for (int[] pair : ACTION_LABELS) {
+            mActionLabels.put(mService.getString(pair[0]), mService.getString(pair[1]));
+        }
+
+        final boolean isRtl = isScreenLayoutRTL();
+        mGestureDescriptions.clear();
+        for (int[] pair : GESTURE_DESCRIPTIONS) {
+            final int gesture = pair[0];
+            final String action = loadActionForGesture(mPrefs, isRtl, gesture);
+            final Integer actionId = mActionIds.get(action);
+            mGestureActionValues[gesture] = action;
+            mGestureActions[gesture] = (actionId == null) ? ACTION_UNKNOWN : actionId;
+
+            if (!mGestureDescriptions.containsKey(action)) {
+                mGestureDescriptions.put(action, mService.getString(pair[1]));
+            }
+        }
+    }
+
+    /**
+     * Reads the action assigned to a gesture from preferences.
+     */
+    private String loadActionForGesture(SharedPreferences prefs, boolean isRtl, int gesture) {
         switch (gesture) {
             case AccessibilityService.GESTURE_SWIPE_UP:
                 return prefs.getString(
@@ -179,7 +266,7 @@ public class GestureControllerApp implements GestureController {
                         mService.getString(R.string.pref_shortcut_down_key),
                         mService.getString(R.string.pref_shortcut_down_default));
             case AccessibilityService.GESTURE_SWIPE_LEFT:
-                if (isScreenLayoutRTL()) {
+                if (isRtl) {
                     return prefs.getString(
                             mService.getString(R.string.pref_shortcut_right_key),
                             mService.getString(R.string.pref_shortcut_right_default));
@@ -190,7 +277,7 @@ public class GestureControllerApp implements GestureController {
                 }
 
             case AccessibilityService.GESTURE_SWIPE_RIGHT:
-                if (isScreenLayoutRTL()) {
+                if (isRtl) {
                     return prefs.getString(
                             mService.getString(R.string.pref_shortcut_left_key),
                             mService.getString(R.string.pref_shortcut_left_default));
@@ -294,54 +381,88 @@ public class GestureControllerApp implements GestureController {
 
     @Override
     public void performAction(String action) {
-        if (action.equals(mService.getString(R.string.shortcut_value_unassigned))) {
-          // Do Nothing
-        } else if (action.equals(mService.getString(R.string.shortcut_value_previous))) {
-            boolean result = mCursorController.previous(true /* shouldWrap */,
-                    true /* shouldScroll */,
-                    true /*useInputFocusAsPivotIfEmpty*/);
-            if (!result) mFeedbackController.playAuditory(R.raw.complete);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_next))) {
-            boolean result = mCursorController.next(true /* shouldWrap */,
-                    true /* shouldScroll */,
-                    true /*useInputFocusAsPivotIfEmpty*/);
-            if (!result) mFeedbackController.playAuditory(R.raw.complete);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_scroll_back))) {
-            boolean result = mCursorController.less();
-            if (!result) mFeedbackController.playAuditory(R.raw.complete);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_scroll_forward))) {
-            boolean result = mCursorController.more();
-            if (!result) mFeedbackController.playAuditory(R.raw.complete);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_first_in_screen))) {
-            boolean result = mCursorController.jumpToTop();
-            if (!result) mFeedbackController.playAuditory(R.raw.complete);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_last_in_screen))) {
-            boolean result = mCursorController.jumpToBottom();
-            if (!result) mFeedbackController.playAuditory(R.raw.complete);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_back))) {
-            mService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_home))) {
-            mService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_HOME);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_overview))) {
-            mService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_RECENTS);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_notifications))) {
-            mService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_NOTIFICATIONS);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_screenspeak_breakout))) {
-            mMenuManager.showMenu(R.menu.global_context_menu);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_local_breakout))) {
-            mMenuManager.showMenu(R.menu.local_context_menu);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_previous_granularity))) {
-            boolean result = mCursorController.previousGranularity();
-            if (!result) mFeedbackController.playAuditory(R.raw.complete);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_next_granularity))) {
-            boolean result = mCursorController.nextGranularity();
-            if (!result) mFeedbackController.playAuditory(R.raw.complete);
-        } else if (action.equals(mService.getString(R.string.shortcut_value_read_from_top))) {
-            mFullScreenReadController.startReadingFromBeginning();
-        } else if (action.equals(mService.getString(R.string.shortcut_value_read_from_current))) {
-            mFullScreenReadController.startReadingFromNextNode();
-        } else if (action.equals(mService.getString(R.string.shortcut_value_print_node_tree))) {
-            TreeDebug.logNodeTree(AccessibilityServiceCompatUtils.getRootInActiveWindow(mService));
+        ensureTables();
+        final Integer actionId = mActionIds.get(action);
+        performAction((actionId == null) ? ACTION_UNKNOWN : actionId, action);
+    }
+
+    private void performAction(int actionId, String action) {
+        switch (actionId) {
+            case ACTION_PREVIOUS: {
+                boolean result = mCursorController.previous(true /* shouldWrap */,
+                        true /* shouldScroll */,
+                        true /*useInputFocusAsPivotIfEmpty*/);
+                if (!result) mFeedbackController.playAuditory(R.raw.complete);
+                break;
+            }
+            case ACTION_NEXT: {
+                boolean result = mCursorController.next(true /* shouldWrap */,
+                        true /* shouldScroll */,
+                        true /*useInputFocusAsPivotIfEmpty*/);
+                if (!result) mFeedbackController.playAuditory(R.raw.complete);
+                break;
+            }
+            case ACTION_SCROLL_BACK: {
+                boolean result = mCursorController.less();
+                if (!result) mFeedbackController.playAuditory(R.raw.complete);
+                break;
+            }
+            case ACTION_SCROLL_FORWARD: {
+                boolean result = mCursorController.more();
+                if (!result) mFeedbackController.playAuditory(R.raw.complete);
+                break;
+            }
+            case ACTION_FIRST_IN_SCREEN: {
+                boolean result = mCursorController.jumpToTop();
+                if (!result) mFeedbackController.playAuditory(R.raw.complete);
+                break;
+            }
+            case ACTION_LAST_IN_SCREEN: {
+                boolean result = mCursorController.jumpToBottom();
+                if (!result) mFeedbackController.playAuditory(R.raw.complete);
+                break;
+            }
+            case ACTION_BACK:
+                mService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+                break;
+            case ACTION_HOME:
+                mService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_HOME);
+                break;
+            case ACTION_OVERVIEW:
+                mService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_RECENTS);
+                break;
+            case ACTION_NOTIFICATIONS:
+                mService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_NOTIFICATIONS);
+                break;
+            case ACTION_SCREENSPEAK_BREAKOUT:
+                mMenuManager.showMenu(R.menu.global_context_menu);
+                break;
+            case ACTION_LOCAL_BREAKOUT:
+                mMenuManager.showMenu(R.menu.local_context_menu);
+                break;
+            case ACTION_PREVIOUS_GRANULARITY: {
+                boolean result = mCursorController.previousGranularity();
+                if (!result) mFeedbackController.playAuditory(R.raw.complete);
+                break;
+            }
+            case ACTION_NEXT_GRANULARITY: {
+                boolean result = mCursorController.nextGranularity();
+                if (!result) mFeedbackController.playAuditory(R.raw.complete);
+                break;
+            }
+            case ACTION_READ_FROM_TOP:
+                mFullScreenReadController.startReadingFromBeginning();
+                break;
+            case ACTION_READ_FROM_CURRENT:
+                mFullScreenReadController.startReadingFromNextNode();
+                break;
+            case ACTION_PRINT_NODE_TREE:
+                TreeDebug.logNodeTree(
+                        AccessibilityServiceCompatUtils.getRootInActiveWindow(mService));
+                break;
+            default:
+                // Unassigned or unknown, do nothing.
+                break;
         }
 
         Intent intent = new Intent(GestureActionMonitor.ACTION_GESTURE_ACTION_PERFORMED);
@@ -351,7 +472,14 @@ public class GestureControllerApp implements GestureController {
 
     @Override
     public void onGesture(int gestureId) {
-        String action = actionFromGesture(gestureId);
-        performAction(action);
+        ensureTables();
+        if ((gestureId < 0) || (gestureId > MAX_GESTURE_ID)
+                || (mGestureActionValues[gestureId] == null)) {
+            performAction(ACTION_UNASSIGNED,
+                    mService.getString(R.string.shortcut_value_unassigned));
+            return;
+        }
+
+        performAction(mGestureActions[gestureId], mGestureActionValues[gestureId]);
     }
 }
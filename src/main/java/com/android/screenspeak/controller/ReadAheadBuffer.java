@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.controller;
+
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+
+import com.android.utils.AccessibilityNodeInfoUtils;
+import com.android.utils.NodeFilter;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+
+/**
+ * Nodes that follow an anchor node in traversal order, computed ahead of time
+ * so that continuous reading can move to the next node without searching the
+ * hierarchy again. The buffer only hands out a node if accessibility focus is
+ * still on the anchor, which is the last node handed out. The buffer owns the
+ * nodes added to it and recycles them when they are dropped.
+ */
+/* package */ class ReadAheadBuffer {
+    private final int mCapacity;
+
+    private final ArrayDeque<AccessibilityNodeInfoCompat> mNodes;
+
+    /** The node that the buffered nodes follow, or {@code null} if empty. */
+    private AccessibilityNodeInfoCompat mAnchor;
+
+    /**
+     * The deepest node containing the anchor and the last buffered node, or
+     * {@code null} if it hasn't been needed since nodes were last added.
+     */
+    private AccessibilityNodeInfoCompat mCommonAncestor;
+
+    public ReadAheadBuffer(int capacity) {
+        mCapacity = capacity;
+        mNodes = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Drops all buffered nodes and starts buffering nodes after a new anchor.
+     *
+     * @param anchor The node that the buffered nodes will follow. The buffer
+     *            keeps its own copy.
+     */
+    public void reset(AccessibilityNodeInfoCompat anchor) {
+        clear();
+        mAnchor = AccessibilityNodeInfoCompat.obtain(anchor);
+    }
+
+    /**
+     * Adds the next node in traversal order.
+     *
+     * @param node The node, which the buffer takes ownership of.
+     * @return {@code false} if there was no anchor or the buffer was full, in
+     *         which case the node was recycled.
+     */
+    public boolean add(AccessibilityNodeInfoCompat node) {
+        if ((mAnchor == null) || isFull()) {
+            node.recycle();
+            return false;
+        }
+
+        mNodes.addLast(node);
+        clearCommonAncestor();
+        return true;
+    }
+
+    /**
+     * Returns the node that follows the cursor, if the cursor is still on the
+     * anchor. The returned node becomes the new anchor. If the cursor has
+     * moved elsewhere, all buffered nodes are dropped.
+     *
+     * @param cursor The node with accessibility focus.
+     * @return The next node, which the caller must recycle, or {@code null}
+     *         if there is none.
+     */
+    public AccessibilityNodeInfoCompat poll(AccessibilityNodeInfoCompat cursor) {
+        if (mNodes.isEmpty()) {
+            return null;
+        }
+
+        if ((cursor == null) || !cursor.equals(mAnchor)) {
+            clear();
+            return null;
+        }
+
+        final AccessibilityNodeInfoCompat next = mNodes.removeFirst();
+        mAnchor.recycle();
+        mAnchor = AccessibilityNodeInfoCompat.obtain(next);
+        return next;
+    }
+
+    /**
+     * @return The anchor node, owned by the buffer, or {@code null} if the
+     *         buffer hasn't been reset since it was last cleared.
+     */
+    public AccessibilityNodeInfoCompat getAnchor() {
+        return mAnchor;
+    }
+
+    /**
+     * Determines whether a change to the subtree of a node may change the
+     * buffered nodes. That is the case if the subtree overlaps the smallest
+     * subtree containing the anchor and the buffered nodes, so changes to
+     * other parts of the window keep the buffer.
+     *
+     * @param changedNode The root of the changed subtree.
+     * @return {@code true} if the buffered nodes should be dropped.
+     */
+    public boolean isAffectedBy(AccessibilityNodeInfoCompat changedNode) {
+        if (mNodes.isEmpty()) {
+            return false;
+        }
+
+        if (mCommonAncestor == null) {
+            mCommonAncestor = getCommonAncestor(mAnchor, mNodes.getLast());
+            if (mCommonAncestor == null) {
+                return true;
+            }
+        }
+
+        return changedNode.equals(mCommonAncestor)
+                || AccessibilityNodeInfoUtils.hasAncestor(changedNode, mCommonAncestor)
+                || AccessibilityNodeInfoUtils.hasAncestor(mCommonAncestor, changedNode);
+    }
+
+    public boolean isEmpty() {
+        return mNodes.isEmpty();
+    }
+
+    public boolean isFull() {
+        return mNodes.size() >= mCapacity;
+    }
+
+    public int size() {
+        return mNodes.size();
+    }
+
+    /**
+     * Drops and recycles all buffered nodes and the anchor.
+     */
+    public void clear() {
+        while (!mNodes.isEmpty()) {
+            mNodes.removeFirst().recycle();
+        }
+
+        if (mAnchor != null) {
+            mAnchor.recycle();
+            mAnchor = null;
+        }
+
+        clearCommonAncestor();
+    }
+
+    private void clearCommonAncestor() {
+        if (mCommonAncestor != null) {
+            mCommonAncestor.recycle();
+            mCommonAncestor = null;
+        }
+    }
+
+    /**
+     * @return The deepest node that is, or is an ancestor of, both nodes,
+     *         which the caller must recycle, or {@code null} if there is none.
+     */
+    private static AccessibilityNodeInfoCompat getCommonAncestor(
+            AccessibilityNodeInfoCompat first, AccessibilityNodeInfoCompat second) {
+        final HashSet<AccessibilityNodeInfoCompat> firstAncestors = new HashSet<>();
+        try {
+            AccessibilityNodeInfoCompat ancestor = AccessibilityNodeInfoCompat.obtain(first);
+            while ((ancestor != null) && firstAncestors.add(ancestor)) {
+                ancestor = ancestor.getParent();
+            }
+
+            AccessibilityNodeInfoUtils.recycleNodes(ancestor);
+
+            return AccessibilityNodeInfoUtils.getSelfOrMatchingAncestor(second, new NodeFilter() {
+                @Override
+                public boolean accept(AccessibilityNodeInfoCompat node) {
+                    return firstAncestors.contains(node);
+                }
+            });
+        } finally {
+            AccessibilityNodeInfoUtils.recycleNodes(firstAncestors);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
+import com.android.utils.AccessibilityEventListener;
+import com.android.utils.LogUtils;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Delivers {@link AccessibilityEvent}s to the {@link AccessibilityEventListener}s
+ * registered for their type. Each listener is registered with a mask of event
+ * types and is kept in a separate array for every type it accepts, so
+ * dispatching an event only visits the listeners that want it. Listeners for
+ * the same type are called in the order they were added.
+ * <p>
+ * The arrays are rebuilt when listeners are added or removed, so a listener
+ * may remove itself from inside its callback without affecting the dispatch
+ * in progress.
+ */
+public class AccessibilityEventDispatcher {
+    /** Mask accepting every event type. */
+    public static final int MASK_ALL_EVENT_TYPES = AccessibilityEvent.TYPES_ALL_MASK;
+
+    /** Number of distinct event type bits. */
+    private static final int EVENT_TYPE_COUNT = Integer.SIZE;
+
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    /** All registrations in the order they were added. */
+    private final ArrayList<Registration> mRegistrations = new ArrayList<>();
+
+    /** Registrations for each event type, indexed by the position of its bit. */
+    private final Registration[][] mRegistrationsByType = new Registration[EVENT_TYPE_COUNT][];
+
+    public AccessibilityEventDispatcher() {
+        rebuildTables();
+    }
+
+    /**
+     * Adds a listener for events of the given types.
+     *
+     * @param listener The listener to add.
+     * @param eventTypes A mask of event types, or {@link #MASK_ALL_EVENT_TYPES}.
+     */
+    public void addListener(AccessibilityEventListener listener, int eventTypes) {
+        mRegistrations.add(new Registration(listener, eventTypes));
+        rebuildTables();
+    }
+
+    /**
+     * Removes every registration of a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(AccessibilityEventListener listener) {
+        boolean removed = false;
+        for (int i = mRegistrations.size() - 1; i >= 0; i--) {
+            if (mRegistrations.get(i).mListener == listener) {
+                mRegistrations.remove(i);
+                removed = true;
+            }
+        }
+
+        if (removed) {
+            rebuildTables();
+        }
+    }
+
+    /**
+     * Passes an event to the listeners registered for its type.
+     *
+     * @param event The event to dispatch.
+     */
+    public void dispatch(AccessibilityEvent event) {
+        final int eventType = event.getEventType();
+        if (eventType == 0) {
+            return;
+        }
+
+        final Registration[] registrations =
+                mRegistrationsByType[Integer.numberOfTrailingZeros(eventType)];
+        if (registrations.length == 0) {
+            return;
+        }
+
+        // Only time listeners when debugging, to keep dispatch cheap otherwise.
+        final boolean recordTimes = (LogUtils.LOG_LEVEL <= Log.DEBUG);
+        for (Registration registration : registrations) {
+            registration.mDispatchCount++;
+            if (!recordTimes) {
+                registration.mListener.onAccessibilityEvent(event);
+                continue;
+            }
+
+            final long startTime = System.nanoTime();
+            registration.mListener.onAccessibilityEvent(event);
+            registration.recordTime(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Prints how many events each listener has received and how long it spent
+     * handling them. Times are only recorded while the log level is
+     * {@link Log#DEBUG} or lower.
+     *
+     * @param writer The writer to print to.
+     */
+    public void dump(PrintWriter writer) {
+        writer.println("Accessibility event listeners:");
+        for (Registration registration : mRegistrations) {
+            writer.format("  %s types=0x%08x events=%d total=%dus max=%dus%n",
+                    registration.mListener.getClass().getName(), registration.mEventTypes,
+                    registration.mDispatchCount,
+                    registration.mTotalNanos / 1000, registration.mMaxNanos / 1000);
+        }
+    }
+
+    /**
+     * Clears the counters printed by {@link #dump}.
+     */
+    public void resetCounters() {
+        for (Registration registration : mRegistrations) {
+            registration.mDispatchCount = 0;
+            registration.mTotalNanos = 0;
+            registration.mMaxNanos = 0;
+        }
+    }
+
+    private void rebuildTables() {
+        final ArrayList<Registration> forType = new ArrayList<>();
+        for (int i = 0; i < EVENT_TYPE_COUNT; i++) {
+            final int eventType = 1 << i;
+            forType.clear();
+            for (Registration registration : mRegistrations) {
+                if ((registration.mEventTypes & eventType) != 0) {
+                    forType.add(registration);
+                }
+            }
+
+            mRegistrationsByType[i] = forType.isEmpty()
+                    ? NO_REGISTRATIONS : forType.toArray(new Registration[forType.size()]);
+        }
+    }
+
+    private static class Registration {
+        final AccessibilityEventListener mListener;
+        final int mEventTypes;
+
+        int mDispatchCount;
+        long mTotalNanos;
+        long mMaxNanos;
+
+        Registration(AccessibilityEventListener listener, int eventTypes) {
+            mListener = listener;
+            mEventTypes = eventTypes;
+        }
+
+        void recordTime(long nanos) {
+            mTotalNanos += nanos;
+            if (nanos > mMaxNanos) {
+                mMaxNanos = nanos;
+            }
+        }
+    }
+}
@@ -24,14 +24,13 @@ import android.support.v4.view.accessibility.AccessibilityEventCompat;
 import android.support.v4.view.accessibility.AccessibilityManagerCompat;
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.support.v4.view.accessibility.AccessibilityRecordCompat;
-import android.telephony.TelephonyManager;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityManager;
-import android.view.accessibility.AccessibilityRecord;
 import android.widget.EditText;
 import com.android.screenspeak.CallStateMonitor;
 import com.android.screenspeak.RingerModeAndScreenMonitor;
+import com.android.screenspeak.contextmenu.MenuManager;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 import com.android.screenspeak.Utterance;
 import com.android.utils.AccessibilityEventListener;
@@ -39,9 +38,7 @@ import com.android.utils.AccessibilityEventUtils;
 import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.LogUtils;
 
-import java.lang.reflect.Method;
-import java.util.LinkedList;
-import java.util.List;
+import java.io.PrintWriter;
 
 public class AccessibilityEventProcessor {
     private static final String LOGTAG = "A11yEventProcessor";
@@ -83,7 +80,12 @@ public class AccessibilityEventProcessor {
     private ProcessorEventQueue mProcessorEventQueue;
     private RingerModeAndScreenMonitor mRingerModeAndScreenMonitor;
 
-    private static Method sGetSourceNodeIdMethod;
+    /**
+     * Device state used to decide whether to drop events. Replaced, never
+     * changed, when a monitor reports a change, so it can be read without
+     * locking.
+     */
+    private volatile EventGatingContext mGatingContext;
 
     private long mLastClearedSourceId = -1;
     private int mLastClearedWindowId = -1;
@@ -94,21 +96,12 @@ public class AccessibilityEventProcessor {
     // If the same node is cleared and set inside this time we ignore the events
     private static final long CLEAR_SET_A11Y_FOCUS_WINDOW = 1000;
 
-    static {
-        try {
-            sGetSourceNodeIdMethod = AccessibilityRecord.class.getDeclaredMethod("getSourceNodeId");
-            sGetSourceNodeIdMethod.setAccessible(true);
-        } catch (NoSuchMethodException e) {
-            Log.d(LOGTAG, "Error setting up fields: " + e.toString());
-            e.printStackTrace();
-        }
-    }
-
     /**
-     * List of passive event processors. All processors in the list are sent the
-     * event in the order they were added.
+     * Passive event processors. Each processor is sent the events it registered
+     * for, in the order the processors were added.
      */
-    private List<AccessibilityEventListener> mAccessibilityEventListeners = new LinkedList<>();
+    private final AccessibilityEventDispatcher mEventDispatcher =
+            new AccessibilityEventDispatcher();
 
     private boolean mIsUserTouchExploring;
     private long mLastWindowStateChanged;
@@ -121,6 +114,8 @@ public class AccessibilityEventProcessor {
                 (AccessibilityManager) service.getSystemService(Context.ACCESSIBILITY_SERVICE);
 
         mService = service;
+        mGatingContext =
+                EventGatingContext.fromConfiguration(service.getResources().getConfiguration());
     }
 
     public void setSpeakCallerId(boolean speak) {
@@ -132,12 +127,47 @@ public class AccessibilityEventProcessor {
     }
 
     public void setCallStateMonitor(CallStateMonitor callStateMonitor) {
+        if (mCallStateMonitor != null) {
+            mCallStateMonitor.removeOnCallStateChangedListener(mCallStateListener);
+        }
+
         mCallStateMonitor = callStateMonitor;
+        if (callStateMonitor != null) {
+            callStateMonitor.addOnCallStateChangedListener(mCallStateListener);
+            mGatingContext = mGatingContext.withCallState(
+                    callStateMonitor.getCurrentCallState());
+        }
     }
 
     public void setRingerModeAndScreenMonitor(
             RingerModeAndScreenMonitor ringerModeAndScreenMonitor) {
+        if (mRingerModeAndScreenMonitor != null) {
+            mRingerModeAndScreenMonitor.removeOnScreenStateChangedListener(mScreenStateListener);
+        }
+
         mRingerModeAndScreenMonitor = ringerModeAndScreenMonitor;
+        if (ringerModeAndScreenMonitor != null) {
+            ringerModeAndScreenMonitor.addOnScreenStateChangedListener(mScreenStateListener);
+            mGatingContext = mGatingContext.withScreenOn(ringerModeAndScreenMonitor.isScreenOn());
+        }
+    }
+
+    public void setMenuManager(MenuManager menuManager) {
+        menuManager.setOnMenuShowingChangedListener(mMenuShowingListener);
+        mGatingContext = mGatingContext.withMenuShowing(menuManager.isMenuShowing());
+    }
+
+    /**
+     * Called by {@link ScreenSpeakService} when the configuration changes.
+     *
+     * @param newConfig The new configuration.
+     */
+    public void onConfigurationChanged(Configuration newConfig) {
+        mGatingContext = mGatingContext.withConfiguration(newConfig);
+    }
+
+    public EventGatingContext getGatingContext() {
+        return mGatingContext;
     }
 
     public void setProcessorEventQueue(ProcessorEventQueue processorEventQueue) {
@@ -153,21 +183,18 @@ public class AccessibilityEventProcessor {
         // to the user. Remove this when chromium is fixed.
         int eventType = event.getEventType();
         if (eventType == AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED) {
-            if (sGetSourceNodeIdMethod != null) {
-                try {
-                    mLastClearedSourceId = (long)sGetSourceNodeIdMethod.invoke(event);
-                    mLastClearedWindowId = event.getWindowId();
-                    mLastClearA11yFocus = System.currentTimeMillis();
-                    if (mLastClearedSourceId != mLastPronouncedSourceId ||
-                            mLastClearedWindowId != mLastPronouncedWindowId) {
-                        // something strange. not accessibility focused node sends clear focus event
-                        // b/22108305
-                        mLastClearedSourceId = -1;
-                        mLastClearedWindowId = - 1;
-                        mLastClearA11yFocus = 0;
-                    }
-                } catch (Exception e) {
-                    Log.d(LOGTAG, "Exception accessing field: " + e.toString());
+            final long sourceId = AccessibilityNodeInfoUtils.getSourceNodeId(event);
+            if (sourceId != AccessibilityNodeInfoUtils.UNKNOWN_SOURCE_NODE_ID) {
+                mLastClearedSourceId = sourceId;
+                mLastClearedWindowId = event.getWindowId();
+                mLastClearA11yFocus = System.currentTimeMillis();
+                if (mLastClearedSourceId != mLastPronouncedSourceId ||
+                        mLastClearedWindowId != mLastPronouncedWindowId) {
+                    // something strange. not accessibility focused node sends clear focus event
+                    // b/22108305
+                    mLastClearedSourceId = -1;
+                    mLastClearedWindowId = - 1;
+                    mLastClearA11yFocus = 0;
                 }
             }
 
@@ -176,18 +203,14 @@ public class AccessibilityEventProcessor {
 
         if (eventType == AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED) {
             if (System.currentTimeMillis() - mLastClearA11yFocus < CLEAR_SET_A11Y_FOCUS_WINDOW) {
-                if (sGetSourceNodeIdMethod != null) {
-                    try {
-                        long sourceId = (long)sGetSourceNodeIdMethod.invoke(event);
-                        int windowId = event.getWindowId();
-                        if (sourceId == mLastClearedSourceId && windowId == mLastClearedWindowId) {
-                            return;
-                        }
-                        mLastPronouncedSourceId = sourceId;
-                        mLastPronouncedWindowId = windowId;
-                    } catch (Exception e) {
-                        Log.d(LOGTAG, "Exception accessing field: " + e.toString());
+                long sourceId = AccessibilityNodeInfoUtils.getSourceNodeId(event);
+                if (sourceId != AccessibilityNodeInfoUtils.UNKNOWN_SOURCE_NODE_ID) {
+                    int windowId = event.getWindowId();
+                    if (sourceId == mLastClearedSourceId && windowId == mLastClearedWindowId) {
+                        return;
                     }
+                    mLastPronouncedSourceId = sourceId;
+                    mLastPronouncedWindowId = windowId;
                 }
             }
         }
@@ -225,6 +248,8 @@ public class AccessibilityEventProcessor {
             return true;
         }
 
+        final EventGatingContext gatingContext = mGatingContext;
+
         // If touch exploration is enabled, drop automatically generated events
         // that are sent immediately after a window state change... unless we
         // decide to keep the event.
@@ -243,15 +268,10 @@ public class AccessibilityEventProcessor {
                 (event.getEventType() == AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED)
                         && (event.getParcelableData() != null);
 
-        final boolean isPhoneActive = (mCallStateMonitor != null)
-                && (mCallStateMonitor.getCurrentCallState() != TelephonyManager.CALL_STATE_IDLE);
-        final boolean shouldSpeakCallerId = (mSpeakCallerId && (mCallStateMonitor != null)
-                && (mCallStateMonitor.getCurrentCallState()
-                == TelephonyManager.CALL_STATE_RINGING));
+        final boolean isPhoneActive = gatingContext.isPhoneActive();
+        final boolean shouldSpeakCallerId = mSpeakCallerId && gatingContext.isPhoneRinging();
 
-        if (mRingerModeAndScreenMonitor != null &&
-                !mRingerModeAndScreenMonitor.isScreenOn() &&
-                !shouldSpeakCallerId) {
+        if (!gatingContext.isScreenOn() && !shouldSpeakCallerId) {
             if (!mSpeakWhenScreenOff) {
                 // If the user doesn't allow speech when the screen is
                 // off, drop the event immediately.
@@ -271,7 +291,7 @@ public class AccessibilityEventProcessor {
 
         final boolean canInterruptRadialMenu = AccessibilityEventUtils.eventMatchesAnyType(
                 event, MASK_EVENT_TYPES_INTERRUPT_RADIAL_MENU);
-        final boolean silencedByRadialMenu = (mService.getMenuManager().isMenuShowing()
+        final boolean silencedByRadialMenu = (gatingContext.isMenuShowing()
                 && !canInterruptRadialMenu);
 
         // Don't speak events that cannot interrupt the radial menu, if showing
@@ -290,13 +310,11 @@ public class AccessibilityEventProcessor {
             return true;
         }
 
-        final int touchscreenState = mService.getResources().getConfiguration().touchscreen;
         final boolean isTouchInteractionStateChange = AccessibilityEventUtils.eventMatchesAnyType(
                 event, MASK_EVENT_TYPES_TOUCH_STATE_CHANGES);
 
         // Drop all events related to touch interaction state on devices that don't support touch.
-        return (touchscreenState == Configuration.TOUCHSCREEN_NOTOUCH)
-                && isTouchInteractionStateChange;
+        return gatingContext.isNoTouch() && isTouchInteractionStateChange;
     }
 
     /**
@@ -344,30 +362,72 @@ public class AccessibilityEventProcessor {
     }
 
     /**
-     * Passes the event to all registered {@link AccessibilityEventListener}s in the order
-     * they were added.
+     * Passes the event to the {@link AccessibilityEventListener}s registered for
+     * its type, in the order they were added.
      *
      * @param event The current event.
      */
     private void processEvent(AccessibilityEvent event) {
-        for (AccessibilityEventListener eventProcessor : mAccessibilityEventListeners) {
-            eventProcessor.onAccessibilityEvent(event);
-        }
+        mEventDispatcher.dispatch(event);
     }
 
+    private final CallStateMonitor.OnCallStateChangedListener mCallStateListener =
+            new CallStateMonitor.OnCallStateChangedListener() {
+        @Override
+        public void onCallStateChanged(int newCallState) {
+            mGatingContext = mGatingContext.withCallState(newCallState);
+        }
+    };
+
+    private final RingerModeAndScreenMonitor.OnScreenStateChangedListener mScreenStateListener =
+            new RingerModeAndScreenMonitor.OnScreenStateChangedListener() {
+        @Override
+        public void onScreenStateChanged(boolean isScreenOn) {
+            mGatingContext = mGatingContext.withScreenOn(isScreenOn);
+        }
+    };
+
+    private final MenuManager.OnMenuShowingChangedListener mMenuShowingListener =
+            new MenuManager.OnMenuShowingChangedListener() {
+        @Override
+        public void onMenuShowingChanged(boolean isMenuShowing) {
+            mGatingContext = mGatingContext.withMenuShowing(isMenuShowing);
+        }
+    };
+
     public void addAccessibilityEventListener(AccessibilityEventListener listener) {
-        mAccessibilityEventListeners.add(listener);
+        mEventDispatcher.addListener(listener, AccessibilityEventDispatcher.MASK_ALL_EVENT_TYPES);
+    }
+
+    /**
+     * Adds a listener that is only sent events of the given types.
+     *
+     * @param listener The listener to add.
+     * @param eventTypes A mask of event types from {@link AccessibilityEvent}.
+     */
+    public void addAccessibilityEventListener(AccessibilityEventListener listener,
+            int eventTypes) {
+        mEventDispatcher.addListener(listener, eventTypes);
     }
 
     public void postRemoveAccessibilityEventListener(final AccessibilityEventListener listener) {
         new Handler().post(new Runnable() {
             @Override
             public void run() {
-                mAccessibilityEventListeners.remove(listener);
+                mEventDispatcher.removeListener(listener);
             }
         });
     }
 
+    /**
+     * Prints how many events each listener received and how long it took.
+     *
+     * @param writer The writer to print to.
+     */
+    public void dump(PrintWriter writer) {
+        mEventDispatcher.dump(writer);
+    }
+
     public void setTestingListener(ScreenSpeakListener testingListener) {
         mTestingListener = testingListener;
 
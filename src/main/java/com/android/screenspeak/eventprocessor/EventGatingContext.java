@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import android.content.res.Configuration;
+import android.telephony.TelephonyManager;
+
+/**
+ * Immutable snapshot of the device state that {@link AccessibilityEventProcessor}
+ * consults before dispatching an event. A new snapshot is made whenever one of
+ * the monitors reports a change, so deciding whether to drop an event only
+ * reads fields.
+ */
+public final class EventGatingContext {
+    private final int mOrientation;
+    private final int mTouchscreen;
+    private final int mHardKeyboardHidden;
+    private final int mCallState;
+    private final boolean mIsScreenOn;
+    private final boolean mIsMenuShowing;
+
+    private EventGatingContext(int orientation, int touchscreen, int hardKeyboardHidden,
+            int callState, boolean isScreenOn, boolean isMenuShowing) {
+        mOrientation = orientation;
+        mTouchscreen = touchscreen;
+        mHardKeyboardHidden = hardKeyboardHidden;
+        mCallState = callState;
+        mIsScreenOn = isScreenOn;
+        mIsMenuShowing = isMenuShowing;
+    }
+
+    /**
+     * Returns a context for the given configuration, with the phone idle, the
+     * screen on and no menu showing.
+     */
+    public static EventGatingContext fromConfiguration(Configuration config) {
+        return new EventGatingContext(config.orientation, config.touchscreen,
+                config.hardKeyboardHidden, TelephonyManager.CALL_STATE_IDLE, true, false);
+    }
+
+    public EventGatingContext withConfiguration(Configuration config) {
+        if ((config.orientation == mOrientation) && (config.touchscreen == mTouchscreen)
+                && (config.hardKeyboardHidden == mHardKeyboardHidden)) {
+            return this;
+        }
+
+        return new EventGatingContext(config.orientation, config.touchscreen,
+                config.hardKeyboardHidden, mCallState, mIsScreenOn, mIsMenuShowing);
+    }
+
+    public EventGatingContext withCallState(int callState) {
+        if (callState == mCallState) {
+            return this;
+        }
+
+        return new EventGatingContext(mOrientation, mTouchscreen, mHardKeyboardHidden,
+                callState, mIsScreenOn, mIsMenuShowing);
+    }
+
+    public EventGatingContext withScreenOn(boolean isScreenOn) {
+        if (isScreenOn == mIsScreenOn) {
+            return this;
+        }
+
+        return new EventGatingContext(mOrientation, mTouchscreen, mHardKeyboardHidden,
+                mCallState, isScreenOn, mIsMenuShowing);
+    }
+
+    public EventGatingContext withMenuShowing(boolean isMenuShowing) {
+        if (isMenuShowing == mIsMenuShowing) {
+            return this;
+        }
+
+        return new EventGatingContext(mOrientation, mTouchscreen, mHardKeyboardHidden,
+                mCallState, mIsScreenOn, isMenuShowing);
+    }
+
+    /**
+     * @return One of the orientation constants from {@link Configuration}.
+     */
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * @return Whether the device has no touch screen.
+     */
+    public boolean isNoTouch() {
+        return mTouchscreen == Configuration.TOUCHSCREEN_NOTOUCH;
+    }
+
+    /**
+     * @return Whether a hardware keyboard is hidden or absent.
+     */
+    public boolean isHardKeyboardHidden() {
+        return mHardKeyboardHidden != Configuration.HARDKEYBOARDHIDDEN_NO;
+    }
+
+    /**
+     * @return One of the call state constants from {@link TelephonyManager}.
+     */
+    public int getCallState() {
+        return mCallState;
+    }
+
+    public boolean isPhoneActive() {
+        return mCallState != TelephonyManager.CALL_STATE_IDLE;
+    }
+
+    public boolean isPhoneRinging() {
+        return mCallState == TelephonyManager.CALL_STATE_RINGING;
+    }
+
+    public boolean isScreenOn() {
+        return mIsScreenOn;
+    }
+
+    public boolean isMenuShowing() {
+        return mIsMenuShowing;
+    }
+}
@@ -16,18 +16,26 @@
 
 package com.android.screenspeak.eventprocessor;
 
-import android.os.SystemClock;
-import android.util.SparseArray;
+import com.android.utils.Clock;
+
+import java.util.Arrays;
 
 /**
- * Single instance that keeps info about events and their time
+ * Single instance that keeps info about events and their time. Events are
+ * dense indices into a table of the times they were last added, and the
+ * table also counts how often each event suppressed feedback, for debugging.
  */
 public class EventState {
-
     // When moving with granularity focus could be moved to next node automatically. In that case
     // ScreenSpeak will also move with granularity inside newly focused node and pronounce part of
     // the content. There is no need to pronounce the whole content of the node in that case
-    public static int EVENT_SKIP_FOCUS_PROCESSING_AFTER_GRANULARITY_MOVE = 1;
+    public static final int EVENT_SKIP_FOCUS_PROCESSING_AFTER_GRANULARITY_MOVE = 0;
+
+    /** Number of events; each event must be less than this. */
+    /* package */ static final int EVENT_COUNT = 1;
+
+    /** Time stored for events that haven't been added. */
+    private static final long NO_TIME = -1;
 
     private static EventState sInstance = new EventState();
 
@@ -35,26 +43,54 @@ public class EventState {
         return sInstance;
     }
 
-    private SparseArray mEvents = new SparseArray();
+    private final Clock mClock;
+
+    /* Time each event was last added, or NO_TIME. */
+    private final long[] mEventTimes = new long[EVENT_COUNT];
+
+    /* Number of times each event was found within its timeout. */
+    private final int[] mSuppressionCounts = new int[EVENT_COUNT];
+
+    public EventState() {
+        this(Clock.SYSTEM);
+    }
+
+    /* package */ EventState(Clock clock) {
+        mClock = clock;
+        Arrays.fill(mEventTimes, NO_TIME);
+    }
 
     public void addEvent(int event) {
-        mEvents.put(event, SystemClock.uptimeMillis());
+        mEventTimes[event] = mClock.uptimeMillis();
     }
 
     public void clearEvent(int event) {
-        mEvents.remove(event);
+        mEventTimes[event] = NO_TIME;
     }
 
     public boolean hasEvent(int event, long timeout) {
-        Long lastEventTime = (Long) mEvents.get(event);
-        if (lastEventTime != null) {
-            return SystemClock.uptimeMillis() - lastEventTime < timeout;
+        final long lastEventTime = mEventTimes[event];
+        if (lastEventTime == NO_TIME) {
+            return false;
+        }
+
+        if (mClock.uptimeMillis() - lastEventTime < timeout) {
+            mSuppressionCounts[event]++;
+            return true;
         }
 
         return false;
     }
 
+    /**
+     * Returns how many times each event was found within its timeout, indexed
+     * by event. The returned array is a copy.
+     */
+    public int[] getSuppressionCounts() {
+        return Arrays.copyOf(mSuppressionCounts, EVENT_COUNT);
+    }
+
     public void clear() {
-        mEvents.clear();
+        Arrays.fill(mEventTimes, NO_TIME);
     }
 }
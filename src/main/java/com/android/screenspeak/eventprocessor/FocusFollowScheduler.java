@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import android.util.Log;
+import com.android.utils.Clock;
+import com.android.utils.LogUtils;
+
+/**
+ * Merges requests to check focus after the screen changes into a single
+ * delayed task. Every request starts a new generation, so only the task posted
+ * for the latest request does any work.
+ * <p>
+ * The delay follows how long the screen takes to settle. Requests that arrive
+ * close together are part of one change, so the gaps between them are
+ * averaged. A long quiet gap means the screen settled quickly, so it pulls the
+ * average down. A pending task never waits longer than {@link #MAX_DELAY}
+ * after its first request.
+ */
+/* package */ class FocusFollowScheduler {
+    /** Focus should be checked after window content changed. */
+    public static final int REQUEST_CONTENT_CHANGED = 1;
+
+    /** Focus should follow a scrolled view. */
+    public static final int REQUEST_SCROLL = 1 << 1;
+
+    /** Shortest delay before checking focus. */
+    /* package */ static final long MIN_DELAY = 50;
+
+    /** Longest delay before checking focus, measured from the first request. */
+    /* package */ static final long MAX_DELAY = 500;
+
+    private final Clock mClock;
+
+    /** Generation of the latest request or cancellation. */
+    private int mGeneration;
+
+    /** Requests merged into the pending task, or 0 if there isn't one. */
+    private int mPendingRequests;
+
+    private long mFirstRequestTime;
+    private long mLastRequestTime = -1;
+
+    /** Average time between requests belonging to the same change. */
+    private long mSettleTime = MIN_DELAY;
+
+    public FocusFollowScheduler() {
+        this(Clock.SYSTEM);
+    }
+
+    /* package */ FocusFollowScheduler(Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Merges requests into the pending task.
+     *
+     * @param requests A mask of {@code REQUEST_*} values.
+     * @return The generation the caller should post its task with.
+     */
+    public int request(int requests) {
+        final long now = mClock.uptimeMillis();
+        if (mLastRequestTime >= 0) {
+            final long gap = now - mLastRequestTime;
+            final long sample = (gap < MAX_DELAY) ? gap : MIN_DELAY;
+            mSettleTime = (3 * mSettleTime + sample) / 4;
+        }
+
+        if (mPendingRequests == 0) {
+            mFirstRequestTime = now;
+        }
+
+        mLastRequestTime = now;
+        mPendingRequests |= requests;
+        mGeneration++;
+
+        if (LogUtils.LOG_LEVEL <= Log.VERBOSE) {
+            LogUtils.log(this, Log.VERBOSE, "Focus request %d merged into %d, generation %d",
+                    requests, mPendingRequests, mGeneration);
+        }
+
+        return mGeneration;
+    }
+
+    /**
+     * Returns how long to wait before running the pending task.
+     */
+    public long getDelay() {
+        final long settleDelay = Math.max(MIN_DELAY, Math.min(MAX_DELAY, mSettleTime * 3 / 2));
+        final long remaining = mFirstRequestTime + MAX_DELAY - mClock.uptimeMillis();
+        return Math.max(0, Math.min(settleDelay, remaining));
+    }
+
+    /**
+     * Takes the requests for a task that is about to run.
+     *
+     * @param generation The generation the task was posted with.
+     * @return The merged requests, or 0 if the task was superseded or
+     *         cancelled.
+     */
+    public int takeRequests(int generation) {
+        if ((generation != mGeneration) || (mPendingRequests == 0)) {
+            if (LogUtils.LOG_LEVEL <= Log.VERBOSE) {
+                LogUtils.log(this, Log.VERBOSE, "Dropping stale focus task %d, generation %d",
+                        generation, mGeneration);
+            }
+
+            return 0;
+        }
+
+        final int requests = mPendingRequests;
+        mPendingRequests = 0;
+
+        if (LogUtils.LOG_LEVEL <= Log.VERBOSE) {
+            LogUtils.log(this, Log.VERBOSE, "Running focus requests %d after %d ms",
+                    requests, mClock.uptimeMillis() - mFirstRequestTime);
+        }
+
+        return requests;
+    }
+
+    /**
+     * Drops the pending task, for example because focus was placed directly.
+     */
+    public void cancel() {
+        if (mPendingRequests != 0) {
+            if (LogUtils.LOG_LEVEL <= Log.VERBOSE) {
+                LogUtils.log(this, Log.VERBOSE, "Cancelling focus requests %d",
+                        mPendingRequests);
+            }
+
+            mPendingRequests = 0;
+        }
+
+        mGeneration++;
+    }
+
+    public boolean hasPendingRequests() {
+        return mPendingRequests != 0;
+    }
+
+    /**
+     * Returns the current estimate of how long the screen takes to settle.
+     */
+    public long getSettleTime() {
+        return mSettleTime;
+    }
+}
@@ -43,6 +43,7 @@ import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.LogUtils;
 import com.android.utils.NodeFilter;
 import com.android.utils.PerformActionUtils;
+import com.android.utils.SpeakingNodeCache;
 import com.android.utils.WeakReferenceHandler;
 import com.android.utils.WebInterfaceUtils;
 import com.android.utils.compat.accessibilityservice.AccessibilityServiceCompatUtils;
@@ -86,6 +87,14 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
     private final ArrayDeque<Pair<AccessibilityRecordCompat, Integer>>
         mCachedPotentiallyFocusableRecordQueue = new ArrayDeque<>(MAX_CACHED_FOCUSED_RECORD_QUEUE);
 
+    /** Merges delayed focus checks after scrolling and content changes. */
+    private final FocusFollowScheduler mFocusFollowScheduler = new FocusFollowScheduler();
+
+    /** The scroll event waiting for a {@link FocusFollowScheduler#REQUEST_SCROLL}. */
+    private AccessibilityRecordCompat mPendingScrollRecord;
+    private int mPendingScrollDirection = MOVING_UNDEFINED_DIRECTION;
+    private boolean mPendingScrollWasAction;
+
     private int mLastScrollAction = 0;
     private int mLastScrollFromIndex = -1;
     private int mLastScrollToIndex = -1;
@@ -263,18 +272,18 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
     }
 
     private void handleWindowContentChanged() {
-        mHandler.followContentChangedDelayed();
+        mHandler.followFocusDelayed(
+                mFocusFollowScheduler.request(FocusFollowScheduler.REQUEST_CONTENT_CHANGED),
+                mFocusFollowScheduler.getDelay());
 
         tryFocusCachedRecord();
     }
 
     private void handleViewScrolled(AccessibilityEvent event, AccessibilityRecordCompat record) {
-        AccessibilityNodeInfoCompat source = null;
-
         int movingDirection;
         boolean wasScrollAction = false;
         if (mActionScrolledNode != null) {
-            source = record.getSource();
+            final AccessibilityNodeInfoCompat source = record.getSource();
             if (source == null) return;
             if (source.equals(mActionScrolledNode)) {
                 movingDirection = getScrollActionDirection(mLastScrollAction);
@@ -283,11 +292,17 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
             } else {
                 movingDirection = getScrollDirection(event);
             }
+            source.recycle();
         } else {
             movingDirection = getScrollDirection(event);
         }
 
-        followScrollEvent(source, record, movingDirection, wasScrollAction);
+        // Scroll events arrive in bursts, so only follow the latest one once
+        // the view settles.
+        setPendingScroll(record, movingDirection, wasScrollAction);
+        mHandler.followFocusDelayed(
+                mFocusFollowScheduler.request(FocusFollowScheduler.REQUEST_SCROLL),
+                mFocusFollowScheduler.getDelay());
 
         mLastScrollFromIndex = record.getFromIndex();
         mLastScrollToIndex = record.getToIndex();
@@ -297,6 +312,84 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
         tryFocusCachedRecord();
     }
 
+    /**
+     * Keeps a scroll record to follow once scrolling settles. The latest record
+     * wins, except that a scroll caused by a scroll action isn't replaced by
+     * scrolls of other views, so focus follows the view the user scrolled.
+     */
+    private void setPendingScroll(AccessibilityRecordCompat record, int movingDirection,
+            boolean wasScrollAction) {
+        final boolean hadPendingScroll = (mPendingScrollRecord != null);
+        if (hadPendingScroll && mPendingScrollWasAction && !wasScrollAction
+                && !haveSameSource(record, mPendingScrollRecord)) {
+            return;
+        }
+
+        if (hadPendingScroll) {
+            mPendingScrollRecord.recycle();
+        }
+
+        mPendingScrollRecord = AccessibilityRecordCompat.obtain(record);
+        if (!hadPendingScroll || (movingDirection != MOVING_UNDEFINED_DIRECTION)) {
+            mPendingScrollDirection = movingDirection;
+        }
+        mPendingScrollWasAction = (hadPendingScroll && mPendingScrollWasAction)
+                || wasScrollAction;
+    }
+
+    private static boolean haveSameSource(AccessibilityRecordCompat first,
+            AccessibilityRecordCompat second) {
+        AccessibilityNodeInfoCompat firstSource = null;
+        AccessibilityNodeInfoCompat secondSource = null;
+
+        try {
+            firstSource = first.getSource();
+            secondSource = second.getSource();
+            return (firstSource != null) && firstSource.equals(secondSource);
+        } finally {
+            AccessibilityNodeInfoUtils.recycleNodes(firstSource, secondSource);
+        }
+    }
+
+    private void clearPendingScroll() {
+        if (mPendingScrollRecord != null) {
+            mPendingScrollRecord.recycle();
+            mPendingScrollRecord = null;
+        }
+
+        mPendingScrollDirection = MOVING_UNDEFINED_DIRECTION;
+        mPendingScrollWasAction = false;
+    }
+
+    /**
+     * Runs the focus checks merged into a task by {@link #mFocusFollowScheduler}.
+     *
+     * @param generation The generation the task was posted with.
+     */
+    private void followFocus(int generation) {
+        final int requests = mFocusFollowScheduler.takeRequests(generation);
+
+        if (((requests & FocusFollowScheduler.REQUEST_SCROLL) != 0)
+                && (mPendingScrollRecord != null)) {
+            // Take the pending scroll first, since placing focus clears it.
+            final AccessibilityRecordCompat record = mPendingScrollRecord;
+            final int movingDirection = mPendingScrollDirection;
+            final boolean wasScrollAction = mPendingScrollWasAction;
+            mPendingScrollRecord = null;
+            clearPendingScroll();
+
+            try {
+                followScrollEvent(record, movingDirection, wasScrollAction);
+            } finally {
+                record.recycle();
+            }
+        }
+
+        if ((requests & FocusFollowScheduler.REQUEST_CONTENT_CHANGED) != 0) {
+            ensureFocusConsistency();
+        }
+    }
+
     private int getScrollDirection(AccessibilityEvent event) {
         //check scroll of AdapterViews
         if (event.getFromIndex() > mLastScrollFromIndex ||
@@ -358,10 +451,10 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
         }
     }
 
-    private void followScrollEvent(AccessibilityNodeInfoCompat source,
-                                   AccessibilityRecordCompat record,
+    private void followScrollEvent(AccessibilityRecordCompat record,
                                    int movingDirection,
                                    boolean wasScrollAction) {
+        AccessibilityNodeInfoCompat source = null;
         AccessibilityNodeInfoCompat root = null;
         AccessibilityNodeInfoCompat accessibilityFocused = null;
 
@@ -374,7 +467,7 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
 
             accessibilityFocused = root.findFocus(AccessibilityNodeInfo.FOCUS_ACCESSIBILITY);
             boolean validAccessibilityFocus = AccessibilityNodeInfoUtils.shouldFocusNode(
-                    accessibilityFocused);
+                    accessibilityFocused, SpeakingNodeCache.getInstance());
             // there are cases when scrollable container was scrolled and application set
             // focus on node that is on new container page. We should keep this focus
             boolean hasInputFocus = accessibilityFocused != null
@@ -426,11 +519,11 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
                 }
             }
         } finally {
-            AccessibilityNodeInfoUtils.recycleNodes(root, accessibilityFocused);
+            AccessibilityNodeInfoUtils.recycleNodes(source, root, accessibilityFocused);
         }
     }
 
-    private boolean focusNextFocusedNode(TraversalStrategy traversal,
+    private boolean focusNextFocusedNode(final TraversalStrategy traversal,
                                          AccessibilityNodeInfoCompat node,
                                          int direction) {
         if (node == null) {
@@ -440,7 +533,8 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
         NodeFilter filter = new NodeFilter() {
             @Override
             public boolean accept(AccessibilityNodeInfoCompat node) {
-                return node != null && AccessibilityNodeInfoUtils.shouldFocusNode(node) &&
+                return node != null && AccessibilityNodeInfoUtils.shouldFocusNode(node,
+                        traversal.getSpeakingNodesCache()) &&
                         PerformActionUtils.performAction(node,
                                 AccessibilityNodeInfoCompat.ACTION_ACCESSIBILITY_FOCUS);
             }
@@ -654,10 +748,6 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
 
     }
 
-    private void followContentChangedEvent() {
-        ensureFocusConsistency();
-    }
-
     /**
      * If {@code wasMovingForward} is true, moves to the first focusable child.
      * Otherwise, moves to the last focusable child.
@@ -734,6 +824,8 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
         }
 
         mHandler.interruptFollowDelayed();
+        mFocusFollowScheduler.cancel();
+        clearPendingScroll();
         return true;
     }
 
@@ -786,20 +878,16 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
 
     private static class FollowFocusHandler
             extends WeakReferenceHandler<ProcessorFocusAndSingleTap> {
-        private static final int FOCUS_AFTER_CONTENT_CHANGED = 2;
+        private static final int FOLLOW_FOCUS = 2;
         private static final int REFOCUS_AFTER_TIMEOUT = 3;
         private static final int EMPTY_TOUCH_AREA = 5;
 
-        /** Delay after a scroll event before checking focus. */
-        private static final long FOCUS_AFTER_CONTENT_CHANGED_DELAY = 500;
-
         /** Delay for indicating the user has explored into an unfocusable area. */
         private static final long EMPTY_TOUCH_AREA_DELAY = 100;
 
         private AccessibilityNodeInfoCompat mCachedFocusedNode;
         private AccessibilityNodeInfoCompat mCachedTouchedNode;
         private final FeedbackController mFeedbackController;
-        boolean mHasContentChangeMessage = false;
 
         public FollowFocusHandler(ProcessorFocusAndSingleTap parent,
                                   FeedbackController feedbackController) {
@@ -810,9 +898,8 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
         @Override
         public void handleMessage(Message msg, ProcessorFocusAndSingleTap parent) {
             switch (msg.what) {
-                case FOCUS_AFTER_CONTENT_CHANGED:
-                    mHasContentChangeMessage = false;
-                    parent.followContentChangedEvent();
+                case FOLLOW_FOCUS:
+                    parent.followFocus(msg.arg1);
                     break;
                 case REFOCUS_AFTER_TIMEOUT:
                     parent.cancelSingleTap();
@@ -829,15 +916,16 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
         }
 
         /**
-         * Ensure that focus is placed after content change actions, but use a delay to
-         * avoid consuming too many resources.
+         * Replaces any pending focus check with one for the given generation,
+         * so that bursts of scroll and content change events only check focus
+         * once.
+         *
+         * @param generation The generation from {@link FocusFollowScheduler#request}.
+         * @param delay The delay from {@link FocusFollowScheduler#getDelay}.
          */
-        public void followContentChangedDelayed() {
-            if (!mHasContentChangeMessage) {
-                mHasContentChangeMessage = true;
-                sendMessageDelayed(obtainMessage(FOCUS_AFTER_CONTENT_CHANGED),
-                        FOCUS_AFTER_CONTENT_CHANGED_DELAY);
-            }
+        public void followFocusDelayed(int generation, long delay) {
+            removeMessages(FOLLOW_FOCUS);
+            sendMessageDelayed(obtainMessage(FOLLOW_FOCUS, generation, 0), delay);
         }
 
         /**
@@ -902,8 +990,7 @@ public class ProcessorFocusAndSingleTap implements AccessibilityEventListener,
          * Interrupt any pending follow-focus messages.
          */
         public void interruptFollowDelayed() {
-            mHasContentChangeMessage = false;
-            removeMessages(FOCUS_AFTER_CONTENT_CHANGED);
+            removeMessages(FOLLOW_FOCUS);
         }
 
         /**
@@ -137,8 +137,7 @@ public class ProcessorPhoneticLetters implements AccessibilityEventListener {
             }
 
             int windowId = source.getWindowId();
-            WindowManager manager = new WindowManager();
-            manager.setWindows(mService.getWindows());
+            WindowManager manager = mService.getWindowSnapshotCache().getWindowManager();
             return manager.getWindowType(windowId) == AccessibilityWindowInfo.TYPE_INPUT_METHOD;
         } else {
             // For old platforms, we can't check the window type directly, so just
@@ -21,26 +21,22 @@ import android.os.Bundle;
 import android.os.Message;
 import android.support.v4.view.accessibility.AccessibilityEventCompat;
 import android.text.TextUtils;
-import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
-import android.view.accessibility.AccessibilityRecord;
 import com.android.screenspeak.R;
 import com.android.screenspeak.SpeechController;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 import com.android.screenspeak.controller.FullScreenReadController;
 import com.android.utils.AccessibilityEventListener;
 import com.android.utils.AccessibilityEventUtils;
+import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.WeakReferenceHandler;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
-
 /**
  * Manages scroll position feedback. If a VIEW_SCROLLED event passes through
  * this processor and no further events are received for a specified duration, a
- * "scroll position" message is spoken.
+ * "scroll position" message is spoken. A fling is announced once, when it
+ * settles; see {@link ScrollStateTracker}.
  */
 public class ProcessorScrollPosition implements AccessibilityEventListener {
     /** Default pitch adjustment for text event feedback. */
@@ -49,8 +45,7 @@ public class ProcessorScrollPosition implements AccessibilityEventListener {
     /** Default rate adjustment for text event feedback. */
     private static final float DEFAULT_RATE = 1.0f;
 
-    private final HashMap<EventId, Integer> mCachedFromValues = new HashMap<>();
-    private final HashMap<EventId, Integer> mCachedItemCounts = new HashMap<>();
+    private final ScrollStateTracker mScrollState = new ScrollStateTracker();
     private final Bundle mSpeechParams = new Bundle();
     private final ScrollPositionHandler mHandler = new ScrollPositionHandler(this);
 
@@ -58,6 +53,9 @@ public class ProcessorScrollPosition implements AccessibilityEventListener {
     private final SpeechController mSpeechController;
     private final FullScreenReadController mFullScreenReadController;
 
+    /** Copy of the most recent scroll event, announced once scrolling settles. */
+    private AccessibilityEvent mPendingEvent;
+
     public ProcessorScrollPosition(FullScreenReadController fullScreenReadController,
                                    SpeechController speechController,
                                    ScreenSpeakService context) {
@@ -79,13 +77,19 @@ public class ProcessorScrollPosition implements AccessibilityEventListener {
         switch (event.getEventType()) {
             case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
                 // Window state changes clear the cache.
-                mCachedFromValues.clear();
-                mCachedItemCounts.clear();
+                mScrollState.clear();
+                setPendingEvent(null);
                 mHandler.cancelScrollFeedback();
                 break;
             case AccessibilityEvent.TYPE_VIEW_SCROLLED:
             case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
-                mHandler.postScrollFeedback(event);
+                setPendingEvent(event);
+
+                // While flinging, the announcement time only moves later, so
+                // leave the scheduled message in place and let it reschedule
+                // itself when it finds the fling hasn't settled.
+                mHandler.postScrollFeedback(mScrollState.getTimeUntilAnnouncement(),
+                        !mScrollState.isFlinging());
                 break;
         }
     }
@@ -115,28 +119,51 @@ public class ProcessorScrollPosition implements AccessibilityEventListener {
             return true;
         }
 
-        EventId eventId;
-        try {
-            eventId = new EventId(event);
-        } catch (Exception e) {
+        final long nodeId = AccessibilityNodeInfoUtils.getSourceNodeId(event);
+        if (nodeId == AccessibilityNodeInfoUtils.UNKNOWN_SOURCE_NODE_ID) {
             return true;
         }
 
-        final Integer cachedFromIndex = mCachedFromValues.get(eventId);
-        final Integer cachedItemCount = mCachedItemCounts.get(eventId);
+        // If the from index hasn't changed, the event is coming from a
+        // re-layout or resize and should not be spoken.
+        return !mScrollState.onScroll(event.getWindowId(), nodeId, fromIndex, itemCount);
+    }
 
-        if ((cachedFromIndex != null) && (cachedFromIndex == fromIndex) &&
-                (cachedItemCount != null) && (cachedItemCount == itemCount)) {
-            // The from index hasn't changed, which means the event is coming
-            // from a re-layout or resize and should not be spoken.
-            return true;
+    /**
+     * Replaces the event to announce when scrolling settles.
+     *
+     * @param event The event to copy, or {@code null} to clear it.
+     */
+    private void setPendingEvent(AccessibilityEvent event) {
+        if (mPendingEvent != null) {
+            mPendingEvent.recycle();
         }
 
-        // The behavior of put() for an existing key is unspecified, so we can't
-        // recycle the old or new key nodes.
-        mCachedFromValues.put(eventId, fromIndex);
-        mCachedItemCounts.put(eventId, itemCount);
-        return false;
+        mPendingEvent = (event == null) ? null : AccessibilityEvent.obtain(event);
+    }
+
+    /**
+     * Called when the scheduled scroll feedback message arrives. Speaks the
+     * pending scroll position if scrolling has settled, or reschedules itself
+     * if more scroll events arrived since it was posted.
+     */
+    private void onScrollFeedbackDue() {
+        if (!mScrollState.hasPendingAnnouncement()) {
+            setPendingEvent(null);
+            return;
+        }
+
+        final long remaining = mScrollState.getTimeUntilAnnouncement();
+        if (remaining > 0) {
+            mHandler.postScrollFeedback(remaining, true);
+            return;
+        }
+
+        mScrollState.clearPendingAnnouncement();
+        if (mPendingEvent != null) {
+            handleScrollFeedback(mPendingEvent);
+            setPendingEvent(null);
+        }
     }
 
     /**
@@ -152,8 +179,12 @@ public class ProcessorScrollPosition implements AccessibilityEventListener {
 
         // don't pronounce non-visible nodes
         AccessibilityNodeInfo node = event.getSource();
-        if (node != null && !node.isVisibleToUser()) {
-            return;
+        if (node != null) {
+            final boolean isVisible = node.isVisibleToUser();
+            node.recycle();
+            if (!isVisible) {
+                return;
+            }
         }
 
         // Use QUEUE mode so that we don't interrupt more important messages.
@@ -191,88 +222,45 @@ public class ProcessorScrollPosition implements AccessibilityEventListener {
         /** Message identifier for a scroll position notification. */
         private static final int SCROLL_FEEDBACK = 1;
 
-        /** Delay before reading a scroll position notification. */
-        private static final long DELAY_SCROLL_FEEDBACK = 1000;
-
         public ScrollPositionHandler(ProcessorScrollPosition parent) {
             super(parent);
         }
 
         @Override
         public void handleMessage(Message msg, ProcessorScrollPosition parent) {
-            final AccessibilityEvent event = (AccessibilityEvent) msg.obj;
             switch (msg.what) {
                 case SCROLL_FEEDBACK:
-                    parent.handleScrollFeedback(event);
+                    parent.onScrollFeedbackDue();
                     break;
             }
-
-            event.recycle();
         }
 
         /**
-         * Posts the delayed scroll position feedback. Call this for every
+         * Schedules the delayed scroll position feedback. Call this for every
          * VIEW_SCROLLED event.
+         *
+         * @param delayMillis How long to wait before checking whether
+         *            scrolling has settled.
+         * @param replace Whether to replace an already scheduled message. If
+         *            {@code false}, an existing message is left in place.
          */
-        private void postScrollFeedback(AccessibilityEvent event) {
-            cancelScrollFeedback();
-            final AccessibilityEvent eventClone = AccessibilityEvent.obtain(event);
-            final Message msg = obtainMessage(SCROLL_FEEDBACK, eventClone);
+        private void postScrollFeedback(long delayMillis, boolean replace) {
+            if (hasMessages(SCROLL_FEEDBACK)) {
+                if (!replace) {
+                    return;
+                }
+
+                cancelScrollFeedback();
+            }
 
-            sendMessageDelayed(msg, DELAY_SCROLL_FEEDBACK);
+            sendEmptyMessageDelayed(SCROLL_FEEDBACK, delayMillis);
         }
 
         /**
-         * Removes any pending scroll position feedback. Call this for every
-         * event.
+         * Removes any pending scroll position feedback.
          */
         private void cancelScrollFeedback() {
             removeMessages(SCROLL_FEEDBACK);
         }
     }
-
-    private static class EventId {
-        public long nodeId;
-        public int windowId;
-        private final int hashcode;
-
-        private static Method sGetSourceNodeIdMethod;
-        private static final String LOGTAG = "EventId";
-        static {
-            try {
-                sGetSourceNodeIdMethod =
-                        AccessibilityRecord.class.getDeclaredMethod("getSourceNodeId");
-                sGetSourceNodeIdMethod.setAccessible(true);
-            } catch (NoSuchMethodException e) {
-                Log.d(LOGTAG, "Error setting up fields: " + e.toString());
-                e.printStackTrace();
-            }
-        }
-
-        public EventId(long nodeId, int windowId) {
-            this.nodeId = nodeId;
-            this.windowId = windowId;
-            hashcode = (int) (nodeId ^ (nodeId >>> 32)) + windowId * 7;
-        }
-
-        public EventId(AccessibilityEvent event) throws InvocationTargetException,
-                IllegalAccessException {
-            this((long) sGetSourceNodeIdMethod.invoke(event), event.getWindowId());
-        }
-
-        @Override
-        public boolean equals(Object other) {
-            if (! (other instanceof EventId)) {
-                return false;
-            }
-
-            EventId otherId = (EventId) other;
-            return windowId == otherId.windowId && nodeId == otherId.nodeId;
-        }
-
-        @Override
-        public int hashCode() {
-            return hashcode;
-        }
-    }
-}
\ No newline at end of file
+}
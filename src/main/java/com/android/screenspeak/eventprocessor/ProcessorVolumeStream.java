@@ -46,6 +46,7 @@ import com.android.utils.AccessibilityEventListener;
 import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.PerformActionUtils;
 import com.android.utils.SharedPreferencesUtils;
+import com.android.utils.WindowManager;
 
 import java.util.List;
 
@@ -214,7 +215,7 @@ public class ProcessorVolumeStream implements AccessibilityEventListener,
 
     private AccessibilityNodeInfoCompat findInputFocus() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
-            List<AccessibilityWindowInfo> awis = mService.getWindows();
+            List<AccessibilityWindowInfo> awis = mService.getWindowSnapshotCache().getWindows();
             for (AccessibilityWindowInfo awi : awis) {
                 if (awi.getType() == AccessibilityWindowInfo.TYPE_INPUT_METHOD) continue;
                 AccessibilityNodeInfo info = awi.getRoot();
@@ -247,14 +248,11 @@ public class ProcessorVolumeStream implements AccessibilityEventListener,
         // Clear focus if it is on an IME
         if (node != null) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
-                for (AccessibilityWindowInfo awi : mService.getWindows()) {
-                    if (awi.getId() == node.getWindowId()) {
-                        if (awi.getType() == AccessibilityWindowInfo.TYPE_INPUT_METHOD) {
-                            node.recycle();
-                            node = null;
-                        }
-                        break;
-                    }
+                WindowManager windowManager = mService.getWindowSnapshotCache().getWindowManager();
+                if (windowManager.getWindowType(node.getWindowId())
+                        == AccessibilityWindowInfo.TYPE_INPUT_METHOD) {
+                    node.recycle();
+                    node = null;
                 }
             }
         }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import com.android.utils.Clock;
+
+/**
+ * Tracks the scroll position of recently scrolled containers, and decides when a scroll has
+ * settled enough to announce. Containers are identified by window id and source node id, and are
+ * held in a small table of parallel arrays; when it is full, the least recently scrolled container
+ * is forgotten.
+ * <p>
+ * Only one announcement is pending at a time. Each scroll that changes position moves it to the
+ * scrolled container and pushes its time back, so a fling produces a single announcement of the
+ * position where it came to rest. Scrolling faster than {@link #FLING_VELOCITY} waits longer,
+ * since a fling keeps sending events as it slows down.
+ */
+/* package */ class ScrollStateTracker {
+    /** Maximum number of scrolling containers to remember. */
+    /* package */ static final int MAX_CONTAINERS = 8;
+
+    /** Time without scrolling before announcing the position. */
+    /* package */ static final long SETTLE_DELAY = 1000;
+
+    /** Time without scrolling before announcing the position after a fling. */
+    /* package */ static final long FLING_SETTLE_DELAY = 1500;
+
+    /** Scroll speed, in items per second, above which a scroll is treated as a fling. */
+    /* package */ static final float FLING_VELOCITY = 20;
+
+    private final Clock mClock;
+
+    private final int[] mWindowIds = new int[MAX_CONTAINERS];
+    private final long[] mNodeIds = new long[MAX_CONTAINERS];
+    private final int[] mFromIndices = new int[MAX_CONTAINERS];
+    private final int[] mItemCounts = new int[MAX_CONTAINERS];
+    private final long[] mUpdateTimes = new long[MAX_CONTAINERS];
+    private final float[] mVelocities = new float[MAX_CONTAINERS];
+    private int mSize;
+
+    /* Slot of the container awaiting an announcement, or -1. */
+    private int mPendingSlot = -1;
+    private long mAnnouncementTime;
+
+    public ScrollStateTracker() {
+        this(Clock.SYSTEM);
+    }
+
+    public ScrollStateTracker(Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Records the position of a scrolled container.
+     *
+     * @param windowId The id of the container's window.
+     * @param nodeId The id of the container's node.
+     * @param fromIndex The index of the first visible item.
+     * @param itemCount The number of items in the container.
+     * @return {@code true} if the position changed and an announcement is now pending, or
+     *         {@code false} if the event repeats the last known position, for example after a
+     *         re-layout or resize.
+     */
+    public boolean onScroll(int windowId, long nodeId, int fromIndex, int itemCount) {
+        final long now = mClock.uptimeMillis();
+        int slot = indexOf(windowId, nodeId);
+
+        if (slot < 0) {
+            slot = obtainSlot();
+            mWindowIds[slot] = windowId;
+            mNodeIds[slot] = nodeId;
+            mVelocities[slot] = 0;
+        } else if ((mFromIndices[slot] == fromIndex) && (mItemCounts[slot] == itemCount)) {
+            return false;
+        } else {
+            final long elapsed = now - mUpdateTimes[slot];
+            if (elapsed < SETTLE_DELAY) {
+                // Average with the previous speed so a single jump doesn't look like a fling.
+                final float velocity = Math.abs(fromIndex - mFromIndices[slot]) * 1000f
+                        / Math.max(elapsed, 1);
+                mVelocities[slot] = (mVelocities[slot] + velocity) / 2;
+            } else {
+                mVelocities[slot] = 0;
+            }
+        }
+
+        mFromIndices[slot] = fromIndex;
+        mItemCounts[slot] = itemCount;
+        mUpdateTimes[slot] = now;
+
+        mPendingSlot = slot;
+        mAnnouncementTime = now + (isFlinging(slot) ? FLING_SETTLE_DELAY : SETTLE_DELAY);
+        return true;
+    }
+
+    /**
+     * @return {@code true} if a scroll position is waiting to be announced.
+     */
+    public boolean hasPendingAnnouncement() {
+        return mPendingSlot >= 0;
+    }
+
+    /**
+     * @return The uptime at which the pending announcement is due. Only valid if
+     *         {@link #hasPendingAnnouncement()} returns {@code true}.
+     */
+    public long getAnnouncementTime() {
+        return mAnnouncementTime;
+    }
+
+    /**
+     * @return How long until the pending announcement is due, or {@code 0} if it is due now.
+     */
+    public long getTimeUntilAnnouncement() {
+        return Math.max(0, mAnnouncementTime - mClock.uptimeMillis());
+    }
+
+    /**
+     * @return {@code true} if the last scrolled container is moving fast enough to be flinging.
+     */
+    public boolean isFlinging() {
+        return (mPendingSlot >= 0) && isFlinging(mPendingSlot);
+    }
+
+    /**
+     * Marks the pending announcement as handled. The container positions are kept, so repeated
+     * events at the same position are still ignored.
+     */
+    public void clearPendingAnnouncement() {
+        mPendingSlot = -1;
+    }
+
+    /**
+     * Forgets all containers, for example when the window changes.
+     */
+    public void clear() {
+        mSize = 0;
+        mPendingSlot = -1;
+    }
+
+    /**
+     * @return The number of containers being tracked.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    private boolean isFlinging(int slot) {
+        return mVelocities[slot] >= FLING_VELOCITY;
+    }
+
+    private int indexOf(int windowId, long nodeId) {
+        for (int i = 0; i < mSize; i++) {
+            if ((mNodeIds[i] == nodeId) && (mWindowIds[i] == windowId)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns an unused slot, replacing the least recently scrolled container if the table is
+     * full.
+     */
+    private int obtainSlot() {
+        if (mSize < MAX_CONTAINERS) {
+            return mSize++;
+        }
+
+        int oldest = 0;
+        for (int i = 1; i < mSize; i++) {
+            if (mUpdateTimes[i] < mUpdateTimes[oldest]) {
+                oldest = i;
+            }
+        }
+
+        if (oldest == mPendingSlot) {
+            mPendingSlot = -1;
+        }
+
+        return oldest;
+    }
+}
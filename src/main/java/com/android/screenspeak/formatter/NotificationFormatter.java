@@ -29,7 +29,8 @@ import com.google.android.marvin.screenspeak.ScreenSpeakService;
 import com.android.screenspeak.Utterance;
 
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Formatter that returns an utterance to announce text replacement.
@@ -40,8 +41,18 @@ public class NotificationFormatter implements EventSpeechRule.AccessibilityEvent
 
     private static final long MAX_HISTORY_AGE = (60 * 1000);
 
-    /** The notification history. Used to detect duplicate notifications. */
-    private final LinkedList<Notification> mNotificationHistory = new LinkedList<>();
+    /**
+     * The notification history, mapping each notification to the time it was
+     * first seen. Used to detect duplicate notifications. Iteration order is
+     * from least to most recently seen.
+     */
+    private final LinkedHashMap<NotificationKey, Long> mNotificationHistory =
+            new LinkedHashMap<NotificationKey, Long>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<NotificationKey, Long> eldest) {
+                    return size() > MAX_HISTORY_SIZE;
+                }
+            };
 
     @Override
     public boolean format(AccessibilityEvent event, ScreenSpeakService context, Utterance utterance) {
@@ -84,109 +95,40 @@ public class NotificationFormatter implements EventSpeechRule.AccessibilityEvent
      * @return {@code true} if the notification is recent.
      */
     private synchronized boolean isRecent(Notification notification) {
-        final Notification foundInHistory = removeFromHistory(notification);
-
-        // If we didn't find the notification in history, set the notification
-        // time to now. Otherwise, keep the event time of the previous entry.
-        if (foundInHistory != null) {
-            notification.when = foundInHistory.when;
-        } else {
-            notification.when = SystemClock.uptimeMillis();
+        final long now = SystemClock.uptimeMillis();
+        removeExpiredHistory(now);
+
+        final NotificationKey key = new NotificationKey(notification);
+        Long firstSeen = mNotificationHistory.remove(key);
+        if ((firstSeen != null) && (now - firstSeen > MAX_HISTORY_AGE)) {
+            // Don't match old entries.
+            firstSeen = null;
         }
 
-        addToHistory(notification);
+        // If we didn't find the notification in history, record it as seen
+        // now. Otherwise, keep the time of the previous entry.
+        mNotificationHistory.put(key, (firstSeen != null) ? firstSeen : now);
 
-        return (foundInHistory != null);
+        return (firstSeen != null);
     }
 
     /**
-     * Searches for and removes a {@link Notification} from history.
+     * Removes entries older than {@link #MAX_HISTORY_AGE} from the oldest end
+     * of history, stopping at the first entry that is still current. Entries
+     * move to the newest end when seen again but keep their first-seen time,
+     * so a few expired entries may remain; they are checked again on lookup.
      *
-     * @param notification The notification to remove from history.
-     * @return {@code true} if the notification was found and removed.
+     * @param now The current uptime in milliseconds.
      */
-    private Notification removeFromHistory(Notification notification) {
-        final Iterator<Notification> historyIterator = mNotificationHistory.iterator();
-
-        while (historyIterator.hasNext()) {
-            final Notification recentNotification = historyIterator.next();
-            final long age = SystemClock.uptimeMillis() - recentNotification.when;
-
-            // Don't compare against old entries, just remove them.
-            if (age > MAX_HISTORY_AGE) {
-                historyIterator.remove();
-                continue;
-            }
-
-            if (notificationsAreEqual(notification, recentNotification)) {
-                historyIterator.remove();
-                return recentNotification;
+    private void removeExpiredHistory(long now) {
+        final Iterator<Long> firstSeenTimes = mNotificationHistory.values().iterator();
+        while (firstSeenTimes.hasNext()) {
+            if (now - firstSeenTimes.next() <= MAX_HISTORY_AGE) {
+                break;
             }
-        }
-
-        return null;
-    }
-
-    /**
-     * Adds the specified {@link Notification} to history and ensures the size
-     * of history does not exceed the specified limit.
-     *
-     * @param notification The notification to add.
-     */
-    private void addToHistory(Notification notification) {
-        mNotificationHistory.addFirst(notification);
-
-        if (mNotificationHistory.size() > MAX_HISTORY_SIZE) {
-            mNotificationHistory.removeLast();
-        }
-    }
-
-    /**
-     * Compares two {@link Notification}s.
-     *
-     * @param first The first notification to compare.
-     * @param second The second notification to compare.
-     * @return {@code true} is the notifications are equal.
-     */
-    private boolean notificationsAreEqual(Notification first, Notification second) {
-        if (!TextUtils.equals(first.tickerText, second.tickerText)) {
-            return false;
-        }
-
-        final RemoteViews firstView = first.contentView;
-        final RemoteViews secondView = second.contentView;
-
-        return remoteViewsAreEqual(firstView, secondView);
-
-    }
-
-    /**
-     * Compares to {@link RemoteViews} objects.
-     *
-     * @param firstView The first view to compare.
-     * @param secondView The second view to compare.
-     */
-    private boolean remoteViewsAreEqual(RemoteViews firstView, RemoteViews secondView) {
-        if (firstView == secondView) {
-            return true;
-        }
 
-        if (firstView == null || secondView == null) {
-            return false;
+            firstSeenTimes.remove();
         }
-
-        final String firstPackage = firstView.getPackage();
-        final String secondPackage = secondView.getPackage();
-
-        if (!TextUtils.equals(firstPackage, secondPackage)) {
-            return false;
-        }
-
-        final int firstLayoutId = firstView.getLayoutId();
-        final int secondLayoutId = secondView.getLayoutId();
-
-        return firstLayoutId == secondLayoutId;
-
     }
 
     /**
@@ -227,4 +169,55 @@ public class NotificationFormatter implements EventSpeechRule.AccessibilityEvent
         }
     }
 
+    /**
+     * The parts of a {@link Notification} that identify a duplicate: the
+     * ticker text and the package and layout of the content view. The hash is
+     * computed once, so history lookups don't compare notifications deeply.
+     */
+    private static final class NotificationKey {
+        private final String mTickerText;
+        private final String mViewPackage;
+        private final int mViewLayoutId;
+        private final boolean mHasView;
+        private final int mHashCode;
+
+        public NotificationKey(Notification notification) {
+            mTickerText = (notification.tickerText == null)
+                    ? null : notification.tickerText.toString();
+
+            final RemoteViews view = notification.contentView;
+            mHasView = (view != null);
+            mViewPackage = mHasView ? view.getPackage() : null;
+            mViewLayoutId = mHasView ? view.getLayoutId() : 0;
+
+            int hashCode = (mTickerText == null) ? 0 : mTickerText.hashCode();
+            hashCode = 31 * hashCode + ((mViewPackage == null) ? 0 : mViewPackage.hashCode());
+            hashCode = 31 * hashCode + mViewLayoutId;
+            hashCode = 31 * hashCode + (mHasView ? 1 : 0);
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof NotificationKey)) {
+                return false;
+            }
+
+            final NotificationKey other = (NotificationKey) o;
+            return (mHashCode == other.mHashCode)
+                    && (mHasView == other.mHasView)
+                    && (mViewLayoutId == other.mViewLayoutId)
+                    && TextUtils.equals(mTickerText, other.mTickerText)
+                    && TextUtils.equals(mViewPackage, other.mViewPackage);
+        }
+    }
 }
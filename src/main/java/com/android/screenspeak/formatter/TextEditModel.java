@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.formatter;
+
+import com.android.utils.AccessibilityNodeInfoUtils;
+
+/**
+ * Tracks text changes in the edit field being typed in, so a text change event can usually be
+ * handled in time proportional to the size of the edit rather than the length of the text.
+ * <p>
+ * The shadow text is the text reported by the last change event. Events carry an immutable copy,
+ * so keeping a reference costs nothing. It stands in for the previous text when an event doesn't
+ * report one. Each change is applied from the event's reported from index, removed count and
+ * added count. The text is only compared in full when those don't agree with the text lengths.
+ * <p>
+ * The model follows one field at a time, identified by its window and source node. It forgets
+ * the shadow text whenever the field changes.
+ */
+/* package */ class TextEditModel {
+    /** Window id that identifies no window. */
+    public static final int NO_WINDOW_ID = -1;
+
+    /** Source node id that identifies no node. */
+    public static final long NO_NODE_ID = AccessibilityNodeInfoUtils.UNKNOWN_SOURCE_NODE_ID;
+
+    /* The field whose text is followed. */
+    private int mWindowId = NO_WINDOW_ID;
+    private long mSourceNodeId = NO_NODE_ID;
+
+    /* The text after the last applied change, or null if unknown. */
+    private CharSequence mText;
+
+    /* The edit found by the last applied change. */
+    private int mFromIndex;
+    private int mRemovedCount;
+    private int mAddedCount;
+    private CharSequence mBeforeText;
+    private boolean mWasDiffed;
+
+    /**
+     * Sets the field that following changes apply to. If it isn't the field
+     * the model was following, the shadow text is forgotten. A field with an
+     * unknown id never matches, since it can't be told apart from others.
+     *
+     * @param windowId The id of the window holding the field.
+     * @param sourceNodeId The id of the field's node within its window.
+     */
+    public void setField(int windowId, long sourceNodeId) {
+        if ((windowId != mWindowId) || (sourceNodeId != mSourceNodeId)
+                || (sourceNodeId == NO_NODE_ID)) {
+            clear();
+            mWindowId = windowId;
+            mSourceNodeId = sourceNodeId;
+        }
+    }
+
+    /**
+     * Applies a text change.
+     *
+     * @param beforeText The text before the change, or {@code null} if the event didn't report
+     *            it, in which case the shadow text is used if it fits.
+     * @param afterText The text after the change. May be a hint rather than the text if all the
+     *            text was removed.
+     * @param fromIndex The reported index where the change starts.
+     * @param removedCount The reported number of characters removed.
+     * @param addedCount The reported number of characters added.
+     * @return {@code true} if the change was applied, or {@code false} if there wasn't enough
+     *         information to work out what changed.
+     */
+    public boolean applyTextChange(CharSequence beforeText, CharSequence afterText,
+            int fromIndex, int removedCount, int addedCount) {
+        if (beforeText == null) {
+            if ((mText == null) || (afterText == null)
+                    || !isReportedEditValid(mText, afterText, fromIndex, removedCount, addedCount)
+                    || !isUnchangedOutsideEdit(mText, afterText, fromIndex, removedCount,
+                            addedCount)) {
+                return false;
+            }
+
+            beforeText = mText;
+        }
+
+        mBeforeText = beforeText;
+        mWasDiffed = false;
+
+        // Deleting all the text in a field with a hint reports the hint as
+        // the text after the change, so it can't be checked against the counts.
+        if ((addedCount == 0) && (fromIndex == 0) && (removedCount == beforeText.length())) {
+            setEdit(0, removedCount, 0);
+            mText = "";
+            return true;
+        }
+
+        if (afterText == null) {
+            return false;
+        }
+
+        if (isReportedEditValid(beforeText, afterText, fromIndex, removedCount, addedCount)) {
+            setEdit(fromIndex, removedCount, addedCount);
+        } else {
+            diff(beforeText, afterText);
+            mWasDiffed = true;
+        }
+
+        mText = afterText;
+        return true;
+    }
+
+    /**
+     * @return The text after the last change, or {@code null} if unknown.
+     */
+    public CharSequence getText() {
+        return mText;
+    }
+
+    /**
+     * @return The index where the last change starts.
+     */
+    public int getFromIndex() {
+        return mFromIndex;
+    }
+
+    /**
+     * @return The number of characters removed by the last change.
+     */
+    public int getRemovedCount() {
+        return mRemovedCount;
+    }
+
+    /**
+     * @return The number of characters added by the last change.
+     */
+    public int getAddedCount() {
+        return mAddedCount;
+    }
+
+    /**
+     * @return The length of the text before the last change.
+     */
+    public int getBeforeLength() {
+        return mBeforeText.length();
+    }
+
+    /**
+     * @return {@code true} if the last change didn't match the reported
+     *         indices and was found by comparing the text.
+     */
+    public boolean wasDiffed() {
+        return mWasDiffed;
+    }
+
+    /**
+     * @return The text removed by the last change.
+     */
+    public CharSequence getRemovedText() {
+        return mBeforeText.subSequence(mFromIndex, mFromIndex + mRemovedCount);
+    }
+
+    /**
+     * @return The text added by the last change.
+     */
+    public CharSequence getAddedText() {
+        return mText.subSequence(mFromIndex, mFromIndex + mAddedCount);
+    }
+
+    /**
+     * Forgets the shadow text and the field it belongs to, for example when
+     * focus moves or an event for the field was not applied.
+     */
+    public void clear() {
+        mWindowId = NO_WINDOW_ID;
+        mSourceNodeId = NO_NODE_ID;
+        mText = null;
+        mBeforeText = null;
+        setEdit(0, 0, 0);
+    }
+
+    private void setEdit(int fromIndex, int removedCount, int addedCount) {
+        mFromIndex = fromIndex;
+        mRemovedCount = removedCount;
+        mAddedCount = addedCount;
+    }
+
+    /**
+     * Checks the reported edit against the text lengths. Doesn't compare the
+     * text itself, so it costs the same however long the text is.
+     */
+    private static boolean isReportedEditValid(CharSequence beforeText, CharSequence afterText,
+            int fromIndex, int removedCount, int addedCount) {
+        return (fromIndex >= 0) && (removedCount >= 0) && (addedCount >= 0)
+                && (fromIndex + removedCount <= beforeText.length())
+                && (fromIndex + addedCount <= afterText.length())
+                && (beforeText.length() - removedCount + addedCount == afterText.length());
+    }
+
+    /**
+     * Checks that the text before and after the reported edit is the same in
+     * both texts, so the shadow text can stand in for a missing before text.
+     * The indices must already have been checked.
+     */
+    private static boolean isUnchangedOutsideEdit(CharSequence beforeText,
+            CharSequence afterText, int fromIndex, int removedCount, int addedCount) {
+        for (int i = 0; i < fromIndex; i++) {
+            if (beforeText.charAt(i) != afterText.charAt(i)) {
+                return false;
+            }
+        }
+
+        final int suffixLength = beforeText.length() - fromIndex - removedCount;
+        final int beforeSuffixStart = fromIndex + removedCount;
+        final int afterSuffixStart = fromIndex + addedCount;
+        for (int i = 0; i < suffixLength; i++) {
+            if (beforeText.charAt(beforeSuffixStart + i)
+                    != afterText.charAt(afterSuffixStart + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the edit by trimming the common prefix and suffix of the two
+     * texts.
+     */
+    private void diff(CharSequence beforeText, CharSequence afterText) {
+        final int beforeLength = beforeText.length();
+        final int afterLength = afterText.length();
+        final int maxCommon = Math.min(beforeLength, afterLength);
+
+        int prefix = 0;
+        while ((prefix < maxCommon) && (beforeText.charAt(prefix) == afterText.charAt(prefix))) {
+            prefix++;
+        }
+
+        int suffix = 0;
+        while ((suffix < maxCommon - prefix) && (beforeText.charAt(beforeLength - suffix - 1)
+                == afterText.charAt(afterLength - suffix - 1))) {
+            suffix++;
+        }
+
+        setEdit(prefix, beforeLength - prefix - suffix, afterLength - prefix - suffix);
+    }
+}
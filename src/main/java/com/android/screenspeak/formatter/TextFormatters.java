@@ -39,11 +39,12 @@ import com.android.screenspeak.SpeechController;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 import com.android.screenspeak.Utterance;
 import com.android.screenspeak.controller.TextCursorController;
+import com.android.utils.AccessibilityEventListener;
 import com.android.utils.AccessibilityEventUtils;
+import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.LogUtils;
 import com.android.utils.SharedPreferencesUtils;
 import com.android.utils.compat.provider.SettingsCompatUtils;
-
 import java.util.List;
 
 /**
@@ -100,6 +101,22 @@ public final class TextFormatters {
      */
     private static int sAwaitingSelectionCount = 0;
 
+    /** Text of the field being edited, as followed by {@link ChangedTextFormatter}. */
+    private static final TextEditModel sEditModel = new TextEditModel();
+
+    /**
+     * Forgets the text of the field being edited when focus moves, since
+     * changes to a field aren't always reported while it doesn't have focus.
+     * Should receive focus events.
+     */
+    public static final AccessibilityEventListener EDIT_MODEL_RESET_LISTENER =
+            new AccessibilityEventListener() {
+                @Override
+                public void onAccessibilityEvent(AccessibilityEvent event) {
+                    sEditModel.clear();
+                }
+            };
+
     private TextFormatters() {
         // Not publicly instantiable.
     }
@@ -140,6 +157,8 @@ public final class TextFormatters {
                         && context.getResources().getBoolean(R.bool.supports_text_replacement)) {
                     sAwaitingSelectionCount++;
                     sChangedTimestamp = timestamp;
+                    // The change isn't applied, so the shadow text is out of date.
+                    sEditModel.clear();
                     return false;
                 }
 
@@ -167,13 +186,12 @@ public final class TextFormatters {
             switch (changeType) {
                 case ADDED:
                 case REPLACED:
-                    notifyMaxLengthReached(event, context, utterance);
-                    notifyError(event, context, utterance);
+                    notifyMaxLengthOrError(event, context, utterance, true);
                     params.putFloat(SpeechController.SpeechParam.PITCH, DEFAULT_ADD_PITCH);
                     // No auditory feedback for adding text.
                     break;
                 case REMOVED:
-                    notifyError(event, context, utterance);
+                    notifyMaxLengthOrError(event, context, utterance, false);
                     params.putFloat(SpeechController.SpeechParam.PITCH, DEFAULT_REMOVE_PITCH);
                     // No auditory feedback for removing text.
                     break;
@@ -188,30 +206,36 @@ public final class TextFormatters {
             return shouldEchoKeyboard(context, changeType);
         }
 
-        private void notifyMaxLengthReached(AccessibilityEvent event,
-                                            ScreenSpeakService context, Utterance utterance) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                // Check if entered text reached to maximum length
-                final AccessibilityNodeInfo source = event.getSource();
-                final CharSequence eventText = getEventText(event);
-                if (source != null
-                        && eventText != null
-                        && eventText.length() == source.getMaxTextLength()) {
-                    utterance.addSpoken(context.getString(R.string.value_text_max_length));
-                }
+        /**
+         * Adds feedback if the edited field is showing an error or, after text
+         * was added, has reached its maximum length. Fetches the source node
+         * once for both checks.
+         */
+        private void notifyMaxLengthOrError(AccessibilityEvent event,
+                ScreenSpeakService context, Utterance utterance, boolean wasAdded) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                return;
             }
-        }
 
-        private void notifyError(AccessibilityEvent event,
-                                 ScreenSpeakService context, Utterance utterance) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                final AccessibilityNodeInfo source = event.getSource();
-                if(source != null && !TextUtils.isEmpty(source.getError())) {
-                    utterance.addSpoken(
-                            context.getString(R.string.template_text_error,
-                                    source.getError().toString()));
-                }
+            final AccessibilityNodeInfo source = event.getSource();
+            if (source == null) {
+                return;
             }
+
+            // Check if entered text reached to maximum length
+            final CharSequence eventText = getEventText(event);
+            if (wasAdded && eventText != null
+                    && eventText.length() == source.getMaxTextLength()) {
+                utterance.addSpoken(context.getString(R.string.value_text_max_length));
+            }
+
+            final CharSequence error = source.getError();
+            if (!TextUtils.isEmpty(error)) {
+                utterance.addSpoken(
+                        context.getString(R.string.template_text_error, error.toString()));
+            }
+
+            source.recycle();
         }
 
         private boolean shouldEchoKeyboard(Context context, int changeType) {
@@ -244,25 +268,26 @@ public final class TextFormatters {
         private int formatInternal(AccessibilityEvent event, ScreenSpeakService context,
                                    Utterance utterance) {
             if (event.isPassword() && !shouldSpeakPasswords(context)) {
+                sEditModel.clear();
                 return formatPassword(event, context, utterance);
             }
 
-            if (!passesSanityCheck(event)) {
+            if (!applyToEditModel(event)) {
                 LogUtils.log(this, Log.ERROR, "Inconsistent text change event detected");
                 return REJECTED;
             }
 
             // If multi-character text was cleared, stop now.
-            final boolean wasCleared = event.getRemovedCount() > 1
-                    && event.getAddedCount() == 0
-                    && event.getBeforeText().length() == event.getRemovedCount();
+            final boolean wasCleared = sEditModel.getRemovedCount() > 1
+                    && sEditModel.getAddedCount() == 0
+                    && sEditModel.getBeforeLength() == sEditModel.getRemovedCount();
             if (wasCleared) {
                 utterance.addSpoken(context.getString(R.string.value_text_cleared));
                 return REMOVED;
             }
 
-            CharSequence removedText = getRemovedText(event);
-            CharSequence addedText = getAddedText(event);
+            CharSequence removedText = sEditModel.getRemovedText();
+            CharSequence addedText = sEditModel.getAddedText();
 
             // Never say "replaced Hello with Hello".
             if (TextUtils.equals(addedText, removedText)) {
@@ -270,12 +295,6 @@ public final class TextFormatters {
                 return REJECTED;
             }
 
-            // Abort if either text is null (indicates an error).
-            if ((removedText == null) || (addedText == null)) {
-                LogUtils.log(this, Log.DEBUG, "Drop event, either added or removed was null");
-                return REJECTED;
-            }
-
             final int removedLength = removedText.length();
             final int addedLength = addedText.length();
 
@@ -300,7 +319,7 @@ public final class TextFormatters {
             if (!TextUtils.isEmpty(cleanAddedText)) {
                 // Text was added. This includes replacement.
                 //noinspection StatementWithEmptyBody
-                if (appendLastWordIfNeeded(event, utterance)) {
+                if (appendLastWordIfNeeded(addedText, utterance)) {
                     // Do nothing.
                 } else if (TextUtils.isEmpty(cleanRemovedText)
                         || TextUtils.equals(cleanAddedText, cleanRemovedText)) {
@@ -338,15 +357,9 @@ public final class TextFormatters {
             return REJECTED;
         }
 
-        private boolean appendLastWordIfNeeded(AccessibilityEvent event, Utterance utterance) {
-            final CharSequence text = getEventText(event);
-            final CharSequence addedText = getAddedText(event);
-            final int fromIndex = event.getFromIndex();
-
-            if (fromIndex > text.length()) {
-                LogUtils.log(this, Log.WARN, "Received event with invalid fromIndex: %s", event);
-                return false;
-            }
+        private boolean appendLastWordIfNeeded(CharSequence addedText, Utterance utterance) {
+            final CharSequence text = sEditModel.getText();
+            final int fromIndex = sEditModel.getFromIndex();
 
             // Check if any visible text was added.
             int trimmedLength = TextUtils.getTrimmedLength(addedText);
@@ -392,90 +405,41 @@ public final class TextFormatters {
         }
 
         /**
-         * Checks whether the event's reported properties match its actual
-         * properties, e.g. does the added count minus the removed count reflect
-         * the actual change in length between the current and previous text
-         * contents.
-         *
-         * @param event The text changed event to validate.
-         * @return {@code true} if the event properties are valid.
-         */
-        private boolean passesSanityCheck(AccessibilityEvent event) {
-            final CharSequence afterText = getEventText(event);
-            final CharSequence beforeText = event.getBeforeText();
-
-            // Special case for deleting all the text in an EditText with a
-            // hint, since the event text will contain the hint rather than an
-            // empty string.
-            if ((event.getAddedCount() == 0) && (event.getRemovedCount() == beforeText.length())) {
-                return true;
-            }
-
-            if (afterText == null || beforeText == null) {
-                return false;
-            }
-
-            final int diff = (event.getAddedCount() - event.getRemovedCount());
-
-            return ((beforeText.length() + diff) == afterText.length());
-        }
-
-        /**
-         * Attempts to extract the text that was added during an event.
+         * Applies the event to the shared edit model, which works out what
+         * was added and removed. The reported indices are used when they
+         * agree with the text lengths; otherwise the text is compared.
          *
-         * @param event The source event.
-         * @return The added text, or {@code null} on error.
+         * @param event The text changed event.
+         * @return {@code false} if the change couldn't be worked out.
          */
-        private CharSequence getAddedText(AccessibilityEvent event) {
+        private boolean applyToEditModel(AccessibilityEvent event) {
             final List<CharSequence> textList = event.getText();
             //noinspection ConstantConditions
             if (textList == null || textList.size() > 1) {
-                LogUtils.log(this, Log.WARN, "getAddedText: Text list was null or bad size");
-                return null;
-            }
-
-            // If the text was empty, the list will be empty. See the
-            // implementation for TextView.onPopulateAccessibilityEvent().
-            if (textList.size() == 0) {
-                return "";
-            }
-
-            final CharSequence text = textList.get(0);
-            if (text == null) {
-                LogUtils.log(this, Log.WARN, "getAddedText: First text entry was null");
-                return null;
-            }
-
-            final int addedBegIndex = event.getFromIndex();
-            final int addedEndIndex = addedBegIndex + event.getAddedCount();
-            if (areInvalidIndices(text, addedBegIndex, addedEndIndex)) {
-                LogUtils.log(this, Log.WARN, "getAddedText: Invalid indices (%d,%d) for \"%s\"",
-                        addedBegIndex, addedEndIndex, text);
-                return "";
+                LogUtils.log(this, Log.WARN, "Text list was null or bad size");
+                sEditModel.clear();
+                return false;
             }
 
-            return text.subSequence(addedBegIndex, addedEndIndex);
-        }
+            // The shadow text can't stand in for another field's text.
+            sEditModel.setField(event.getWindowId(),
+                    AccessibilityNodeInfoUtils.getSourceNodeId(event));
 
-        /**
-         * Attempts to extract the text that was removed during an event.
-         *
-         * @param event The source event.
-         * @return The removed text, or {@code null} on error.
-         */
-        private CharSequence getRemovedText(AccessibilityEvent event) {
-            final CharSequence beforeText = event.getBeforeText();
-            if (beforeText == null) {
-                return null;
+            if (!sEditModel.applyTextChange(event.getBeforeText(), getEventText(event),
+                    event.getFromIndex(), event.getRemovedCount(), event.getAddedCount())) {
+                sEditModel.clear();
+                return false;
             }
 
-            final int beforeBegIndex = event.getFromIndex();
-            final int beforeEndIndex = beforeBegIndex + event.getRemovedCount();
-            if (areInvalidIndices(beforeText, beforeBegIndex, beforeEndIndex)) {
-                return "";
+            if (sEditModel.wasDiffed()) {
+                LogUtils.log(this, Log.DEBUG,
+                        "Reported change (%d,-%d,+%d) didn't match text, found (%d,-%d,+%d)",
+                        event.getFromIndex(), event.getRemovedCount(), event.getAddedCount(),
+                        sEditModel.getFromIndex(), sEditModel.getRemovedCount(),
+                        sEditModel.getAddedCount());
             }
 
-            return beforeText.subSequence(beforeBegIndex, beforeEndIndex);
+            return true;
         }
 
         /**
@@ -515,7 +479,15 @@ public final class TextFormatters {
     public static final class SelectedTextFormatter
             implements EventSpeechRule.AccessibilityEventFormatter {
 
-        private AccessibilityEvent mLastProcessedEvent;
+        /*
+         * The selection event that was last spoken, if mHasLastProcessedEvent. Only the
+         * indices are needed to recognize a duplicate, so the event isn't copied.
+         */
+        private boolean mHasLastProcessedEvent;
+        private int mLastProcessedEventType;
+        private long mLastProcessedEventTime;
+        private int mLastProcessedFromIndex;
+        private int mLastProcessedToIndex;
 
         @Override
         public boolean format(AccessibilityEvent event, ScreenSpeakService context,
@@ -599,35 +571,34 @@ public final class TextFormatters {
         }
 
         private boolean isProcessedEvent(AccessibilityEvent event) {
-            if (mLastProcessedEvent == null) {
+            if (!mHasLastProcessedEvent) {
                 return false;
             }
 
-            if (event.getEventTime() - mLastProcessedEvent.getEventTime() >
-                    CURSOR_MOVEMENT_EVENTS_DELAY) {
-                mLastProcessedEvent.recycle();
-                mLastProcessedEvent = null;
+            if (event.getEventTime() - mLastProcessedEventTime > CURSOR_MOVEMENT_EVENTS_DELAY) {
+                mHasLastProcessedEvent = false;
                 return false;
             }
 
             //noinspection SimplifiableIfStatement
-            if (event.getEventType() == mLastProcessedEvent.getEventType()) {
+            if (event.getEventType() == mLastProcessedEventType) {
                 // if events have the same type they are results of different actions
                 return false;
             }
 
-            return (event.getToIndex() == mLastProcessedEvent.getToIndex()) ||
-                    (event.getFromIndex() == mLastProcessedEvent.getFromIndex());
+            return (event.getToIndex() == mLastProcessedToIndex) ||
+                    (event.getFromIndex() == mLastProcessedFromIndex);
         }
 
         private void processEvent(AccessibilityEvent event, Utterance utterance,
                                   CharSequence text) {
             utterance.addSpoken(text);
-            if (mLastProcessedEvent != null) {
-                mLastProcessedEvent.recycle();
-            }
 
-            mLastProcessedEvent = AccessibilityEvent.obtain(event);
+            mHasLastProcessedEvent = true;
+            mLastProcessedEventType = event.getEventType();
+            mLastProcessedEventTime = event.getEventTime();
+            mLastProcessedFromIndex = event.getFromIndex();
+            mLastProcessedToIndex = event.getToIndex();
         }
 
         private boolean isCharacterTraversal(AccessibilityEvent event) {
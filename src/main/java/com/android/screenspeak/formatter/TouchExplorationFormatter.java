@@ -63,7 +63,7 @@ public final class TouchExplorationFormatter
 
     @Override
     public void initialize(ScreenSpeakService context) {
-        context.addEventListener(this);
+        context.addEventListener(this, AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
         mNodeProcessor = NodeSpeechRuleProcessor.getInstance();
     }
 
@@ -18,7 +18,6 @@ package com.android.screenspeak.menurules;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.os.Build;
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.text.TextUtils;
@@ -33,6 +32,7 @@ import com.google.android.marvin.screenspeak.ScreenSpeakService;
 import com.android.screenspeak.contextmenu.ContextMenuItem;
 import com.android.screenspeak.contextmenu.ContextMenuItemBuilder;
 import com.android.utils.AccessibilityNodeInfoUtils;
+import com.android.utils.PackageManagerUtils;
 import com.android.utils.labeling.CustomLabelManager;
 import com.android.utils.labeling.Label;
 import com.android.utils.labeling.LabelOperationUtils;
@@ -154,15 +154,8 @@ class RuleUnlabeledImage implements NodeMenuRule {
             // likely we'll need to refine the database structure to accommodate
             // these while also allowing the user to modify them through ScreenSpeak
             // settings. For now, we'll simply not allow labeling of such views.
-            boolean isFromKnownApp = false;
-            if (hasParseableId) {
-                try {
-                    mContext.getPackageManager().getPackageInfo(parsedId.first, 0);
-                    isFromKnownApp = true;
-                } catch (NameNotFoundException e) {
-                    // Do nothing.
-                }
-            }
+            final boolean isFromKnownApp = hasParseableId
+                    && PackageManagerUtils.hasPackage(mContext, parsedId.first);
 
             return (hasParseableId && isFromKnownApp);
         }
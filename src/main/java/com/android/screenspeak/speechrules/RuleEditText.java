@@ -22,18 +22,14 @@ import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
 import android.view.accessibility.AccessibilityEvent;
-import android.view.accessibility.AccessibilityWindowInfo;
 import android.widget.EditText;
 
 import com.android.screenspeak.R;
 import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.StringBuilderUtils;
-import com.android.utils.WindowManager;
 import com.android.utils.compat.provider.SettingsCompatUtils;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 
-import java.util.List;
-
 /**
  * Processes editable text fields.
  */
@@ -69,10 +65,7 @@ class RuleEditText implements NodeSpeechRule, NodeHintRule {
             return false;
         }
 
-        WindowManager windowManager = new WindowManager();
-        List<AccessibilityWindowInfo> windows = service.getWindows();
-        windowManager.setWindows(windows);
-        return windowManager.isInputWindowOnScreen();
+        return service.getWindowSnapshotCache().getWindowManager().isInputWindowOnScreen();
     }
 
     // package visibility for tests
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.switchaccess;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single view that draws the perimeters of all highlighted rectangles. Rectangles are added in
+ * groups, each drawn with its own paint. The rectangles and paints are pooled and reused between
+ * scan steps, and only the area covered by the old and new highlights is invalidated.
+ * <p>
+ * Strokes are drawn entirely inside each rectangle, so a highlight never covers anything outside
+ * the bounds it outlines.
+ */
+public class HighlightLayerView extends View {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /* Highlighted rectangles in screen coordinates. Only the first mRectCount are in use. */
+    private Rect[] mRects = new Rect[INITIAL_CAPACITY];
+    private int[] mRectGroups = new int[INITIAL_CAPACITY];
+    private int mRectCount;
+
+    /* Main and (optional) outer paints for each group. Only the first mGroupCount are in use. */
+    private final List<Paint> mMainPaints = new ArrayList<>();
+    private final List<Paint> mOuterPaints = new ArrayList<>();
+    private boolean[] mHasOuterPaint = new boolean[INITIAL_CAPACITY];
+    private int mGroupCount;
+
+    /* The view whose top-left corner is the origin this view draws from */
+    private final View mOriginView;
+
+    /* Screen area that must be redrawn, accumulated until the next invalidate */
+    private final Rect mDirtyRect = new Rect();
+    private final int[] mLocationOnScreen = new int[2];
+    private final RectF mDrawRect = new RectF();
+
+    /**
+     * @param context The context for the view
+     * @param originView The view, usually the parent this view fills, whose location on screen
+     * is the origin for drawing. Highlights are translated by its offset from the screen origin.
+     */
+    public HighlightLayerView(Context context, View originView) {
+        super(context);
+        mOriginView = originView;
+        for (int i = 0; i < INITIAL_CAPACITY; i++) {
+            mRects[i] = new Rect();
+        }
+    }
+
+    /**
+     * Add a group of rectangles to highlight.
+     *
+     * @param rects The rectangles to highlight, in screen coordinates
+     * @param mainPaint The paint for the perimeter of the rectangles. The paint is copied.
+     * @param outerColor The color of a thinner line drawn over the perimeter, or {@code null} to
+     * draw only the main perimeter
+     */
+    public void addHighlightGroup(Iterable<Rect> rects, Paint mainPaint, Integer outerColor) {
+        int group = mGroupCount++;
+        if (group == mMainPaints.size()) {
+            mMainPaints.add(new Paint());
+            mOuterPaints.add(new Paint());
+        }
+        if (group == mHasOuterPaint.length) {
+            boolean[] newHasOuterPaint = new boolean[mHasOuterPaint.length * 2];
+            System.arraycopy(mHasOuterPaint, 0, newHasOuterPaint, 0, mHasOuterPaint.length);
+            mHasOuterPaint = newHasOuterPaint;
+        }
+        mMainPaints.get(group).set(mainPaint);
+        mHasOuterPaint[group] = (outerColor != null);
+        if (outerColor != null) {
+            Paint outerPaint = mOuterPaints.get(group);
+            outerPaint.set(mainPaint);
+            outerPaint.setColor(outerColor);
+            outerPaint.setStrokeWidth(mainPaint.getStrokeWidth() / 2);
+        }
+
+        int groupStart = mRectCount;
+        for (Rect rect : rects) {
+            if (containsRect(rect, groupStart)) {
+                continue;
+            }
+            ensureCapacity(mRectCount + 1);
+            mRects[mRectCount].set(rect);
+            mRectGroups[mRectCount] = group;
+            mRectCount++;
+            mDirtyRect.union(rect);
+        }
+        invalidateDirtyRect();
+    }
+
+    /**
+     * Remove all highlights. The pooled rectangles and paints are retained for reuse.
+     */
+    public void clearHighlights() {
+        for (int i = 0; i < mRectCount; i++) {
+            mDirtyRect.union(mRects[i]);
+        }
+        mRectCount = 0;
+        mGroupCount = 0;
+        invalidateDirtyRect();
+    }
+
+    /**
+     * @return The number of highlighted rectangles
+     */
+    public int getHighlightCount() {
+        return mRectCount;
+    }
+
+    /**
+     * @param index The index of the highlight, less than {@link #getHighlightCount()}
+     * @return The highlighted rectangle, in screen coordinates. The returned rect is owned by
+     * this view and must not be modified.
+     */
+    public Rect getHighlightRect(int index) {
+        return mRects[index];
+    }
+
+    /**
+     * @param index The index of the highlight, less than {@link #getHighlightCount()}
+     * @param outRect The rect to receive the highlighted rectangle in the coordinates this view
+     * draws in, which are offset from screen coordinates by the location of the origin view
+     */
+    public void getHighlightRectInView(int index, Rect outRect) {
+        mOriginView.getLocationOnScreen(mLocationOnScreen);
+        outRect.set(mRects[index]);
+        outRect.offset(-mLocationOnScreen[0], -mLocationOnScreen[1]);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mRectCount == 0) {
+            return;
+        }
+        /* Highlights are in screen coordinates; shift them to match where the view is */
+        mOriginView.getLocationOnScreen(mLocationOnScreen);
+        canvas.save();
+        canvas.translate(-mLocationOnScreen[0], -mLocationOnScreen[1]);
+        for (int i = 0; i < mRectCount; i++) {
+            int group = mRectGroups[i];
+            drawPerimeter(canvas, mRects[i], mMainPaints.get(group));
+            if (mHasOuterPaint[group]) {
+                drawPerimeter(canvas, mRects[i], mOuterPaints.get(group));
+            }
+        }
+        canvas.restore();
+    }
+
+    /* Strokes are centered on the edge, so inset by half the width to keep them inside */
+    private void drawPerimeter(Canvas canvas, Rect rect, Paint paint) {
+        float inset = paint.getStrokeWidth() / 2;
+        mDrawRect.set(rect);
+        mDrawRect.inset(inset, inset);
+        canvas.drawRect(mDrawRect, paint);
+    }
+
+    private boolean containsRect(Rect rect, int start) {
+        for (int i = start; i < mRectCount; i++) {
+            if (mRects[i].equals(rect)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mRects.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mRects.length * 2);
+        Rect[] newRects = new Rect[newCapacity];
+        System.arraycopy(mRects, 0, newRects, 0, mRects.length);
+        for (int i = mRects.length; i < newCapacity; i++) {
+            newRects[i] = new Rect();
+        }
+        int[] newGroups = new int[newCapacity];
+        System.arraycopy(mRectGroups, 0, newGroups, 0, mRectGroups.length);
+        mRects = newRects;
+        mRectGroups = newGroups;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void invalidateDirtyRect() {
+        if (mDirtyRect.isEmpty()) {
+            return;
+        }
+        mOriginView.getLocationOnScreen(mLocationOnScreen);
+        mDirtyRect.offset(-mLocationOnScreen[0], -mLocationOnScreen[1]);
+        invalidate(mDirtyRect);
+        mDirtyRect.setEmpty();
+    }
+}
@@ -45,6 +45,7 @@ public class MultiWindowTreeBuilder implements SharedPreferences.OnSharedPrefere
     private TreeBuilder mBuilderForIMEs;
     private ScreenSpeakOrderNDegreeTreeBuilder mOptionScanTreeBuilder;
     private boolean mOptionScanningEnabled = false;
+    private WindowSubtreeCache mSubtreeCache;
 
     /**
      * @param context A valid context for interacting with the framework
@@ -63,6 +64,20 @@ public class MultiWindowTreeBuilder implements SharedPreferences.OnSharedPrefere
         prefs.registerOnSharedPreferenceChangeListener(this);
     }
 
+    /**
+     * Reuse the nodes of windows whose content has not changed when building option scanning
+     * trees. Without a detector, every window is traversed for every tree.
+     *
+     * @param uiChangeDetector The detector that reports which windows may have changed
+     */
+    public void setUiChangeDetector(UiChangeDetector uiChangeDetector) {
+        if (mSubtreeCache != null) {
+            mSubtreeCache.clear();
+        }
+        mSubtreeCache = new WindowSubtreeCache(uiChangeDetector);
+        mOptionScanTreeBuilder.setSubtreeCache(mSubtreeCache);
+    }
+
     /**
      * Build a tree of nodes from a window list, including global actions
      * @param windowList The list of windows. This list is resorted and elements are removed to
@@ -197,6 +212,10 @@ public class MultiWindowTreeBuilder implements SharedPreferences.OnSharedPrefere
                 mContext.getString(R.string.pref_scanning_methods_default));
 
         mOptionScanningEnabled = TextUtils.equals(scanPref, optionScanKey);
+        if (!mOptionScanningEnabled && (mSubtreeCache != null)) {
+            /* Only option scanning uses the cache, so don't hold on to its nodes */
+            mSubtreeCache.clear();
+        }
         mBuilderForIMEs = mRowColumnTreeBuilder;
         mBuilderForViews = (TextUtils.equals(scanPref, viewLinearImeRowColKey)) ?
                 mLinearScanTreeBuilder : mRowColumnTreeBuilder;
@@ -208,5 +227,8 @@ public class MultiWindowTreeBuilder implements SharedPreferences.OnSharedPrefere
     public void shutdown() {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
         prefs.unregisterOnSharedPreferenceChangeListener(this);
+        if (mSubtreeCache != null) {
+            mSubtreeCache.clear();
+        }
     }
 }
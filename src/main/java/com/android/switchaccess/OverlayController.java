@@ -23,26 +23,19 @@ import android.content.IntentFilter;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.graphics.drawable.Drawable;
-import android.graphics.drawable.LayerDrawable;
-import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.shapes.RectShape;
 import android.os.Handler;
 import android.view.LayoutInflater;
 import android.view.View;
-import android.view.WindowManager;
+import android.view.ViewGroup;
 import android.view.WindowManager;
 import android.widget.Button;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import com.android.screenspeak.R;
 import com.android.utils.widget.SimpleOverlay;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Controller for the Switch Access overlay. The controller handles two operations: it outlines
@@ -54,6 +47,22 @@ public class OverlayController {
 
     private final RelativeLayout mRelativeLayout;
 
+    /* Draws all highlights. Stays in the layout for the lifetime of the controller. */
+    private final HighlightLayerView mHighlightLayerView;
+
+    private final Handler mHandler = new Handler();
+
+    /* Hides the overlay if nothing was drawn on it since it was cleared */
+    private final Runnable mHideIfEmptyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if ((mHighlightLayerView.getHighlightCount() == 0)
+                    && (mRelativeLayout.getChildCount() <= 1)) {
+                mOverlay.hide();
+            }
+        }
+    };
+
     private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -84,6 +93,10 @@ public class OverlayController {
         mOverlay = overlay;
         mOverlay.setContentView(R.layout.switch_access_overlay_layout);
         mRelativeLayout = (RelativeLayout) mOverlay.findViewById(R.id.overlayRelativeLayout);
+        mHighlightLayerView = new HighlightLayerView(mOverlay.getContext(), mRelativeLayout);
+        mHighlightLayerView.setLayoutParams(new RelativeLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        mRelativeLayout.addView(mHighlightLayerView);
         IntentFilter filter = new IntentFilter();
         filter.addAction(Intent.ACTION_CONFIGURATION_CHANGED);
         mOverlay.getContext().registerReceiver(mBroadcastReceiver, filter);
@@ -104,57 +117,24 @@ public class OverlayController {
         });
     }
 
+    /**
+     * Highlight the perimeters of a group of rectangles. Successive calls add further groups,
+     * each drawn with its own paint, until the overlay is cleared.
+     *
+     * @param rects The rectangles to highlight, in screen coordinates
+     * @param highlightPaint The paint to use for this group of rectangles
+     */
     public void highlightPerimeterOfRects(Iterable<Rect> rects, Paint highlightPaint) {
-        final Set<Rect> rectsToHighlight = new HashSet<>();
-        final Paint finalHighlightPaint = new Paint(highlightPaint);
-        for (Rect rect : rects) {
-            rectsToHighlight.add(rect);
-        }
+        mHighlightLayerView.addHighlightGroup(rects, highlightPaint,
+                MAIN_TO_OUTER_HIGHLIGHT_COLOR_MAP.get(highlightPaint.getColor()));
         mOverlay.show();
+    }
 
-        /*
-         * Run the rest of the function in a handler to give the thread a chance to draw the
-         * overlay.
-         */
-        new Handler().post(new Runnable() {
-            @Override
-            public void run() {
-                int[] layoutCoordinates = new int[2];
-                mRelativeLayout.getLocationOnScreen(layoutCoordinates);
-                for (Rect rect : rectsToHighlight) {
-                    ShapeDrawable mainHighlightDrawable = new ShapeDrawable(new RectShape());
-                    mainHighlightDrawable.setIntrinsicWidth(rect.width());
-                    mainHighlightDrawable.setIntrinsicHeight(rect.height());
-                    mainHighlightDrawable.getPaint().set(finalHighlightPaint);
-                    Drawable highlightDrawable = mainHighlightDrawable;
-                    if (MAIN_TO_OUTER_HIGHLIGHT_COLOR_MAP
-                            .containsKey(finalHighlightPaint.getColor())) {
-                        ShapeDrawable outerHighlightDrawable = new ShapeDrawable(new RectShape());
-                        outerHighlightDrawable.setIntrinsicWidth(rect.width());
-                        outerHighlightDrawable.setIntrinsicHeight(rect.height());
-                        Paint outerHighlightPaint = new Paint(finalHighlightPaint);
-                        outerHighlightPaint.setColor(MAIN_TO_OUTER_HIGHLIGHT_COLOR_MAP
-                                .get(finalHighlightPaint.getColor()));
-                        outerHighlightPaint
-                                .setStrokeWidth(finalHighlightPaint.getStrokeWidth() / 2);
-                        outerHighlightDrawable.getPaint().set(outerHighlightPaint);
-                        Drawable[] layers = {mainHighlightDrawable, outerHighlightDrawable};
-                        highlightDrawable = new LayerDrawable(layers);
-                    }
-
-                    ImageView imageView = new ImageView(mOverlay.getContext());
-                    imageView.setBackground(highlightDrawable);
-
-                    // Align image with node we're highlighting
-                    final RelativeLayout.LayoutParams layoutParams =
-                            new RelativeLayout.LayoutParams(rect.width(), rect.height());
-                    layoutParams.leftMargin = rect.left - layoutCoordinates[0];
-                    layoutParams.topMargin = rect.top - layoutCoordinates[1];
-                    imageView.setLayoutParams(layoutParams);
-                    mRelativeLayout.addView(imageView);
-                }
-            }
-        });
+    /**
+     * @return The view that draws the highlighted rectangles
+     */
+    public HighlightLayerView getHighlightLayerView() {
+        return mHighlightLayerView;
     }
 
     /**
@@ -166,17 +146,27 @@ public class OverlayController {
     }
 
     /**
-     * Clear focus highlighting
+     * Clear focus highlighting. The highlight layer stays attached, so only the area of the old
+     * highlights is redrawn. The overlay is hidden later if nothing is drawn on it in the
+     * meantime, so a scan step that clears and redraws doesn't hide and show the window.
      */
     public void clearOverlay() {
-        mRelativeLayout.removeAllViews();
-        mOverlay.hide();
+        mHighlightLayerView.clearHighlights();
+        for (int i = mRelativeLayout.getChildCount() - 1; i >= 0; i--) {
+            View child = mRelativeLayout.getChildAt(i);
+            if (child != mHighlightLayerView) {
+                mRelativeLayout.removeView(child);
+            }
+        }
+        mHandler.removeCallbacks(mHideIfEmptyRunnable);
+        mHandler.post(mHideIfEmptyRunnable);
     }
 
     /**
      * Shut down nicely
      */
     public void shutdown() {
+        mHandler.removeCallbacks(mHideIfEmptyRunnable);
         mOverlay.getContext().unregisterReceiver(mBroadcastReceiver);
         mOverlay.hide();
     }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.switchaccess;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index that groups rectangles into rows and columns for row-column scanning. Rows are
+ * groups of rectangles that share both their top and bottom edges. The index keeps its
+ * coordinates in primitive arrays that are reused between updates, and skips the sort entirely
+ * when the rectangles have not moved since the previous update.
+ * <p>
+ * Rows are ordered bottom-up (descending top edge, then ascending bottom edge), and the entries
+ * within a row are ordered right-to-left. That is the order in which the option scanning tree is
+ * built, since trees are assembled from their last element to their first.
+ */
+public class RowColumnIndex {
+    private static final int INITIAL_CAPACITY = 32;
+
+    /* Coordinates of the rectangles, in the order they were added */
+    private int[] mTops = new int[INITIAL_CAPACITY];
+    private int[] mBottoms = new int[INITIAL_CAPACITY];
+    private int[] mLefts = new int[INITIAL_CAPACITY];
+    private int mCount;
+
+    /* Coordinates from the last time the index was sorted, used to detect changes */
+    private int[] mIndexedTops = new int[INITIAL_CAPACITY];
+    private int[] mIndexedBottoms = new int[INITIAL_CAPACITY];
+    private int[] mIndexedLefts = new int[INITIAL_CAPACITY];
+    private int mIndexedCount = -1;
+
+    /* Positions of the rectangles in traversal order, and the start of each row within it */
+    private int[] mOrder = new int[INITIAL_CAPACITY];
+    private int[] mRowStarts = new int[INITIAL_CAPACITY + 1];
+    private int mRowCount;
+
+    /**
+     * Discard the rectangles added since the last call to {@link #update()}. The previously
+     * computed rows are kept so they can be reused if the same rectangles are added again.
+     */
+    public void clear() {
+        mCount = 0;
+    }
+
+    /**
+     * Add a rectangle to the index.
+     *
+     * @return The position of the rectangle, which is used to identify it in {@link #getEntry}
+     */
+    public int add(int top, int bottom, int left) {
+        if (mCount == mTops.length) {
+            int newCapacity = mCount * 2;
+            mTops = Arrays.copyOf(mTops, newCapacity);
+            mBottoms = Arrays.copyOf(mBottoms, newCapacity);
+            mLefts = Arrays.copyOf(mLefts, newCapacity);
+        }
+        mTops[mCount] = top;
+        mBottoms[mCount] = bottom;
+        mLefts[mCount] = left;
+        return mCount++;
+    }
+
+    /**
+     * Group the rectangles added since the last {@link #clear()} into rows and columns.
+     *
+     * @return {@code true} if the rows had to be recomputed, {@code false} if the rectangles were
+     * unchanged and the previous rows were reused.
+     */
+    public boolean update() {
+        if (!hasChangedSinceLastUpdate()) {
+            return false;
+        }
+
+        ensureIndexCapacity(mCount);
+        System.arraycopy(mTops, 0, mIndexedTops, 0, mCount);
+        System.arraycopy(mBottoms, 0, mIndexedBottoms, 0, mCount);
+        System.arraycopy(mLefts, 0, mIndexedLefts, 0, mCount);
+        mIndexedCount = mCount;
+
+        for (int i = 0; i < mCount; i++) {
+            mOrder[i] = i;
+        }
+        sortOrder();
+
+        /* Sweep over the sorted edges, starting a new row whenever the top or bottom changes */
+        mRowCount = 0;
+        for (int i = 0; i < mCount; i++) {
+            if ((i == 0) || !isSameRow(mOrder[i - 1], mOrder[i])) {
+                mRowStarts[mRowCount++] = i;
+            }
+        }
+        mRowStarts[mRowCount] = mCount;
+        return true;
+    }
+
+    /**
+     * @return The number of rows found by the last {@link #update()}
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * @return The number of entries in the specified row
+     */
+    public int getRowSize(int row) {
+        return mRowStarts[row + 1] - mRowStarts[row];
+    }
+
+    /**
+     * @param row The row containing the entry
+     * @param column The index of the entry within its row
+     * @return The position that was returned by {@link #add} for the entry
+     */
+    public int getEntry(int row, int column) {
+        return mOrder[mRowStarts[row] + column];
+    }
+
+    private boolean hasChangedSinceLastUpdate() {
+        if (mCount != mIndexedCount) {
+            return true;
+        }
+        for (int i = 0; i < mCount; i++) {
+            if ((mTops[i] != mIndexedTops[i]) || (mBottoms[i] != mIndexedBottoms[i])
+                    || (mLefts[i] != mIndexedLefts[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureIndexCapacity(int capacity) {
+        if (mIndexedTops.length >= capacity) {
+            return;
+        }
+        mIndexedTops = new int[mTops.length];
+        mIndexedBottoms = new int[mTops.length];
+        mIndexedLefts = new int[mTops.length];
+        mOrder = new int[mTops.length];
+        mRowStarts = new int[mTops.length + 1];
+    }
+
+    private boolean isSameRow(int position0, int position1) {
+        return (mIndexedTops[position0] == mIndexedTops[position1])
+                && (mIndexedBottoms[position0] == mIndexedBottoms[position1]);
+    }
+
+    /*
+     * Shell sort over the position array. The input usually arrives nearly sorted in traversal
+     * order, which this handles well, and it needs no scratch space.
+     */
+    private void sortOrder() {
+        int gap = 1;
+        while (gap < mCount / 3) {
+            gap = 3 * gap + 1;
+        }
+        for (; gap > 0; gap /= 3) {
+            for (int i = gap; i < mCount; i++) {
+                int position = mOrder[i];
+                int j = i;
+                while ((j >= gap) && (compare(mOrder[j - gap], position) > 0)) {
+                    mOrder[j] = mOrder[j - gap];
+                    j -= gap;
+                }
+                mOrder[j] = position;
+            }
+        }
+    }
+
+    private int compare(int position0, int position1) {
+        int top0 = mIndexedTops[position0];
+        int top1 = mIndexedTops[position1];
+        if (top0 != top1) {
+            /* Want higher y coords to be traversed later */
+            return (top0 > top1) ? -1 : 1;
+        }
+        int bottom0 = mIndexedBottoms[position0];
+        int bottom1 = mIndexedBottoms[position1];
+        if (bottom0 != bottom1) {
+            /* Want larger views to be traversed earlier */
+            return (bottom0 < bottom1) ? -1 : 1;
+        }
+        int left0 = mIndexedLefts[position0];
+        int left1 = mIndexedLefts[position1];
+        if (left0 != left1) {
+            /* Build rows from the right so the leftmost entry ends up first */
+            return (left0 > left1) ? -1 : 1;
+        }
+        /* Keep identical rectangles in the order they were added */
+        return position0 - position1;
+    }
+}
@@ -19,11 +19,10 @@ package com.android.switchaccess;
 import android.annotation.TargetApi;
 import android.graphics.Rect;
 import android.os.Build;
+import android.util.SparseArray;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 
 /**
@@ -37,40 +36,16 @@ public class RowColumnTreeBuilder  implements TreeBuilder {
     /* Any rows shorter than this should just be linearly scanned */
     private static int MIN_NODES_PER_ROW = 3;
 
-    private static final Comparator<RowBounds> ROW_BOUNDS_COMPARATOR = new Comparator<RowBounds>() {
-        @Override
-        public int compare(RowBounds rowBounds, RowBounds t1) {
-            if (rowBounds.mTop != t1.mTop) {
-                /* Want higher y coords to be traversed later */
-                return  t1.mTop - rowBounds.mTop;
-            }
-            /* Want larger views to be traversed earlier */
-            return rowBounds.mBottom - t1.mBottom;
-        }
-    };
+    /* Bound on the number of windows whose row index is retained */
+    private static final int MAX_CACHED_WINDOWS = 8;
 
-    private static class RowBounds {
-        private final int mTop, mBottom;
+    /* Row and column indices, cached per window so unchanged layouts are not re-sorted */
+    private final SparseArray<RowColumnIndex> mIndexByWindowId = new SparseArray<>();
 
-        public RowBounds(int top, int bottom) {
-            mTop = top;
-            mBottom = bottom;
-        }
+    /* Nodes by their position in the row index. Reused between builds. */
+    private final List<SwitchAccessNodeCompat> mIndexedNodes = new ArrayList<>();
 
-        @Override
-        public int hashCode() {
-            /* Not the most general hash, but sufficient for reasonable screen sizes */
-            return (mTop << 16) + mBottom;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (!(o instanceof RowBounds)) {
-                return false;
-            }
-            return (((RowBounds) o).mTop == mTop) && (((RowBounds) o).mBottom == mBottom);
-        }
-    }
+    private final Rect mBoundsInScreen = new Rect();
 
     /**
      * Build a tree with all clickable nodes in the tree anchored at root.
@@ -85,57 +60,62 @@ public class RowColumnTreeBuilder  implements TreeBuilder {
     public OptionScanNode buildTreeFromNodeTree(SwitchAccessNodeCompat root,
             OptionScanNode treeToBuildOn) {
         OptionScanNode tree = (treeToBuildOn != null) ? treeToBuildOn : new ClearFocusNode();
-        SortedMap<RowBounds, SortedMap<Integer, SwitchAccessNodeCompat>> nodesByXYCoordinate =
-                getMapOfNodesByXYCoordinate(root);
-        for (SortedMap<Integer, SwitchAccessNodeCompat> nodesInThisRow
-                : nodesByXYCoordinate.values()) {
-            if (nodesInThisRow.size() < MIN_NODES_PER_ROW) {
-                for (SwitchAccessNodeCompat node : nodesInThisRow.values()) {
+        RowColumnIndex index = getIndexForWindow(root.getWindowId());
+        indexNodes(root, index);
+        for (int row = 0; row < index.getRowCount(); row++) {
+            int rowSize = index.getRowSize(row);
+            if (rowSize < MIN_NODES_PER_ROW) {
+                for (int column = 0; column < rowSize; column++) {
+                    SwitchAccessNodeCompat node = mIndexedNodes.get(index.getEntry(row, column));
                     tree = TreeBuilderUtils.addCompatToTree(node, tree);
                     node.recycle();
                 }
             } else {
                 OptionScanNode rowTree = new ClearFocusNode();
-                for (SwitchAccessNodeCompat node : nodesInThisRow.values()) {
+                for (int column = 0; column < rowSize; column++) {
+                    SwitchAccessNodeCompat node = mIndexedNodes.get(index.getEntry(row, column));
                     rowTree = TreeBuilderUtils.addCompatToTree(node, rowTree);
                     node.recycle();
                 }
                 tree = new OptionScanSelectionNode(rowTree, tree);
             }
         }
+        mIndexedNodes.clear();
         return tree;
     }
 
-    private static SortedMap<RowBounds, SortedMap<Integer, SwitchAccessNodeCompat>>
-            getMapOfNodesByXYCoordinate(SwitchAccessNodeCompat root) {
-        SortedMap<RowBounds, SortedMap<Integer, SwitchAccessNodeCompat>> nodesByXYCoordinate =
-                new TreeMap<>(ROW_BOUNDS_COMPARATOR);
+    private RowColumnIndex getIndexForWindow(int windowId) {
+        RowColumnIndex index = mIndexByWindowId.get(windowId);
+        if (index == null) {
+            /* Window ids are not reused, so drop indices for windows that have gone away */
+            if (mIndexByWindowId.size() >= MAX_CACHED_WINDOWS) {
+                mIndexByWindowId.clear();
+            }
+            index = new RowColumnIndex();
+            mIndexByWindowId.put(windowId, index);
+        }
+        return index;
+    }
+
+    /*
+     * Add every node that will appear in the tree to the index, and group them into rows. Nodes
+     * that won't appear in the tree are recycled; the rest are left in mIndexedNodes.
+     */
+    private void indexNodes(SwitchAccessNodeCompat root, RowColumnIndex index) {
+        index.clear();
+        mIndexedNodes.clear();
         List<SwitchAccessNodeCompat> talkBackOrderList =
                 TreeBuilderUtils.getNodesInScreenSpeakOrder(root);
-        Rect boundsInScreen = new Rect();
         for (SwitchAccessNodeCompat node : talkBackOrderList) {
-            /* Only add the node to list if it will be added to the tree */
-            OptionScanNode treeWithCurrentNode = TreeBuilderUtils.addCompatToTree(node,
-                    new ClearFocusNode());
-            if (treeWithCurrentNode instanceof OptionScanSelectionNode) {
-                node.getVisibleBoundsInScreen(boundsInScreen);
-                /*
-                 * Use negative value so traversal will start with the last elements, so the first
-                 * ones end up at the top of the tree.
-                 */
-                RowBounds rowBounds = new RowBounds(boundsInScreen.top, boundsInScreen.bottom);
-                SortedMap<Integer, SwitchAccessNodeCompat> mapOfNodes =
-                        nodesByXYCoordinate.get(rowBounds);
-                if (mapOfNodes == null) {
-                    mapOfNodes = new TreeMap<>();
-                    nodesByXYCoordinate.put(rowBounds, mapOfNodes);
-                }
-                mapOfNodes.put(-boundsInScreen.left, node);
+            /* Only add the node to the index if it will be added to the tree */
+            if (TreeBuilderUtils.willAddCompatToTree(node)) {
+                node.getVisibleBoundsInScreen(mBoundsInScreen);
+                index.add(mBoundsInScreen.top, mBoundsInScreen.bottom, mBoundsInScreen.left);
+                mIndexedNodes.add(node);
             } else {
                 node.recycle();
             }
-            treeWithCurrentNode.recycle();
         }
-        return nodesByXYCoordinate;
+        index.update();
     }
 }
@@ -46,10 +46,23 @@ public class ScreenSpeakOrderNDegreeTreeBuilder {
 
     private int mDegree;
 
+    /* Cache of each window's nodes, or null to traverse every window for every tree */
+    private WindowSubtreeCache mSubtreeCache;
+
     public ScreenSpeakOrderNDegreeTreeBuilder(Context context) {
         reloadPreferences(context);
     }
 
+    /**
+     * Set a cache to take each window's nodes from, so windows that have not changed are not
+     * traversed again.
+     *
+     * @param subtreeCache The cache to use, or {@code null} to traverse every window
+     */
+    public void setSubtreeCache(WindowSubtreeCache subtreeCache) {
+        mSubtreeCache = subtreeCache;
+    }
+
     /**
      * Build an n-ary tree from a window list. Construct a list of all the nodes as an intermediate
      * state and then construct the n-ary tree from this list.
@@ -71,12 +84,21 @@ public class ScreenSpeakOrderNDegreeTreeBuilder {
         }
         List<OptionScanNode> treeNodes = new ArrayList<>();
         for (SwitchAccessWindowInfo window : windowList) {
+            if (mSubtreeCache != null) {
+                for (SwitchAccessNodeCompat node : mSubtreeCache.getNodes(window)) {
+                    addActionsForNode(node, treeNodes);
+                }
+                continue;
+            }
             SwitchAccessNodeCompat windowRoot = window.getRoot();
             if (windowRoot != null) {
                 treeNodes.addAll(getNodeListFromNodeTree(windowRoot));
                 windowRoot.recycle();
             }
         }
+        if (mSubtreeCache != null) {
+            mSubtreeCache.retainWindows(windowList);
+        }
         return buildTreeFromNodeList(treeNodes, OPTION_SCAN_SELECTION_NODE, contextMenuTree);
     }
 
@@ -110,18 +132,28 @@ public class ScreenSpeakOrderNDegreeTreeBuilder {
         List<SwitchAccessNodeCompat> talkBackOrderList =
                 TreeBuilderUtils.getNodesInScreenSpeakOrder(root);
         for (SwitchAccessNodeCompat node : talkBackOrderList) {
-            List<AccessibilityNodeActionNode> actionNodes =
-                    TreeBuilderUtils.getCompatActionNodes(node);
+            addActionsForNode(node, treeNodes);
             node.recycle();
-            if (actionNodes.size() == 1) {
-                treeNodes.add(actionNodes.get(0));
-            } else if (actionNodes.size() > 1) {
-                treeNodes.add(buildContextMenuTree(actionNodes));
-            }
         }
         return treeNodes;
     }
 
+    /**
+     * Adds an option for the actions of a node to a list. If the node has more than one action,
+     * a tree representing a context menu with all the actions is added instead.
+     *
+     * @param node The node whose actions should be added. The node is copied, not consumed.
+     * @param treeNodes The list to add the option to
+     */
+    private void addActionsForNode(SwitchAccessNodeCompat node, List<OptionScanNode> treeNodes) {
+        List<AccessibilityNodeActionNode> actionNodes = TreeBuilderUtils.getCompatActionNodes(node);
+        if (actionNodes.size() == 1) {
+            treeNodes.add(actionNodes.get(0));
+        } else if (actionNodes.size() > 1) {
+            treeNodes.add(buildContextMenuTree(actionNodes));
+        }
+    }
+
     /**
      * Builds an n-ary tree from a list of nodes to be included in the tree.
      *
@@ -30,6 +30,8 @@ import android.util.Log;
 import android.view.KeyEvent;
 import android.view.accessibility.AccessibilityEvent;
 import com.android.utils.LogUtils;
+import com.android.utils.SpeakingNodeCache;
+import com.android.utils.WindowSnapshotCache;
 import com.android.utils.widget.SimpleOverlay;
 import com.google.android.marvin.screenspeak.ScreenSpeakService;
 
@@ -58,6 +60,7 @@ public class SwitchAccessService extends AccessibilityService
     private KeyboardEventManager mKeyboardEventManager;
     private MultiWindowTreeBuilder mMultiWindowTreeBuilder;
     private ScreenSpeakOrderNDegreeTreeBuilder mScreenSpeakOrderNDegreeTreeBuilder;
+    private final WindowSnapshotCache mWindowSnapshotCache = new WindowSnapshotCache(this);
 
     @Override
     public void onCreate() {
@@ -83,11 +86,14 @@ public class SwitchAccessService extends AccessibilityService
         mOptionManager.shutdown();
         mOverlayController.shutdown();
         mMultiWindowTreeBuilder.shutdown();
+        SpeakingNodeCache.getInstance().clear();
         sInstance = null;
     }
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
+        mWindowSnapshotCache.onAccessibilityEvent(event);
+        SpeakingNodeCache.getInstance().onAccessibilityEvent(event);
         mEventProcessor.onAccessibilityEvent(event);
     }
 
@@ -134,6 +140,7 @@ public class SwitchAccessService extends AccessibilityService
         mKeyboardEventManager.reloadPreferences(this);
         mActionProcessor = new ActionProcessor(this);
         mEventProcessor = new UiChangeDetector(mActionProcessor);
+        mMultiWindowTreeBuilder.setUiChangeDetector(mEventProcessor);
     }
 
     @Override
@@ -143,11 +150,13 @@ public class SwitchAccessService extends AccessibilityService
             /*
              * This is inefficient but is needed when we pull down the notification shade.
              * It also only works because the key event handling is delayed to see if the
-             * UI needs to stabilize.
+             * UI needs to stabilize. The window change events may not have arrived yet, so the
+             * windows are fetched again.
              * TODO(pweaver) Refactor so we only re-index immediately after events if we're scanning
              */
-            mOptionManager.clearFocusIfNewTree(
-                    mMultiWindowTreeBuilder.buildTreeFromWindowList(getWindows(), this));
+            mWindowSnapshotCache.invalidate();
+            mOptionManager.clearFocusIfNewTree(mMultiWindowTreeBuilder.buildTreeFromWindowList(
+                    mWindowSnapshotCache.getWindows(), this));
         }
         ScreenSpeakService talkBackService = ScreenSpeakService.getInstance();
         if (talkBackService != null) {
@@ -165,8 +174,8 @@ public class SwitchAccessService extends AccessibilityService
 
     @Override
     public void onUiChangedAndIsNowStable() {
-        mOptionManager.clearFocusIfNewTree(
-                mMultiWindowTreeBuilder.buildTreeFromWindowList(getWindows(), this));
+        mOptionManager.clearFocusIfNewTree(mMultiWindowTreeBuilder.buildTreeFromWindowList(
+                mWindowSnapshotCache.getWindows(), this));
     }
 
     public OptionManager getOptionManager() {
@@ -72,6 +72,13 @@ public class SwitchAccessWindowInfo {
                 ? null : new SwitchAccessNodeCompat((Object) root, mListOfWindowsAbove);
     }
 
+    /**
+     * @return The ID of the window
+     */
+    public int getId() {
+        return mAccessibilityWindowInfo.getId();
+    }
+
     /**
      * @return The type of the window. See {@link AccessibilityWindowInfo}
      */
@@ -20,6 +20,7 @@ import android.graphics.Rect;
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.NodeFilter;
+import com.android.utils.SpeakingNodeCache;
 import com.android.utils.traversal.OrderedTraversalController;
 
 import java.io.PrintStream;
@@ -118,6 +119,7 @@ public class TreeBuilderUtils {
             SwitchAccessNodeCompat root) {
         LinkedList<SwitchAccessNodeCompat> outList = new LinkedList<>();
         OrderedTraversalController traversalController = new OrderedTraversalController();
+        traversalController.setSpeakNodesCache(SpeakingNodeCache.getInstance());
         traversalController.initOrder(root);
         AccessibilityNodeInfoCompat node = traversalController.findFirst();
         while (node != null) {
@@ -128,6 +130,17 @@ public class TreeBuilderUtils {
         return outList;
     }
 
+    /**
+     * Check whether {@link #addCompatToTree} would add anything to the tree for a node, without
+     * building any option scan nodes.
+     *
+     * @param compat The node to check
+     * @return {@code true} if the node is visible and has at least one supported action
+     */
+    public static boolean willAddCompatToTree(SwitchAccessNodeCompat compat) {
+        return compat.isVisibleToUser() && nodeHasSupportedAction(compat);
+    }
+
     private static boolean nodeHasSupportedAction(SwitchAccessNodeCompat node) {
         List<AccessibilityNodeInfoCompat.AccessibilityActionCompat> actions = node.getActionList();
         for (AccessibilityNodeInfoCompat.AccessibilityActionCompat action : actions) {
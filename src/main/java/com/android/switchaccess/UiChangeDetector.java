@@ -18,16 +18,28 @@ package com.android.switchaccess;
 
 import android.annotation.TargetApi;
 import android.os.Build;
+import android.util.SparseIntArray;
 import android.view.accessibility.AccessibilityEvent;
 import com.android.utils.AccessibilityEventListener;
 
 /**
- * Class to detect possible changes to the UI based on AccessibilityEvents
+ * Class to detect possible changes to the UI based on AccessibilityEvents. It also keeps a
+ * content generation for each window, which advances whenever an event suggests that the
+ * window's nodes may have changed.
  */
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
 public class UiChangeDetector implements AccessibilityEventListener {
     PossibleUiChangeListener mListener;
 
+    /* Advanced every time any window's content may have changed */
+    private int mGeneration;
+
+    /* The generation at which the set of windows last changed */
+    private int mWindowsGeneration;
+
+    /* The generation at which each window's content last changed, keyed on window ID */
+    private final SparseIntArray mWindowGenerations = new SparseIntArray();
+
     public UiChangeDetector(PossibleUiChangeListener listener) {
         mListener = listener;
     }
@@ -38,6 +50,7 @@ public class UiChangeDetector implements AccessibilityEventListener {
             return;
         }
         int eventType = event.getEventType();
+        updateContentGenerations(event);
         boolean willClearFocus = (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED)
                 || (eventType == AccessibilityEvent.TYPE_WINDOWS_CHANGED)
                 || (eventType == AccessibilityEvent.TYPE_VIEW_SCROLLED);
@@ -55,6 +68,46 @@ public class UiChangeDetector implements AccessibilityEventListener {
         }
     }
 
+    /**
+     * Get the content generation of a window. The generation changes whenever the window's
+     * nodes or the set of windows may have changed, so anything built from a window's nodes
+     * remains valid while its generation is unchanged.
+     *
+     * @param windowId The ID of the window
+     * @return The current content generation of the window
+     */
+    public int getContentGeneration(int windowId) {
+        return Math.max(mWindowsGeneration, mWindowGenerations.get(windowId, 0));
+    }
+
+    private void updateContentGenerations(AccessibilityEvent event) {
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+            case AccessibilityEvent.TYPE_VIEW_SCROLLED:
+                /*
+                 * Text changes can move or resize nodes, so unlike the listener, generations
+                 * advance for every content change.
+                 */
+                int windowId = event.getWindowId();
+                if (windowId >= 0) {
+                    mWindowGenerations.put(windowId, ++mGeneration);
+                } else {
+                    /* Without a window, assume any window may have changed */
+                    advanceAllWindows();
+                }
+                break;
+            case AccessibilityEvent.TYPE_WINDOWS_CHANGED:
+                advanceAllWindows();
+                break;
+        }
+    }
+
+    private void advanceAllWindows() {
+        mWindowsGeneration = ++mGeneration;
+        mWindowGenerations.clear();
+    }
+
     public interface PossibleUiChangeListener {
         void onPossibleChangeToUi();
     }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.switchaccess;
+
+import android.annotation.TargetApi;
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cache of the nodes each window contributes to an option scanning tree, keyed on window ID.
+ * Traversing a window in ScreenSpeak order is the expensive part of building a tree, so windows
+ * whose content generation, as reported by {@link UiChangeDetector}, has not changed since they
+ * were last traversed reuse their nodes. Only windows that changed are traversed again.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class WindowSubtreeCache {
+    private final UiChangeDetector mUiChangeDetector;
+
+    /* Cached nodes for each window, keyed on window ID */
+    private final SparseArray<WindowNodes> mWindowNodes = new SparseArray<>();
+
+    /**
+     * @param uiChangeDetector The detector that reports the content generation of each window
+     */
+    public WindowSubtreeCache(UiChangeDetector uiChangeDetector) {
+        mUiChangeDetector = uiChangeDetector;
+    }
+
+    /**
+     * Get the visible nodes with supported actions in a window, in ScreenSpeak order. The window
+     * is only traversed if its content changed since the nodes were cached.
+     *
+     * @param window The window whose nodes to get
+     * @return The nodes in the window. The nodes are owned by the cache and must not be recycled
+     * or modified by the caller.
+     */
+    public List<SwitchAccessNodeCompat> getNodes(SwitchAccessWindowInfo window) {
+        final int windowId = window.getId();
+        final int generation = mUiChangeDetector.getContentGeneration(windowId);
+        WindowNodes windowNodes = mWindowNodes.get(windowId);
+        if ((windowNodes != null) && (windowNodes.mGeneration == generation)) {
+            return windowNodes.mNodes;
+        }
+
+        if (windowNodes != null) {
+            windowNodes.recycle();
+            mWindowNodes.remove(windowId);
+        }
+
+        SwitchAccessNodeCompat windowRoot = window.getRoot();
+        if (windowRoot == null) {
+            /* Don't cache windows that have no content yet */
+            return Collections.emptyList();
+        }
+
+        windowNodes = new WindowNodes(generation, getActionableNodes(windowRoot));
+        windowRoot.recycle();
+        mWindowNodes.put(windowId, windowNodes);
+        return windowNodes.mNodes;
+    }
+
+    /**
+     * Remove the cached nodes of windows that are not in a list.
+     *
+     * @param windowList The windows whose nodes should be kept
+     */
+    public void retainWindows(List<SwitchAccessWindowInfo> windowList) {
+        SparseBooleanArray windowIds = new SparseBooleanArray(windowList.size());
+        for (SwitchAccessWindowInfo window : windowList) {
+            windowIds.put(window.getId(), true);
+        }
+
+        for (int i = mWindowNodes.size() - 1; i >= 0; i--) {
+            if (!windowIds.get(mWindowNodes.keyAt(i))) {
+                mWindowNodes.valueAt(i).recycle();
+                mWindowNodes.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Remove and recycle all cached nodes.
+     */
+    public void clear() {
+        for (int i = 0; i < mWindowNodes.size(); i++) {
+            mWindowNodes.valueAt(i).recycle();
+        }
+        mWindowNodes.clear();
+    }
+
+    private static List<SwitchAccessNodeCompat> getActionableNodes(SwitchAccessNodeCompat root) {
+        List<SwitchAccessNodeCompat> nodes = new ArrayList<>();
+        Rect visibleBounds = new Rect();
+        for (SwitchAccessNodeCompat node : TreeBuilderUtils.getNodesInScreenSpeakOrder(root)) {
+            if (TreeBuilderUtils.willAddCompatToTree(node)) {
+                /* Compute visibility now, so copies made for each tree don't repeat it */
+                node.getVisibleBoundsInScreen(visibleBounds);
+                nodes.add(node);
+            } else {
+                node.recycle();
+            }
+        }
+        return Collections.unmodifiableList(nodes);
+    }
+
+    private static class WindowNodes {
+        final int mGeneration;
+        final List<SwitchAccessNodeCompat> mNodes;
+
+        WindowNodes(int generation, List<SwitchAccessNodeCompat> nodes) {
+            mGeneration = generation;
+            mNodes = nodes;
+        }
+
+        void recycle() {
+            for (SwitchAccessNodeCompat node : mNodes) {
+                node.recycle();
+            }
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.android.utils;
 
+import android.annotation.TargetApi;
+import android.os.Build;
 import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
 import android.view.accessibility.AccessibilityEvent;
@@ -84,4 +86,28 @@ public class AccessibilityEventUtils {
         return aggregator;
     }
 
+    /**
+     * Determines if a {@link AccessibilityEvent#TYPE_WINDOW_CONTENT_CHANGED}
+     * event only reports changes to the text or content description of its
+     * source, rather than to the view hierarchy. Before KitKat, events don't
+     * report what changed, so this always returns {@code false}.
+     *
+     * @param event The event to evaluate
+     * @return {@code true} if only the text or content description changed
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static boolean isNodeOnlyContentChange(AccessibilityEvent event) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return false;
+        }
+
+        int changeTypes = event.getContentChangeTypes();
+        if (changeTypes == 0) {
+            return false;
+        }
+
+        changeTypes &= ~AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT;
+        changeTypes &= ~AccessibilityEvent.CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION;
+        return (changeTypes == 0);
+    }
 }
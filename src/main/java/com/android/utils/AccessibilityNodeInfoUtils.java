@@ -21,6 +21,8 @@ import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat.AccessibilityActionCompat;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityRecord;
 import android.webkit.WebView;
 import android.widget.AbsListView;
 import android.widget.AbsSpinner;
@@ -34,12 +36,11 @@ import com.android.utils.labeling.Label;
 import com.android.utils.traversal.NodeFocusFinder;
 import com.android.utils.traversal.TraversalStrategy;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -63,6 +64,17 @@ public class AccessibilityNodeInfoUtils {
     private static final Class<?> CLASS_TOUCHWIZ_TWABSLISTVIEW = CompatUtils.getClass(
             "com.sec.android.touchwiz.widget.TwAbsListView");
 
+    /** Hidden method that returns the source node id of a node. */
+    private static final Method METHOD_getSourceNodeId = CompatUtils.getMethod(
+            AccessibilityNodeInfo.class, "getSourceNodeId");
+
+    /** Hidden method that returns the source node id of an event or record. */
+    private static final Method METHOD_getRecordSourceNodeId = CompatUtils.getMethod(
+            AccessibilityRecord.class, "getSourceNodeId");
+
+    /** Source node id returned when the real one can't be read. */
+    public static final long UNKNOWN_SOURCE_NODE_ID = -1;
+
     private static final String CLASS_RECYCLER_VIEW_CLASS_NAME =
             "android.support.v7.widget.RecyclerView";
 
@@ -75,6 +87,12 @@ public class AccessibilityNodeInfoUtils {
 
     private static final int SYSTEM_ACTION_MAX = 0x01FFFFFF;
 
+    /** Maximum number of nodes visited by {@link #searchFromBfs}. */
+    private static final int BFS_MAX_NODES = 2000;
+
+    /** Search reused by {@link #searchFromBfs}, or {@code null} while in use. */
+    private static NodeBfsSearch sBfsSearch = new NodeBfsSearch().setMaxNodes(BFS_MAX_NODES);
+
     /**
      * Filter for scrollable items. One of the following must be true:
      * <ul>
@@ -276,7 +294,7 @@ public class AccessibilityNodeInfoUtils {
     }
 
     private static boolean isAccessibilityFocusableInternal(AccessibilityNodeInfoCompat node,
-                                    Map<AccessibilityNodeInfoCompat, Boolean> speakingNodeCache,
+                                    SpeakingNodeCache speakingNodeCache,
                                     Set<AccessibilityNodeInfoCompat> visitedNodes) {
         if (node == null) {
             return false;
@@ -308,8 +326,16 @@ public class AccessibilityNodeInfoUtils {
         return shouldFocusNode(node, null);
     }
 
+    /**
+     * Returns whether a node should receive accessibility focus from
+     * navigation, reusing speaking node results from a cache.
+     *
+     * @param node The node to check.
+     * @param speakingNodeCache (Optional) Cache of speaking node results,
+     *            usually {@link SpeakingNodeCache#getInstance()}.
+     */
     public static boolean shouldFocusNode(final AccessibilityNodeInfoCompat node,
-                              final Map<AccessibilityNodeInfoCompat, Boolean> speakingNodeCache) {
+                              final SpeakingNodeCache speakingNodeCache) {
         if (node == null) {
             return false;
         }
@@ -382,10 +408,13 @@ public class AccessibilityNodeInfoUtils {
     }
 
     private static boolean isSpeakingNode(AccessibilityNodeInfoCompat node,
-                                      Map<AccessibilityNodeInfoCompat, Boolean> speakingNodeCache,
+                                      SpeakingNodeCache speakingNodeCache,
                                       Set<AccessibilityNodeInfoCompat> visitedNodes) {
-        if (speakingNodeCache != null && speakingNodeCache.containsKey(node)) {
-            return speakingNodeCache.get(node);
+        if (speakingNodeCache != null) {
+            final Boolean cached = speakingNodeCache.get(node);
+            if (cached != null) {
+                return cached;
+            }
         }
 
         boolean result = false;
@@ -416,7 +445,7 @@ public class AccessibilityNodeInfoUtils {
     }
 
     private static boolean hasNonActionableSpeakingChildren(AccessibilityNodeInfoCompat node,
-                                    Map<AccessibilityNodeInfoCompat, Boolean> speakingNodeCache,
+                                    SpeakingNodeCache speakingNodeCache,
                                     Set<AccessibilityNodeInfoCompat> visitedNodes) {
         final int childCount = node.getChildCount();
 
@@ -773,7 +802,13 @@ public class AccessibilityNodeInfoUtils {
                 return false;
             }
 
-            nextFocusNode = searchFocus(traversalStrategy, cursor, direction, FILTER_SHOULD_FOCUS);
+            final SpeakingNodeCache speakingNodeCache = traversalStrategy.getSpeakingNodesCache();
+            nextFocusNode = searchFocus(traversalStrategy, cursor, direction, new NodeFilter() {
+                @Override
+                public boolean accept(AccessibilityNodeInfoCompat node) {
+                    return node != null && shouldFocusNode(node, speakingNodeCache);
+                }
+            });
             if ((nextFocusNode == null) || nextFocusNode.equals(ancestor)) {
                 // Can't move from this position.
                 return true;
@@ -921,6 +956,31 @@ public class AccessibilityNodeInfoUtils {
 
     }
 
+    /**
+     * Returns the id of a node within its window. Every copy of a node has the
+     * same id, so together with the window id it identifies the node.
+     *
+     * @param node The node to read the id of.
+     * @return The source node id, or {@link #UNKNOWN_SOURCE_NODE_ID} if the
+     *         hidden method that returns it can't be called.
+     */
+    public static long getSourceNodeId(AccessibilityNodeInfo node) {
+        return (Long) CompatUtils.invoke(node, UNKNOWN_SOURCE_NODE_ID, METHOD_getSourceNodeId);
+    }
+
+    /**
+     * Returns the id of the source node of an event or record within its
+     * window.
+     *
+     * @param record The event or record to read the id of.
+     * @return The source node id, or {@link #UNKNOWN_SOURCE_NODE_ID} if the
+     *         hidden method that returns it can't be called.
+     */
+    public static long getSourceNodeId(AccessibilityRecord record) {
+        return (Long) CompatUtils.invoke(
+                record, UNKNOWN_SOURCE_NODE_ID, METHOD_getRecordSourceNodeId);
+    }
+
     /**
      * Recycles the given nodes.
      *
@@ -983,6 +1043,7 @@ public class AccessibilityNodeInfoUtils {
 
     /**
      * Returns the result of applying a filter using breadth-first traversal.
+     * Gives up after visiting {@link #BFS_MAX_NODES} nodes.
      *
      * @param node The root node to traverse from.
      * @param filter The filter to satisfy.
@@ -995,38 +1056,31 @@ public class AccessibilityNodeInfoUtils {
             return null;
         }
 
-        final LinkedList<AccessibilityNodeInfoCompat> queue = new LinkedList<>();
-        Set<AccessibilityNodeInfoCompat> visitedNodes = new HashSet<>();
+        // Filters may start searches of their own, so only reuse the shared
+        // search if it isn't already running.
+        NodeBfsSearch search = null;
+        synchronized (AccessibilityNodeInfoUtils.class) {
+            if (sBfsSearch != null) {
+                search = sBfsSearch;
+                sBfsSearch = null;
+            }
+        }
 
-        queue.add(AccessibilityNodeInfoCompat.obtain(node));
+        if (search == null) {
+            search = new NodeBfsSearch().setMaxNodes(BFS_MAX_NODES);
+        }
 
         try {
-            while (!queue.isEmpty()) {
-                final AccessibilityNodeInfoCompat item = queue.removeFirst();
-                visitedNodes.add(item);
-
-                if (filter.accept(item)) {
-                    return item;
-                }
-
-                final int childCount = item.getChildCount();
-
-                for (int i = 0; i < childCount; i++) {
-                    final AccessibilityNodeInfoCompat child = item.getChild(i);
-
-                    if (child != null && !visitedNodes.contains(child)) {
-                        queue.addLast(child);
-                    }
-                }
-                item.recycle();
-            }
+            final AccessibilityNodeInfoCompat result = search.search(node, filter);
+            LogUtils.log(AccessibilityNodeInfoUtils.class, Log.VERBOSE,
+                    "BFS visited %d nodes, fetched %d children", search.getVisitCount(),
+                    search.getFetchCount());
+            return result;
         } finally {
-            while (!queue.isEmpty()) {
-                queue.removeFirst().recycle();
+            synchronized (AccessibilityNodeInfoUtils.class) {
+                sBfsSearch = search;
             }
         }
-
-        return null;
     }
 
     /**
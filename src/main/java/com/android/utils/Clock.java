@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.os.SystemClock;
+
+/**
+ * Source of the current time, so classes that compare event times can be
+ * given a fake clock in tests.
+ */
+public interface Clock {
+    /** Clock that reads {@link SystemClock#uptimeMillis()}. */
+    public static final Clock SYSTEM = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+
+    /**
+     * @return Milliseconds since boot, not counting time spent in deep sleep.
+     */
+    public long uptimeMillis();
+}
@@ -32,11 +32,12 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Message;
+import android.os.SystemClock;
 import android.provider.Settings.Secure;
 import android.speech.tts.TextToSpeech;
 import android.speech.tts.TextToSpeech.Engine;
 import android.speech.tts.TextToSpeech.OnInitListener;
-import android.speech.tts.TextToSpeech.OnUtteranceCompletedListener;
+import android.speech.tts.UtteranceProgressListener;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -66,6 +67,7 @@ import java.util.Set;
  * <li>Switching to the system TTS when media is unmounted
  * <li>Utterance-specific pitch and rate changes
  * <li>Pitch and rate changes relative to the user preference
+ * <li>Keeping the fallback engine loaded while the current engine is failing
  * </ul>
  */
 @SuppressWarnings("deprecation")
@@ -113,6 +115,48 @@ public class FailoverTextToSpeech {
     /** The engine loading into the temporary TTS. */
     private String mTempTtsEngine;
 
+    /** The time when the temporary TTS started loading. */
+    private long mTempTtsStartTime;
+
+    /**
+     * The generation of the warm TTS that was taken over as the temporary
+     * TTS, or 0 if the temporary TTS was not taken over from {@link #mWarmTts}.
+     */
+    private int mTempTtsWarmGeneration;
+
+    /**
+     * A TTS loaded ahead of time with the engine we would fail over to, so
+     * failing over doesn't have to wait for a cold engine to initialize.
+     */
+    private TextToSpeech mWarmTts;
+
+    /** The engine loaded into the warm TTS. */
+    private String mWarmTtsEngine;
+
+    /** The time when the warm TTS started loading. */
+    private long mWarmTtsStartTime;
+
+    /** Whether the warm TTS has finished initializing. */
+    private boolean mIsWarmTtsReady;
+
+    /**
+     * Incremented for each warm TTS, so initialization reported by a warm TTS
+     * that was already released is ignored.
+     */
+    private int mWarmTtsGeneration;
+
+    /** Initialization, latency and error totals for each engine. */
+    private final TtsEngineHealth mEngineHealth;
+
+    /** The utterance waiting for its first audio, or {@code null} if none. */
+    private String mFirstAudioUtteranceId;
+
+    /** The time when {@link #mFirstAudioUtteranceId} was passed to the TTS. */
+    private long mFirstAudioStartTime;
+
+    /** Parameters passed to {@link TextToSpeech#speak}, reused across utterances. */
+    private final Bundle mSpeakParams = new Bundle();
+
     /** The rate adjustment specified in {@link android.provider.Settings}. */
     private float mDefaultRate;
 
@@ -129,6 +173,8 @@ public class FailoverTextToSpeech {
 
     public FailoverTextToSpeech(Context context) {
         mContext = context;
+        mEngineHealth = new TtsEngineHealth(context.getSharedPreferences(
+                TtsEngineHealth.PREFS_NAME, Context.MODE_PRIVATE));
         mContext.registerReceiver(mMediaStateMonitor, mMediaStateMonitor.getFilter());
 
         final Uri defaultSynth = Secure.getUriFor(Secure.TTS_DEFAULT_SYNTH);
@@ -205,6 +251,7 @@ public class FailoverTextToSpeech {
 
         int result;
 
+        final boolean hasTts = (mTts != null);
         Exception failureException = null;
         try {
             result = trySpeak(text, pitch, rate, params, stream, volume);
@@ -213,6 +260,16 @@ public class FailoverTextToSpeech {
             result = TextToSpeech.ERROR;
         }
 
+        // Failing to speak before any engine loaded isn't the engine's fault.
+        if (hasTts) {
+            mEngineHealth.recordSpeak(mTtsEngine, (result == TextToSpeech.SUCCESS));
+        }
+
+        if (result == TextToSpeech.SUCCESS) {
+            mFirstAudioUtteranceId = params.get(Engine.KEY_PARAM_UTTERANCE_ID);
+            mFirstAudioStartTime = SystemClock.uptimeMillis();
+        }
+
         if (result == TextToSpeech.ERROR) {
             attemptTtsFailover(mTtsEngine);
         }
@@ -262,6 +319,9 @@ public class FailoverTextToSpeech {
 
         TextToSpeechUtils.attemptTtsShutdown(mTempTts);
         mTempTts = null;
+
+        releaseWarmTts();
+        mEngineHealth.save();
     }
 
     /**
@@ -318,7 +378,10 @@ public class FailoverTextToSpeech {
     @TargetApi(21)
     private int speakApi21(CharSequence text, HashMap<String, String> params, String utteranceId,
             float pitch, float rate, int stream, float volume) {
-        Bundle bundle = new Bundle();
+        // TextToSpeech copies the parameters before speak() returns, so the
+        // same bundle can be refilled for every utterance.
+        final Bundle bundle = mSpeakParams;
+        bundle.clear();
 
         if (params != null) {
             for (String key : params.keySet()) {
@@ -353,12 +416,105 @@ public class FailoverTextToSpeech {
             return;
         }
 
+        if ((mWarmTts != null) && TextUtils.equals(engine, mWarmTtsEngine)) {
+            switchToWarmTts();
+            return;
+        }
+
         LogUtils.log(SpeechController.class, Log.INFO, "Switching to TTS engine: %s", engine);
 
         mTempTtsEngine = engine;
+        mTempTtsStartTime = SystemClock.uptimeMillis();
         mTempTts = new TextToSpeech(mContext, mTtsChangeListener, engine);
     }
 
+    /**
+     * Switches to the warm TTS. If it has finished initializing it becomes the
+     * current TTS right away, otherwise it replaces the temporary TTS.
+     */
+    private void switchToWarmTts() {
+        final TextToSpeech warmTts = mWarmTts;
+        final String warmTtsEngine = mWarmTtsEngine;
+        final boolean isWarmTtsReady = mIsWarmTtsReady;
+
+        mTempTtsStartTime = mWarmTtsStartTime;
+        mWarmTts = null;
+        mWarmTtsEngine = null;
+        mIsWarmTtsReady = false;
+
+        if (isWarmTtsReady) {
+            LogUtils.log(SpeechController.class, Log.INFO,
+                    "Switching to warm TTS engine: %s", warmTtsEngine);
+            activateTts(warmTts, warmTtsEngine);
+            return;
+        }
+
+        LogUtils.log(SpeechController.class, Log.INFO,
+                "Switching to TTS engine still warming up: %s", warmTtsEngine);
+
+        mTempTts = warmTts;
+        mTempTtsEngine = warmTtsEngine;
+        mTempTtsWarmGeneration = mWarmTtsGeneration;
+    }
+
+    /**
+     * Returns the engine {@link #attemptTtsFailover} would switch to from the
+     * specified engine, or {@code null} if there isn't one.
+     */
+    private String getFallbackEngine(String engine) {
+        for (String installedEngine : mInstalledTtsEngines) {
+            if (!TextUtils.equals(installedEngine, engine)) {
+                return installedEngine;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Starts loading the engine we would fail over to from the current
+     * engine, unless it is already loading.
+     */
+    private void prewarmFallbackEngine(String currentEngine) {
+        final String fallbackEngine = getFallbackEngine(currentEngine);
+        if (fallbackEngine == null) {
+            releaseWarmTts();
+            return;
+        }
+
+        if (fallbackEngine.equals(mWarmTtsEngine)) {
+            return;
+        }
+
+        releaseWarmTts();
+
+        LogUtils.log(SpeechController.class, Log.INFO, "Warming up TTS engine: %s",
+                fallbackEngine);
+
+        mWarmTtsEngine = fallbackEngine;
+        mWarmTtsStartTime = SystemClock.uptimeMillis();
+        mWarmTtsGeneration++;
+        mWarmTts = new TextToSpeech(
+                mContext, new WarmTtsInitListener(mWarmTtsGeneration), fallbackEngine);
+    }
+
+    /**
+     * Shuts down the warm TTS, if any.
+     */
+    private void releaseWarmTts() {
+        if (mWarmTts == null) {
+            return;
+        }
+
+        LogUtils.log(SpeechController.class, Log.VERBOSE, "Releasing warm TTS engine: %s",
+                mWarmTtsEngine);
+
+        TextToSpeechUtils.attemptTtsShutdown(mWarmTts);
+        mWarmTts = null;
+        mWarmTtsEngine = null;
+        mIsWarmTtsReady = false;
+    }
+
     /**
      * Assumes the current engine has failed and attempts to start the next
      * available engine.
@@ -372,7 +528,9 @@ public class FailoverTextToSpeech {
         mTtsFailures++;
 
         // If there is only one installed engine, or if the current engine
-        // hasn't failed enough times, just restart the current engine.
+        // hasn't failed enough times, just restart the current engine. The
+        // fallback engine is warmed once the restarted engine is active, so
+        // two engines don't load at the same time.
         if ((mInstalledTtsEngines.size() <= 1) || (mTtsFailures < MAX_TTS_FAILURES)) {
             setTtsEngine(failedEngine, false);
             return;
@@ -404,28 +562,87 @@ public class FailoverTextToSpeech {
 
         final TextToSpeech tempTts = mTempTts;
         final String tempTtsEngine = mTempTtsEngine;
+        final long initTime = SystemClock.uptimeMillis() - mTempTtsStartTime;
 
         mTempTts = null;
         mTempTtsEngine = null;
+        mTempTtsWarmGeneration = 0;
 
         if (status != TextToSpeech.SUCCESS) {
+            mEngineHealth.recordInit(tempTtsEngine, initTime, false);
+            mEngineHealth.save();
             attemptTtsFailover(tempTtsEngine);
             return;
         }
 
+        final String engine = (tempTtsEngine == null)
+                ? TextToSpeechCompatUtils.getCurrentEngine(tempTts) : tempTtsEngine;
+        mEngineHealth.recordInit(engine, initTime, true);
+        mEngineHealth.save();
+
+        activateTts(tempTts, tempTtsEngine);
+    }
+
+    /**
+     * Handles initialization of the warm TTS.
+     *
+     * @param status The status returned by the TTS engine.
+     * @param generation The generation of the warm TTS that initialized.
+     */
+    private void handleWarmTtsInitialized(int status, int generation) {
+        if ((mTempTts != null) && (generation == mTempTtsWarmGeneration)) {
+            // The warm TTS was taken over as the temporary TTS while it was
+            // still initializing.
+            handleTtsInitialized(status);
+            return;
+        }
+
+        if ((mWarmTts == null) || (generation != mWarmTtsGeneration)) {
+            LogUtils.log(SpeechController.class, Log.VERBOSE,
+                    "Ignoring initialization of released warm TTS");
+            return;
+        }
+
+        final long initTime = SystemClock.uptimeMillis() - mWarmTtsStartTime;
+        final boolean success = (status == TextToSpeech.SUCCESS);
+        mEngineHealth.recordInit(mWarmTtsEngine, initTime, success);
+        mEngineHealth.save();
+
+        if (!success) {
+            LogUtils.log(SpeechController.class, Log.ERROR, "Failed to warm up TTS engine: %s",
+                    mWarmTtsEngine);
+            releaseWarmTts();
+            return;
+        }
+
+        LogUtils.log(SpeechController.class, Log.INFO, "Warmed up TTS engine %s in %d ms",
+                mWarmTtsEngine, initTime);
+
+        mIsWarmTtsReady = true;
+    }
+
+    /**
+     * Makes an initialized TTS the current TTS.
+     *
+     * @param tts The initialized TTS.
+     * @param ttsEngine The engine loaded into the TTS, or {@code null} if it
+     *            loaded the default engine.
+     */
+    private void activateTts(TextToSpeech tts, String ttsEngine) {
         final boolean isSwitchingEngines = (mTts != null);
 
         if (isSwitchingEngines) {
             TextToSpeechUtils.attemptTtsShutdown(mTts);
         }
 
-        mTts = tempTts;
-        mTts.setOnUtteranceCompletedListener(mTtsListener);
+        mTts = tts;
+        mTts.setOnUtteranceProgressListener(mTtsListener);
+        mFirstAudioUtteranceId = null;
 
-        if (tempTtsEngine == null) {
+        if (ttsEngine == null) {
             mTtsEngine = TextToSpeechCompatUtils.getCurrentEngine(mTts);
         } else {
-            mTtsEngine = tempTtsEngine;
+            mTtsEngine = ttsEngine;
         }
 
         updateDefaultLocale();
@@ -435,7 +652,14 @@ public class FailoverTextToSpeech {
             setAudioAttributesApi21();
         }
 
-        LogUtils.log(SpeechController.class, Log.INFO, "Switched to TTS engine: %s", tempTtsEngine);
+        LogUtils.log(SpeechController.class, Log.INFO, "Switched to TTS engine: %s", ttsEngine);
+
+        // Keep the fallback engine ready while this engine is unreliable.
+        if ((mTtsFailures > 0) || mEngineHealth.isUnhealthy(mTtsEngine)) {
+            prewarmFallbackEngine(mTtsEngine);
+        } else if (!TextUtils.equals(mWarmTtsEngine, getFallbackEngine(mTtsEngine))) {
+            releaseWarmTts();
+        }
 
         for (FailoverTtsListener mListener : mListeners) {
             mListener.onTtsInitialized(isSwitchingEngines);
@@ -463,6 +687,11 @@ public class FailoverTextToSpeech {
     private void handleUtteranceCompleted(String utteranceId, boolean success) {
         if (success) {
             mTtsFailures = 0;
+
+            // The engine recovered, so stop holding the fallback engine.
+            if ((mWarmTts != null) && !mEngineHealth.isUnhealthy(mTtsEngine)) {
+                releaseWarmTts();
+            }
         }
 
         for (FailoverTtsListener mListener : mListeners) {
@@ -470,6 +699,41 @@ public class FailoverTextToSpeech {
         }
     }
 
+    /**
+     * Handles the TTS starting to speak an utterance.
+     *
+     * @param utteranceId The utterance that started.
+     */
+    private void handleUtteranceStarted(String utteranceId) {
+        if ((mFirstAudioUtteranceId == null)
+                || !mFirstAudioUtteranceId.equals(utteranceId)) {
+            return;
+        }
+
+        mFirstAudioUtteranceId = null;
+        mEngineHealth.recordFirstAudio(mTtsEngine,
+                SystemClock.uptimeMillis() - mFirstAudioStartTime);
+    }
+
+    /**
+     * Handles the TTS failing to speak an utterance it had accepted.
+     *
+     * @param utteranceId The utterance that failed.
+     */
+    private void handleUtteranceError(String utteranceId) {
+        if (TextUtils.equals(mFirstAudioUtteranceId, utteranceId)) {
+            mFirstAudioUtteranceId = null;
+        }
+
+        mEngineHealth.recordError(mTtsEngine);
+
+        // Listeners have always treated errors as completions, but an error
+        // shouldn't count as the engine recovering.
+        for (FailoverTtsListener mListener : mListeners) {
+            mListener.onUtteranceCompleted(utteranceId, true);
+        }
+    }
+
     /**
      * Handles media state changes.
      *
@@ -852,14 +1116,26 @@ public class FailoverTextToSpeech {
         }
     };
 
-    /** Hands utterance completed processing to the main thread. */
-    private final OnUtteranceCompletedListener mTtsListener = new OnUtteranceCompletedListener() {
+    /** Hands utterance progress processing to the main thread. */
+    private final UtteranceProgressListener mTtsListener = new UtteranceProgressListener() {
         @Override
-        public void onUtteranceCompleted(String utteranceId) {
+        public void onStart(String utteranceId) {
+            mHandler.onUtteranceStarted(utteranceId);
+        }
+
+        @Override
+        public void onDone(String utteranceId) {
             LogUtils.log(this, Log.DEBUG, "Received completion for \"%s\"", utteranceId);
 
             mHandler.onUtteranceCompleted(utteranceId);
         }
+
+        @Override
+        public void onError(String utteranceId) {
+            LogUtils.log(this, Log.DEBUG, "Received error for \"%s\"", utteranceId);
+
+            mHandler.onUtteranceError(utteranceId);
+        }
     };
 
     /**
@@ -873,6 +1149,23 @@ public class FailoverTextToSpeech {
         }
     };
 
+    /**
+     * Hands initialization of a warm TTS to the main thread, along with the
+     * generation of the warm TTS it was created for.
+     */
+    private class WarmTtsInitListener implements OnInitListener {
+        private final int mGeneration;
+
+        public WarmTtsInitListener(int generation) {
+            mGeneration = generation;
+        }
+
+        @Override
+        public void onInit(int status) {
+            mHandler.onWarmTtsInitialized(status, mGeneration);
+        }
+    }
+
     /**
      * Callbacks used to observe configuration changes.
      * <p>
@@ -926,6 +1219,15 @@ public class FailoverTextToSpeech {
         /** Hand-off media state changes. */
         private static final int MSG_MEDIA_STATE_CHANGED = 3;
 
+        /** Hand-off warm engine initialized. */
+        private static final int MSG_WARM_INITIALIZED = 4;
+
+        /** Hand-off utterance started. */
+        private static final int MSG_UTTERANCE_STARTED = 5;
+
+        /** Hand-off utterance error. */
+        private static final int MSG_UTTERANCE_ERROR = 6;
+
         public SpeechHandler(FailoverTextToSpeech parent) {
             super(parent);
         }
@@ -941,6 +1243,16 @@ public class FailoverTextToSpeech {
                     break;
                 case MSG_MEDIA_STATE_CHANGED:
                     parent.handleMediaStateChanged((String) msg.obj);
+                    break;
+                case MSG_WARM_INITIALIZED:
+                    parent.handleWarmTtsInitialized(msg.arg1, msg.arg2);
+                    break;
+                case MSG_UTTERANCE_STARTED:
+                    parent.handleUtteranceStarted((String) msg.obj);
+                    break;
+                case MSG_UTTERANCE_ERROR:
+                    parent.handleUtteranceError((String) msg.obj);
+                    break;
             }
         }
 
@@ -955,6 +1267,18 @@ public class FailoverTextToSpeech {
         public void onMediaStateChanged(String action) {
             obtainMessage(MSG_MEDIA_STATE_CHANGED, action).sendToTarget();
         }
+
+        public void onWarmTtsInitialized(int status, int generation) {
+            obtainMessage(MSG_WARM_INITIALIZED, status, generation).sendToTarget();
+        }
+
+        public void onUtteranceStarted(String utteranceId) {
+            obtainMessage(MSG_UTTERANCE_STARTED, utteranceId).sendToTarget();
+        }
+
+        public void onUtteranceError(String utteranceId) {
+            obtainMessage(MSG_UTTERANCE_ERROR, utteranceId).sendToTarget();
+        }
     }
 
     /**
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.IllegalFormatException;
+
+/**
+ * Ring buffer holding the most recent log events in unformatted form. Each event keeps its format
+ * string and up to {@link #MAX_ARGS} arguments in parallel arrays; primitive arguments are stored
+ * without boxing. Messages are only formatted when the buffer is dumped.
+ * <p>
+ * Writers must hold the buffer's lock from {@link #startEvent} until the last argument is set.
+ */
+/* package */ class LogEventBuffer {
+    /** The most arguments stored without falling back to the varargs array. */
+    public static final int MAX_ARGS = 3;
+
+    private static final byte TYPE_INT = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_OBJECT = 2;
+
+    /* Event slots */
+    private final long[] mTimesMillis;
+    private final int[] mPriorities;
+    private final String[] mTags;
+    private final String[] mFormats;
+    private final int[] mArgCounts;
+
+    /* Argument slots, MAX_ARGS per event */
+    private final byte[] mArgTypes;
+    private final long[] mPrimitiveArgs;
+    private final Object[] mObjectArgs;
+
+    /* Event slots for events with more than MAX_ARGS arguments */
+    private final Object[][] mVarArgs;
+
+    private int mHead;
+    private int mSize;
+
+    public LogEventBuffer(int capacity) {
+        mTimesMillis = new long[capacity];
+        mPriorities = new int[capacity];
+        mTags = new String[capacity];
+        mFormats = new String[capacity];
+        mArgCounts = new int[capacity];
+        mArgTypes = new byte[capacity * MAX_ARGS];
+        mPrimitiveArgs = new long[capacity * MAX_ARGS];
+        mObjectArgs = new Object[capacity * MAX_ARGS];
+        mVarArgs = new Object[capacity][];
+    }
+
+    public int getCapacity() {
+        return mTimesMillis.length;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < mTimesMillis.length; i++) {
+            clearSlot(i);
+        }
+        mHead = 0;
+        mSize = 0;
+    }
+
+    /**
+     * Start recording an event, overwriting the oldest one if the buffer is full. Arguments are
+     * then set with the {@code setArg} methods.
+     *
+     * @return The slot holding the event
+     */
+    public int startEvent(long timeMillis, int priority, String tag, String format,
+            int argCount) {
+        int slot;
+        if (mSize < mTimesMillis.length) {
+            slot = (mHead + mSize) % mTimesMillis.length;
+            mSize++;
+        } else {
+            slot = mHead;
+            mHead = (mHead + 1) % mTimesMillis.length;
+        }
+
+        clearSlot(slot);
+        mTimesMillis[slot] = timeMillis;
+        mPriorities[slot] = priority;
+        mTags[slot] = tag;
+        mFormats[slot] = format;
+        mArgCounts[slot] = argCount;
+        return slot;
+    }
+
+    public void setArg(int slot, int position, int value) {
+        mArgTypes[slot * MAX_ARGS + position] = TYPE_INT;
+        mPrimitiveArgs[slot * MAX_ARGS + position] = value;
+    }
+
+    public void setArg(int slot, int position, long value) {
+        mArgTypes[slot * MAX_ARGS + position] = TYPE_LONG;
+        mPrimitiveArgs[slot * MAX_ARGS + position] = value;
+    }
+
+    public void setArg(int slot, int position, Object value) {
+        mArgTypes[slot * MAX_ARGS + position] = TYPE_OBJECT;
+        mObjectArgs[slot * MAX_ARGS + position] = snapshot(value);
+    }
+
+    /**
+     * Store arguments beyond {@link #MAX_ARGS}. The array is kept, so the caller must not reuse
+     * it.
+     */
+    public void setVarArgs(int slot, Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            args[i] = snapshot(args[i]);
+        }
+        mVarArgs[slot] = args;
+    }
+
+    /**
+     * Write the buffered events, oldest first, formatting each one.
+     */
+    public synchronized void dump(PrintWriter writer) {
+        for (int i = 0; i < mSize; i++) {
+            int slot = (mHead + i) % mTimesMillis.length;
+            writer.print(mTimesMillis[slot]);
+            writer.print(' ');
+            writer.print(priorityToChar(mPriorities[slot]));
+            writer.print(' ');
+            writer.print(mTags[slot]);
+            writer.print(": ");
+            writer.println(format(slot));
+        }
+    }
+
+    /**
+     * @return The formatted message of the event at the given age, where 0 is the oldest event
+     */
+    public synchronized String getMessage(int index) {
+        return format((mHead + index) % mTimesMillis.length);
+    }
+
+    private String format(int slot) {
+        Object[] args = mVarArgs[slot];
+        if (args == null) {
+            args = new Object[mArgCounts[slot]];
+            for (int i = 0; i < args.length; i++) {
+                int argSlot = slot * MAX_ARGS + i;
+                switch (mArgTypes[argSlot]) {
+                    case TYPE_INT:
+                        args[i] = (int) mPrimitiveArgs[argSlot];
+                        break;
+                    case TYPE_LONG:
+                        args[i] = mPrimitiveArgs[argSlot];
+                        break;
+                    default:
+                        args[i] = mObjectArgs[argSlot];
+                        break;
+                }
+            }
+        }
+
+        try {
+            return String.format(mFormats[slot], args);
+        } catch (IllegalFormatException e) {
+            return "Bad formatting string: \"" + mFormats[slot] + "\"";
+        }
+    }
+
+    private void clearSlot(int slot) {
+        mTags[slot] = null;
+        mFormats[slot] = null;
+        mVarArgs[slot] = null;
+        for (int i = slot * MAX_ARGS; i < (slot + 1) * MAX_ARGS; i++) {
+            mObjectArgs[i] = null;
+        }
+    }
+
+    /*
+     * Keep immutable values as they are. Anything else, such as a node that may be recycled
+     * before the buffer is dumped, is converted to a string now.
+     */
+    private static Object snapshot(Object value) {
+        if ((value == null) || (value instanceof String) || (value instanceof Number)
+                || (value instanceof Boolean) || (value instanceof Character)
+                || (value instanceof Enum)) {
+            return value;
+        }
+        return String.valueOf(value);
+    }
+
+    private static char priorityToChar(int priority) {
+        switch (priority) {
+            case Log.VERBOSE:
+                return 'V';
+            case Log.DEBUG:
+                return 'D';
+            case Log.INFO:
+                return 'I';
+            case Log.WARN:
+                return 'W';
+            case Log.ERROR:
+                return 'E';
+            default:
+                return 'A';
+        }
+    }
+}
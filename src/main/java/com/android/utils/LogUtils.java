@@ -18,14 +18,26 @@ package com.android.utils;
 
 import android.util.Log;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.IllegalFormatException;
 
 /**
- * Handles logging formatted strings.
+ * Handles logging formatted strings. Recent events are also kept, unformatted, in an in-memory
+ * ring buffer that can be dumped on demand or when the service crashes.
  */
 public class LogUtils {
     private final static String TAG = "LogUtils";
 
+    /** The number of recent events kept in memory. */
+    private static final int RECENT_EVENTS_CAPACITY = 256;
+
+    private static final LogEventBuffer sRecentEvents =
+            new LogEventBuffer(RECENT_EVENTS_CAPACITY);
+
+    /** The minimum log level that will be kept in the recent events buffer. */
+    private static int sRecentEventsLevel = Log.WARN;
+
     /**
      * The minimum log level that will be printed to the console. Set this to
      * {@link Log#ERROR} for release or {@link Log#VERBOSE} for debugging.
@@ -50,24 +62,205 @@ public class LogUtils {
      * @param args String formatter arguments.
      */
     public static void log(Object source, int priority, String format, Object... args) {
-        if (priority < LOG_LEVEL) {
+        if (!isLoggable(priority)) {
             return;
         }
 
-        final String sourceClass;
+        if (args == null) {
+            // A lone null argument is passed as the varargs array itself.
+            log(source, priority, format, (Object) null);
+            return;
+        }
 
-        if (source == null) {
-            sourceClass = TAG;
-        } else if (source instanceof Class<?>) {
-            sourceClass = ((Class<?>) source).getSimpleName();
-        } else {
-            sourceClass = source.getClass().getSimpleName();
+        final String sourceClass = getTag(source);
+
+        if (priority >= sRecentEventsLevel) {
+            synchronized (sRecentEvents) {
+                final int slot = startRecentEvent(priority, sourceClass, format, args.length);
+                if (args.length > LogEventBuffer.MAX_ARGS) {
+                    sRecentEvents.setVarArgs(slot, args.clone());
+                } else {
+                    for (int i = 0; i < args.length; i++) {
+                        sRecentEvents.setArg(slot, i, args[i]);
+                    }
+                }
+            }
         }
 
-        try {
-            Log.println(priority, sourceClass, String.format(format, args));
-        } catch (IllegalFormatException e) {
-            Log.e(TAG, "Bad formatting string: \"" + format + "\"", e);
+        if (priority >= LOG_LEVEL) {
+            println(priority, sourceClass, format, args);
+        }
+    }
+
+    /*
+     * The overloads below cover the common arities so that call sites don't allocate a varargs
+     * array. Single int and long arguments aren't boxed unless the message is printed. Single
+     * char, byte and short arguments are boxed through their caches, so that they keep their
+     * type instead of widening to int and formatting as a number. There are no primitive
+     * overloads for two or more arguments, since calls mixing primitive and boxed arguments
+     * would be ambiguous.
+     */
+
+    /**
+     * Logs a string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format) {
+        if (!isLoggable(priority)) {
+            return;
+        }
+
+        final String sourceClass = getTag(source);
+
+        if (priority >= sRecentEventsLevel) {
+            synchronized (sRecentEvents) {
+                startRecentEvent(priority, sourceClass, format, 0);
+            }
+        }
+
+        if (priority >= LOG_LEVEL) {
+            println(priority, sourceClass, format);
+        }
+    }
+
+    /**
+     * Logs a formatted string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format, int arg1) {
+        if (!isLoggable(priority)) {
+            return;
+        }
+
+        final String sourceClass = getTag(source);
+
+        if (priority >= sRecentEventsLevel) {
+            synchronized (sRecentEvents) {
+                final int slot = startRecentEvent(priority, sourceClass, format, 1);
+                sRecentEvents.setArg(slot, 0, arg1);
+            }
+        }
+
+        if (priority >= LOG_LEVEL) {
+            println(priority, sourceClass, format, arg1);
+        }
+    }
+
+    /**
+     * Logs a formatted string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format, long arg1) {
+        if (!isLoggable(priority)) {
+            return;
+        }
+
+        final String sourceClass = getTag(source);
+
+        if (priority >= sRecentEventsLevel) {
+            synchronized (sRecentEvents) {
+                final int slot = startRecentEvent(priority, sourceClass, format, 1);
+                sRecentEvents.setArg(slot, 0, arg1);
+            }
+        }
+
+        if (priority >= LOG_LEVEL) {
+            println(priority, sourceClass, format, arg1);
+        }
+    }
+
+    /**
+     * Logs a formatted string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format, char arg1) {
+        if (isLoggable(priority)) {
+            log(source, priority, format, (Object) Character.valueOf(arg1));
+        }
+    }
+
+    /**
+     * Logs a formatted string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format, byte arg1) {
+        if (isLoggable(priority)) {
+            log(source, priority, format, (Object) Byte.valueOf(arg1));
+        }
+    }
+
+    /**
+     * Logs a formatted string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format, short arg1) {
+        if (isLoggable(priority)) {
+            log(source, priority, format, (Object) Short.valueOf(arg1));
+        }
+    }
+
+    /**
+     * Logs a formatted string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format, Object arg1) {
+        if (!isLoggable(priority)) {
+            return;
+        }
+
+        final String sourceClass = getTag(source);
+
+        if (priority >= sRecentEventsLevel) {
+            synchronized (sRecentEvents) {
+                final int slot = startRecentEvent(priority, sourceClass, format, 1);
+                sRecentEvents.setArg(slot, 0, arg1);
+            }
+        }
+
+        if (priority >= LOG_LEVEL) {
+            println(priority, sourceClass, format, arg1);
+        }
+    }
+
+    /**
+     * Logs a formatted string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format, Object arg1,
+            Object arg2) {
+        if (!isLoggable(priority)) {
+            return;
+        }
+
+        final String sourceClass = getTag(source);
+
+        if (priority >= sRecentEventsLevel) {
+            synchronized (sRecentEvents) {
+                final int slot = startRecentEvent(priority, sourceClass, format, 2);
+                sRecentEvents.setArg(slot, 0, arg1);
+                sRecentEvents.setArg(slot, 1, arg2);
+            }
+        }
+
+        if (priority >= LOG_LEVEL) {
+            println(priority, sourceClass, format, arg1, arg2);
+        }
+    }
+
+    /**
+     * Logs a formatted string to the console. See {@link #log(Object, int, String, Object...)}.
+     */
+    public static void log(Object source, int priority, String format, Object arg1,
+            Object arg2, Object arg3) {
+        if (!isLoggable(priority)) {
+            return;
+        }
+
+        final String sourceClass = getTag(source);
+
+        if (priority >= sRecentEventsLevel) {
+            synchronized (sRecentEvents) {
+                final int slot = startRecentEvent(priority, sourceClass, format, 3);
+                sRecentEvents.setArg(slot, 0, arg1);
+                sRecentEvents.setArg(slot, 1, arg2);
+                sRecentEvents.setArg(slot, 2, arg3);
+            }
+        }
+
+        if (priority >= LOG_LEVEL) {
+            println(priority, sourceClass, format, arg1, arg2, arg3);
         }
     }
 
@@ -94,4 +287,72 @@ public class LogUtils {
     public static void setLogLevel(int logLevel) {
         LOG_LEVEL = logLevel;
     }
+
+    /**
+     * Sets the minimum log level that will be kept in the recent events
+     * buffer, independently of the level printed to the console.
+     *
+     * @param logLevel The minimum log level that will be recorded.
+     */
+    public static void setRecentEventsLevel(int logLevel) {
+        sRecentEventsLevel = logLevel;
+    }
+
+    /**
+     * Writes the recent events, oldest first.
+     *
+     * @param writer The writer to dump to.
+     */
+    public static void dumpRecentEvents(PrintWriter writer) {
+        sRecentEvents.dump(writer);
+    }
+
+    /**
+     * Prints the recent events to the console regardless of the log level,
+     * for example before the process dies on an uncaught exception.
+     */
+    public static void printRecentEvents() {
+        final StringWriter stringWriter = new StringWriter();
+        final PrintWriter printWriter = new PrintWriter(stringWriter);
+        dumpRecentEvents(printWriter);
+        printWriter.flush();
+
+        Log.e(TAG, "Recent events:");
+        for (String line : stringWriter.toString().split("\n")) {
+            Log.e(TAG, line);
+        }
+    }
+
+    // Visible for testing
+    /* package */ static LogEventBuffer getRecentEvents() {
+        return sRecentEvents;
+    }
+
+    private static boolean isLoggable(int priority) {
+        return (priority >= LOG_LEVEL) || (priority >= sRecentEventsLevel);
+    }
+
+    private static String getTag(Object source) {
+        if (source == null) {
+            return TAG;
+        } else if (source instanceof Class<?>) {
+            return ((Class<?>) source).getSimpleName();
+        } else {
+            return source.getClass().getSimpleName();
+        }
+    }
+
+    /* Must be called while holding the lock on sRecentEvents. */
+    private static int startRecentEvent(int priority, String tag, String format, int argCount) {
+        return sRecentEvents.startEvent(
+                System.currentTimeMillis(), priority, tag, format, argCount);
+    }
+
+    private static void println(int priority, String tag, String format, Object... args) {
+        try {
+            Log.println(priority, tag, String.format(format, args));
+        } catch (IllegalFormatException e) {
+            Log.e(TAG, "Bad formatting string: \"" + format + "\"", e);
+        }
+    }
 }
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Breadth-first search of a node hierarchy that can be reused between searches. Pending nodes
+ * are held in an array-backed queue, and visited nodes are remembered by their source node id
+ * in an open-addressed hash set, so a search allocates nothing once the arrays have grown to fit
+ * the tree.
+ * <p>
+ * A search can be limited to a maximum depth below the root, and to a budget of nodes to visit;
+ * when the budget runs out, the search gives up and {@link #wasBudgetExhausted()} returns
+ * {@code true}. After each search, {@link #getFetchCount()} returns the number of children that
+ * were fetched, each of which may be a call to the app's process.
+ * <p>
+ * All nodes visited by a search are in the same window as the root, so the source node id is
+ * enough to identify them. If the source node id can't be read, visited nodes are remembered by
+ * copies compared with {@link AccessibilityNodeInfoCompat#equals(Object)} instead. Not thread
+ * safe.
+ */
+public class NodeBfsSearch {
+    /** Value for the depth limit or node budget meaning there is no limit. */
+    public static final int UNLIMITED = -1;
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    /* Ring buffer of nodes waiting to be visited, with their depths below the root. */
+    private AccessibilityNodeInfoCompat[] mQueue =
+            new AccessibilityNodeInfoCompat[INITIAL_CAPACITY];
+    private int[] mDepths = new int[INITIAL_CAPACITY];
+    private int mHead;
+    private int mSize;
+
+    /* Open-addressed set of the ids of queued or visited nodes. */
+    private long[] mVisitedIds = new long[INITIAL_CAPACITY * 2];
+    private boolean[] mVisitedUsed = new boolean[INITIAL_CAPACITY * 2];
+    private int mVisitedCount;
+
+    /* Copies of queued or visited nodes, used when source node ids can't be read. */
+    private final HashSet<AccessibilityNodeInfoCompat> mVisitedNodes = new HashSet<>();
+
+    /* Whether to remember visited nodes by source node id when it can be read. */
+    private final boolean mUseSourceNodeIds;
+
+    private int mMaxDepth = UNLIMITED;
+    private int mMaxNodes = UNLIMITED;
+
+    private int mFetchCount;
+    private int mVisitCount;
+    private boolean mBudgetExhausted;
+
+    public NodeBfsSearch() {
+        this(true);
+    }
+
+    // Visible for testing
+    /* package */ NodeBfsSearch(boolean useSourceNodeIds) {
+        mUseSourceNodeIds = useSourceNodeIds;
+    }
+
+    /**
+     * Sets how many levels below the root to search. The root is at depth 0.
+     *
+     * @param maxDepth The maximum depth, or {@link #UNLIMITED}.
+     * @return This search, for chaining.
+     */
+    public NodeBfsSearch setMaxDepth(int maxDepth) {
+        mMaxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Sets how many nodes a search may visit before giving up.
+     *
+     * @param maxNodes The node budget, or {@link #UNLIMITED}.
+     * @return This search, for chaining.
+     */
+    public NodeBfsSearch setMaxNodes(int maxNodes) {
+        mMaxNodes = maxNodes;
+        return this;
+    }
+
+    /**
+     * Returns the first node, in breadth-first order from {@code root}, that
+     * is accepted by {@code filter}.
+     *
+     * @param root The node to start from. It is checked against the filter
+     *            too. Not recycled by this method.
+     * @param filter The filter to satisfy.
+     * @return A copy of the first matching node, which the caller must
+     *         recycle, or {@code null} if none was found within the limits.
+     */
+    public AccessibilityNodeInfoCompat search(AccessibilityNodeInfoCompat root,
+            NodeFilter filter) {
+        reset();
+        if (root == null) {
+            return null;
+        }
+
+        addVisited(root);
+        enqueue(AccessibilityNodeInfoCompat.obtain(root), 0);
+
+        try {
+            while (mSize > 0) {
+                if ((mMaxNodes != UNLIMITED) && (mVisitCount >= mMaxNodes)) {
+                    mBudgetExhausted = true;
+                    LogUtils.log(this, Log.WARN, "Gave up after visiting %d nodes", mVisitCount);
+                    return null;
+                }
+
+                final int depth = mDepths[mHead];
+                final AccessibilityNodeInfoCompat item = dequeue();
+                mVisitCount++;
+
+                if (filter.accept(item)) {
+                    return item;
+                }
+
+                if ((mMaxDepth == UNLIMITED) || (depth < mMaxDepth)) {
+                    final int childCount = item.getChildCount();
+                    for (int i = 0; i < childCount; i++) {
+                        final AccessibilityNodeInfoCompat child = item.getChild(i);
+                        mFetchCount++;
+
+                        if (child == null) {
+                            continue;
+                        }
+
+                        if (addVisited(child)) {
+                            enqueue(child, depth + 1);
+                        } else {
+                            child.recycle();
+                        }
+                    }
+                }
+
+                item.recycle();
+            }
+        } finally {
+            clearQueue();
+            clearVisitedNodes();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The number of children fetched by the last search.
+     */
+    public int getFetchCount() {
+        return mFetchCount;
+    }
+
+    /**
+     * @return The number of nodes checked against the filter by the last
+     *         search.
+     */
+    public int getVisitCount() {
+        return mVisitCount;
+    }
+
+    /**
+     * @return {@code true} if the last search stopped because it used up its
+     *         node budget.
+     */
+    public boolean wasBudgetExhausted() {
+        return mBudgetExhausted;
+    }
+
+    private void reset() {
+        clearQueue();
+        clearVisitedNodes();
+        if (mVisitedCount > 0) {
+            Arrays.fill(mVisitedUsed, false);
+            mVisitedCount = 0;
+        }
+
+        mFetchCount = 0;
+        mVisitCount = 0;
+        mBudgetExhausted = false;
+    }
+
+    private void enqueue(AccessibilityNodeInfoCompat node, int depth) {
+        if (mSize == mQueue.length) {
+            growQueue();
+        }
+
+        final int tail = (mHead + mSize) % mQueue.length;
+        mQueue[tail] = node;
+        mDepths[tail] = depth;
+        mSize++;
+    }
+
+    private AccessibilityNodeInfoCompat dequeue() {
+        final AccessibilityNodeInfoCompat node = mQueue[mHead];
+        mQueue[mHead] = null;
+        mHead = (mHead + 1) % mQueue.length;
+        mSize--;
+        return node;
+    }
+
+    private void clearQueue() {
+        while (mSize > 0) {
+            dequeue().recycle();
+        }
+
+        mHead = 0;
+    }
+
+    private void growQueue() {
+        final int capacity = mQueue.length;
+        final AccessibilityNodeInfoCompat[] queue = new AccessibilityNodeInfoCompat[capacity * 2];
+        final int[] depths = new int[capacity * 2];
+        for (int i = 0; i < mSize; i++) {
+            queue[i] = mQueue[(mHead + i) % capacity];
+            depths[i] = mDepths[(mHead + i) % capacity];
+        }
+
+        mQueue = queue;
+        mDepths = depths;
+        mHead = 0;
+    }
+
+    /**
+     * Adds a node to the visited set, by source node id if it can be read.
+     *
+     * @return {@code true} if the node wasn't already in the set.
+     */
+    private boolean addVisited(AccessibilityNodeInfoCompat node) {
+        if (mUseSourceNodeIds) {
+            final long sourceId = AccessibilityNodeInfoUtils.getSourceNodeId(
+                    (AccessibilityNodeInfo) node.getInfo());
+            if (sourceId != AccessibilityNodeInfoUtils.UNKNOWN_SOURCE_NODE_ID) {
+                return addVisitedId(sourceId);
+            }
+        }
+
+        if (mVisitedNodes.contains(node)) {
+            return false;
+        }
+
+        mVisitedNodes.add(AccessibilityNodeInfoCompat.obtain(node));
+        return true;
+    }
+
+    private void clearVisitedNodes() {
+        if (!mVisitedNodes.isEmpty()) {
+            AccessibilityNodeInfoUtils.recycleNodes(mVisitedNodes);
+            mVisitedNodes.clear();
+        }
+    }
+
+    /**
+     * Adds an id to the visited set.
+     *
+     * @return {@code true} if the id wasn't already in the set.
+     */
+    private boolean addVisitedId(long id) {
+        // Keep the table at most half full.
+        if ((mVisitedCount + 1) * 2 > mVisitedIds.length) {
+            growVisited();
+        }
+
+        final int mask = mVisitedIds.length - 1;
+        int index = hash(id) & mask;
+        while (mVisitedUsed[index]) {
+            if (mVisitedIds[index] == id) {
+                return false;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        mVisitedUsed[index] = true;
+        mVisitedIds[index] = id;
+        mVisitedCount++;
+        return true;
+    }
+
+    private void growVisited() {
+        final long[] oldIds = mVisitedIds;
+        final boolean[] oldUsed = mVisitedUsed;
+        mVisitedIds = new long[oldIds.length * 2];
+        mVisitedUsed = new boolean[oldUsed.length * 2];
+        mVisitedCount = 0;
+
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldUsed[i]) {
+                addVisitedId(oldIds[i]);
+            }
+        }
+    }
+
+    private static int hash(long id) {
+        final int h = (int) (id ^ (id >>> 32));
+        return h ^ (h >>> 16);
+    }
+}
@@ -17,14 +17,15 @@
 package com.android.utils;
 
 import android.content.Context;
-import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.utils.PackageMetadataCache.PackageMetadata;
+
 /**
- * Utilities for interacting with the {@link PackageManager}.
+ * Utilities for interacting with the {@link PackageManager}. Lookups are served from the
+ * {@link PackageMetadataCache}.
  */
 public class PackageManagerUtils {
     /** Invalid version code for a package. */
@@ -39,15 +40,15 @@ public class PackageManagerUtils {
             return INVALID_VERSION_CODE;
         }
 
-        final PackageInfo packageInfo = getPackageInfo(context, packageName);
+        final PackageMetadata metadata = getPackageMetadata(context, packageName);
 
-        if (packageInfo == null) {
+        if (!metadata.installed) {
             LogUtils.log(PackageManagerUtils.class, Log.ERROR, "Could not find package: %s",
                     packageName);
             return INVALID_VERSION_CODE;
         }
 
-        return packageInfo.versionCode;
+        return metadata.versionCode;
     }
 
     /**
@@ -59,15 +60,15 @@ public class PackageManagerUtils {
             return null;
         }
 
-        final PackageInfo packageInfo = getPackageInfo(context, packageName);
+        final PackageMetadata metadata = getPackageMetadata(context, packageName);
 
-        if (packageInfo == null) {
+        if (!metadata.installed) {
             LogUtils.log(PackageManagerUtils.class, Log.ERROR, "Could not find package: %s",
                     packageName);
             return null;
         }
 
-        return packageInfo.versionName;
+        return metadata.versionName;
     }
 
     /**
@@ -75,20 +76,11 @@ public class PackageManagerUtils {
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public static boolean hasPackage(Context context, String packageName) {
-        return (getPackageInfo(context, packageName) != null);
+        return (packageName != null) && getPackageMetadata(context, packageName).installed;
     }
 
-    private static PackageInfo getPackageInfo(Context context, CharSequence packageName) {
-        if (packageName == null) {
-            return null;
-        }
-
-        final PackageManager packageManager = context.getPackageManager();
-
-        try {
-            return packageManager.getPackageInfo(packageName.toString(), 0);
-        } catch (NameNotFoundException e) {
-            return null;
-        }
+    private static PackageMetadata getPackageMetadata(Context context,
+            CharSequence packageName) {
+        return PackageMetadataCache.getInstance(context).get(packageName.toString());
     }
 }
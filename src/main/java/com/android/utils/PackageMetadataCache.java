@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.Signature;
+import android.net.Uri;
+import android.util.Log;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of package metadata, so that repeated lookups of the same package don't each
+ * make a binder call to the {@link PackageManager}. Both installed and missing packages are
+ * cached. Entries are invalidated when a package is added, replaced or removed.
+ * <p>
+ * Signatures are only requested, and hashed, the first time a caller asks for the signature hash
+ * of a package.
+ */
+public class PackageMetadataCache {
+    private static PackageMetadataCache sInstance;
+
+    private final PackageManager mPackageManager;
+
+    /** Cached metadata by package name. Guarded by itself. */
+    private final Map<String, PackageMetadata> mCache = new HashMap<>();
+
+    /**
+     * Incremented on every invalidation, so a lookup can tell whether its result went stale
+     * while it was being fetched. Guarded by {@link #mCache}.
+     */
+    private int mInvalidationCount;
+
+    private final BroadcastReceiver mPackageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final Uri data = intent.getData();
+            final String packageName = (data == null) ? null : data.getSchemeSpecificPart();
+            if (packageName == null) {
+                invalidateAll();
+            } else {
+                invalidate(packageName);
+            }
+        }
+    };
+
+    /**
+     * Returns the process-wide cache, creating it if needed. The cache listens for package
+     * changes for the lifetime of the process.
+     */
+    public static synchronized PackageMetadataCache getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = new PackageMetadataCache(appContext.getPackageManager());
+            appContext.registerReceiver(sInstance.mPackageChangeReceiver, createFilter());
+        }
+
+        return sInstance;
+    }
+
+    // Visible for testing
+    /* package */ PackageMetadataCache(PackageManager packageManager) {
+        mPackageManager = packageManager;
+    }
+
+    /**
+     * Returns the metadata for a package, fetching it from the {@link PackageManager} on the
+     * first request.
+     *
+     * @param packageName The package to look up.
+     * @return The package metadata. If the package is not installed,
+     *         {@link PackageMetadata#installed} is {@code false}.
+     */
+    public PackageMetadata get(String packageName) {
+        final int invalidationCount;
+        synchronized (mCache) {
+            final PackageMetadata cached = mCache.get(packageName);
+            if (cached != null) {
+                return cached;
+            }
+
+            invalidationCount = mInvalidationCount;
+        }
+
+        // Don't hold the lock across the binder call.
+        final PackageMetadata metadata = fetch(packageName);
+        synchronized (mCache) {
+            // If the package changed during the fetch, the result may already be stale.
+            if (invalidationCount == mInvalidationCount) {
+                mCache.put(packageName, metadata);
+            }
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Discards cached metadata for a package.
+     */
+    public void invalidate(String packageName) {
+        LogUtils.log(this, Log.VERBOSE, "Invalidating metadata for %s", packageName);
+        synchronized (mCache) {
+            mCache.remove(packageName);
+            mInvalidationCount++;
+        }
+    }
+
+    /**
+     * Discards all cached metadata.
+     */
+    public void invalidateAll() {
+        synchronized (mCache) {
+            mCache.clear();
+            mInvalidationCount++;
+        }
+    }
+
+    // Visible for testing
+    /* package */ BroadcastReceiver getPackageChangeReceiver() {
+        return mPackageChangeReceiver;
+    }
+
+    private PackageMetadata fetch(String packageName) {
+        final PackageInfo packageInfo;
+        try {
+            packageInfo = mPackageManager.getPackageInfo(packageName, 0);
+        } catch (NameNotFoundException e) {
+            return PackageMetadata.NOT_INSTALLED;
+        }
+
+        return new PackageMetadata(mPackageManager, packageName, packageInfo.versionCode,
+                packageInfo.versionName);
+    }
+
+    /**
+     * @return A hex SHA-1 hash of the package signatures, or an empty string if they can't be
+     *         fetched or hashed.
+     */
+    private static String fetchSignatureHash(PackageManager packageManager, String packageName) {
+        final PackageInfo packageInfo;
+        try {
+            packageInfo = packageManager.getPackageInfo(
+                    packageName, PackageManager.GET_SIGNATURES);
+        } catch (NameNotFoundException e) {
+            return "";
+        }
+
+        return computeSignatureHash(packageInfo.signatures);
+    }
+
+    /**
+     * @return A hex SHA-1 hash of the signatures, or an empty string if they can't be hashed.
+     */
+    private static String computeSignatureHash(Signature[] signatures) {
+        if (signatures == null) {
+            return "";
+        }
+
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            for (Signature s : signatures) {
+                messageDigest.update(s.toByteArray());
+            }
+
+            return StringBuilderUtils.bytesToHexString(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            LogUtils.log(PackageMetadataCache.class, Log.WARN,
+                    "Unable to create SHA-1 MessageDigest");
+            return "";
+        }
+    }
+
+    private static IntentFilter createFilter() {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        return filter;
+    }
+
+    /**
+     * Snapshot of the metadata for one package. The signature hash is fetched on first use.
+     */
+    public static class PackageMetadata {
+        /** Metadata for a package that is not installed. */
+        public static final PackageMetadata NOT_INSTALLED =
+                new PackageMetadata(false, -1, null, "");
+
+        /** Whether the package is installed. The other fields are only valid if it is. */
+        public final boolean installed;
+
+        public final int versionCode;
+
+        public final String versionName;
+
+        /** Used to fetch the signatures, or {@code null} if the hash is already known. */
+        private final PackageManager mPackageManager;
+
+        private final String mPackageName;
+
+        /** Hex SHA-1 hash of the package signatures, or {@code null} until fetched. */
+        private String mSignatureHash;
+
+        public PackageMetadata(boolean installed, int versionCode, String versionName,
+                String signatureHash) {
+            this.installed = installed;
+            this.versionCode = versionCode;
+            this.versionName = versionName;
+            mPackageManager = null;
+            mPackageName = null;
+            mSignatureHash = signatureHash;
+        }
+
+        /* package */ PackageMetadata(PackageManager packageManager, String packageName,
+                int versionCode, String versionName) {
+            this.installed = true;
+            this.versionCode = versionCode;
+            this.versionName = versionName;
+            mPackageManager = packageManager;
+            mPackageName = packageName;
+        }
+
+        /**
+         * Returns the hash of the package signatures, requesting the signatures from the
+         * {@link PackageManager} on the first call.
+         *
+         * @return Hex SHA-1 hash of the package signatures, or an empty string if unavailable.
+         */
+        public synchronized String getSignatureHash() {
+            if (mSignatureHash == null) {
+                mSignatureHash = fetchSignatureHash(mPackageManager, mPackageName);
+            }
+
+            return mSignatureHash;
+        }
+    }
+}
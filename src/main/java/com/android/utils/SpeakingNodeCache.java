@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.util.SparseArray;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Remembers whether nodes are speaking nodes, as computed by
+ * {@link AccessibilityNodeInfoUtils#shouldFocusNode(AccessibilityNodeInfoCompat, SpeakingNodeCache)},
+ * so the recursive checks aren't repeated for the same nodes on consecutive gestures. Results
+ * are kept per window and dropped when accessibility events show that they may have changed:
+ * <ul>
+ * <li>A text or content description change drops the changed node and its ancestors, since
+ * whether a node speaks depends on its descendants.</li>
+ * <li>Any other content change, a scroll or a window state change drops the whole window.</li>
+ * <li>A change in the set of windows drops everything.</li>
+ * </ul>
+ * The shared instance must be sent every event, and must only be used on the thread that
+ * receives accessibility events.
+ */
+public class SpeakingNodeCache implements AccessibilityEventListener {
+    /** Maximum number of nodes to remember per window before starting over. */
+    /* package */ static final int MAX_NODES_PER_WINDOW = 512;
+
+    private static SpeakingNodeCache sInstance;
+
+    /* Cached results by window id. Each map's keys are node copies owned by the cache. */
+    private final SparseArray<HashMap<AccessibilityNodeInfoCompat, Entry>> mWindows =
+            new SparseArray<>();
+
+    /**
+     * @return The cache shared by the services in this process.
+     */
+    public static SpeakingNodeCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new SpeakingNodeCache();
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * @return Whether the node is a speaking node, or {@code null} if unknown.
+     */
+    public Boolean get(AccessibilityNodeInfoCompat node) {
+        final HashMap<AccessibilityNodeInfoCompat, Entry> window = mWindows.get(node.getWindowId());
+        if (window == null) {
+            return null;
+        }
+
+        final Entry entry = window.get(node);
+        return (entry == null) ? null : entry.isSpeaking;
+    }
+
+    /**
+     * Records whether a node is a speaking node. The cache keeps its own copy of the node.
+     */
+    public void put(AccessibilityNodeInfoCompat node, boolean isSpeaking) {
+        final int windowId = node.getWindowId();
+        HashMap<AccessibilityNodeInfoCompat, Entry> window = mWindows.get(windowId);
+        if (window == null) {
+            window = new HashMap<>();
+            mWindows.put(windowId, window);
+        }
+
+        final Entry entry = window.get(node);
+        if (entry != null) {
+            entry.isSpeaking = isSpeaking;
+            return;
+        }
+
+        if (window.size() >= MAX_NODES_PER_WINDOW) {
+            recycleAll(window);
+        }
+
+        final AccessibilityNodeInfoCompat copy = AccessibilityNodeInfoCompat.obtain(node);
+        window.put(copy, new Entry(copy, isSpeaking));
+    }
+
+    /**
+     * Drops the results for a node and its ancestors.
+     */
+    public void invalidateNodeAndAncestors(AccessibilityNodeInfoCompat node) {
+        final HashMap<AccessibilityNodeInfoCompat, Entry> window = mWindows.get(node.getWindowId());
+        if ((window == null) || window.isEmpty()) {
+            return;
+        }
+
+        final Set<AccessibilityNodeInfoCompat> visitedNodes = new HashSet<>();
+        AccessibilityNodeInfoCompat current = AccessibilityNodeInfoCompat.obtain(node);
+        while ((current != null) && visitedNodes.add(current)) {
+            final Entry entry = window.remove(current);
+            if (entry != null) {
+                entry.node.recycle();
+            }
+
+            current = current.getParent();
+        }
+
+        AccessibilityNodeInfoUtils.recycleNodes(current);
+        AccessibilityNodeInfoUtils.recycleNodes(visitedNodes);
+    }
+
+    /**
+     * Drops the results for all nodes in a window.
+     */
+    public void invalidateWindow(int windowId) {
+        final HashMap<AccessibilityNodeInfoCompat, Entry> window = mWindows.get(windowId);
+        if (window != null) {
+            recycleAll(window);
+            mWindows.remove(windowId);
+        }
+    }
+
+    /**
+     * Drops all results.
+     */
+    public void clear() {
+        for (int i = 0; i < mWindows.size(); i++) {
+            recycleAll(mWindows.valueAt(i));
+        }
+
+        mWindows.clear();
+    }
+
+    /**
+     * @return The number of nodes with cached results.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < mWindows.size(); i++) {
+            size += mWindows.valueAt(i).size();
+        }
+
+        return size;
+    }
+
+    @Override
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+        if (mWindows.size() == 0) {
+            return;
+        }
+
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+                if (AccessibilityEventUtils.isNodeOnlyContentChange(event)) {
+                    invalidateSource(event);
+                } else {
+                    invalidateWindow(event.getWindowId());
+                }
+                break;
+            case AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED:
+                invalidateSource(event);
+                break;
+            case AccessibilityEvent.TYPE_VIEW_SCROLLED:
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+                invalidateWindow(event.getWindowId());
+                break;
+            case AccessibilityEvent.TYPE_WINDOWS_CHANGED:
+                clear();
+                break;
+        }
+    }
+
+    private void invalidateSource(AccessibilityEvent event) {
+        final AccessibilityNodeInfoCompat node = getSource(event);
+        if (node == null) {
+            invalidateWindow(event.getWindowId());
+            return;
+        }
+
+        invalidateNodeAndAncestors(node);
+        node.recycle();
+    }
+
+    // Visible for testing
+    /* package */ AccessibilityNodeInfoCompat getSource(AccessibilityEvent event) {
+        final AccessibilityNodeInfo source = event.getSource();
+        return (source == null) ? null : new AccessibilityNodeInfoCompat(source);
+    }
+
+    private static void recycleAll(HashMap<AccessibilityNodeInfoCompat, Entry> window) {
+        for (Entry entry : window.values()) {
+            entry.node.recycle();
+        }
+
+        window.clear();
+    }
+
+    private static final class Entry {
+        public final AccessibilityNodeInfoCompat node;
+        public boolean isSpeaking;
+
+        public Entry(AccessibilityNodeInfoCompat node, boolean isSpeaking) {
+            this.node = node;
+            this.isSpeaking = isSpeaking;
+        }
+    }
+}
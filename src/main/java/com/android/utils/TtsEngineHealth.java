@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.util.HashMap;
+
+/**
+ * Records how well each text-to-speech engine has worked: how long it takes
+ * to initialize, how long it takes to start speaking, and how often it fails.
+ * The totals are kept in their own {@link SharedPreferences} file, named
+ * {@link #PREFS_NAME}, so they survive restarts without notifying listeners
+ * of the user's settings.
+ * <p>
+ * Once an engine has made {@link #MAX_ATTEMPT_COUNT} attempts, its totals are
+ * halved so that recent behavior outweighs old behavior.
+ */
+/* package */ class TtsEngineHealth {
+    /** Name of the shared preferences file holding the totals. */
+    public static final String PREFS_NAME = "tts_engine_health";
+
+    /** Prefix of the preference key holding an engine's totals. */
+    private static final String PREF_PREFIX = "tts_engine_health_";
+
+    /** Number of attempts after which totals are halved. */
+    /* package */ static final int MAX_ATTEMPT_COUNT = 1000;
+
+    /** Number of attempts needed before the error rate is trusted. */
+    /* package */ static final int MIN_ATTEMPT_COUNT = 10;
+
+    /** Error rate above which an engine is considered unhealthy. */
+    /* package */ static final float MAX_ERROR_RATE = 0.1f;
+
+    private final SharedPreferences mPrefs;
+
+    /** Totals for each engine that has been loaded or recorded. */
+    private final HashMap<String, Stats> mStats = new HashMap<>();
+
+    public TtsEngineHealth(SharedPreferences prefs) {
+        mPrefs = prefs;
+    }
+
+    /**
+     * Records the result of initializing an engine.
+     *
+     * @param engine The package name of the engine.
+     * @param millis The time from creating the engine until it initialized.
+     * @param success Whether the engine initialized successfully.
+     */
+    public void recordInit(String engine, long millis, boolean success) {
+        final Stats stats = getStats(engine);
+        if (stats == null) {
+            return;
+        }
+
+        stats.mInitCount++;
+        stats.mInitMillis += millis;
+        if (!success) {
+            stats.mInitFailureCount++;
+        }
+
+        stats.onAttempt();
+    }
+
+    /**
+     * Records the result of passing an utterance to an engine.
+     *
+     * @param engine The package name of the engine.
+     * @param success Whether the engine accepted the utterance.
+     */
+    public void recordSpeak(String engine, boolean success) {
+        final Stats stats = getStats(engine);
+        if (stats == null) {
+            return;
+        }
+
+        stats.mSpeakCount++;
+        if (!success) {
+            stats.mSpeakFailureCount++;
+        }
+
+        stats.onAttempt();
+    }
+
+    /**
+     * Records an engine reporting an error for an utterance it had accepted.
+     *
+     * @param engine The package name of the engine.
+     */
+    public void recordError(String engine) {
+        final Stats stats = getStats(engine);
+        if (stats == null) {
+            return;
+        }
+
+        stats.mSpeakFailureCount = Math.min(stats.mSpeakFailureCount + 1, stats.mSpeakCount);
+        stats.mIsDirty = true;
+    }
+
+    /**
+     * Records the time between passing an utterance to an engine and the
+     * engine starting to speak it.
+     *
+     * @param engine The package name of the engine.
+     * @param millis The time until audio started.
+     */
+    public void recordFirstAudio(String engine, long millis) {
+        final Stats stats = getStats(engine);
+        if (stats == null) {
+            return;
+        }
+
+        stats.mFirstAudioCount++;
+        stats.mFirstAudioMillis += millis;
+        stats.mIsDirty = true;
+    }
+
+    /**
+     * @return The fraction of initializations and utterances that failed, or
+     *         0 if the engine has not been used.
+     */
+    public float getErrorRate(String engine) {
+        final Stats stats = getStats(engine);
+        if ((stats == null) || (stats.getAttemptCount() == 0)) {
+            return 0;
+        }
+
+        return (stats.mInitFailureCount + stats.mSpeakFailureCount)
+                / (float) stats.getAttemptCount();
+    }
+
+    /**
+     * @return The average initialization time in milliseconds, or -1 if the
+     *         engine has never initialized.
+     */
+    public long getAverageInitTime(String engine) {
+        final Stats stats = getStats(engine);
+        if ((stats == null) || (stats.mInitCount == 0)) {
+            return -1;
+        }
+
+        return stats.mInitMillis / stats.mInitCount;
+    }
+
+    /**
+     * @return The average time until audio started in milliseconds, or -1 if
+     *         the engine has never spoken.
+     */
+    public long getAverageFirstAudioLatency(String engine) {
+        final Stats stats = getStats(engine);
+        if ((stats == null) || (stats.mFirstAudioCount == 0)) {
+            return -1;
+        }
+
+        return stats.mFirstAudioMillis / stats.mFirstAudioCount;
+    }
+
+    /**
+     * @return Whether the engine has failed often enough that it should have
+     *         a fallback engine ready.
+     */
+    public boolean isUnhealthy(String engine) {
+        final Stats stats = getStats(engine);
+        if ((stats == null) || (stats.getAttemptCount() < MIN_ATTEMPT_COUNT)) {
+            return false;
+        }
+
+        return getErrorRate(engine) > MAX_ERROR_RATE;
+    }
+
+    /**
+     * Writes totals that changed since the last call to shared preferences.
+     */
+    public void save() {
+        SharedPreferences.Editor editor = null;
+        for (Stats stats : mStats.values()) {
+            if (!stats.mIsDirty) {
+                continue;
+            }
+
+            if (editor == null) {
+                editor = mPrefs.edit();
+            }
+
+            editor.putString(PREF_PREFIX + stats.mEngine, stats.toPrefString());
+            stats.mIsDirty = false;
+        }
+
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+
+    private Stats getStats(String engine) {
+        if (TextUtils.isEmpty(engine)) {
+            return null;
+        }
+
+        Stats stats = mStats.get(engine);
+        if (stats == null) {
+            stats = new Stats(engine);
+            stats.fromPrefString(mPrefs.getString(PREF_PREFIX + engine, null));
+            mStats.put(engine, stats);
+        }
+
+        return stats;
+    }
+
+    /** Totals for a single engine. */
+    private static class Stats {
+        private static final int FIELD_COUNT = 7;
+
+        final String mEngine;
+
+        int mInitCount;
+        int mInitFailureCount;
+        long mInitMillis;
+        int mSpeakCount;
+        int mSpeakFailureCount;
+        int mFirstAudioCount;
+        long mFirstAudioMillis;
+
+        /** Whether the totals changed since they were last saved. */
+        boolean mIsDirty;
+
+        Stats(String engine) {
+            mEngine = engine;
+        }
+
+        int getAttemptCount() {
+            return mInitCount + mSpeakCount;
+        }
+
+        void onAttempt() {
+            if (getAttemptCount() >= MAX_ATTEMPT_COUNT) {
+                mInitCount /= 2;
+                mInitFailureCount /= 2;
+                mInitMillis /= 2;
+                mSpeakCount /= 2;
+                mSpeakFailureCount /= 2;
+                mFirstAudioCount /= 2;
+                mFirstAudioMillis /= 2;
+            }
+
+            mIsDirty = true;
+        }
+
+        String toPrefString() {
+            return mInitCount + "," + mInitFailureCount + "," + mInitMillis + ","
+                    + mSpeakCount + "," + mSpeakFailureCount + ","
+                    + mFirstAudioCount + "," + mFirstAudioMillis;
+        }
+
+        void fromPrefString(String value) {
+            if (value == null) {
+                return;
+            }
+
+            final String[] fields = value.split(",");
+            if (fields.length != FIELD_COUNT) {
+                return;
+            }
+
+            try {
+                mInitCount = Integer.parseInt(fields[0]);
+                mInitFailureCount = Integer.parseInt(fields[1]);
+                mInitMillis = Long.parseLong(fields[2]);
+                mSpeakCount = Integer.parseInt(fields[3]);
+                mSpeakFailureCount = Integer.parseInt(fields[4]);
+                mFirstAudioCount = Integer.parseInt(fields[5]);
+                mFirstAudioMillis = Long.parseLong(fields[6]);
+            } catch (NumberFormatException e) {
+                mInitCount = 0;
+                mInitFailureCount = 0;
+                mInitMillis = 0;
+                mSpeakCount = 0;
+                mSpeakFailureCount = 0;
+                mFirstAudioCount = 0;
+                mFirstAudioMillis = 0;
+            }
+        }
+    }
+}
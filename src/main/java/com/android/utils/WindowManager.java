@@ -17,12 +17,19 @@
 package com.android.utils;
 
 import android.annotation.TargetApi;
+import android.graphics.Rect;
 import android.os.Build;
+import android.util.SparseIntArray;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.view.accessibility.AccessibilityWindowInfo;
 
 import java.util.List;
 
+/**
+ * Snapshot of the windows on screen. The type, layer and bounds of each window and an index from
+ * window id to position are computed once in {@link #setWindows(List)}, so queries don't go back
+ * to the window objects.
+ */
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
 public class WindowManager {
 
@@ -35,12 +42,75 @@ public class WindowManager {
 
     private  List<AccessibilityWindowInfo> mWindows;
 
+    /* Per-window data, in the same order as mWindows */
+    private int[] mWindowTypes = new int[0];
+    private int[] mWindowLayers = new int[0];
+    private Rect[] mWindowBounds = new Rect[0];
+
+    /* Map from window id to position in mWindows */
+    private final SparseIntArray mIndexById = new SparseIntArray();
+
+    private int mAccessibilityFocusedIndex = WRONG_INDEX;
+    private boolean mHasInputWindow;
+
     /**
      * Set windows that would be used by WindowManager
      * @param windows Set the windows on the screen.
      */
     public void setWindows(List<AccessibilityWindowInfo> windows) {
         mWindows = windows;
+        mIndexById.clear();
+        mAccessibilityFocusedIndex = WRONG_INDEX;
+        mHasInputWindow = false;
+
+        int size = (windows == null) ? 0 : windows.size();
+        if (mWindowTypes.length < size) {
+            mWindowTypes = new int[size];
+            mWindowLayers = new int[size];
+            Rect[] bounds = new Rect[size];
+            System.arraycopy(mWindowBounds, 0, bounds, 0, mWindowBounds.length);
+            for (int i = mWindowBounds.length; i < size; i++) {
+                bounds[i] = new Rect();
+            }
+            mWindowBounds = bounds;
+        }
+
+        for (int i = 0; i < size; i++) {
+            AccessibilityWindowInfo window = windows.get(i);
+            if (window == null) {
+                mWindowTypes[i] = WRONG_WINDOW_TYPE;
+                mWindowLayers[i] = 0;
+                mWindowBounds[i].setEmpty();
+                continue;
+            }
+
+            mWindowTypes[i] = window.getType();
+            mWindowLayers[i] = window.getLayer();
+            window.getBoundsInScreen(mWindowBounds[i]);
+            if (mIndexById.indexOfKey(window.getId()) < 0) {
+                mIndexById.put(window.getId(), i);
+            }
+            if (mAccessibilityFocusedIndex == WRONG_INDEX && window.isAccessibilityFocused()) {
+                mAccessibilityFocusedIndex = i;
+            }
+            if (mWindowTypes[i] == AccessibilityWindowInfo.TYPE_INPUT_METHOD) {
+                mHasInputWindow = true;
+            }
+        }
+    }
+
+    /**
+     * @return The number of windows in the snapshot
+     */
+    public int getWindowCount() {
+        return (mWindows == null) ? 0 : mWindows.size();
+    }
+
+    /**
+     * @return The window at the given position, in the order returned by the system
+     */
+    public AccessibilityWindowInfo getWindow(int index) {
+        return mWindows.get(index);
     }
 
     /**
@@ -63,8 +133,7 @@ public class WindowManager {
 
         int count = mWindows.size();
         for (int i = index + 1; i < count; i++) {
-            AccessibilityWindowInfo window = mWindows.get(i);
-            if (window != null && window.getType() == windowType) {
+            if (mWindowTypes[i] == windowType) {
                 return false;
             }
         }
@@ -82,8 +151,7 @@ public class WindowManager {
         }
 
         for (int i = index - 1; i > 0; i--) {
-            AccessibilityWindowInfo window = mWindows.get(i);
-            if (window != null && window.getType() == windowType) {
+            if (mWindowTypes[i] == windowType) {
                 return false;
             }
         }
@@ -97,9 +165,8 @@ public class WindowManager {
      * or null if there is no window with TYPE_APPLICATION type
      */
     public AccessibilityWindowInfo getCurrentWindow() {
-        int currentWindowIndex = getAccessibilityFocusedWindowIndex(mWindows);
-        if (currentWindowIndex != WRONG_INDEX) {
-            return mWindows.get(currentWindowIndex);
+        if (mAccessibilityFocusedIndex != WRONG_INDEX) {
+            return mWindows.get(mAccessibilityFocusedIndex);
         }
 
         return null;
@@ -115,29 +182,42 @@ public class WindowManager {
     }
 
     public boolean isInputWindowOnScreen() {
-        if (mWindows == null) {
-            return false;
-        }
-
-        for (AccessibilityWindowInfo window : mWindows) {
-            if (window != null && window.getType() == AccessibilityWindowInfo.TYPE_INPUT_METHOD) {
-                return true;
-            }
-        }
+        return mHasInputWindow;
+    }
 
-        return false;
+    /**
+     * @return The window with the given id, or {@code null} if there is no such window
+     */
+    public AccessibilityWindowInfo getWindowById(int windowId) {
+        int index = mIndexById.get(windowId, WRONG_INDEX);
+        return (index == WRONG_INDEX) ? null : mWindows.get(index);
     }
 
     public int getWindowType(int windowId) {
-        if (mWindows != null) {
-            for (AccessibilityWindowInfo window : mWindows) {
-                if (window != null && window.getId() == windowId) {
-                    return window.getType();
-                }
-            }
-        }
+        int index = mIndexById.get(windowId, WRONG_INDEX);
+        return (index == WRONG_INDEX) ? WRONG_WINDOW_TYPE : mWindowTypes[index];
+    }
 
-        return WRONG_WINDOW_TYPE;
+    /**
+     * @return The layer of the window with the given id, or 0 if there is no such window
+     */
+    public int getWindowLayer(int windowId) {
+        int index = mIndexById.get(windowId, WRONG_INDEX);
+        return (index == WRONG_INDEX) ? 0 : mWindowLayers[index];
+    }
+
+    /**
+     * Get the bounds of the window with the given id.
+     *
+     * @return {@code false} if there is no such window, in which case outBounds is not changed
+     */
+    public boolean getWindowBounds(int windowId, Rect outBounds) {
+        int index = mIndexById.get(windowId, WRONG_INDEX);
+        if (index == WRONG_INDEX) {
+            return false;
+        }
+        outBounds.set(mWindowBounds[index]);
+        return true;
     }
 
     /**
@@ -201,29 +281,7 @@ public class WindowManager {
             return WRONG_INDEX;
         }
 
-        int windowSize = mWindows.size();
-        for (int i = 0; i < windowSize; i++) {
-            if (windowInfo.equals(mWindows.get(i))) {
-                return i;
-            }
-        }
-
-        return WRONG_INDEX;
-    }
-
-    private static int getAccessibilityFocusedWindowIndex(List<AccessibilityWindowInfo> windows) {
-        if (windows == null) {
-            return WRONG_INDEX;
-        }
-
-        for (int i = 0, size = windows.size(); i < size; i++) {
-            AccessibilityWindowInfo window = windows.get(i);
-            if (window != null && window.isAccessibilityFocused()) {
-                return i;
-            }
-        }
-
-        return WRONG_INDEX;
+        return mIndexById.get(windowInfo.getId(), WRONG_INDEX);
     }
 
     private static AccessibilityWindowInfo getDefaultWindow(List<AccessibilityWindowInfo> windows) {
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.accessibilityservice.AccessibilityService;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityWindowInfo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the service's window list between window changes. The list is fetched from the system
+ * the first time it's needed after a {@link AccessibilityEvent#TYPE_WINDOWS_CHANGED} event, rather
+ * than on every query. Must only be used on the thread that receives accessibility events.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class WindowSnapshotCache implements AccessibilityEventListener {
+    private final AccessibilityService mService;
+
+    private final WindowManager mWindowManager = new WindowManager();
+
+    private List<AccessibilityWindowInfo> mWindows = Collections.emptyList();
+
+    private boolean mIsDirty = true;
+
+    public WindowSnapshotCache(AccessibilityService service) {
+        mService = service;
+    }
+
+    @Override
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+        if (event.getEventType() == AccessibilityEvent.TYPE_WINDOWS_CHANGED) {
+            mIsDirty = true;
+        }
+    }
+
+    /**
+     * Force the windows to be fetched again on the next query, for example after events may
+     * have been missed.
+     */
+    public void invalidate() {
+        mIsDirty = true;
+    }
+
+    /**
+     * @return The windows on screen. The list must not be modified.
+     */
+    public List<AccessibilityWindowInfo> getWindows() {
+        refreshIfDirty();
+        return mWindows;
+    }
+
+    /**
+     * @return A {@link WindowManager} holding the windows on screen. It is shared, so callers
+     * must not call {@link WindowManager#setWindows(List)} on it.
+     */
+    public WindowManager getWindowManager() {
+        refreshIfDirty();
+        return mWindowManager;
+    }
+
+    private void refreshIfDirty() {
+        if (!mIsDirty) {
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            List<AccessibilityWindowInfo> windows = mService.getWindows();
+            mWindows = (windows == null) ? Collections.<AccessibilityWindowInfo>emptyList()
+                    : Collections.unmodifiableList(windows);
+        }
+        mWindowManager.setWindows(mWindows);
+        mIsDirty = false;
+    }
+}
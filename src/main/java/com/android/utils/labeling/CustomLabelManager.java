@@ -21,10 +21,6 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.PackageManager.NameNotFoundException;
-import android.content.pm.Signature;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.text.TextUtils;
@@ -34,10 +30,9 @@ import android.view.accessibility.AccessibilityNodeInfo;
 import com.android.screenspeak.BuildConfig;
 import com.android.utils.AccessibilityEventListener;
 import com.android.utils.LogUtils;
-import com.android.utils.StringBuilderUtils;
+import com.android.utils.PackageMetadataCache;
+import com.android.utils.PackageMetadataCache.PackageMetadata;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -105,7 +100,7 @@ public class CustomLabelManager {
     private final LocaleChangedReceiver mLocaleChangedReceiver = new LocaleChangedReceiver();
 
     private final Context mContext;
-    private final PackageManager mPackageManager;
+    private final PackageMetadataCache mPackageMetadataCache;
     private final LabelProviderClient mClient;
 
     // Used to manage release of resources based on task completion
@@ -115,7 +110,7 @@ public class CustomLabelManager {
 
     public CustomLabelManager(Context context) {
         mContext = context;
-        mPackageManager = context.getPackageManager();
+        mPackageMetadataCache = PackageMetadataCache.getInstance(context);
         mLock = new Object();
         mShouldShutdownClient = false;
         mRunningTasks = 0;
@@ -267,31 +262,16 @@ public class CustomLabelManager {
             return;
         }
 
-        final PackageInfo packageInfo;
-        try {
-            packageInfo = mPackageManager.getPackageInfo(
-                    parsedId.first, PackageManager.GET_SIGNATURES);
-        } catch (NameNotFoundException e) {
+        final PackageMetadata metadata = mPackageMetadataCache.get(parsedId.first);
+        if (!metadata.installed) {
             LogUtils.log(this, Log.WARN, "Attempted to add a label for an unknown package.");
             return;
         }
 
         final String locale = Locale.getDefault().toString();
-        final int version = packageInfo.versionCode;
+        final int version = metadata.versionCode;
         final long timestamp = System.currentTimeMillis();
-        String signatureHash = "";
-
-        final Signature[] sigs = packageInfo.signatures;
-        try {
-            final MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
-            for (Signature s : sigs) {
-                messageDigest.update(s.toByteArray());
-            }
-
-            signatureHash = StringBuilderUtils.bytesToHexString(messageDigest.digest());
-        } catch (NoSuchAlgorithmException e) {
-            LogUtils.log(this, Log.WARN, "Unable to create SHA-1 MessageDigest");
-        }
+        final String signatureHash = metadata.getSignatureHash();
 
         // For the current implementation, screenshots are disabled
         final String screenshotPath = "";
@@ -488,25 +468,6 @@ public class CustomLabelManager {
         maybeShutdownClient();
     }
 
-    private static String computePackageSignatureHash(PackageInfo packageInfo) {
-        String signatureHash = "";
-
-        final Signature[] sigs = packageInfo.signatures;
-        try {
-            final MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
-            for (Signature s : sigs) {
-                messageDigest.update(s.toByteArray());
-            }
-
-            signatureHash = StringBuilderUtils.bytesToHexString(messageDigest.digest());
-        } catch (NoSuchAlgorithmException e) {
-            LogUtils.log(
-                    CustomLabelManager.class, Log.WARN, "Unable to create SHA-1 MessageDigest");
-        }
-
-        return signatureHash;
-    }
-
     private void sendCacheRefreshIntent(String... packageNames) {
         final Intent refreshIntent = new Intent(
                 LabelOperationUtils.ACTION_REFRESH_LABEL_CACHE);
@@ -638,11 +599,11 @@ public class CustomLabelManager {
                     hashCode(), mRequest);
 
             int versionCode = Integer.MAX_VALUE;
-            try {
-                final PackageInfo packageInfo = mPackageManager.getPackageInfo(
-                        mRequest.getPackageName(), 0);
-                versionCode = packageInfo.versionCode;
-            } catch (NameNotFoundException e) {
+            final PackageMetadata metadata =
+                    mPackageMetadataCache.get(mRequest.getPackageName());
+            if (metadata.installed) {
+                versionCode = metadata.versionCode;
+            } else {
                 LogUtils.log(this, Log.WARN,
                         "Unable to resolve package info during prefetch for %s",
                         mRequest.getPackageName());
@@ -770,8 +731,6 @@ public class CustomLabelManager {
                 return null;
             }
 
-            final PackageManager pm = mContext.getPackageManager();
-
             final List<Label> candidates = new ArrayList<>(allLabels);
             ListIterator<Label> i = candidates.listIterator();
 
@@ -782,10 +741,8 @@ public class CustomLabelManager {
 
                 // Ensure the label has a matching installed package.
                 final String packageName = l.getPackageName();
-                PackageInfo packageInfo;
-                try {
-                    packageInfo = pm.getPackageInfo(packageName, PackageManager.GET_SIGNATURES);
-                } catch (NameNotFoundException e) {
+                final PackageMetadata metadata = mPackageMetadataCache.get(packageName);
+                if (!metadata.installed) {
                     // If there's no installed package, leave the label in the
                     // list for removal.
                     LogUtils.log(CustomLabelManager.class, Log.VERBOSE,
@@ -797,7 +754,7 @@ public class CustomLabelManager {
                 // Ensure the signature hash of the application matches
                 // the hash of the package when the label was stored.
                 final String expectedHash = l.getPackageSignature();
-                final String actualHash = computePackageSignatureHash(packageInfo);
+                final String actualHash = metadata.getSignatureHash();
                 if (TextUtils.isEmpty(expectedHash) || TextUtils.isEmpty(actualHash)
                         || !expectedHash.equals(actualHash)) {
                     // If the expected or actual signature hashes aren't
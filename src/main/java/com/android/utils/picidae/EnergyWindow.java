@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils.picidae;
+
+/**
+ * Sliding time window of energy samples that keeps a running sum. Samples are stored in a
+ * circular buffer of primitives, so adding and expiring samples is O(1) and doesn't allocate.
+ * The buffer is sized for the highest sensor rates, and only grows if a sensor exceeds them.
+ * Not thread safe.
+ */
+/* package */ class EnergyWindow {
+    /* Enough for a 100 ms window at over 600 Hz */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private long[] mTimes = new long[DEFAULT_CAPACITY];
+
+    private float[] mValues = new float[DEFAULT_CAPACITY];
+
+    /* Index of the oldest sample */
+    private int mHead;
+
+    private int mSize;
+
+    private float mSum;
+
+    /**
+     * Add a sample to the end of the window.
+     */
+    public void add(long time, float value) {
+        if (mSize == mTimes.length) {
+            grow();
+        }
+        int tail = (mHead + mSize) % mTimes.length;
+        mTimes[tail] = time;
+        mValues[tail] = value;
+        mSize++;
+        mSum += value;
+    }
+
+    /**
+     * Remove samples from the start of the window whose time is at or before the given time.
+     */
+    public void removeSamplesUpTo(long time) {
+        while ((mSize > 0) && (mTimes[mHead] <= time)) {
+            mSum -= mValues[mHead];
+            mHead = (mHead + 1) % mTimes.length;
+            mSize--;
+        }
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+        mSum = 0f;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return The sum of the values of the samples in the window
+     */
+    public float getSum() {
+        return mSum;
+    }
+
+    /**
+     * @return The time spanned by the samples in the window, or 0 if it is empty
+     */
+    public long getTimeSpan() {
+        if (mSize == 0) {
+            return 0;
+        }
+        return mTimes[(mHead + mSize - 1) % mTimes.length] - mTimes[mHead];
+    }
+
+    private void grow() {
+        int capacity = mTimes.length;
+        long[] times = new long[capacity * 2];
+        float[] values = new float[capacity * 2];
+        for (int i = 0; i < mSize; i++) {
+            times[i] = mTimes[(mHead + i) % capacity];
+            values[i] = mValues[(mHead + i) % capacity];
+        }
+        mTimes = times;
+        mValues = values;
+        mHead = 0;
+    }
+}
@@ -24,10 +24,10 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 
 /**
  * Class to gather data from the accelerometer and gyroscope and detect tapping on the side of the
@@ -113,13 +113,13 @@ public class IntegratedTapDetector implements SensorEventListener,
     private final SensorManager mSensorManager;
 
     /* Queues to store taps from accelerometer. */
-    private final Queue<Tap> mAccelTapEventQueue = new LinkedList<>();
+    private final TapQueue mAccelTapEventQueue = new TapQueue();
 
     /* Queues to store taps from gyroscope. */
-    private final Queue<Tap> mGyroTapEventQueue = new LinkedList<>();
+    private final TapQueue mGyroTapEventQueue = new TapQueue();
 
     /* Queues to store taps detected by integrating the lower-level detectors. */
-    private final Queue<Tap> mIntegratedTapEventQueue = new LinkedList<>();
+    private final TapQueue mIntegratedTapEventQueue = new TapQueue();
 
     /* The accelerometer-based tap detector being integrated */
     private final ThreeDSensorTapDetector mAccelTapDetector;
@@ -136,6 +136,9 @@ public class IntegratedTapDetector implements SensorEventListener,
     /* Map to keep track of listeners and which handlers to call them through */
     private final Map<TapListener, Handler> mListenerMap = new HashMap<>();
 
+    /* One dispatcher per looper that listeners are called on. Guarded by mListenerMap. */
+    private final List<TapDispatcher> mDispatchers = new ArrayList<>();
+
     /* Current tap detection strategy */
     private TapDetector mCurrentTapDetector = TapDetector.INTEGRATED_TAP_DETECTOR;
 
@@ -319,7 +322,14 @@ public class IntegratedTapDetector implements SensorEventListener,
      */
     void addListener(TapListener listener, Handler handler) {
         synchronized (mListenerMap) {
+            removeListener(listener);
             mListenerMap.put(listener, handler);
+            TapDispatcher dispatcher = getDispatcherForHandler(handler);
+            if (dispatcher == null) {
+                dispatcher = new TapDispatcher(handler);
+                mDispatchers.add(dispatcher);
+            }
+            dispatcher.addListener(listener);
         }
     }
 
@@ -335,10 +345,33 @@ public class IntegratedTapDetector implements SensorEventListener,
      */
     public void removeListener(TapListener listener) {
         synchronized (mListenerMap) {
-            mListenerMap.remove(listener);
+            Handler handler = mListenerMap.remove(listener);
+            if (handler == null) {
+                return;
+            }
+            TapDispatcher dispatcher = getDispatcherForHandler(handler);
+            dispatcher.removeListener(listener);
+            if (!dispatcher.hasListeners()) {
+                dispatcher.cancel();
+                mDispatchers.remove(dispatcher);
+            }
         }
     }
 
+    /*
+     * Listeners whose handlers share a looper can share a dispatcher, since they're called on
+     * the same thread. Must be called with mListenerMap held.
+     */
+    private TapDispatcher getDispatcherForHandler(Handler handler) {
+        for (int i = 0; i < mDispatchers.size(); i++) {
+            TapDispatcher dispatcher = mDispatchers.get(i);
+            if (dispatcher.getHandler().getLooper() == handler.getLooper()) {
+                return dispatcher;
+            }
+        }
+        return null;
+    }
+
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
         // Nothing to do
@@ -361,11 +394,11 @@ public class IntegratedTapDetector implements SensorEventListener,
     public void threeDSensorTapDetected(
             ThreeDSensorTapDetector threeDSensorTapDetector, long timestamp, double tapConfidence) {
         if (threeDSensorTapDetector == mAccelTapDetector) {
-            mAccelTapEventQueue.add(new Tap(tapConfidence, timestamp));
+            mAccelTapEventQueue.add(timestamp, tapConfidence);
         }
 
         if (threeDSensorTapDetector == mGyroTapDetector) {
-            mGyroTapEventQueue.add(new Tap(tapConfidence, timestamp));
+            mGyroTapEventQueue.add(timestamp, tapConfidence);
         }
 
         emitTapsFromQueues(timestamp);
@@ -390,24 +423,7 @@ public class IntegratedTapDetector implements SensorEventListener,
      */
     // visible for testing
     void sendDoubleTapToListeners(long timestampNanos) {
-        final long finalTimestamp = timestampNanos;
-        mLastReportedTapTime = timestampNanos;
-        mHaveReportedAtLeastOneTap = true;
-
-        // Pass double-tap along to all listeners
-        synchronized (mListenerMap) {
-            for (TapListener listener : mListenerMap.keySet()) {
-                final TapListener finalListener = listener;
-                long delay = mPostDelayTime - (System.nanoTime() - timestampNanos);
-                delay = (delay > 0) ? delay : 0;
-                mListenerMap.get(listener).postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        finalListener.onDoubleTap(finalTimestamp);
-                    }
-                }, delay);
-            }
-        }
+        sendTapToListeners(true, timestampNanos);
     }
 
     /*
@@ -415,22 +431,18 @@ public class IntegratedTapDetector implements SensorEventListener,
      */
     // visible for testing
     void sendSingleTapToListeners(long timestampNanos) {
-        final long finalTimestamp = timestampNanos;
+        sendTapToListeners(false, timestampNanos);
+    }
+
+    private void sendTapToListeners(boolean isDoubleTap, long timestampNanos) {
         mLastReportedTapTime = timestampNanos;
         mHaveReportedAtLeastOneTap = true;
 
-        // Pass tap along to all listeners
+        long delay = mPostDelayTime - (System.nanoTime() - timestampNanos) / MILIS_PER_NANO;
+        delay = (delay > 0) ? delay : 0;
         synchronized (mListenerMap) {
-            for (TapListener listener : mListenerMap.keySet()) {
-                final TapListener finalListener = listener;
-                long delay = mPostDelayTime - (System.nanoTime() - timestampNanos) / MILIS_PER_NANO;
-                delay = (delay > 0) ? delay : 0;
-                mListenerMap.get(listener).postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        finalListener.onSingleTap(finalTimestamp);
-                    }
-                }, delay);
+            for (int i = 0; i < mDispatchers.size(); i++) {
+                mDispatchers.get(i).dispatch(isDoubleTap, timestampNanos, delay);
             }
         }
     }
@@ -458,16 +470,16 @@ public class IntegratedTapDetector implements SensorEventListener,
          * When neither queue is empty, we have all of the information needed to process the most
          * recent tap.
          */
-        while ((mGyroTapEventQueue.size() > 0) && (mAccelTapEventQueue.size() > 0)) {
-            if (mGyroTapEventQueue.peek().nanos
-                    > mAccelTapEventQueue.peek().nanos + MAX_OFFSET_BETWEEN_TAP_DETECTORS) {
-                mIntegratedTapEventQueue.add(mAccelTapEventQueue.remove());
+        while (!mGyroTapEventQueue.isEmpty() && !mAccelTapEventQueue.isEmpty()) {
+            if (mGyroTapEventQueue.peekNanos()
+                    > mAccelTapEventQueue.peekNanos() + MAX_OFFSET_BETWEEN_TAP_DETECTORS) {
+                mAccelTapEventQueue.moveFirstTo(mIntegratedTapEventQueue);
                 continue;
             }
 
-            if (mAccelTapEventQueue.peek().nanos
-                    > mGyroTapEventQueue.peek().nanos + MAX_OFFSET_BETWEEN_TAP_DETECTORS) {
-                mIntegratedTapEventQueue.add(mGyroTapEventQueue.remove());
+            if (mAccelTapEventQueue.peekNanos()
+                    > mGyroTapEventQueue.peekNanos() + MAX_OFFSET_BETWEEN_TAP_DETECTORS) {
+                mGyroTapEventQueue.moveFirstTo(mIntegratedTapEventQueue);
                 continue;
             }
 
@@ -475,33 +487,33 @@ public class IntegratedTapDetector implements SensorEventListener,
              *  The two times are close enough that we can combine these taps.  We set the quality
              *  of this tap equal to the sum of that from the two detectors.
              */
-            Tap accelTap = mAccelTapEventQueue.remove();
-            Tap gyroTap = mGyroTapEventQueue.remove();
-            Tap integratedTap = new Tap(
-                    accelTap.quality + gyroTap.quality, Math.min(accelTap.nanos, gyroTap.nanos));
-            mIntegratedTapEventQueue.add(integratedTap);
+            mIntegratedTapEventQueue.add(
+                    Math.min(mAccelTapEventQueue.peekNanos(), mGyroTapEventQueue.peekNanos()),
+                    mAccelTapEventQueue.peekQuality() + mGyroTapEventQueue.peekQuality());
+            mAccelTapEventQueue.removeFirst();
+            mGyroTapEventQueue.removeFirst();
         }
 
         /*
          * Emit any taps we can from the non-empty queue. Note that if both queues are empty, the
          * while() loop never executes.
          */
-        Queue<Tap> nonEmptyTapQueue =
-                (mGyroTapEventQueue.size() > 0) ? mGyroTapEventQueue : mAccelTapEventQueue;
-        while (nonEmptyTapQueue.size() > 0) {
+        TapQueue nonEmptyTapQueue =
+                (!mGyroTapEventQueue.isEmpty()) ? mGyroTapEventQueue : mAccelTapEventQueue;
+        while (!nonEmptyTapQueue.isEmpty()) {
             long latestTimeThatCantBeADoubleTap =
                     timestamp - MAX_OFFSET_BETWEEN_TAP_DETECTORS - MAX_TAP_DETECTOR_LATENCY;
-            if (nonEmptyTapQueue.peek().nanos > latestTimeThatCantBeADoubleTap) {
+            if (nonEmptyTapQueue.peekNanos() > latestTimeThatCantBeADoubleTap) {
                 break;
             }
 
             if (DEBUG) {
                 Log.v("Picidae", String.format(
                         "Adding tap at time %d from nonempty to integrated queue at time %d",
-                        nonEmptyTapQueue.peek().nanos, timestamp));
+                        nonEmptyTapQueue.peekNanos(), timestamp));
             }
 
-            mIntegratedTapEventQueue.add(nonEmptyTapQueue.remove());
+            nonEmptyTapQueue.moveFirstTo(mIntegratedTapEventQueue);
         }
     }
 
@@ -512,56 +524,61 @@ public class IntegratedTapDetector implements SensorEventListener,
      */
     private void processIntegratedQueueAsSingleAndDoubleTaps(long timestamp) {
         while (mIntegratedTapEventQueue.size() >= 2) {
-            Tap olderTap = mIntegratedTapEventQueue.remove();
-            if (!tapAllowedAt(olderTap.nanos)) {
+            long olderTapNanos = mIntegratedTapEventQueue.peekNanos();
+            double olderTapQuality = mIntegratedTapEventQueue.peekQuality();
+            mIntegratedTapEventQueue.removeFirst();
+            if (!tapAllowedAt(olderTapNanos)) {
                 if (DEBUG) {
                     Log.v("Picidae", String.format("Disallowing tap at time %d with quality %f",
-                            olderTap.nanos, olderTap.quality));
+                            olderTapNanos, olderTapQuality));
                 }
                 continue;
             }
 
-            Tap newerTap = mIntegratedTapEventQueue.peek();
-            if (newerTap.nanos < olderTap.nanos + mMaxDoubleTapSpacingNanos) {
+            long newerTapNanos = mIntegratedTapEventQueue.peekNanos();
+            double newerTapQuality = mIntegratedTapEventQueue.peekQuality();
+            if (newerTapNanos < olderTapNanos + mMaxDoubleTapSpacingNanos) {
                 /*
                  * Taps are close enough together. Must have one tap above min single-tap quality,
                  * and the other above min double-tap quality
                  */
-                boolean qualityGoodEnough1 = (newerTap.quality >= mMinTapQuality)
-                        && (olderTap.quality >= mMinDoubleTapQuality);
-                boolean qualityGoodEnough2 = (newerTap.quality >= mMinDoubleTapQuality)
-                        && (olderTap.quality >= mMinTapQuality);
+                boolean qualityGoodEnough1 = (newerTapQuality >= mMinTapQuality)
+                        && (olderTapQuality >= mMinDoubleTapQuality);
+                boolean qualityGoodEnough2 = (newerTapQuality >= mMinDoubleTapQuality)
+                        && (olderTapQuality >= mMinTapQuality);
                 if (qualityGoodEnough1 || qualityGoodEnough2) {
-                    sendDoubleTapToListeners(olderTap.nanos);
-                    mIntegratedTapEventQueue.remove();
+                    sendDoubleTapToListeners(olderTapNanos);
+                    mIntegratedTapEventQueue.removeFirst();
                     continue;
                 }
             }
 
             /* Not a double tap. Check single-tap quality */
-            if (olderTap.quality >= mMinTapQuality) {
-                sendSingleTapToListeners(olderTap.nanos);
+            if (olderTapQuality >= mMinTapQuality) {
+                sendSingleTapToListeners(olderTapNanos);
             } else if (DEBUG) {
                 Log.v("Picidae", String.format("Discarding tap at time %d with quality %f",
-                        olderTap.nanos, olderTap.quality));
+                        olderTapNanos, olderTapQuality));
             }
         }
 
-        if (mIntegratedTapEventQueue.size() == 0) {
+        if (mIntegratedTapEventQueue.isEmpty()) {
             return;
         }
 
         /* Make sure there's no way a second tap is coming before emitting single tap */
         long maxOffsetToConsider = (mMaxDoubleTapSpacingNanos > 0) ?
                 MAX_OFFSET_BETWEEN_TAP_DETECTORS + MAX_TAP_DETECTOR_LATENCY : 0;
-        if (mIntegratedTapEventQueue.peek().nanos
+        if (mIntegratedTapEventQueue.peekNanos()
                 <= timestamp - mMaxDoubleTapSpacingNanos - maxOffsetToConsider) {
-            Tap tap = mIntegratedTapEventQueue.remove();
-            if ((tap.quality >= mMinTapQuality) && tapAllowedAt(tap.nanos)) {
-                sendSingleTapToListeners(tap.nanos);
+            long tapNanos = mIntegratedTapEventQueue.peekNanos();
+            double tapQuality = mIntegratedTapEventQueue.peekQuality();
+            mIntegratedTapEventQueue.removeFirst();
+            if ((tapQuality >= mMinTapQuality) && tapAllowedAt(tapNanos)) {
+                sendSingleTapToListeners(tapNanos);
             } else if (DEBUG) {
                 Log.v("Picidae", String.format("Discarding tap at time %d with quality %f",
-                        tap.nanos, tap.quality));
+                        tapNanos, tapQuality));
             }
         }
     }
@@ -613,16 +630,4 @@ public class IntegratedTapDetector implements SensorEventListener,
         HIGHEST, HIGH, MEDIUM, LOW
     }
 
-    /* Simple pair-like class to hold taps. Not using pair for clarity. */
-    private static class Tap {
-        public final double quality;
-
-        public final long nanos;
-
-        public Tap(double qualityInit, long nanosInit) {
-            quality = qualityInit;
-            nanos = nanosInit;
-        }
-    }
-
 }
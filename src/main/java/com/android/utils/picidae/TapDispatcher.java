@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils.picidae;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delivers taps to all listeners that share a Handler. Pending taps are held in a ring buffer
+ * ordered by due time, and a single runnable is kept scheduled for the earliest of them, rather
+ * than posting one runnable per tap per listener.
+ * <p>
+ * Listeners are called without holding any lock, so they may add or remove listeners, or call
+ * back into the detector, while a tap is being delivered.
+ */
+/* package */ class TapDispatcher implements Runnable {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final Handler mHandler;
+
+    /* Listeners called through mHandler. Guarded by this. */
+    private final List<IntegratedTapDetector.TapListener> mListeners = new ArrayList<>();
+
+    /* Ring buffer of pending taps. Guarded by this. */
+    private boolean[] mIsDoubleTap = new boolean[INITIAL_CAPACITY];
+    private long[] mTimestampsNanos = new long[INITIAL_CAPACITY];
+    private long[] mDueTimesMillis = new long[INITIAL_CAPACITY];
+    private int mHead;
+    private int mSize;
+
+    /* Whether this runnable is currently posted to mHandler. Guarded by this. */
+    private boolean mScheduled;
+
+    /* Taps and listeners being delivered by run(). Only used on the handler's thread. */
+    private boolean[] mDeliveryIsDoubleTap = new boolean[INITIAL_CAPACITY];
+    private long[] mDeliveryTimestampsNanos = new long[INITIAL_CAPACITY];
+    private final List<IntegratedTapDetector.TapListener> mDeliveryListeners = new ArrayList<>();
+
+    public TapDispatcher(Handler handler) {
+        mHandler = handler;
+    }
+
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    public synchronized void addListener(IntegratedTapDetector.TapListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public synchronized void removeListener(IntegratedTapDetector.TapListener listener) {
+        mListeners.remove(listener);
+    }
+
+    public synchronized boolean hasListeners() {
+        return !mListeners.isEmpty();
+    }
+
+    /**
+     * Queue a tap to be delivered to every listener.
+     *
+     * @param isDoubleTap {@code true} for a double tap, {@code false} for a single tap
+     * @param timestampNanos The time of the tap, passed through to the listeners
+     * @param delayMillis How long to wait before delivering the tap
+     */
+    public synchronized void dispatch(boolean isDoubleTap, long timestampNanos, long delayMillis) {
+        if (mSize == mIsDoubleTap.length) {
+            grow();
+        }
+        long dueTime = SystemClock.uptimeMillis() + delayMillis;
+        /* Taps are delivered in order, so a tap is never due before the one ahead of it */
+        if (mSize > 0) {
+            dueTime = Math.max(dueTime, mDueTimesMillis[indexOf(mSize - 1)]);
+        }
+        int tail = indexOf(mSize);
+        mIsDoubleTap[tail] = isDoubleTap;
+        mTimestampsNanos[tail] = timestampNanos;
+        mDueTimesMillis[tail] = dueTime;
+        mSize++;
+
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.postAtTime(this, dueTime);
+        }
+    }
+
+    /**
+     * Drop all pending taps.
+     */
+    public synchronized void cancel() {
+        mHandler.removeCallbacks(this);
+        mScheduled = false;
+        mHead = 0;
+        mSize = 0;
+    }
+
+    @Override
+    public void run() {
+        int tapCount = 0;
+        synchronized (this) {
+            long now = SystemClock.uptimeMillis();
+            while ((mSize > 0) && (mDueTimesMillis[mHead] <= now)) {
+                if (tapCount == mDeliveryIsDoubleTap.length) {
+                    growDeliveryBuffers();
+                }
+                mDeliveryIsDoubleTap[tapCount] = mIsDoubleTap[mHead];
+                mDeliveryTimestampsNanos[tapCount] = mTimestampsNanos[mHead];
+                tapCount++;
+                mHead = indexOf(1);
+                mSize--;
+            }
+
+            if (mSize > 0) {
+                mHandler.postAtTime(this, mDueTimesMillis[mHead]);
+            } else {
+                mScheduled = false;
+            }
+
+            if (tapCount > 0) {
+                mDeliveryListeners.addAll(mListeners);
+            }
+        }
+
+        for (int tap = 0; tap < tapCount; tap++) {
+            for (int i = 0; i < mDeliveryListeners.size(); i++) {
+                if (mDeliveryIsDoubleTap[tap]) {
+                    mDeliveryListeners.get(i).onDoubleTap(mDeliveryTimestampsNanos[tap]);
+                } else {
+                    mDeliveryListeners.get(i).onSingleTap(mDeliveryTimestampsNanos[tap]);
+                }
+            }
+        }
+        mDeliveryListeners.clear();
+    }
+
+    private int indexOf(int offset) {
+        return (mHead + offset) % mIsDoubleTap.length;
+    }
+
+    private void growDeliveryBuffers() {
+        int capacity = mDeliveryIsDoubleTap.length * 2;
+        boolean[] isDoubleTap = new boolean[capacity];
+        long[] timestamps = new long[capacity];
+        System.arraycopy(mDeliveryIsDoubleTap, 0, isDoubleTap, 0, mDeliveryIsDoubleTap.length);
+        System.arraycopy(mDeliveryTimestampsNanos, 0, timestamps, 0,
+                mDeliveryTimestampsNanos.length);
+        mDeliveryIsDoubleTap = isDoubleTap;
+        mDeliveryTimestampsNanos = timestamps;
+    }
+
+    private void grow() {
+        int capacity = mIsDoubleTap.length;
+        boolean[] isDoubleTap = new boolean[capacity * 2];
+        long[] timestamps = new long[capacity * 2];
+        long[] dueTimes = new long[capacity * 2];
+        for (int i = 0; i < mSize; i++) {
+            int index = indexOf(i);
+            isDoubleTap[i] = mIsDoubleTap[index];
+            timestamps[i] = mTimestampsNanos[index];
+            dueTimes[i] = mDueTimesMillis[index];
+        }
+        mIsDoubleTap = isDoubleTap;
+        mTimestampsNanos = timestamps;
+        mDueTimesMillis = dueTimes;
+        mHead = 0;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils.picidae;
+
+/**
+ * FIFO queue of taps, each a timestamp and a quality, backed by preallocated primitive ring
+ * buffers. Adding and removing taps does not allocate unless the queue outgrows its capacity.
+ * Not thread safe.
+ */
+/* package */ class TapQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] mNanos = new long[INITIAL_CAPACITY];
+
+    private double[] mQualities = new double[INITIAL_CAPACITY];
+
+    /* Index of the oldest tap */
+    private int mHead;
+
+    private int mSize;
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void add(long nanos, double quality) {
+        if (mSize == mNanos.length) {
+            grow();
+        }
+        int tail = (mHead + mSize) % mNanos.length;
+        mNanos[tail] = nanos;
+        mQualities[tail] = quality;
+        mSize++;
+    }
+
+    /**
+     * @return The timestamp of the oldest tap. The queue must not be empty.
+     */
+    public long peekNanos() {
+        checkNotEmpty();
+        return mNanos[mHead];
+    }
+
+    /**
+     * @return The quality of the oldest tap. The queue must not be empty.
+     */
+    public double peekQuality() {
+        checkNotEmpty();
+        return mQualities[mHead];
+    }
+
+    /**
+     * Discard the oldest tap. The queue must not be empty.
+     */
+    public void removeFirst() {
+        checkNotEmpty();
+        mHead = (mHead + 1) % mNanos.length;
+        mSize--;
+    }
+
+    /**
+     * Move the oldest tap to the end of another queue. This queue must not be empty.
+     */
+    public void moveFirstTo(TapQueue destination) {
+        destination.add(peekNanos(), peekQuality());
+        removeFirst();
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    private void checkNotEmpty() {
+        if (mSize == 0) {
+            throw new IllegalStateException("Tap queue is empty");
+        }
+    }
+
+    private void grow() {
+        int capacity = mNanos.length;
+        long[] nanos = new long[capacity * 2];
+        double[] qualities = new double[capacity * 2];
+        for (int i = 0; i < mSize; i++) {
+            nanos[i] = mNanos[(mHead + i) % capacity];
+            qualities[i] = mQualities[(mHead + i) % capacity];
+        }
+        mNanos = nanos;
+        mQualities = qualities;
+        mHead = 0;
+    }
+}
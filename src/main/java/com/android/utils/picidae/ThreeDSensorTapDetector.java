@@ -18,16 +18,15 @@ package com.android.utils.picidae;
 
 import android.util.Log;
 
-import java.util.LinkedList;
-
-
 /**
  * Class to take updates from a sensor with three axes (accelerometer or gyroscope) and detect taps.
  * <p>
  * The detector consists of:
  * <ul>
  * <li>An infinite impulse response filter.
- * <li>A history buffer for filtered samples whose length (in time) is configurable.
+ * <li>A history buffer for filtered samples whose length (in time) is configurable. The buffer
+ *     keeps a running sum of its energy, so each sample is processed in constant time without
+ *     allocating.
  * <li>A noise detector that prevents taps from being detected when the average energy of the
  *     samples in the history buffer exceeds a threshold.
  * <li>A state machine that looks at the signal after a candidate tap to see if it stays within
@@ -63,8 +62,6 @@ public class ThreeDSensorTapDetector {
     /** The largest possible energy from the input signal */
     private final float mLargestMagSq;
 
-    private float mConditionedSignalEnergy = 0f;
-
     private float mLastConditionedMagnitudeSq;
 
     /** The current state of the state machine */
@@ -77,7 +74,7 @@ public class ThreeDSensorTapDetector {
     private float[] mLastFilterOutput = {
             0f, 0f, 0f };
 
-    private final LinkedList<EnergySamplePair> mEnergySamplesList;
+    private final EnergyWindow mEnergyWindow = new EnergyWindow();
 
     private long mLastTimestamp;
 
@@ -93,7 +90,6 @@ public class ThreeDSensorTapDetector {
     public ThreeDSensorTapDetector(TapListener tapListener, float sensorMaxScale,
             ThreeDSensorTapDetectorType type) {
         mLargestMagSq = NUMBER_OF_DIMENSIONS * sensorMaxScale * sensorMaxScale;
-        mEnergySamplesList = new LinkedList<>();
         mTapListener = tapListener;
         mDetectorType = type;
         mLastTimestamp = 0;
@@ -103,7 +99,7 @@ public class ThreeDSensorTapDetector {
     /** Call with updates from accelerometer sensor. Parameters are from the SensorEvent. */
     public void onSensorChanged(long timestamp, float values[]) {
         if (Math.abs(timestamp - mLastTimestamp) > MAX_PERMITTED_TIME_BETWEEN_SAMPLES_NANOS) {
-            clearEnergySamplesList();
+            mEnergyWindow.clear();
             if (DEBUG) {
                 Log.v("threeDSensorTapDetector", "Discontinuity in input time");
             }
@@ -127,19 +123,15 @@ public class ThreeDSensorTapDetector {
          * Track the signal energy (for high-pass signal, nearly identical to variance) for the
          * recent past
          */
-        mConditionedSignalEnergy += mLastConditionedMagnitudeSq;
-        mEnergySamplesList.addLast(new EnergySamplePair(timestamp, mLastConditionedMagnitudeSq));
-        while (mEnergySamplesList.getFirst().mTime <= timestamp - ENERGY_HISTORY_LENGTH_NANOS) {
-            mConditionedSignalEnergy -= mEnergySamplesList.getFirst().mValue;
-            mEnergySamplesList.removeFirst();
-        }
+        mEnergyWindow.add(timestamp, mLastConditionedMagnitudeSq);
+        mEnergyWindow.removeSamplesUpTo(timestamp - ENERGY_HISTORY_LENGTH_NANOS);
 
         /* State machine for tap processing */
         if (DEBUG) {
             Log.v("threeDSensorTapDetector", String.format(
                     "State %s, CurrentEnergy %f, size %d, limit %f, signal %f",
-                    mCurrentState.name(), mConditionedSignalEnergy, mEnergySamplesList.size(),
-                    mEnergySamplesList.size() * mDetectorType.energyPerSampleNoiseLimit,
+                    mCurrentState.name(), mEnergyWindow.getSum(), mEnergyWindow.size(),
+                    mEnergyWindow.size() * mDetectorType.energyPerSampleNoiseLimit,
                     mLastConditionedMagnitudeSq));
         }
 
@@ -172,7 +164,12 @@ public class ThreeDSensorTapDetector {
 
     // Visible for testing
     /* package */ float getConditionedSignalEnergy() {
-        return mConditionedSignalEnergy;
+        return mEnergyWindow.getSum();
+    }
+
+    // Visible for testing
+    /* package */ int getEnergySampleCount() {
+        return mEnergyWindow.size();
     }
 
     // Visible for testing
@@ -195,8 +192,8 @@ public class ThreeDSensorTapDetector {
             changeToNewCurrentState(timestamp,
                     SensorDetectorState.PROCESSING_CANDIDATE_POSSIBLE_TAP);
             mCandidateTapStart = timestamp;
-        } else if (mConditionedSignalEnergy
-                > mEnergySamplesList.size() * mDetectorType.energyPerSampleNoiseLimit) {
+        } else if (mEnergyWindow.getSum()
+                > mEnergyWindow.size() * mDetectorType.energyPerSampleNoiseLimit) {
             changeToNewCurrentState(timestamp, SensorDetectorState.TOO_NOISY);
         }
     }
@@ -283,15 +280,14 @@ public class ThreeDSensorTapDetector {
     private void stateMachineTooNoisy(long timestamp) {
 
         /* Stay in this state until we have enough history to judge the signal */
-        long timeSpanInHistoryNanos = mEnergySamplesList.getLast().mTime
-                - mEnergySamplesList.getFirst().mTime;
+        long timeSpanInHistoryNanos = mEnergyWindow.getTimeSpan();
         if (timeSpanInHistoryNanos < MIN_HISTORY_FOR_NOT_NOISY_NANOS) {
             return;
         }
 
         /* Allow a possible tap on a sudden jump in signal energy */
-        if (mLastConditionedMagnitudeSq * mEnergySamplesList.size()
-                > mDetectorType.multipleOfNoiseForPossibleTap * mConditionedSignalEnergy) {
+        if (mLastConditionedMagnitudeSq * mEnergyWindow.size()
+                > mDetectorType.multipleOfNoiseForPossibleTap * mEnergyWindow.getSum()) {
             changeToNewCurrentState(
                     timestamp, SensorDetectorState.PROCESSING_CANDIDATE_POSSIBLE_TAP);
             mCandidateTapStart = timestamp;
@@ -299,8 +295,8 @@ public class ThreeDSensorTapDetector {
         }
 
         /* Check if signal isn't noisy anymore */
-        if (mConditionedSignalEnergy <
-                mEnergySamplesList.size() * mDetectorType.energyPerSampleNoiseLimit) {
+        if (mEnergyWindow.getSum() <
+                mEnergyWindow.size() * mDetectorType.energyPerSampleNoiseLimit) {
             changeToNewCurrentState(timestamp, SensorDetectorState.NO_TAP);
         }
     }
@@ -322,11 +318,6 @@ public class ThreeDSensorTapDetector {
 
     }
 
-    private void clearEnergySamplesList() {
-        mEnergySamplesList.clear();
-        mConditionedSignalEnergy = 0;
-    }
-
     /**
      * Listener to receive detected taps
      */
@@ -366,18 +357,4 @@ public class ThreeDSensorTapDetector {
         PROCESSING_CANDIDATE_DEFINITE_TAP,
     }
 
-    /*
-     * Hold a (time, value) object for the history buffer
-     */
-    private class EnergySamplePair {
-        public long mTime;
-
-        public float mValue;
-
-        public EnergySamplePair(long time, float value) {
-            mTime = time;
-            mValue = value;
-        }
-    }
-
 }
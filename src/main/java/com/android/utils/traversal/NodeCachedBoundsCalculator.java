@@ -21,6 +21,7 @@ import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.util.Log;
 import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.LogUtils;
+import com.android.utils.SpeakingNodeCache;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -39,11 +40,11 @@ public class NodeCachedBoundsCalculator {
     private static final Rect EMPTY_RECT = new Rect();
 
     private Map<AccessibilityNodeInfoCompat, Rect> mBoundsMap = new HashMap<>();
-    private Map<AccessibilityNodeInfoCompat, Boolean> mSpeakNodesCache;
+    private SpeakingNodeCache mSpeakNodesCache;
     private Set<AccessibilityNodeInfoCompat> mCalculatingNodes = new HashSet<>();
     private Rect mTempRect = new Rect();
 
-    public void setSpeakNodesCache(Map<AccessibilityNodeInfoCompat, Boolean> speakNodeCache) {
+    public void setSpeakNodesCache(SpeakingNodeCache speakNodeCache) {
         mSpeakNodesCache = speakNodeCache;
     }
 
@@ -22,6 +22,7 @@ import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.util.Log;
 import android.view.accessibility.AccessibilityNodeInfo;
 import com.android.utils.LogUtils;
+import com.android.utils.SpeakingNodeCache;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -31,13 +32,13 @@ public class OrderedTraversalController {
 
     private WorkingTree mTree;
     private Map<AccessibilityNodeInfoCompat, WorkingTree> mNodeTreeMap;
-    private Map<AccessibilityNodeInfoCompat, Boolean> mSpeakNodesCache;
+    private SpeakingNodeCache mSpeakNodesCache;
 
     public OrderedTraversalController() {
         mNodeTreeMap = new LinkedHashMap<>();
     }
 
-    public void setSpeakNodesCache(Map<AccessibilityNodeInfoCompat, Boolean> speakNodeCache) {
+    public void setSpeakNodesCache(SpeakingNodeCache speakNodeCache) {
         mSpeakNodesCache = speakNodeCache;
     }
 
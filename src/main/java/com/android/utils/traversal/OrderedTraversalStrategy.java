@@ -18,9 +18,7 @@ package com.android.utils.traversal;
 
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import com.android.utils.AccessibilityNodeInfoUtils;
-
-import java.util.HashMap;
-import java.util.Map;
+import com.android.utils.SpeakingNodeCache;
 
 /**
  * Window could have its content views hierarchy. Views in that hierarchy could be traversed one
@@ -35,14 +33,14 @@ public class OrderedTraversalStrategy implements TraversalStrategy {
 
     private AccessibilityNodeInfoCompat mRootNode;
     private final OrderedTraversalController mController;
-    private final Map<AccessibilityNodeInfoCompat, Boolean> mSpeakingNodesCache;
+    private final SpeakingNodeCache mSpeakingNodesCache;
 
     public OrderedTraversalStrategy(AccessibilityNodeInfoCompat rootNode) {
         if (rootNode != null) {
             mRootNode = AccessibilityNodeInfoCompat.obtain(rootNode);
         }
 
-        mSpeakingNodesCache = new HashMap<>();
+        mSpeakingNodesCache = SpeakingNodeCache.getInstance();
         mController = new OrderedTraversalController();
         mController.setSpeakNodesCache(mSpeakingNodesCache);
         mController.initOrder(mRootNode);
@@ -58,7 +56,7 @@ public class OrderedTraversalStrategy implements TraversalStrategy {
     }
 
     @Override
-    public Map<AccessibilityNodeInfoCompat, Boolean> getSpeakingNodesCache() {
+    public SpeakingNodeCache getSpeakingNodesCache() {
         return mSpeakingNodesCache;
     }
 
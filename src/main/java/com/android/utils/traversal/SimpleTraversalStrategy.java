@@ -18,8 +18,7 @@ package com.android.utils.traversal;
 
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import com.android.utils.AccessibilityNodeInfoRef;
-
-import java.util.Map;
+import com.android.utils.SpeakingNodeCache;
 
 public class SimpleTraversalStrategy implements TraversalStrategy {
 
@@ -66,8 +65,8 @@ public class SimpleTraversalStrategy implements TraversalStrategy {
     }
 
     @Override
-    public Map<AccessibilityNodeInfoCompat, Boolean> getSpeakingNodesCache() {
-        return null;
+    public SpeakingNodeCache getSpeakingNodesCache() {
+        return SpeakingNodeCache.getInstance();
     }
 
     @Override
@@ -17,8 +17,7 @@
 package com.android.utils.traversal;
 
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
-
-import java.util.Map;
+import com.android.utils.SpeakingNodeCache;
 
 /**
  * Strategy the is defined an order of traversing through the nodes of AccessibilityNodeInfo
@@ -57,9 +56,10 @@ public interface TraversalStrategy {
      * Calculating if node is speaking node according to AccessibilityNodeInfoUtils.isSpeakingNode()
      * method is time consuming. Traversal strategy may use cache for already calculated values.
      * If traversal strategy does not need in such cache use it could return null.
-     * @return speaking node cache map. Could be null if cache is not used by traversal strategy
+     * @return speaking node cache, usually the shared {@link SpeakingNodeCache#getInstance()}.
+     * Could be null if cache is not used by traversal strategy
      */
-    public Map<AccessibilityNodeInfoCompat, Boolean> getSpeakingNodesCache();
+    public SpeakingNodeCache getSpeakingNodesCache();
 
     /**
      * When there is no need in traversal strategy object it must be recycled before
@@ -99,6 +99,7 @@ import com.android.screenspeak.eventprocessor.ProcessorPhoneticLetters;
 import com.android.screenspeak.eventprocessor.ProcessorScrollPosition;
 import com.android.screenspeak.eventprocessor.ProcessorVolumeStream;
 import com.android.screenspeak.eventprocessor.ProcessorWebContent;
+import com.android.screenspeak.formatter.TextFormatters;
 import com.android.screenspeak.controller.TextCursorController;
 import com.android.screenspeak.controller.TextCursorControllerApp;
 import com.android.screenspeak.speechrules.NodeHintRule;
@@ -109,10 +110,14 @@ import com.android.utils.AccessibilityNodeInfoUtils;
 import com.android.utils.LogUtils;
 import com.android.utils.PerformActionUtils;
 import com.android.utils.SharedPreferencesUtils;
+import com.android.utils.SpeakingNodeCache;
 import com.android.utils.WebInterfaceUtils;
+import com.android.utils.WindowSnapshotCache;
 import com.android.utils.labeling.CustomLabelManager;
 import com.android.utils.labeling.PackageRemovalReceiver;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.LinkedList;
 import java.util.List;
@@ -263,6 +268,9 @@ public class ScreenSpeakService extends AccessibilityService
      */
     private AccessibilityNodeInfo mRootNode;
 
+    /** Windows on screen, fetched again only after they change. */
+    private final WindowSnapshotCache mWindowSnapshotCache = new WindowSnapshotCache(this);
+
     private AccessibilityEventProcessor mAccessibilityEventProcessor;
 
     @Override
@@ -293,22 +301,31 @@ public class ScreenSpeakService extends AccessibilityService
 
         // Shutdown and unregister all components.
         shutdownInfrastructure();
+        SpeakingNodeCache.getInstance().clear();
         setServiceState(SERVICE_STATE_INACTIVE);
         mServiceStateListeners.clear();
     }
 
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
+        mAccessibilityEventProcessor.onConfigurationChanged(newConfig);
+
         if (isServiceActive() && (mOrientationMonitor != null)) {
             mOrientationMonitor.onConfigurationChanged(newConfig);
         }
 
         // Clear the radial menu cache to reload localized strings.
         mMenuManager.clearCache();
+
+        if (mGestureController != null) {
+            mGestureController.onConfigurationChanged(newConfig);
+        }
     }
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
+        mWindowSnapshotCache.onAccessibilityEvent(event);
+        SpeakingNodeCache.getInstance().onAccessibilityEvent(event);
         mAccessibilityEventProcessor.onAccessibilityEvent(event);
     }
 
@@ -644,6 +661,13 @@ public class ScreenSpeakService extends AccessibilityService
         return mAnalytics;
     }
 
+    /**
+     * Obtains the windows on screen, cached until the next window change.
+     */
+    public WindowSnapshotCache getWindowSnapshotCache() {
+        return mWindowSnapshotCache;
+    }
+
     /**
      * Obtains the shared instance of ScreenSpeak's {@link ShakeDetector}
      *
@@ -836,7 +860,7 @@ public class ScreenSpeakService extends AccessibilityService
         }
 
         mCursorController = new CursorControllerApp(this);
-        addEventListener(mCursorController);
+        addEventListener(mCursorController, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
 
         mFeedbackController = new FeedbackControllerApp(this);
         mFullScreenReadController = new FullScreenReadControllerApp(mFeedbackController,
@@ -851,16 +875,19 @@ public class ScreenSpeakService extends AccessibilityService
         mRingerModeAndScreenMonitor = new RingerModeAndScreenMonitor(mFeedbackController,
                 mMenuManager, mShakeDetector, mSpeechController, this);
         mAccessibilityEventProcessor.setRingerModeAndScreenMonitor(mRingerModeAndScreenMonitor);
+        mAccessibilityEventProcessor.setMenuManager(mMenuManager);
 
         mGestureController = new GestureControllerApp(this,
                 mCursorController, mFeedbackController, mFullScreenReadController, mMenuManager);
 
         mSideTapManager = new SideTapManager(this, mGestureController);
-        addEventListener(mSideTapManager);
+        addEventListener(mSideTapManager, AccessibilityEvent.TYPE_TOUCH_INTERACTION_START);
         mFeedbackController.addHapticFeedbackListener(mSideTapManager);
 
         mTextCursorController = new TextCursorControllerApp();
-        addEventListener(mTextCursorController);
+        addEventListener(mTextCursorController,
+                AccessibilityEvent.TYPE_VIEW_TEXT_SELECTION_CHANGED
+                        | AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
 
         // Add event processors. These will process incoming AccessibilityEvents
         // in the order they are added.
@@ -868,10 +895,23 @@ public class ScreenSpeakService extends AccessibilityService
         processorEventQueue.setTestingListener(mAccessibilityEventProcessor.getTestingListener());
         mAccessibilityEventProcessor.setProcessorEventQueue(processorEventQueue);
 
+        addEventListener(TextFormatters.EDIT_MODEL_RESET_LISTENER,
+                AccessibilityEvent.TYPE_VIEW_FOCUSED
+                        | AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
         addEventListener(processorEventQueue);
         addEventListener(
-                new ProcessorScrollPosition(mFullScreenReadController, mSpeechController, this));
-        addEventListener(new ProcessorAccessibilityHints(this, mSpeechController, mCursorController));
+                new ProcessorScrollPosition(mFullScreenReadController, mSpeechController, this),
+                AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+                        | AccessibilityEvent.TYPE_VIEW_SCROLLED
+                        | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+        addEventListener(
+                new ProcessorAccessibilityHints(this, mSpeechController, mCursorController),
+                AccessibilityEvent.TYPE_VIEW_HOVER_ENTER
+                        | AccessibilityEvent.TYPE_VIEW_HOVER_EXIT
+                        | AccessibilityEvent.TYPE_TOUCH_EXPLORATION_GESTURE_START
+                        | AccessibilityEvent.TYPE_TOUCH_EXPLORATION_GESTURE_END
+                        | AccessibilityEvent.TYPE_VIEW_CLICKED
+                        | AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
         addEventListener(new ProcessorPhoneticLetters(this, mSpeechController));
 
         mProcessorFollowFocus = new ProcessorFocusAndSingleTap(
@@ -891,10 +931,14 @@ public class ScreenSpeakService extends AccessibilityService
         }
 
         if (Build.VERSION.SDK_INT >= ProcessorGestureVibrator.MIN_API_LEVEL) {
-            addEventListener(new ProcessorGestureVibrator(mFeedbackController));
+            addEventListener(new ProcessorGestureVibrator(mFeedbackController),
+                    AccessibilityEvent.TYPE_GESTURE_DETECTION_START
+                            | AccessibilityEvent.TYPE_GESTURE_DETECTION_END);
         }
 
-        addEventListener(new ProcessorWebContent(this));
+        addEventListener(new ProcessorWebContent(this),
+                AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED
+                        | AccessibilityEvent.TYPE_VIEW_HOVER_ENTER);
 
         DimScreenControllerApp dimScreenController = new DimScreenControllerApp(this);
         mDimScreenController = dimScreenController;
@@ -903,7 +947,9 @@ public class ScreenSpeakService extends AccessibilityService
             ProcessorVolumeStream processorVolumeStream =
                     new ProcessorVolumeStream(mFeedbackController, mCursorController,
                             mDimScreenController, this);
-            addEventListener(processorVolumeStream);
+            addEventListener(processorVolumeStream,
+                    AccessibilityEvent.TYPE_TOUCH_INTERACTION_START
+                            | AccessibilityEvent.TYPE_TOUCH_INTERACTION_END);
             mKeyEventListeners.add(processorVolumeStream);
         }
 
@@ -918,14 +964,17 @@ public class ScreenSpeakService extends AccessibilityService
             if (Build.VERSION.SDK_INT >= KeyboardSearchManager.MIN_API_LEVEL) {
                 mKeyboardSearchManager = new KeyboardSearchManager(this, mLabelManager);
                 mKeyEventListeners.add(mKeyboardSearchManager);
-                addEventListener(mKeyboardSearchManager);
+                addEventListener(mKeyboardSearchManager,
+                        AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+                                | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
                 mKeyComboManager.addListener(mKeyboardSearchManager);
             }
             mKeyComboManager.addListener(mCursorController);
             mKeyEventListeners.add(mKeyComboManager);
         }
 
-        addEventListener(mSavedNode);
+        addEventListener(mSavedNode, AccessibilityEvent.TYPE_WINDOWS_CHANGED
+                | AccessibilityEvent.TYPE_VIEW_TEXT_SELECTION_CHANGED);
 
         mOrientationMonitor = new OrientationMonitor(mSpeechController, this);
         mOrientationMonitor.addOnOrientationChangedListener(dimScreenController);
@@ -967,6 +1016,9 @@ public class ScreenSpeakService extends AccessibilityService
      * suspended state.
      */
     private void resumeInfrastructure() {
+        // Window changes weren't tracked while suspended.
+        mWindowSnapshotCache.invalidate();
+
         if (isServiceActive()) {
             if (LogUtils.LOG_LEVEL <= Log.ERROR) {
                 Log.e(LOGTAG, "Attempted to resume while not suspended");
@@ -1156,6 +1208,16 @@ public class ScreenSpeakService extends AccessibilityService
         mAccessibilityEventProcessor.addAccessibilityEventListener(listener);
     }
 
+    /**
+     * Adds an event listener that is only sent events of the given types.
+     *
+     * @param listener The listener to add.
+     * @param eventTypes A mask of event types from {@link AccessibilityEvent}.
+     */
+    public void addEventListener(AccessibilityEventListener listener, int eventTypes) {
+        mAccessibilityEventProcessor.addAccessibilityEventListener(listener, eventTypes);
+    }
+
     /**
      * Posts a {@link Runnable} to removes an event listener. This is safe to
      * call from inside {@link AccessibilityEventListener#onAccessibilityEvent(AccessibilityEvent)}.
@@ -1432,9 +1494,18 @@ public class ScreenSpeakService extends AccessibilityService
         }
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Recent log events:");
+        LogUtils.dumpRecentEvents(writer);
+        mAccessibilityEventProcessor.dump(writer);
+    }
+
     @Override
     public void uncaughtException(Thread thread, Throwable ex) {
         try {
+            LogUtils.printRecentEvents();
+
             if (mDimScreenController != null) {
                 mDimScreenController.shutdown();
             }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import android.text.SpannableString;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for FeedbackQueue
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class FeedbackQueueTest {
+    private final FeedbackQueue mQueue = new FeedbackQueue();
+
+    @Test
+    public void removeFirst_returnsItemsInOrder() {
+        FeedbackItem first = createItem("one", SpeechController.UTTERANCE_GROUP_DEFAULT);
+        FeedbackItem second = createItem("two", SpeechController.UTTERANCE_GROUP_DEFAULT);
+        mQueue.add(first);
+        mQueue.add(second);
+
+        assertSame(first, mQueue.removeFirst());
+        assertSame(second, mQueue.removeFirst());
+        assertNull(mQueue.removeFirst());
+        assertTrue(mQueue.isEmpty());
+    }
+
+    @Test
+    public void containsDuplicateOf_comparesTextContent() {
+        mQueue.add(createItem("hello", SpeechController.UTTERANCE_GROUP_DEFAULT));
+
+        assertTrue(mQueue.containsDuplicateOf(createItem(new SpannableString("hello"),
+                SpeechController.UTTERANCE_GROUP_DEFAULT)));
+        assertFalse(mQueue.containsDuplicateOf(
+                createItem("goodbye", SpeechController.UTTERANCE_GROUP_DEFAULT)));
+
+        mQueue.removeFirst();
+        assertFalse(mQueue.containsDuplicateOf(
+                createItem("hello", SpeechController.UTTERANCE_GROUP_DEFAULT)));
+    }
+
+    @Test
+    public void containsDuplicateOf_comparesInterruptibility() {
+        FeedbackItem uninterruptible =
+                createItem("hello", SpeechController.UTTERANCE_GROUP_DEFAULT);
+        uninterruptible.setUninterruptible(true);
+        mQueue.add(uninterruptible);
+
+        assertFalse(mQueue.containsDuplicateOf(
+                createItem("hello", SpeechController.UTTERANCE_GROUP_DEFAULT)));
+    }
+
+    @Test
+    public void removeMatching_interruptible_keepsUninterruptibleItems() {
+        FeedbackItem interruptible = createItem("a", SpeechController.UTTERANCE_GROUP_DEFAULT);
+        FeedbackItem uninterruptible = createItem("b", SpeechController.UTTERANCE_GROUP_DEFAULT);
+        uninterruptible.setUninterruptible(true);
+        mQueue.add(interruptible);
+        mQueue.add(uninterruptible);
+
+        List<FeedbackItem> removed = new ArrayList<>();
+        mQueue.removeMatching(true, SpeechController.UTTERANCE_GROUP_DEFAULT, removed);
+
+        assertEquals(Arrays.asList(interruptible), removed);
+        assertEquals(1, mQueue.size());
+        assertSame(uninterruptible, mQueue.removeFirst());
+    }
+
+    @Test
+    public void removeMatching_group_removesOnlyThatGroup() {
+        FeedbackItem other = createItem("a", SpeechController.UTTERANCE_GROUP_DEFAULT);
+        FeedbackItem progress1 = createItem("10%", SpeechController.UTTERANCE_GROUP_SEEK_PROGRESS);
+        FeedbackItem progress2 = createItem("20%", SpeechController.UTTERANCE_GROUP_SEEK_PROGRESS);
+        progress2.setUninterruptible(true);
+        mQueue.add(progress1);
+        mQueue.add(other);
+        mQueue.add(progress2);
+
+        List<FeedbackItem> removed = new ArrayList<>();
+        mQueue.removeMatching(false, SpeechController.UTTERANCE_GROUP_SEEK_PROGRESS, removed);
+
+        assertEquals(Arrays.asList(progress1, progress2), removed);
+        assertSame(other, mQueue.removeFirst());
+        assertTrue(mQueue.isEmpty());
+        assertFalse(mQueue.containsDuplicateOf(
+                createItem("10%", SpeechController.UTTERANCE_GROUP_SEEK_PROGRESS)));
+    }
+
+    @Test
+    public void removeMatching_interruptibleAndGroup_removesBoth() {
+        FeedbackItem interruptible = createItem("a", SpeechController.UTTERANCE_GROUP_DEFAULT);
+        FeedbackItem grouped = createItem("b", SpeechController.UTTERANCE_GROUP_TEXT_SELECTION);
+        FeedbackItem kept = createItem("c", SpeechController.UTTERANCE_GROUP_DEFAULT);
+        grouped.setUninterruptible(true);
+        kept.setUninterruptible(true);
+        mQueue.add(interruptible);
+        mQueue.add(grouped);
+        mQueue.add(kept);
+
+        List<FeedbackItem> removed = new ArrayList<>();
+        mQueue.removeMatching(true, SpeechController.UTTERANCE_GROUP_TEXT_SELECTION, removed);
+
+        assertEquals(Arrays.asList(interruptible, grouped), removed);
+        assertSame(kept, mQueue.removeFirst());
+    }
+
+    private static FeedbackItem createItem(CharSequence text, int utteranceGroup) {
+        FeedbackItem item = new FeedbackItem();
+        item.addFragment(new FeedbackFragment(text, null));
+        item.setUtteranceGroup(utteranceGroup);
+        return item;
+    }
+}
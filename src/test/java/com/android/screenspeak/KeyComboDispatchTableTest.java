@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.KeyEvent;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Config(emulateSdk = 18)
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+@RunWith(RobolectricTestRunner.class)
+public class KeyComboDispatchTableTest {
+    private static final long UNASSIGNED = KeyComboManager.KEY_COMBO_CODE_UNASSIGNED;
+
+    private static final long ALT_SHIFT_RIGHT =
+            code(KeyEvent.META_ALT_ON | KeyEvent.META_SHIFT_ON, KeyEvent.KEYCODE_DPAD_RIGHT);
+
+    private static final long ALT_SHIFT_LEFT =
+            code(KeyEvent.META_ALT_ON | KeyEvent.META_SHIFT_ON, KeyEvent.KEYCODE_DPAD_LEFT);
+
+    private static final long CTRL_PLUS = code(KeyEvent.META_CTRL_ON, KeyEvent.KEYCODE_PLUS);
+
+    private final KeyComboDispatchTable mTable = new KeyComboDispatchTable();
+
+    @Test
+    public void testLookup_findsRegisteredCombos() {
+        mTable.build(new long[] {ALT_SHIFT_RIGHT, ALT_SHIFT_LEFT, CTRL_PLUS}, UNASSIGNED);
+
+        assertEquals(0, mTable.getFirstIndex(ALT_SHIFT_RIGHT));
+        assertEquals(1, mTable.getFirstIndex(ALT_SHIFT_LEFT));
+        assertEquals(2, mTable.getFirstIndex(CTRL_PLUS));
+        assertEquals(KeyComboDispatchTable.NO_INDEX,
+                mTable.getFirstIndex(code(KeyEvent.META_ALT_ON, KeyEvent.KEYCODE_H)));
+        assertEquals(0, mTable.getConflictCount());
+    }
+
+    @Test
+    public void testUnassignedCombos_leftOutOfTable() {
+        mTable.build(new long[] {UNASSIGNED, ALT_SHIFT_RIGHT, UNASSIGNED}, UNASSIGNED);
+
+        assertEquals(KeyComboDispatchTable.NO_INDEX, mTable.getFirstIndex(UNASSIGNED));
+        assertEquals(1, mTable.getFirstIndex(ALT_SHIFT_RIGHT));
+        assertEquals(0, mTable.getConflictCount());
+    }
+
+    @Test
+    public void testSharedCode_chainedInOrderAndReportedAsConflict() {
+        mTable.build(new long[] {CTRL_PLUS, ALT_SHIFT_RIGHT, CTRL_PLUS, CTRL_PLUS}, UNASSIGNED);
+
+        int index = mTable.getFirstIndex(CTRL_PLUS);
+        assertEquals(0, index);
+        index = mTable.getNextIndex(index);
+        assertEquals(2, index);
+        index = mTable.getNextIndex(index);
+        assertEquals(3, index);
+        assertEquals(KeyComboDispatchTable.NO_INDEX, mTable.getNextIndex(index));
+
+        assertEquals(3, mTable.getConflictCount());
+        assertTrue(mTable.hasConflict(0));
+        assertFalse(mTable.hasConflict(1));
+        assertTrue(mTable.hasConflict(3));
+    }
+
+    @Test
+    public void testModifierPrefixMask_isUnionOfModifiers() {
+        mTable.build(new long[] {ALT_SHIFT_RIGHT, UNASSIGNED}, UNASSIGNED);
+        assertEquals(KeyEvent.META_ALT_ON | KeyEvent.META_SHIFT_ON,
+                mTable.getModifierPrefixMask());
+
+        mTable.build(new long[] {ALT_SHIFT_RIGHT, CTRL_PLUS}, UNASSIGNED);
+        assertEquals(KeyEvent.META_ALT_ON | KeyEvent.META_SHIFT_ON | KeyEvent.META_CTRL_ON,
+                mTable.getModifierPrefixMask());
+    }
+
+    @Test
+    public void testRebuild_manyCombos() {
+        long[] codes = new long[200];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = code(KeyEvent.META_ALT_ON, i + 1);
+        }
+        mTable.build(codes, UNASSIGNED);
+        for (int i = 0; i < codes.length; i++) {
+            assertEquals(i, mTable.getFirstIndex(codes[i]));
+        }
+        assertEquals(0, mTable.getConflictCount());
+    }
+
+    private static long code(int modifier, int keyCode) {
+        return (((long) modifier) << 32) + keyCode;
+    }
+}
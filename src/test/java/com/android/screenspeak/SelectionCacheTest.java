@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for SelectionCache
+ */
+@Config(emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class SelectionCacheTest {
+    private static final int WINDOW_ID = 5;
+
+    private final SelectionCache mCache = new SelectionCache(3);
+
+    @Test
+    public void put_thenGet_returnsSelection() {
+        mCache.put(WINDOW_ID, 10, mock(AccessibilityNodeInfoCompat.class),
+                new SavedNode.Selection(2, 4));
+
+        SavedNode.Selection selection = mCache.get(WINDOW_ID, 10);
+        assertEquals(2, selection.start);
+        assertEquals(4, selection.end);
+        assertNull(mCache.get(WINDOW_ID + 1, 10));
+    }
+
+    @Test
+    public void put_sameNode_recyclesPreviousCopy() {
+        AccessibilityNodeInfoCompat first = mock(AccessibilityNodeInfoCompat.class);
+        AccessibilityNodeInfoCompat second = mock(AccessibilityNodeInfoCompat.class);
+        mCache.put(WINDOW_ID, 10, first, new SavedNode.Selection(0, 0));
+        mCache.put(WINDOW_ID, 10, second, new SavedNode.Selection(1, 1));
+
+        verify(first).recycle();
+        verify(second, never()).recycle();
+        assertEquals(1, mCache.size());
+        assertEquals(1, mCache.get(WINDOW_ID, 10).start);
+    }
+
+    @Test
+    public void full_evictsLeastRecentlyUsedAndRecyclesIt() {
+        AccessibilityNodeInfoCompat node1 = mock(AccessibilityNodeInfoCompat.class);
+        AccessibilityNodeInfoCompat node2 = mock(AccessibilityNodeInfoCompat.class);
+        mCache.put(WINDOW_ID, 1, node1, new SavedNode.Selection(0, 0));
+        mCache.put(WINDOW_ID, 2, node2, new SavedNode.Selection(0, 0));
+        mCache.put(WINDOW_ID, 3, mock(AccessibilityNodeInfoCompat.class),
+                new SavedNode.Selection(0, 0));
+
+        // Reading node 1 makes node 2 the least recently used.
+        mCache.get(WINDOW_ID, 1);
+        mCache.put(WINDOW_ID, 4, mock(AccessibilityNodeInfoCompat.class),
+                new SavedNode.Selection(0, 0));
+
+        assertEquals(3, mCache.size());
+        assertEquals(1, mCache.getEvictionCount());
+        verify(node2).recycle();
+        verify(node1, never()).recycle();
+        assertNull(mCache.get(WINDOW_ID, 2));
+    }
+
+    @Test
+    public void retain_removesAndRecyclesRejectedNodes() {
+        final AccessibilityNodeInfoCompat keep = mock(AccessibilityNodeInfoCompat.class);
+        AccessibilityNodeInfoCompat drop = mock(AccessibilityNodeInfoCompat.class);
+        mCache.put(WINDOW_ID, 1, keep, new SavedNode.Selection(0, 0));
+        mCache.put(WINDOW_ID, 2, drop, new SavedNode.Selection(0, 0));
+
+        mCache.retain(new SelectionCache.NodeFilter() {
+            @Override
+            public boolean accept(AccessibilityNodeInfoCompat node) {
+                return node == keep;
+            }
+        });
+
+        assertEquals(1, mCache.size());
+        verify(drop).recycle();
+        verify(keep, never()).recycle();
+        assertEquals(0, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void clear_recyclesAllNodes() {
+        AccessibilityNodeInfoCompat node = mock(AccessibilityNodeInfoCompat.class);
+        mCache.put(WINDOW_ID, 1, node, new SavedNode.Selection(0, 0));
+        mCache.clear();
+
+        assertEquals(0, mCache.size());
+        verify(node).recycle();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import android.content.Context;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for SpeechCleanupUtils
+ */
+@Config(emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class SpeechCleanupUtilsTest {
+
+    private Context mContext = RuntimeEnvironment.application.getApplicationContext();
+
+    @Test
+    public void collapse_noRuns_returnsOriginalText() {
+        CharSequence text = "a!!b--c";
+        assertSame(text, SpeechCleanupUtils.collapseRepeatedCharacters(mContext, text));
+    }
+
+    @Test
+    public void collapse_emptyText_returnsNull() {
+        assertNull(SpeechCleanupUtils.collapseRepeatedCharacters(mContext, ""));
+    }
+
+    @Test
+    public void collapse_runsOfSymbols_replacedWithCountAndName() {
+        CharSequence result =
+                SpeechCleanupUtils.collapseRepeatedCharacters(mContext, "a!!!!b...c");
+        assertEquals("a" + collapsed(4, R.string.symbol_exclamation_mark) + "b"
+                + collapsed(3, R.string.symbol_period) + "c", result.toString());
+    }
+
+    @Test
+    public void collapse_runsOfLetters_notCollapsed() {
+        CharSequence text = "aaaa";
+        assertSame(text, SpeechCleanupUtils.collapseRepeatedCharacters(mContext, text));
+    }
+
+    @Test
+    public void collapse_spannedText_keepsSpansOutsideRuns() {
+        SpannableString text = new SpannableString("bold----rest");
+        StyleSpan span = new StyleSpan(android.graphics.Typeface.BOLD);
+        text.setSpan(span, 0, 4, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        CharSequence result = SpeechCleanupUtils.collapseRepeatedCharacters(mContext, text);
+        assertTrue(result instanceof Spanned);
+        Spanned spanned = (Spanned) result;
+        StyleSpan[] spans = spanned.getSpans(0, spanned.length(), StyleSpan.class);
+        assertEquals(1, spans.length);
+        assertEquals(0, spanned.getSpanStart(spans[0]));
+        assertEquals(4, spanned.getSpanEnd(spans[0]));
+        assertTrue(result.toString().endsWith("rest"));
+    }
+
+    @Test
+    public void collapseAndCleanUp_singleSymbol_returnsName() {
+        assertEquals(mContext.getString(R.string.symbol_ampersand),
+                SpeechCleanupUtils.collapseAndCleanUp(mContext, "&"));
+    }
+
+    @Test
+    public void collapseAndCleanUp_singleCapital_returnsCapitalTemplate() {
+        assertEquals(mContext.getString(R.string.template_capital_letter, "Q"),
+                SpeechCleanupUtils.collapseAndCleanUp(mContext, "Q"));
+    }
+
+    @Test
+    public void collapseAndCleanUp_matchesSeparatePasses() {
+        String[] samples = {"x", "&", "hello", "wait...", "a===b", "***", "??!!??"};
+        for (String sample : samples) {
+            CharSequence separate = SpeechCleanupUtils.cleanUp(mContext,
+                    SpeechCleanupUtils.collapseRepeatedCharacters(mContext, sample));
+            CharSequence combined = SpeechCleanupUtils.collapseAndCleanUp(mContext, sample);
+            assertEquals(sample, separate.toString(), combined.toString());
+        }
+    }
+
+    private String collapsed(int count, int symbolResId) {
+        return mContext.getString(R.string.character_collapse_template, count,
+                mContext.getString(symbolResId));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak;
+
+import android.content.Context;
+import android.text.StaticLayout;
+import android.view.View;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for TextToSpeechOverlayView
+ */
+@Config(emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class TextToSpeechOverlayViewTest {
+    private static final int WIDTH = 480;
+
+    private TestOverlayView mView;
+
+    @Before
+    public void setUp() {
+        mView = new TestOverlayView(RuntimeEnvironment.application);
+        mView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mView.layout(0, 0, WIDTH, mView.getMeasuredHeight());
+    }
+
+    @Test
+    public void setText_sameTextAgain_reusesLayout() {
+        setTextAndRunFrame("hello");
+        final StaticLayout layout = getLayout();
+        assertNotNull(layout);
+
+        setTextAndRunFrame("hello");
+        assertSame(layout, getLayout());
+
+        // The layout is also found in the cache after other text was shown.
+        setTextAndRunFrame("goodbye");
+        setTextAndRunFrame("hello");
+        assertSame(layout, getLayout());
+    }
+
+    @Test
+    public void setText_severalTimesInOneFrame_onlyAppliesLastText() {
+        mView.setText("one");
+        mView.setText("two");
+        mView.setText("three");
+        assertEquals(1, mView.mFrameCount);
+
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals("three", ReflectionHelpers.getField(mView, "mText"));
+        final Map<String, StaticLayout> layoutCache =
+                ReflectionHelpers.getField(mView, "mLayoutCache");
+        assertTrue(layoutCache.containsKey("three"));
+        assertFalse(layoutCache.containsKey("one"));
+        assertFalse(layoutCache.containsKey("two"));
+
+        // The next text is applied on a new frame.
+        mView.setText("four");
+        assertEquals(2, mView.mFrameCount);
+    }
+
+    @Test
+    public void clearText_dropsPendingText() {
+        setTextAndRunFrame("hello");
+
+        mView.setText("goodbye");
+        mView.clearText();
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals("", ReflectionHelpers.getField(mView, "mText"));
+    }
+
+    private void setTextAndRunFrame(String text) {
+        mView.setText(text);
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    private StaticLayout getLayout() {
+        return ReflectionHelpers.getField(mView, "mLayout");
+    }
+
+    /** Counts the frames the view asks for. */
+    private static class TestOverlayView extends TextToSpeechOverlayView {
+        int mFrameCount;
+
+        TestOverlayView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void postOnAnimation(Runnable action) {
+            mFrameCount++;
+            super.postOnAnimation(action);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.controller;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Build;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import com.android.screenspeak.SpeechController;
+import com.android.switchaccess.test.ShadowAccessibilityNodeInfo;
+import com.android.switchaccess.test.ShadowAccessibilityNodeInfoCompat;
+import com.android.utils.AccessibilityNodeInfoUtils;
+import com.google.android.marvin.screenspeak.ScreenSpeakService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.ShadowExtractor;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for FullScreenReadControllerApp
+ */
+@Config(
+        emulateSdk = 21,
+        shadows = {
+                ShadowAccessibilityNodeInfoCompat.class,
+                ShadowAccessibilityNodeInfo.class})
+@TargetApi(Build.VERSION_CODES.KITKAT)
+@RunWith(RobolectricTestRunner.class)
+public class FullScreenReadControllerAppTest {
+    private static final int WINDOW_ID = 1;
+
+    private final CursorController mCursorController = mock(CursorController.class);
+    private final FeedbackController mFeedbackController = mock(FeedbackController.class);
+    private final ScreenSpeakService mService = mock(ScreenSpeakService.class);
+
+    private FullScreenReadControllerApp mController;
+
+    /* root -> (first, second, third), read top to bottom */
+    private AccessibilityNodeInfoCompat mRoot;
+    private AccessibilityNodeInfoCompat[] mItems;
+
+    /* The node with accessibility focus, as tracked by the mock cursor controller */
+    private AccessibilityNodeInfoCompat mCursor;
+
+    @Before
+    public void setUp() {
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+
+        AccessibilityNodeInfo root = obtainNode();
+        root.setBoundsInScreen(new Rect(0, 0, 100, 300));
+        mRoot = new AccessibilityNodeInfoCompat(root);
+
+        mItems = new AccessibilityNodeInfoCompat[3];
+        for (int i = 0; i < mItems.length; i++) {
+            AccessibilityNodeInfo item = obtainNode();
+            item.setClickable(true);
+            item.setText("item " + i);
+            item.setBoundsInScreen(new Rect(0, i * 100, 100, (i + 1) * 100));
+            ((ShadowAccessibilityNodeInfo) ShadowExtractor.extract(root)).addChild(item);
+            mItems[i] = new AccessibilityNodeInfoCompat(item);
+        }
+
+        mCursor = AccessibilityNodeInfoCompat.obtain(mItems[0]);
+
+        when(mCursorController.getCursor()).thenAnswer(
+                new Answer<AccessibilityNodeInfoCompat>() {
+                    @Override
+                    public AccessibilityNodeInfoCompat answer(InvocationOnMock invocation) {
+                        return AccessibilityNodeInfoCompat.obtain(mCursor);
+                    }
+                });
+        when(mCursorController.setCursor(any(AccessibilityNodeInfoCompat.class))).thenAnswer(
+                new Answer<Boolean>() {
+                    @Override
+                    public Boolean answer(InvocationOnMock invocation) {
+                        moveCursorTo((AccessibilityNodeInfoCompat) invocation.getArguments()[0]);
+                        return true;
+                    }
+                });
+        when(mCursorController.next(false, false, false)).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                for (int i = 0; i < mItems.length - 1; i++) {
+                    if (mItems[i].equals(mCursor)) {
+                        moveCursorTo(mItems[i + 1]);
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        when(mService.getSystemService(Context.POWER_SERVICE)).thenReturn(
+                RuntimeEnvironment.application.getSystemService(Context.POWER_SERVICE));
+
+        mController = new FullScreenReadControllerApp(
+                mFeedbackController, mCursorController, mService);
+    }
+
+    @After
+    public void tearDown() {
+        mController.shutdown();
+        AccessibilityNodeInfoUtils.recycleNodes(mCursor, mRoot);
+        AccessibilityNodeInfoUtils.recycleNodes(mItems);
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+    }
+
+    @Test
+    public void utteranceComplete_movesToReadAheadNodeWithoutSearching() {
+        mController.startReadingFromNextNode();
+        assertEquals(mItems[1], mCursor);
+
+        // The following nodes are found while the current one is spoken.
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        completeUtterance();
+
+        assertEquals(mItems[2], mCursor);
+        verify(mCursorController, times(1)).next(false, false, false);
+    }
+
+    @Test
+    public void textChange_keepsReadAheadNodes() {
+        mController.startReadingFromNextNode();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        sendContentChangedEvent(AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+        completeUtterance();
+
+        assertEquals(mItems[2], mCursor);
+        verify(mCursorController, times(1)).next(false, false, false);
+    }
+
+    @Test
+    public void structuralChange_dropsReadAheadNodes() {
+        mController.startReadingFromNextNode();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        // Without a source, the change could be anywhere in the window.
+        sendContentChangedEvent(AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE);
+        completeUtterance();
+
+        assertEquals(mItems[2], mCursor);
+        verify(mCursorController, times(2)).next(false, false, false);
+    }
+
+    private static AccessibilityNodeInfo obtainNode() {
+        AccessibilityNodeInfo node = AccessibilityNodeInfo.obtain();
+        ReflectionHelpers.setField(node, "mWindowId", WINDOW_ID);
+        node.setVisibleToUser(true);
+        return node;
+    }
+
+    private void moveCursorTo(AccessibilityNodeInfoCompat node) {
+        mCursor.recycle();
+        mCursor = AccessibilityNodeInfoCompat.obtain(node);
+    }
+
+    private void completeUtterance() {
+        SpeechController.UtteranceCompleteRunnable nodeSpokenRunnable =
+                ReflectionHelpers.getField(mController, "mNodeSpokenRunnable");
+        nodeSpokenRunnable.run(SpeechController.STATUS_SPOKEN);
+    }
+
+    private void sendContentChangedEvent(int changeTypes) {
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+        event.setContentChangeTypes(changeTypes);
+        ReflectionHelpers.setField(event, "mSourceWindowId", WINDOW_ID);
+        mController.onAccessibilityEvent(event);
+        event.recycle();
+    }
+}
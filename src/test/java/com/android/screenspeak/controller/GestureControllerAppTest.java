@@ -29,6 +29,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.*;
 
 @Config(emulateSdk = 18)
@@ -135,6 +137,30 @@ public class GestureControllerAppTest {
         // Global notifications
     }
 
+    @Test
+    public void testDescriptionsFollowPrefs() {
+        String previous = mockAccessibilityService.getString(R.string.shortcut_value_previous);
+        String next = mockAccessibilityService.getString(R.string.shortcut_value_next);
+        assertEquals(mockAccessibilityService.getString(R.string.value_direction_up),
+                gestureController.gestureDescriptionFromAction(previous));
+
+        prefs.edit().putString(mockAccessibilityService.getString(R.string.pref_shortcut_up_key),
+                next).apply();
+        assertEquals(mockAccessibilityService.getString(R.string.value_direction_left),
+                gestureController.gestureDescriptionFromAction(previous));
+        assertEquals(mockAccessibilityService.getString(R.string.value_direction_up),
+                gestureController.gestureDescriptionFromAction(next));
+    }
+
+    @Test
+    public void testLabelsForActions() {
+        assertEquals(mockAccessibilityService.getString(R.string.shortcut_home),
+                gestureController.gestureFromAction(
+                        mockAccessibilityService.getString(R.string.shortcut_value_home)));
+        assertNull(gestureController.gestureFromAction(
+                mockAccessibilityService.getString(R.string.shortcut_value_next)));
+    }
+
     private class MockAccessibilityService extends AccessibilityService {
         @Override
         public void onAccessibilityEvent(AccessibilityEvent accessibilityEvent) {}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.controller;
+
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.view.accessibility.AccessibilityNodeInfo;
+import com.android.switchaccess.test.ShadowAccessibilityNodeInfo;
+import com.android.switchaccess.test.ShadowAccessibilityNodeInfoCompat;
+import com.android.utils.AccessibilityNodeInfoUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.ShadowExtractor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for ReadAheadBuffer
+ */
+@Config(
+        emulateSdk = 18,
+        shadows = {
+                ShadowAccessibilityNodeInfoCompat.class,
+                ShadowAccessibilityNodeInfo.class})
+@RunWith(RobolectricTestRunner.class)
+public class ReadAheadBufferTest {
+    private final ReadAheadBuffer mBuffer = new ReadAheadBuffer(2);
+
+    private AccessibilityNodeInfoCompat mAnchor;
+    private AccessibilityNodeInfoCompat mFirst;
+    private AccessibilityNodeInfoCompat mSecond;
+
+    @Before
+    public void setUp() {
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+        mAnchor = obtainNode("anchor");
+        mFirst = obtainNode("first");
+        mSecond = obtainNode("second");
+    }
+
+    @After
+    public void tearDown() {
+        mBuffer.clear();
+        AccessibilityNodeInfoUtils.recycleNodes(mAnchor, mFirst, mSecond);
+        assertFalse(ShadowAccessibilityNodeInfoCompat.areThereUnrecycledNodes(true));
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+    }
+
+    @Test
+    public void poll_withCursorOnAnchor_returnsNodesInOrder() {
+        mBuffer.reset(mAnchor);
+        assertTrue(mBuffer.add(AccessibilityNodeInfoCompat.obtain(mFirst)));
+        assertTrue(mBuffer.add(AccessibilityNodeInfoCompat.obtain(mSecond)));
+
+        AccessibilityNodeInfoCompat next = mBuffer.poll(mAnchor);
+        assertEquals(mFirst, next);
+        assertEquals(mFirst, mBuffer.getAnchor());
+        next.recycle();
+
+        next = mBuffer.poll(mFirst);
+        assertEquals(mSecond, next);
+        assertTrue(mBuffer.isEmpty());
+        next.recycle();
+
+        assertNull(mBuffer.poll(mSecond));
+    }
+
+    @Test
+    public void poll_withCursorElsewhere_dropsNodes() {
+        mBuffer.reset(mAnchor);
+        mBuffer.add(AccessibilityNodeInfoCompat.obtain(mFirst));
+        mBuffer.add(AccessibilityNodeInfoCompat.obtain(mSecond));
+
+        assertNull(mBuffer.poll(mSecond));
+        assertTrue(mBuffer.isEmpty());
+        assertNull(mBuffer.getAnchor());
+    }
+
+    @Test
+    public void add_whenFullOrWithoutAnchor_rejectsNode() {
+        assertFalse(mBuffer.add(AccessibilityNodeInfoCompat.obtain(mFirst)));
+
+        mBuffer.reset(mAnchor);
+        mBuffer.add(AccessibilityNodeInfoCompat.obtain(mFirst));
+        mBuffer.add(AccessibilityNodeInfoCompat.obtain(mSecond));
+        assertTrue(mBuffer.isFull());
+        assertFalse(mBuffer.add(AccessibilityNodeInfoCompat.obtain(mFirst)));
+        assertEquals(2, mBuffer.size());
+    }
+
+    @Test
+    public void isAffectedBy_onlyForChangesOverlappingBufferedNodes() {
+        // root -> (container -> (anchor, first), unrelated)
+        AccessibilityNodeInfoCompat root = obtainNode("root");
+        AccessibilityNodeInfoCompat container = obtainNode("container");
+        AccessibilityNodeInfoCompat unrelated = obtainNode("unrelated");
+        addChild(root, container);
+        addChild(root, unrelated);
+        addChild(container, mAnchor);
+        addChild(container, mFirst);
+
+        mBuffer.reset(mAnchor);
+        assertFalse(mBuffer.isAffectedBy(root));
+
+        mBuffer.add(AccessibilityNodeInfoCompat.obtain(mFirst));
+        assertTrue(mBuffer.isAffectedBy(root));
+        assertTrue(mBuffer.isAffectedBy(container));
+        assertTrue(mBuffer.isAffectedBy(mFirst));
+        assertFalse(mBuffer.isAffectedBy(unrelated));
+
+        AccessibilityNodeInfoUtils.recycleNodes(root, container, unrelated);
+    }
+
+    private static void addChild(AccessibilityNodeInfoCompat parent,
+            AccessibilityNodeInfoCompat child) {
+        ((ShadowAccessibilityNodeInfo) ShadowExtractor.extract(parent.getInfo()))
+                .addChild((AccessibilityNodeInfo) child.getInfo());
+    }
+
+    private static AccessibilityNodeInfoCompat obtainNode(String description) {
+        AccessibilityNodeInfo node = AccessibilityNodeInfo.obtain();
+        node.setContentDescription(description);
+        return new AccessibilityNodeInfoCompat(node);
+    }
+}
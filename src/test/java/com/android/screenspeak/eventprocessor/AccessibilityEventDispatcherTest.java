@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
+import com.android.utils.AccessibilityEventListener;
+import com.android.utils.LogUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for AccessibilityEventDispatcher
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class AccessibilityEventDispatcherTest {
+    private final AccessibilityEventDispatcher mDispatcher = new AccessibilityEventDispatcher();
+
+    private final List<String> mReceived = new ArrayList<>();
+
+    @Test
+    public void dispatch_onlyReachesListenersForType() {
+        mDispatcher.addListener(new RecordingListener("focus"),
+                AccessibilityEvent.TYPE_VIEW_FOCUSED);
+        mDispatcher.addListener(new RecordingListener("all"),
+                AccessibilityEventDispatcher.MASK_ALL_EVENT_TYPES);
+        mDispatcher.addListener(new RecordingListener("click"),
+                AccessibilityEvent.TYPE_VIEW_CLICKED | AccessibilityEvent.TYPE_VIEW_FOCUSED);
+
+        dispatch(AccessibilityEvent.TYPE_VIEW_FOCUSED);
+        assertEquals(Arrays.asList("focus", "all", "click"), mReceived);
+
+        mReceived.clear();
+        dispatch(AccessibilityEvent.TYPE_VIEW_SCROLLED);
+        assertEquals(Arrays.asList("all"), mReceived);
+    }
+
+    @Test
+    public void removeListener_duringDispatch_finishesCurrentEvent() {
+        final AccessibilityEventListener remover = new AccessibilityEventListener() {
+            @Override
+            public void onAccessibilityEvent(AccessibilityEvent event) {
+                mReceived.add("remover");
+                mDispatcher.removeListener(this);
+            }
+        };
+        mDispatcher.addListener(remover, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        mDispatcher.addListener(new RecordingListener("after"),
+                AccessibilityEvent.TYPE_VIEW_CLICKED);
+
+        dispatch(AccessibilityEvent.TYPE_VIEW_CLICKED);
+        dispatch(AccessibilityEvent.TYPE_VIEW_CLICKED);
+        assertEquals(Arrays.asList("remover", "after", "after"), mReceived);
+    }
+
+    @Test
+    public void dump_includesDispatchCounts() {
+        mDispatcher.addListener(new RecordingListener("click"),
+                AccessibilityEvent.TYPE_VIEW_CLICKED);
+        dispatch(AccessibilityEvent.TYPE_VIEW_CLICKED);
+        dispatch(AccessibilityEvent.TYPE_VIEW_CLICKED);
+
+        StringWriter output = new StringWriter();
+        mDispatcher.dump(new PrintWriter(output));
+        assertTrue(output.toString().contains("events=2"));
+
+        mDispatcher.resetCounters();
+        output = new StringWriter();
+        mDispatcher.dump(new PrintWriter(output));
+        assertTrue(output.toString().contains("events=0"));
+    }
+
+    @Test
+    public void dump_withoutDebugLogging_recordsNoTimes() {
+        final int logLevel = LogUtils.LOG_LEVEL;
+        LogUtils.setLogLevel(Log.INFO);
+        try {
+            mDispatcher.addListener(new AccessibilityEventListener() {
+                @Override
+                public void onAccessibilityEvent(AccessibilityEvent event) {
+                    // Robolectric doesn't really sleep, so take real time.
+                    final long endTime = System.nanoTime() + 2000000;
+                    while (System.nanoTime() < endTime) {
+                        // Wait.
+                    }
+                }
+            }, AccessibilityEvent.TYPE_VIEW_CLICKED);
+            dispatch(AccessibilityEvent.TYPE_VIEW_CLICKED);
+        } finally {
+            LogUtils.setLogLevel(logLevel);
+        }
+
+        final StringWriter output = new StringWriter();
+        mDispatcher.dump(new PrintWriter(output));
+        assertTrue(output.toString().contains("events=1 total=0us max=0us"));
+    }
+
+    private void dispatch(int eventType) {
+        AccessibilityEvent event = AccessibilityEvent.obtain(eventType);
+        mDispatcher.dispatch(event);
+        event.recycle();
+    }
+
+    private class RecordingListener implements AccessibilityEventListener {
+        private final String mName;
+
+        RecordingListener(String name) {
+            mName = name;
+        }
+
+        @Override
+        public void onAccessibilityEvent(AccessibilityEvent event) {
+            mReceived.add(mName);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import android.content.res.Configuration;
+import android.telephony.TelephonyManager;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for EventGatingContext
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class EventGatingContextTest {
+    @Test
+    public void fromConfiguration_startsIdleWithScreenOn() {
+        EventGatingContext context = EventGatingContext.fromConfiguration(
+                createConfiguration(Configuration.ORIENTATION_PORTRAIT,
+                        Configuration.TOUCHSCREEN_FINGER));
+
+        assertEquals(Configuration.ORIENTATION_PORTRAIT, context.getOrientation());
+        assertFalse(context.isNoTouch());
+        assertFalse(context.isPhoneActive());
+        assertTrue(context.isScreenOn());
+        assertFalse(context.isMenuShowing());
+    }
+
+    @Test
+    public void with_returnsUpdatedCopy() {
+        EventGatingContext original = EventGatingContext.fromConfiguration(
+                createConfiguration(Configuration.ORIENTATION_PORTRAIT,
+                        Configuration.TOUCHSCREEN_FINGER));
+
+        EventGatingContext ringing = original.withCallState(TelephonyManager.CALL_STATE_RINGING);
+        assertNotSame(original, ringing);
+        assertTrue(ringing.isPhoneActive());
+        assertTrue(ringing.isPhoneRinging());
+        assertFalse(original.isPhoneActive());
+
+        EventGatingContext noTouch = ringing.withConfiguration(
+                createConfiguration(Configuration.ORIENTATION_LANDSCAPE,
+                        Configuration.TOUCHSCREEN_NOTOUCH));
+        assertTrue(noTouch.isNoTouch());
+        assertEquals(Configuration.ORIENTATION_LANDSCAPE, noTouch.getOrientation());
+        assertTrue(noTouch.isPhoneRinging());
+
+        EventGatingContext hidden = noTouch.withScreenOn(false).withMenuShowing(true);
+        assertFalse(hidden.isScreenOn());
+        assertTrue(hidden.isMenuShowing());
+    }
+
+    @Test
+    public void with_unchangedValue_returnsSameInstance() {
+        EventGatingContext context = EventGatingContext.fromConfiguration(
+                createConfiguration(Configuration.ORIENTATION_PORTRAIT,
+                        Configuration.TOUCHSCREEN_FINGER));
+
+        assertSame(context, context.withCallState(TelephonyManager.CALL_STATE_IDLE));
+        assertSame(context, context.withScreenOn(true));
+        assertSame(context, context.withMenuShowing(false));
+        assertSame(context, context.withConfiguration(createConfiguration(
+                Configuration.ORIENTATION_PORTRAIT, Configuration.TOUCHSCREEN_FINGER)));
+    }
+
+    private static Configuration createConfiguration(int orientation, int touchscreen) {
+        Configuration config = new Configuration();
+        config.orientation = orientation;
+        config.touchscreen = touchscreen;
+        return config;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import com.android.utils.Clock;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for EventState
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class EventStateTest {
+    private static final int EVENT = EventState.EVENT_SKIP_FOCUS_PROCESSING_AFTER_GRANULARITY_MOVE;
+
+    private long mTime = 1000;
+
+    private final EventState mState = new EventState(new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return mTime;
+        }
+    });
+
+    @Test
+    public void hasEvent_withinTimeout() {
+        assertFalse(mState.hasEvent(EVENT, 500));
+
+        mState.addEvent(EVENT);
+        mTime += 499;
+        assertTrue(mState.hasEvent(EVENT, 500));
+
+        mTime += 1;
+        assertFalse(mState.hasEvent(EVENT, 500));
+    }
+
+    @Test
+    public void clearEvent_removesEvent() {
+        mState.addEvent(EVENT);
+        mState.clearEvent(EVENT);
+        assertFalse(mState.hasEvent(EVENT, 500));
+
+        mState.addEvent(EVENT);
+        mState.clear();
+        assertFalse(mState.hasEvent(EVENT, 500));
+    }
+
+    @Test
+    public void getSuppressionCounts_countsHitsOnly() {
+        mState.addEvent(EVENT);
+        mState.hasEvent(EVENT, 500);
+        mState.hasEvent(EVENT, 500);
+        mTime += 1000;
+        mState.hasEvent(EVENT, 500);
+
+        int[] counts = mState.getSuppressionCounts();
+        assertEquals(EventState.EVENT_COUNT, counts.length);
+        assertEquals(2, counts[EVENT]);
+
+        // The snapshot doesn't change afterwards.
+        mTime -= 1000;
+        mState.hasEvent(EVENT, 500);
+        assertEquals(2, counts[EVENT]);
+    }
+}
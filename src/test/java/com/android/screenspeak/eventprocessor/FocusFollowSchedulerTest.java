@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import com.android.utils.Clock;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for FocusFollowScheduler
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class FocusFollowSchedulerTest {
+    private long mTime = 1000;
+
+    private final FocusFollowScheduler mScheduler = new FocusFollowScheduler(
+            new Clock() {
+                @Override
+                public long uptimeMillis() {
+                    return mTime;
+                }
+            });
+
+    @Test
+    public void request_mergesIntoLatestGeneration() {
+        final int first = mScheduler.request(FocusFollowScheduler.REQUEST_SCROLL);
+        mTime += 20;
+        final int second = mScheduler.request(FocusFollowScheduler.REQUEST_CONTENT_CHANGED);
+
+        assertEquals(0, mScheduler.takeRequests(first));
+        assertEquals(FocusFollowScheduler.REQUEST_SCROLL
+                | FocusFollowScheduler.REQUEST_CONTENT_CHANGED, mScheduler.takeRequests(second));
+        assertFalse(mScheduler.hasPendingRequests());
+        assertEquals(0, mScheduler.takeRequests(second));
+    }
+
+    @Test
+    public void cancel_dropsPendingTask() {
+        final int generation = mScheduler.request(FocusFollowScheduler.REQUEST_SCROLL);
+        mScheduler.cancel();
+
+        assertFalse(mScheduler.hasPendingRequests());
+        assertEquals(0, mScheduler.takeRequests(generation));
+    }
+
+    @Test
+    public void getDelay_startsNearMinDelay() {
+        mScheduler.request(FocusFollowScheduler.REQUEST_SCROLL);
+        assertEquals(FocusFollowScheduler.MIN_DELAY * 3 / 2, mScheduler.getDelay());
+    }
+
+    @Test
+    public void getDelay_neverExceedsMaxDelayFromFirstRequest() {
+        mScheduler.request(FocusFollowScheduler.REQUEST_CONTENT_CHANGED);
+        mTime += 400;
+        mScheduler.request(FocusFollowScheduler.REQUEST_CONTENT_CHANGED);
+        assertEquals(100, mScheduler.getDelay());
+    }
+
+    @Test
+    public void getDelay_followsGapsBetweenRequests() {
+        // The screen keeps changing for a while after each request.
+        for (int i = 0; i < 10; i++) {
+            final int generation = mScheduler.request(FocusFollowScheduler.REQUEST_SCROLL);
+            mTime += 300;
+            mScheduler.takeRequests(generation);
+        }
+
+        mScheduler.request(FocusFollowScheduler.REQUEST_SCROLL);
+        assertTrue(mScheduler.getDelay() > FocusFollowScheduler.MAX_DELAY / 2);
+        mScheduler.cancel();
+
+        // The screen settles quickly.
+        for (int i = 0; i < 10; i++) {
+            final int generation = mScheduler.request(FocusFollowScheduler.REQUEST_SCROLL);
+            mTime += 2000;
+            mScheduler.takeRequests(generation);
+        }
+
+        mScheduler.request(FocusFollowScheduler.REQUEST_SCROLL);
+        assertTrue(mScheduler.getDelay() < FocusFollowScheduler.MAX_DELAY / 2);
+        assertTrue(mScheduler.getDelay() >= FocusFollowScheduler.MIN_DELAY);
+    }
+}
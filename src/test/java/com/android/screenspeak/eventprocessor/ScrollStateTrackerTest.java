@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.eventprocessor;
+
+import com.android.utils.Clock;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for ScrollStateTracker
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class ScrollStateTrackerTest {
+    private static final int WINDOW_ID = 3;
+    private static final long NODE_ID = 42L;
+
+    private FakeClock mClock;
+    private ScrollStateTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mTracker = new ScrollStateTracker(mClock);
+    }
+
+    @Test
+    public void samePosition_ignored() {
+        assertTrue(mTracker.onScroll(WINDOW_ID, NODE_ID, 1, 100));
+        mTracker.clearPendingAnnouncement();
+
+        mClock.advance(50);
+        assertFalse(mTracker.onScroll(WINDOW_ID, NODE_ID, 1, 100));
+        assertFalse(mTracker.hasPendingAnnouncement());
+    }
+
+    @Test
+    public void slowScroll_announcedAfterSettleDelay() {
+        assertTrue(mTracker.onScroll(WINDOW_ID, NODE_ID, 1, 100));
+        assertFalse(mTracker.isFlinging());
+        assertEquals(ScrollStateTracker.SETTLE_DELAY, mTracker.getTimeUntilAnnouncement());
+
+        mClock.advance(ScrollStateTracker.SETTLE_DELAY);
+        assertEquals(0, mTracker.getTimeUntilAnnouncement());
+    }
+
+    @Test
+    public void fling_coalescedIntoOneAnnouncement() {
+        int fromIndex = 1;
+        mTracker.onScroll(WINDOW_ID, NODE_ID, fromIndex, 1000);
+        for (int i = 0; i < 20; i++) {
+            mClock.advance(16);
+            fromIndex += 5;
+            assertTrue(mTracker.onScroll(WINDOW_ID, NODE_ID, fromIndex, 1000));
+            assertTrue(mTracker.isFlinging());
+
+            // The announcement keeps moving back while events arrive.
+            assertTrue(mTracker.getTimeUntilAnnouncement() > 0);
+        }
+
+        assertEquals(ScrollStateTracker.FLING_SETTLE_DELAY, mTracker.getTimeUntilAnnouncement());
+        mClock.advance(ScrollStateTracker.FLING_SETTLE_DELAY);
+        assertTrue(mTracker.hasPendingAnnouncement());
+        assertEquals(0, mTracker.getTimeUntilAnnouncement());
+    }
+
+    @Test
+    public void scrollAfterPause_notTreatedAsFling() {
+        mTracker.onScroll(WINDOW_ID, NODE_ID, 1, 1000);
+        mClock.advance(ScrollStateTracker.SETTLE_DELAY + 1);
+        mTracker.onScroll(WINDOW_ID, NODE_ID, 500, 1000);
+        assertFalse(mTracker.isFlinging());
+    }
+
+    @Test
+    public void fullTable_forgetsLeastRecentlyScrolled() {
+        for (int i = 0; i < ScrollStateTracker.MAX_CONTAINERS; i++) {
+            mClock.advance(1);
+            mTracker.onScroll(WINDOW_ID, i, 1, 10);
+        }
+
+        mClock.advance(1);
+        mTracker.onScroll(WINDOW_ID, ScrollStateTracker.MAX_CONTAINERS, 1, 10);
+        assertEquals(ScrollStateTracker.MAX_CONTAINERS, mTracker.size());
+
+        // Node 0 was forgotten, so its unchanged position counts as new.
+        assertTrue(mTracker.onScroll(WINDOW_ID, 0, 1, 10));
+        // Node 2 is still known.
+        assertFalse(mTracker.onScroll(WINDOW_ID, 2, 1, 10));
+    }
+
+    @Test
+    public void clear_forgetsContainersAndAnnouncement() {
+        mTracker.onScroll(WINDOW_ID, NODE_ID, 1, 100);
+        mTracker.clear();
+        assertFalse(mTracker.hasPendingAnnouncement());
+        assertEquals(0, mTracker.size());
+        assertTrue(mTracker.onScroll(WINDOW_ID, NODE_ID, 1, 100));
+    }
+
+    private static class FakeClock implements Clock {
+        private long mNow = 1000;
+
+        @Override
+        public long uptimeMillis() {
+            return mNow;
+        }
+
+        public void advance(long millis) {
+            mNow += millis;
+        }
+    }
+}
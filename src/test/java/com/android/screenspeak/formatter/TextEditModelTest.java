@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.screenspeak.formatter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for TextEditModel
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class TextEditModelTest {
+    private final TextEditModel mModel = new TextEditModel();
+
+    @Test
+    public void reportedInsertion_usedAsIs() {
+        assertTrue(mModel.applyTextChange("helo", "hello", 3, 0, 1));
+        assertFalse(mModel.wasDiffed());
+        assertEquals(3, mModel.getFromIndex());
+        assertEquals("l", mModel.getAddedText().toString());
+        assertEquals("", mModel.getRemovedText().toString());
+    }
+
+    @Test
+    public void reportedReplacement_usedAsIs() {
+        assertTrue(mModel.applyTextChange("the cat sat", "the dog sat", 4, 3, 3));
+        assertEquals("cat", mModel.getRemovedText().toString());
+        assertEquals("dog", mModel.getAddedText().toString());
+    }
+
+    @Test
+    public void mismatchedIndices_diffed() {
+        // The counts don't add up to the change in length.
+        assertTrue(mModel.applyTextChange("abcdef", "abXYef", 1, 1, 2));
+        assertTrue(mModel.wasDiffed());
+        assertEquals(2, mModel.getFromIndex());
+        assertEquals("cd", mModel.getRemovedText().toString());
+        assertEquals("XY", mModel.getAddedText().toString());
+    }
+
+    @Test
+    public void diff_repeatedCharacters_doesNotOverlap() {
+        assertTrue(mModel.applyTextChange("aaa", "aaaa", 7, 0, 1));
+        assertEquals(3, mModel.getFromIndex());
+        assertEquals(0, mModel.getRemovedCount());
+        assertEquals("a", mModel.getAddedText().toString());
+    }
+
+    @Test
+    public void missingBeforeText_usesShadowText() {
+        mModel.applyTextChange("", "hi", 0, 0, 2);
+        assertTrue(mModel.applyTextChange(null, "hit", 2, 0, 1));
+        assertEquals("t", mModel.getAddedText().toString());
+
+        assertTrue(mModel.applyTextChange(null, "ht", 1, 1, 0));
+        assertEquals("i", mModel.getRemovedText().toString());
+    }
+
+    @Test
+    public void missingBeforeText_withoutShadowText_rejected() {
+        assertFalse(mModel.applyTextChange(null, "hit", 2, 0, 1));
+
+        mModel.applyTextChange("", "hi", 0, 0, 2);
+        mModel.clear();
+        assertFalse(mModel.applyTextChange(null, "hit", 2, 0, 1));
+    }
+
+    @Test
+    public void clearingFieldWithHint_ignoresHintText() {
+        assertTrue(mModel.applyTextChange("hello", "Type a message", 0, 5, 0));
+        assertEquals(5, mModel.getRemovedCount());
+        assertEquals(5, mModel.getBeforeLength());
+        assertEquals("", mModel.getText().toString());
+    }
+
+    @Test
+    public void missingBeforeText_shadowTextDiffersOutsideEdit_rejected() {
+        // The lengths fit, but the shadow text isn't the text the change was made to.
+        mModel.applyTextChange("", "cat", 0, 0, 3);
+        assertFalse(mModel.applyTextChange(null, "dogs", 3, 0, 1));
+    }
+
+    @Test
+    public void setField_sameField_keepsShadowText() {
+        mModel.setField(1, 10L);
+        mModel.applyTextChange("", "hi", 0, 0, 2);
+        mModel.setField(1, 10L);
+        assertTrue(mModel.applyTextChange(null, "hit", 2, 0, 1));
+    }
+
+    @Test
+    public void setField_otherFieldOrWindow_forgetsShadowText() {
+        mModel.setField(1, 10L);
+        mModel.applyTextChange("", "hi", 0, 0, 2);
+        mModel.setField(1, 11L);
+        assertFalse(mModel.applyTextChange(null, "hit", 2, 0, 1));
+
+        mModel.setField(1, 10L);
+        mModel.applyTextChange("", "hi", 0, 0, 2);
+        mModel.setField(2, 10L);
+        assertFalse(mModel.applyTextChange(null, "hit", 2, 0, 1));
+    }
+
+    @Test
+    public void setField_unknownNode_forgetsShadowText() {
+        mModel.setField(1, TextEditModel.NO_NODE_ID);
+        mModel.applyTextChange("", "hi", 0, 0, 2);
+        mModel.setField(1, TextEditModel.NO_NODE_ID);
+        assertFalse(mModel.applyTextChange(null, "hit", 2, 0, 1));
+    }
+}
@@ -23,8 +23,8 @@ import android.graphics.Rect;
 import android.os.Build;
 import android.view.View;
 import android.view.WindowManager;
-import android.widget.ImageView;
 import android.widget.RelativeLayout;
+import com.android.switchaccess.HighlightLayerView;
 import com.android.switchaccess.OverlayController;
 import com.android.utils.widget.SimpleOverlay;
 import org.junit.Before;
@@ -37,9 +37,9 @@ import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
 import java.util.Arrays;
-import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -111,35 +111,56 @@ public class OverlayControllerTest {
     @Test
     public void testHighlightPerimeterOfRects_singleRectHighlighted() {
         mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS0), new Paint());
-        ArgumentCaptor<ImageView> highlightViewCaptor = ArgumentCaptor.forClass(ImageView.class);
-        verify(mMockRelativeLayout, times(1)).addView(highlightViewCaptor.capture());
+        HighlightLayerView highlightLayerView = mOverlayController.getHighlightLayerView();
+        verify(mMockRelativeLayout, times(1)).addView(highlightLayerView);
 
-        ImageView highlightView = highlightViewCaptor.getValue();
-        RelativeLayout.LayoutParams layoutParams =
-                (RelativeLayout.LayoutParams) highlightView.getLayoutParams();
-        assertTrue(paramsBoundsRect(layoutParams, BOUNDS0));
+        assertEquals(1, highlightLayerView.getHighlightCount());
+        assertEquals(BOUNDS0, highlightLayerView.getHighlightRect(0));
     }
 
     @Test
     public void testHighlightPerimeterOfRects_twoRectHighlighted() {
         mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS0, BOUNDS1), new Paint());
-        ArgumentCaptor<ImageView> highlightViewCaptor = ArgumentCaptor.forClass(ImageView.class);
-        verify(mMockRelativeLayout, times(2)).addView(highlightViewCaptor.capture());
-        List<ImageView> highlightViews = highlightViewCaptor.getAllValues();
-
-        ImageView highlightView0 = highlightViews.get(0);
-        ImageView highlightView1 = highlightViews.get(1);
-        RelativeLayout.LayoutParams layoutParams0 =
-                (RelativeLayout.LayoutParams) highlightView0.getLayoutParams();
-        RelativeLayout.LayoutParams layoutParams1 =
-                (RelativeLayout.LayoutParams) highlightView1.getLayoutParams();
-
-        if (paramsBoundsRect(layoutParams0, BOUNDS0)) {
-            assertTrue(paramsBoundsRect(layoutParams1, BOUNDS1));
-        } else {
-            assertTrue(paramsBoundsRect(layoutParams0, BOUNDS1));
-            assertTrue(paramsBoundsRect(layoutParams1, BOUNDS0));
-        }
+        HighlightLayerView highlightLayerView = mOverlayController.getHighlightLayerView();
+        verify(mMockRelativeLayout, times(1)).addView((View) anyObject());
+
+        assertEquals(2, highlightLayerView.getHighlightCount());
+        assertEquals(BOUNDS0, highlightLayerView.getHighlightRect(0));
+        assertEquals(BOUNDS1, highlightLayerView.getHighlightRect(1));
+    }
+
+    @Test
+    public void testHighlightPerimeterOfRects_translatedByLayoutOffset() {
+        mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS0, BOUNDS1), new Paint());
+        HighlightLayerView highlightLayerView = mOverlayController.getHighlightLayerView();
+
+        Rect rectInView = new Rect();
+        highlightLayerView.getHighlightRectInView(0, rectInView);
+        assertEquals(layoutRect(BOUNDS0), rectInView);
+        highlightLayerView.getHighlightRectInView(1, rectInView);
+        assertEquals(layoutRect(BOUNDS1), rectInView);
+    }
+
+    @Test
+    public void testHighlightPerimeterOfRects_groupsShareOneView() {
+        Paint secondPaint = new Paint();
+        secondPaint.setColor(0xff4caf50);
+        mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS0), new Paint());
+        mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS1), secondPaint);
+        verify(mMockRelativeLayout, times(1)).addView((View) anyObject());
+        assertEquals(2, mOverlayController.getHighlightLayerView().getHighlightCount());
+    }
+
+    @Test
+    public void testClearOverlay_clearsHighlightsAndKeepsLayer() {
+        mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS0), new Paint());
+        mOverlayController.clearOverlay();
+        assertEquals(0, mOverlayController.getHighlightLayerView().getHighlightCount());
+
+        mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS1), new Paint());
+        verify(mMockRelativeLayout, times(1)).addView(mOverlayController.getHighlightLayerView());
+        assertEquals(1, mOverlayController.getHighlightLayerView().getHighlightCount());
+        assertEquals(BOUNDS1, mOverlayController.getHighlightLayerView().getHighlightRect(0));
     }
 
     @Test
@@ -151,25 +172,57 @@ public class OverlayControllerTest {
     }
 
     @Test
-    public void testClearOverlay_removesAllViewsAndHides() {
+    public void testClearOverlay_removesOtherViewsButNotLayer() {
+        HighlightLayerView highlightLayerView = mOverlayController.getHighlightLayerView();
+        View menuButton = new View(mContext);
+        when(mMockRelativeLayout.getChildCount()).thenReturn(2);
+        when(mMockRelativeLayout.getChildAt(0)).thenReturn(highlightLayerView);
+        when(mMockRelativeLayout.getChildAt(1)).thenReturn(menuButton);
+
+        mOverlayController.clearOverlay();
+        verify(mMockRelativeLayout, times(1)).removeView(menuButton);
+        verify(mMockRelativeLayout, never()).removeView(highlightLayerView);
+        verify(mMockRelativeLayout, never()).removeAllViews();
+    }
+
+    @Test
+    public void testClearOverlay_nothingDrawnAfterwards_hides() {
+        mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS0), new Paint());
         mOverlayController.clearOverlay();
-        verify(mMockRelativeLayout, times(1)).removeAllViews();
+        verify(mMockSimpleOverlay, never()).hide();
+
+        ShadowLooper.runUiThreadTasks();
         verify(mMockSimpleOverlay, times(1)).hide();
     }
 
+    @Test
+    public void testTwoScanSteps_layerNeverRemovedOrReaddedAndOverlayNotHidden() {
+        HighlightLayerView highlightLayerView = mOverlayController.getHighlightLayerView();
+        mOverlayController.clearOverlay();
+        mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS0), new Paint());
+        ShadowLooper.runUiThreadTasks();
+        mOverlayController.clearOverlay();
+        mOverlayController.highlightPerimeterOfRects(Arrays.asList(BOUNDS1), new Paint());
+        ShadowLooper.runUiThreadTasks();
+
+        /* Only the constructor adds the layer */
+        verify(mMockRelativeLayout, times(1)).addView(highlightLayerView);
+        verify(mMockRelativeLayout, never()).removeView(highlightLayerView);
+        verify(mMockRelativeLayout, never()).removeAllViews();
+        verify(mMockSimpleOverlay, never()).hide();
+        assertEquals(1, highlightLayerView.getHighlightCount());
+        assertEquals(BOUNDS1, highlightLayerView.getHighlightRect(0));
+    }
+
     @Test
     public void testShutdown_hides() {
         mOverlayController.shutdown();
         verify(mMockSimpleOverlay, times(1)).hide();
     }
 
-    private boolean paramsBoundsRect(RelativeLayout.LayoutParams layoutParams, Rect rect) {
-        boolean result = (layoutParams.leftMargin <= rect.left - RELATIVE_LAYOUT_X_OFFSET);
-        result = result && (layoutParams.topMargin <= rect.top - RELATIVE_LAYOUT_Y_OFFSET);
-        result = result && (layoutParams.leftMargin + layoutParams.width
-                >= rect.right - RELATIVE_LAYOUT_X_OFFSET);
-        result = result && (layoutParams.topMargin + layoutParams.height
-                >= rect.bottom - RELATIVE_LAYOUT_Y_OFFSET);
-        return result;
+    private Rect layoutRect(Rect screenRect) {
+        Rect rect = new Rect(screenRect);
+        rect.offset(-RELATIVE_LAYOUT_X_OFFSET, -RELATIVE_LAYOUT_Y_OFFSET);
+        return rect;
     }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.switchaccess.test;
+
+import com.android.switchaccess.RowColumnIndex;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for RowColumnIndex
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class RowColumnIndexTest {
+    private final RowColumnIndex mIndex = new RowColumnIndex();
+
+    @Test
+    public void update_groupsRowsBottomUpAndColumnsRightToLeft() {
+        int n0 = mIndex.add(30, 50, 10);
+        int n1 = mIndex.add(80, 180, 10);
+        int n10 = mIndex.add(30, 50, 110);
+        int n11 = mIndex.add(30, 50, 210);
+        int n12 = mIndex.add(80, 180, 110);
+        assertTrue(mIndex.update());
+
+        assertEquals(2, mIndex.getRowCount());
+        assertEquals(2, mIndex.getRowSize(0));
+        assertEquals(n12, mIndex.getEntry(0, 0));
+        assertEquals(n1, mIndex.getEntry(0, 1));
+        assertEquals(3, mIndex.getRowSize(1));
+        assertEquals(n11, mIndex.getEntry(1, 0));
+        assertEquals(n10, mIndex.getEntry(1, 1));
+        assertEquals(n0, mIndex.getEntry(1, 2));
+    }
+
+    @Test
+    public void update_sameTopDifferentBottom_separateRowsSmallerFirst() {
+        int tall = mIndex.add(100, 500, 0);
+        int short0 = mIndex.add(100, 200, 0);
+        assertTrue(mIndex.update());
+
+        assertEquals(2, mIndex.getRowCount());
+        assertEquals(short0, mIndex.getEntry(0, 0));
+        assertEquals(tall, mIndex.getEntry(1, 0));
+    }
+
+    @Test
+    public void update_unchangedLayout_reusesRows() {
+        mIndex.add(0, 10, 0);
+        mIndex.add(0, 10, 20);
+        assertTrue(mIndex.update());
+
+        mIndex.clear();
+        mIndex.add(0, 10, 0);
+        mIndex.add(0, 10, 20);
+        assertFalse(mIndex.update());
+        assertEquals(1, mIndex.getRowCount());
+        assertEquals(2, mIndex.getRowSize(0));
+
+        mIndex.clear();
+        mIndex.add(0, 10, 0);
+        mIndex.add(20, 30, 20);
+        assertTrue(mIndex.update());
+        assertEquals(2, mIndex.getRowCount());
+    }
+
+    @Test
+    public void update_manyEntries_growsAndKeepsOrder() {
+        for (int i = 0; i < 100; i++) {
+            mIndex.add(i / 10, i / 10 + 1, i % 10);
+        }
+        assertTrue(mIndex.update());
+
+        assertEquals(10, mIndex.getRowCount());
+        for (int row = 0; row < 10; row++) {
+            assertEquals(10, mIndex.getRowSize(row));
+            for (int column = 0; column < 10; column++) {
+                assertEquals((9 - row) * 10 + (9 - column), mIndex.getEntry(row, column));
+            }
+        }
+    }
+}
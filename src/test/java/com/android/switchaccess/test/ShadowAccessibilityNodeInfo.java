@@ -546,6 +546,10 @@ public class ShadowAccessibilityNodeInfo {
         newShadow.mLabeledBy = mLabeledBy;
         newShadow.mView = mView;
         newShadow.mGranularities = mGranularities;
+        ReflectionHelpers.setField(newInfo, "mSourceNodeId",
+                ReflectionHelpers.getField(mRealAccessibilityNodeInfo, "mSourceNodeId"));
+        ReflectionHelpers.setField(newInfo, "mWindowId",
+                ReflectionHelpers.getField(mRealAccessibilityNodeInfo, "mWindowId"));
         if (mChildren != null) {
             newShadow.mChildren = new LinkedList<>();
             newShadow.mChildren.addAll(mChildren);
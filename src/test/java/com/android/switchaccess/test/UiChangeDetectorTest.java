@@ -26,8 +26,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -42,6 +44,9 @@ import static org.mockito.Mockito.verify;
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
 @RunWith(RobolectricTestRunner.class)
 public class UiChangeDetectorTest {
+    private static final int WINDOW_ID = 3;
+    private static final int OTHER_WINDOW_ID = 4;
+
     UiChangeDetector mUiChangeDetector;
     UiChangeDetector.PossibleUiChangeListener mListener =
             mock(UiChangeDetector.PossibleUiChangeListener.class);
@@ -153,4 +158,61 @@ public class UiChangeDetectorTest {
         mUiChangeDetector.onAccessibilityEvent(event);
         verify(mListener, never()).onPossibleChangeToUi();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testContentGeneration_textChange_advancesWithoutCallingListener() {
+        int generation = mUiChangeDetector.getContentGeneration(WINDOW_ID);
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+        event.setContentChangeTypes(AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+        mUiChangeDetector.onAccessibilityEvent(event);
+        assertNotEquals(generation, mUiChangeDetector.getContentGeneration(WINDOW_ID));
+        verify(mListener, never()).onPossibleChangeToUi();
+    }
+
+    @Test
+    public void testContentGeneration_windowsChanged_advances() {
+        int generation = mUiChangeDetector.getContentGeneration(WINDOW_ID);
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_WINDOWS_CHANGED);
+        mUiChangeDetector.onAccessibilityEvent(event);
+        assertNotEquals(generation, mUiChangeDetector.getContentGeneration(WINDOW_ID));
+    }
+
+    @Test
+    public void testContentGeneration_irrelevantEvents_unchanged() {
+        int generation = mUiChangeDetector.getContentGeneration(WINDOW_ID);
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
+        mUiChangeDetector.onAccessibilityEvent(event);
+        event.setEventType(AccessibilityEvent.TYPE_ANNOUNCEMENT);
+        mUiChangeDetector.onAccessibilityEvent(event);
+        assertEquals(generation, mUiChangeDetector.getContentGeneration(WINDOW_ID));
+    }
+
+    @Test
+    public void testContentGeneration_changeInOneWindow_otherWindowUnchanged() {
+        int generation = mUiChangeDetector.getContentGeneration(WINDOW_ID);
+        int otherGeneration = mUiChangeDetector.getContentGeneration(OTHER_WINDOW_ID);
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+        event.setContentChangeTypes(AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE);
+        setWindowId(event, WINDOW_ID);
+        mUiChangeDetector.onAccessibilityEvent(event);
+        assertNotEquals(generation, mUiChangeDetector.getContentGeneration(WINDOW_ID));
+        assertEquals(otherGeneration, mUiChangeDetector.getContentGeneration(OTHER_WINDOW_ID));
+
+        generation = mUiChangeDetector.getContentGeneration(WINDOW_ID);
+        event.setEventType(AccessibilityEvent.TYPE_VIEW_SCROLLED);
+        setWindowId(event, OTHER_WINDOW_ID);
+        mUiChangeDetector.onAccessibilityEvent(event);
+        assertNotEquals(otherGeneration,
+                mUiChangeDetector.getContentGeneration(OTHER_WINDOW_ID));
+        assertEquals(generation, mUiChangeDetector.getContentGeneration(WINDOW_ID));
+    }
+
+    private static void setWindowId(AccessibilityEvent event, int windowId) {
+        /* The window ID of an event is only set by the framework */
+        ReflectionHelpers.setField(event, "mSourceWindowId", windowId);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.switchaccess.test;
+
+import android.annotation.TargetApi;
+import android.graphics.Rect;
+import android.os.Build;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityWindowInfo;
+import com.android.switchaccess.SwitchAccessNodeCompat;
+import com.android.switchaccess.SwitchAccessWindowInfo;
+import com.android.switchaccess.UiChangeDetector;
+import com.android.switchaccess.WindowSubtreeCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.ShadowExtractor;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Robolectric tests for WindowSubtreeCache
+ */
+@Config(
+        emulateSdk = 18,
+        shadows = {
+                ShadowAccessibilityNodeInfo.class,
+                ShadowAccessibilityNodeInfo.ShadowAccessibilityAction.class,
+                ShadowAccessibilityNodeInfoCompat.class,
+                ShadowAccessibilityNodeInfoCompat.ShadowAccessibilityActionCompat.class,
+                ShadowAccessibilityWindowInfo.class})
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+@RunWith(RobolectricTestRunner.class)
+public class WindowSubtreeCacheTest {
+    private static final int WINDOW_0_ID = 1;
+    private static final int WINDOW_1_ID = 2;
+    private static final Rect WINDOW_0_NODE_BOUNDS = new Rect(10, 10, 90, 20);
+    private static final Rect WINDOW_1_NODE_BOUNDS = new Rect(10, 30, 90, 80);
+
+    private final List<AccessibilityWindowInfo> mWindows = new ArrayList<>();
+    private final UiChangeDetector mUiChangeDetector =
+            new UiChangeDetector(mock(UiChangeDetector.PossibleUiChangeListener.class));
+
+    private WindowSubtreeCache mSubtreeCache;
+    private AccessibilityNodeInfo mWindow0Root, mWindow0Node;
+    private AccessibilityNodeInfo mWindow1Root, mWindow1Node;
+    private List<SwitchAccessWindowInfo> mExtendedWindows;
+
+    @Before
+    public void setUp() {
+        /* For some reason this value becomes 22 when I allow the manifest to load */
+        ReflectionHelpers.setStaticField(Build.VERSION.class, "SDK_INT", 21);
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+
+        mWindow0Root = AccessibilityNodeInfo.obtain();
+        mWindow0Node = obtainClickableNode("Window 0 node", WINDOW_0_NODE_BOUNDS);
+        ((ShadowAccessibilityNodeInfo) ShadowExtractor.extract(mWindow0Root))
+                .addChild(mWindow0Node);
+
+        mWindow1Root = AccessibilityNodeInfo.obtain();
+        mWindow1Node = obtainClickableNode("Window 1 node", WINDOW_1_NODE_BOUNDS);
+        ((ShadowAccessibilityNodeInfo) ShadowExtractor.extract(mWindow1Root))
+                .addChild(mWindow1Node);
+
+        mWindows.add(obtainWindow(WINDOW_0_ID, mWindow0Root));
+        mWindows.add(obtainWindow(WINDOW_1_ID, mWindow1Root));
+        mExtendedWindows = SwitchAccessWindowInfo.convertZOrderWindowList(mWindows);
+
+        mSubtreeCache = new WindowSubtreeCache(mUiChangeDetector);
+    }
+
+    @After
+    public void tearDown() {
+        /* Any cached nodes that were dropped without being recycled show up as leaks here */
+        mSubtreeCache.clear();
+        mWindow0Root.recycle();
+        mWindow0Node.recycle();
+        mWindow1Root.recycle();
+        mWindow1Node.recycle();
+        assertFalse(ShadowAccessibilityNodeInfo.areThereUnrecycledNodes(true));
+    }
+
+    @Test
+    public void getNodes_returnsActionableNodesOfWindow() {
+        List<SwitchAccessNodeCompat> nodes = mSubtreeCache.getNodes(mExtendedWindows.get(0));
+        assertEquals(1, nodes.size());
+        assertEquals("Window 0 node", nodes.get(0).getContentDescription());
+    }
+
+    @Test
+    public void getNodes_windowUnchanged_doesNotTraverseAgain() {
+        List<SwitchAccessNodeCompat> nodes = mSubtreeCache.getNodes(mExtendedWindows.get(0));
+
+        /* A change in another window leaves this window's nodes valid */
+        sendScrollEvent(WINDOW_1_ID);
+
+        assertSame(nodes, mSubtreeCache.getNodes(mExtendedWindows.get(0)));
+    }
+
+    @Test
+    public void getNodes_windowChanged_traversesAgainAndRecyclesOldNodes() {
+        List<SwitchAccessNodeCompat> window0Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(0));
+        List<SwitchAccessNodeCompat> window1Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(1));
+
+        sendScrollEvent(WINDOW_0_ID);
+
+        List<SwitchAccessNodeCompat> newWindow0Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(0));
+        assertNotSame(window0Nodes, newWindow0Nodes);
+        assertEquals(1, newWindow0Nodes.size());
+        assertSame(window1Nodes, mSubtreeCache.getNodes(mExtendedWindows.get(1)));
+    }
+
+    @Test
+    public void getNodes_windowsChanged_traversesEveryWindowAgain() {
+        List<SwitchAccessNodeCompat> window0Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(0));
+        List<SwitchAccessNodeCompat> window1Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(1));
+
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_WINDOWS_CHANGED);
+        mUiChangeDetector.onAccessibilityEvent(event);
+        event.recycle();
+
+        assertNotSame(window0Nodes, mSubtreeCache.getNodes(mExtendedWindows.get(0)));
+        assertNotSame(window1Nodes, mSubtreeCache.getNodes(mExtendedWindows.get(1)));
+    }
+
+    @Test
+    public void retainWindows_recyclesNodesOfRemovedWindows() {
+        List<SwitchAccessNodeCompat> window0Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(0));
+        List<SwitchAccessNodeCompat> window1Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(1));
+
+        mSubtreeCache.retainWindows(Collections.singletonList(mExtendedWindows.get(0)));
+
+        assertSame(window0Nodes, mSubtreeCache.getNodes(mExtendedWindows.get(0)));
+        assertNotSame(window1Nodes, mSubtreeCache.getNodes(mExtendedWindows.get(1)));
+    }
+
+    @Test
+    public void clear_releasesAllNodes() {
+        List<SwitchAccessNodeCompat> window0Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(0));
+        List<SwitchAccessNodeCompat> window1Nodes =
+                mSubtreeCache.getNodes(mExtendedWindows.get(1));
+
+        mSubtreeCache.clear();
+
+        assertNotSame(window0Nodes, mSubtreeCache.getNodes(mExtendedWindows.get(0)));
+        assertNotSame(window1Nodes, mSubtreeCache.getNodes(mExtendedWindows.get(1)));
+    }
+
+    private void sendScrollEvent(int windowId) {
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_VIEW_SCROLLED);
+        ReflectionHelpers.setField(event, "mSourceWindowId", windowId);
+        mUiChangeDetector.onAccessibilityEvent(event);
+        event.recycle();
+    }
+
+    private static AccessibilityNodeInfo obtainClickableNode(
+            CharSequence contentDescription, Rect bounds) {
+        AccessibilityNodeInfo node = AccessibilityNodeInfo.obtain();
+        node.setClickable(true);
+        node.setFocusable(true);
+        node.setVisibleToUser(true);
+        node.setContentDescription(contentDescription);
+        node.setBoundsInScreen(bounds);
+        return node;
+    }
+
+    private static AccessibilityWindowInfo obtainWindow(int id, AccessibilityNodeInfo root) {
+        AccessibilityWindowInfo window = AccessibilityWindowInfo.obtain();
+        ShadowAccessibilityWindowInfo shadowWindow =
+                (ShadowAccessibilityWindowInfo) ShadowExtractor.extract(window);
+        shadowWindow.setId(id);
+        shadowWindow.setRoot(root);
+        return window;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.util.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the recent events buffer in LogUtils
+ */
+@Config(emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class LogUtilsTest {
+    private int mOldLogLevel;
+
+    @Before
+    public void setUp() {
+        mOldLogLevel = LogUtils.LOG_LEVEL;
+        LogUtils.setLogLevel(Log.ERROR);
+        LogUtils.setRecentEventsLevel(Log.WARN);
+        LogUtils.getRecentEvents().clear();
+    }
+
+    @After
+    public void tearDown() {
+        LogUtils.setLogLevel(mOldLogLevel);
+        LogUtils.setRecentEventsLevel(Log.WARN);
+        LogUtils.getRecentEvents().clear();
+    }
+
+    @Test
+    public void eventsBelowBothLevels_notRecorded() {
+        LogUtils.log(this, Log.VERBOSE, "Value %d", 1);
+        LogUtils.log(this, Log.INFO, "Value %s", "a");
+        assertEquals(0, LogUtils.getRecentEvents().size());
+    }
+
+    @Test
+    public void eachArity_formatsWhenDumped() {
+        LogUtils.log(this, Log.WARN, "No args");
+        LogUtils.log(this, Log.WARN, "Int %d", 7);
+        LogUtils.log(this, Log.WARN, "Long %d", 1L << 40);
+        LogUtils.log(this, Log.WARN, "Object %s", "text");
+        LogUtils.log(this, Log.WARN, "Ints %d %d", 1, 2);
+        LogUtils.log(this, Log.WARN, "Mixed %s %d", "a", 3);
+        LogUtils.log(this, Log.WARN, "Objects %s %s", "a", true);
+        LogUtils.log(this, Log.WARN, "Three %s %s %s", "a", "b", "c");
+        LogUtils.log(this, Log.WARN, "Four %d %d %d %d", 1, 2, 3, 4);
+
+        LogEventBuffer events = LogUtils.getRecentEvents();
+        assertEquals(9, events.size());
+        assertEquals("No args", events.getMessage(0));
+        assertEquals("Int 7", events.getMessage(1));
+        assertEquals("Long 1099511627776", events.getMessage(2));
+        assertEquals("Object text", events.getMessage(3));
+        assertEquals("Ints 1 2", events.getMessage(4));
+        assertEquals("Mixed a 3", events.getMessage(5));
+        assertEquals("Objects a true", events.getMessage(6));
+        assertEquals("Three a b c", events.getMessage(7));
+        assertEquals("Four 1 2 3 4", events.getMessage(8));
+    }
+
+    @Test
+    public void narrowPrimitives_keepTheirType() {
+        LogUtils.log(this, Log.WARN, "Char %s", 'x');
+        LogUtils.log(this, Log.WARN, "Byte %x", (byte) -1);
+        LogUtils.log(this, Log.WARN, "Short %x", (short) -1);
+
+        LogEventBuffer events = LogUtils.getRecentEvents();
+        assertEquals("Char x", events.getMessage(0));
+        assertEquals("Byte ff", events.getMessage(1));
+        assertEquals("Short ffff", events.getMessage(2));
+    }
+
+    @Test
+    public void singleNullArgument_recorded() {
+        LogUtils.log(this, Log.WARN, "Value %s", null);
+        LogUtils.log(Log.WARN, "Default tag %s", null);
+
+        LogEventBuffer events = LogUtils.getRecentEvents();
+        assertEquals(2, events.size());
+        assertEquals("Value null", events.getMessage(0));
+        assertEquals("Default tag null", events.getMessage(1));
+    }
+
+    @Test
+    public void mutableArguments_snapshottedWhenRecorded() {
+        StringBuilder builder = new StringBuilder("before");
+        LogUtils.log(this, Log.WARN, "Value %s", builder);
+        builder.setLength(0);
+        builder.append("after");
+
+        assertEquals("Value before", LogUtils.getRecentEvents().getMessage(0));
+    }
+
+    @Test
+    public void fullBuffer_keepsMostRecentEvents() {
+        LogEventBuffer events = LogUtils.getRecentEvents();
+        int capacity = events.getCapacity();
+        for (int i = 0; i < capacity + 10; i++) {
+            LogUtils.log(this, Log.WARN, "Event %d", i);
+        }
+
+        assertEquals(capacity, events.size());
+        assertEquals("Event 10", events.getMessage(0));
+        assertEquals("Event " + (capacity + 9), events.getMessage(capacity - 1));
+    }
+
+    @Test
+    public void dumpRecentEvents_includesTagAndPriority() {
+        LogUtils.log(this, Log.ERROR, "Failed %d times", 2);
+
+        StringWriter stringWriter = new StringWriter();
+        LogUtils.dumpRecentEvents(new PrintWriter(stringWriter, true));
+        assertTrue(stringWriter.toString().contains("E LogUtilsTest: Failed 2 times"));
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.text.TextUtils;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+import com.android.switchaccess.test.ShadowAccessibilityNodeInfo;
+import com.android.switchaccess.test.ShadowAccessibilityNodeInfoCompat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.ShadowExtractor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for NodeBfsSearch
+ */
+@Config(
+        emulateSdk = 18,
+        shadows = {
+                ShadowAccessibilityNodeInfoCompat.class,
+                ShadowAccessibilityNodeInfo.class})
+@RunWith(RobolectricTestRunner.class)
+public class NodeBfsSearchTest {
+    private final NodeBfsSearch mSearch = new NodeBfsSearch();
+
+    /* Nodes are virtual views of one host view, so their source node ids differ by virtual id */
+    private View mHostView;
+    private int mNextVirtualId;
+
+    private AccessibilityNodeInfo mRoot;
+
+    @Before
+    public void setUp() {
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+        mHostView = new View(RuntimeEnvironment.application);
+        mNextVirtualId = 0;
+
+        // root -> (a -> (a1, a2), b -> (b1))
+        mRoot = obtainNode("root");
+        AccessibilityNodeInfo a = obtainNode("a");
+        AccessibilityNodeInfo b = obtainNode("b");
+        addChild(mRoot, a);
+        addChild(mRoot, b);
+        addChild(a, obtainNode("a1"));
+        addChild(a, obtainNode("a2"));
+        addChild(b, obtainNode("b1"));
+    }
+
+    @After
+    public void tearDown() {
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+    }
+
+    @Test
+    public void search_visitsNodesInBreadthFirstOrder() {
+        final StringBuilder order = new StringBuilder();
+        AccessibilityNodeInfoCompat returned = search(new NodeFilter() {
+            @Override
+            public boolean accept(AccessibilityNodeInfoCompat node) {
+                order.append(node.getContentDescription());
+                return false;
+            }
+        });
+
+        assertNull(returned);
+        assertEquals("rootaba1a2b1", order.toString());
+        assertEquals(6, mSearch.getVisitCount());
+        assertEquals(5, mSearch.getFetchCount());
+        assertFalse(mSearch.wasBudgetExhausted());
+    }
+
+    @Test
+    public void search_returnsFirstMatchAndRecyclesEverythingElse() {
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+        AccessibilityNodeInfoCompat returned = search(descriptionFilter("a2"));
+
+        assertEquals("a2", returned.getContentDescription());
+        returned.recycle();
+        assertFalse(ShadowAccessibilityNodeInfoCompat.areThereUnrecycledNodes(true));
+    }
+
+    @Test
+    public void search_withMaxDepth_doesNotFetchDeeperNodes() {
+        mSearch.setMaxDepth(1);
+
+        assertNull(search(descriptionFilter("a1")));
+        assertEquals(3, mSearch.getVisitCount());
+        assertEquals(2, mSearch.getFetchCount());
+    }
+
+    @Test
+    public void search_withMaxNodes_givesUp() {
+        mSearch.setMaxNodes(3);
+
+        assertNull(search(descriptionFilter("b1")));
+        assertTrue(mSearch.wasBudgetExhausted());
+        assertEquals(3, mSearch.getVisitCount());
+
+        mSearch.setMaxNodes(NodeBfsSearch.UNLIMITED);
+        AccessibilityNodeInfoCompat returned = search(descriptionFilter("b1"));
+        assertEquals("b1", returned.getContentDescription());
+        assertFalse(mSearch.wasBudgetExhausted());
+        returned.recycle();
+    }
+
+    @Test
+    public void search_withRepeatedChild_visitsItOnce() {
+        AccessibilityNodeInfo parent = obtainNode("parent");
+        AccessibilityNodeInfo child = obtainNode("child");
+        addChild(parent, child);
+        addChild(parent, child);
+
+        final int[] visits = new int[1];
+        mSearch.search(new AccessibilityNodeInfoCompat(parent), new NodeFilter() {
+            @Override
+            public boolean accept(AccessibilityNodeInfoCompat node) {
+                if (TextUtils.equals("child", node.getContentDescription())) {
+                    visits[0]++;
+                }
+                return false;
+            }
+        });
+
+        assertEquals(1, visits[0]);
+        assertEquals(2, mSearch.getFetchCount());
+    }
+
+    @Test
+    public void search_withChildSharingSourceNodeId_visitsItOnce() {
+        AccessibilityNodeInfo parent = obtainNode("parent");
+        AccessibilityNodeInfo first = obtainNode("first");
+        AccessibilityNodeInfo second = obtainNode("second");
+        second.setSource(mHostView, mNextVirtualId - 2);
+        addChild(parent, first);
+        addChild(parent, second);
+
+        final StringBuilder order = new StringBuilder();
+        mSearch.search(new AccessibilityNodeInfoCompat(parent), new NodeFilter() {
+            @Override
+            public boolean accept(AccessibilityNodeInfoCompat node) {
+                order.append(node.getContentDescription());
+                return false;
+            }
+        });
+
+        assertEquals("parentfirst", order.toString());
+        assertEquals(2, mSearch.getFetchCount());
+    }
+
+    @Test
+    public void search_withDescendantSharingRootSourceNodeId_doesNotRevisitRoot() {
+        final int rootVirtualId = mNextVirtualId;
+        AccessibilityNodeInfo root = obtainNode("root");
+        AccessibilityNodeInfo child = obtainNode("child");
+        AccessibilityNodeInfo rootAlias = obtainNode("rootAlias");
+        rootAlias.setSource(mHostView, rootVirtualId);
+        addChild(root, child);
+        addChild(child, rootAlias);
+
+        final StringBuilder order = new StringBuilder();
+        mSearch.search(new AccessibilityNodeInfoCompat(root), new NodeFilter() {
+            @Override
+            public boolean accept(AccessibilityNodeInfoCompat node) {
+                order.append(node.getContentDescription());
+                return false;
+            }
+        });
+
+        assertEquals("rootchild", order.toString());
+        assertEquals(2, mSearch.getFetchCount());
+    }
+
+    @Test
+    public void search_withoutSourceNodeIds_comparesNodes() {
+        NodeBfsSearch search = new NodeBfsSearch(false);
+        AccessibilityNodeInfo parent = obtainNode("parent");
+        AccessibilityNodeInfo child = obtainNode("child");
+        AccessibilityNodeInfo sibling = obtainNode("sibling");
+        sibling.setSource(mHostView, mNextVirtualId - 2);
+        addChild(parent, child);
+        addChild(parent, child);
+        addChild(parent, sibling);
+
+        final StringBuilder order = new StringBuilder();
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+        assertNull(search.search(new AccessibilityNodeInfoCompat(parent), new NodeFilter() {
+            @Override
+            public boolean accept(AccessibilityNodeInfoCompat node) {
+                order.append(node.getContentDescription());
+                return false;
+            }
+        }));
+
+        assertEquals("parentchildsibling", order.toString());
+        assertEquals(3, search.getFetchCount());
+        assertFalse(ShadowAccessibilityNodeInfoCompat.areThereUnrecycledNodes(true));
+    }
+
+    private AccessibilityNodeInfoCompat search(NodeFilter filter) {
+        return mSearch.search(new AccessibilityNodeInfoCompat(mRoot), filter);
+    }
+
+    private static NodeFilter descriptionFilter(final String description) {
+        return new NodeFilter() {
+            @Override
+            public boolean accept(AccessibilityNodeInfoCompat node) {
+                return TextUtils.equals(description, node.getContentDescription());
+            }
+        };
+    }
+
+    private AccessibilityNodeInfo obtainNode(String description) {
+        AccessibilityNodeInfo node = AccessibilityNodeInfo.obtain();
+        node.setSource(mHostView, mNextVirtualId++);
+        node.setContentDescription(description);
+        return node;
+    }
+
+    private static void addChild(AccessibilityNodeInfo parent, AccessibilityNodeInfo child) {
+        getShadow(parent).addChild(child);
+    }
+
+    private static ShadowAccessibilityNodeInfo getShadow(AccessibilityNodeInfo node) {
+        return (ShadowAccessibilityNodeInfo) ShadowExtractor.extract(node);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.Signature;
+import android.net.Uri;
+import com.android.utils.PackageMetadataCache.PackageMetadata;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for PackageMetadataCache
+ */
+@Config(emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class PackageMetadataCacheTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+
+    private PackageManager mPackageManager;
+
+    private PackageMetadataCache mCache;
+
+    @Before
+    public void setUp() throws NameNotFoundException {
+        mPackageManager = mock(PackageManager.class);
+        when(mPackageManager.getPackageInfo(eq(PACKAGE_NAME), anyInt()))
+                .thenReturn(createPackageInfo(3, "1.2"));
+        when(mPackageManager.getPackageInfo(eq("com.example.missing"), anyInt()))
+                .thenThrow(new NameNotFoundException());
+        mCache = new PackageMetadataCache(mPackageManager);
+    }
+
+    @Test
+    public void get_installedPackage_returnsMetadata() {
+        PackageMetadata metadata = mCache.get(PACKAGE_NAME);
+        assertTrue(metadata.installed);
+        assertEquals(3, metadata.versionCode);
+        assertEquals("1.2", metadata.versionName);
+        assertEquals(40, metadata.getSignatureHash().length());
+    }
+
+    @Test
+    public void get_repeatedLookups_queryPackageManagerOnce() throws NameNotFoundException {
+        mCache.get(PACKAGE_NAME);
+        mCache.get(PACKAGE_NAME);
+        mCache.get(PACKAGE_NAME);
+        verify(mPackageManager, times(1)).getPackageInfo(eq(PACKAGE_NAME), anyInt());
+    }
+
+    @Test
+    public void get_missingPackage_isCachedAsNotInstalled() throws NameNotFoundException {
+        assertFalse(mCache.get("com.example.missing").installed);
+        assertFalse(mCache.get("com.example.missing").installed);
+        verify(mPackageManager, times(1)).getPackageInfo(eq("com.example.missing"), anyInt());
+    }
+
+    @Test
+    public void packageReplaced_invalidatesOnlyThatPackage() throws NameNotFoundException {
+        mCache.get(PACKAGE_NAME);
+        mCache.get("com.example.missing");
+        when(mPackageManager.getPackageInfo(eq(PACKAGE_NAME), anyInt()))
+                .thenReturn(createPackageInfo(4, "1.3"));
+
+        Intent intent = new Intent(Intent.ACTION_PACKAGE_REPLACED,
+                Uri.fromParts("package", PACKAGE_NAME, null));
+        mCache.getPackageChangeReceiver().onReceive(RuntimeEnvironment.application, intent);
+
+        assertEquals(4, mCache.get(PACKAGE_NAME).versionCode);
+        mCache.get("com.example.missing");
+        verify(mPackageManager, times(2)).getPackageInfo(eq(PACKAGE_NAME), anyInt());
+        verify(mPackageManager, times(1)).getPackageInfo(eq("com.example.missing"), anyInt());
+    }
+
+    @Test
+    public void get_requestsSignaturesOnlyWhenHashIsRead() throws NameNotFoundException {
+        PackageMetadata metadata = mCache.get(PACKAGE_NAME);
+        verify(mPackageManager, times(0))
+                .getPackageInfo(PACKAGE_NAME, PackageManager.GET_SIGNATURES);
+
+        String signatureHash = metadata.getSignatureHash();
+        assertEquals(signatureHash, metadata.getSignatureHash());
+        verify(mPackageManager, times(1))
+                .getPackageInfo(PACKAGE_NAME, PackageManager.GET_SIGNATURES);
+    }
+
+    @Test
+    public void invalidateDuringFetch_resultIsNotCached() throws NameNotFoundException {
+        when(mPackageManager.getPackageInfo(eq(PACKAGE_NAME), anyInt())).thenAnswer(
+                new Answer<PackageInfo>() {
+                    @Override
+                    public PackageInfo answer(InvocationOnMock invocation) {
+                        // The package is replaced while its old metadata is being fetched.
+                        mCache.invalidate(PACKAGE_NAME);
+                        return createPackageInfo(3, "1.2");
+                    }
+                });
+
+        mCache.get(PACKAGE_NAME);
+        mCache.get(PACKAGE_NAME);
+        verify(mPackageManager, times(2)).getPackageInfo(eq(PACKAGE_NAME), anyInt());
+    }
+
+    private static PackageInfo createPackageInfo(int versionCode, String versionName) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.versionCode = versionCode;
+        packageInfo.versionName = versionName;
+        packageInfo.signatures = new Signature[] {new Signature(new byte[] {1, 2, 3})};
+        return packageInfo;
+    }
+}
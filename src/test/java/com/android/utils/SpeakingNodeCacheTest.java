@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import com.android.switchaccess.test.ShadowAccessibilityNodeInfo;
+import com.android.switchaccess.test.ShadowAccessibilityNodeInfoCompat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.ShadowExtractor;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for SpeakingNodeCache
+ */
+@Config(
+        emulateSdk = 21,
+        shadows = {
+                ShadowAccessibilityNodeInfoCompat.class,
+                ShadowAccessibilityNodeInfo.class})
+@TargetApi(Build.VERSION_CODES.KITKAT)
+@RunWith(RobolectricTestRunner.class)
+public class SpeakingNodeCacheTest {
+    private static final int WINDOW_ID = 1;
+    private static final int OTHER_WINDOW_ID = 2;
+
+    private TestSpeakingNodeCache mCache;
+
+    /* root -> (parent -> child), sibling, all in WINDOW_ID */
+    private AccessibilityNodeInfoCompat mRoot;
+    private AccessibilityNodeInfoCompat mParent;
+    private AccessibilityNodeInfoCompat mChild;
+    private AccessibilityNodeInfoCompat mSibling;
+
+    /* A node in another window */
+    private AccessibilityNodeInfoCompat mOtherWindowNode;
+
+    @Before
+    public void setUp() {
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+        mCache = new TestSpeakingNodeCache();
+
+        AccessibilityNodeInfo root = obtainNode(WINDOW_ID);
+        AccessibilityNodeInfo parent = obtainNode(WINDOW_ID);
+        AccessibilityNodeInfo child = obtainNode(WINDOW_ID);
+        AccessibilityNodeInfo sibling = obtainNode(WINDOW_ID);
+        getShadow(root).addChild(parent);
+        getShadow(root).addChild(sibling);
+        getShadow(parent).addChild(child);
+        mRoot = new AccessibilityNodeInfoCompat(root);
+        mParent = new AccessibilityNodeInfoCompat(parent);
+        mChild = new AccessibilityNodeInfoCompat(child);
+        mSibling = new AccessibilityNodeInfoCompat(sibling);
+
+        AccessibilityNodeInfo otherWindowNode = obtainNode(OTHER_WINDOW_ID);
+        mOtherWindowNode = new AccessibilityNodeInfoCompat(otherWindowNode);
+
+        mCache.put(mRoot, false);
+        mCache.put(mParent, false);
+        mCache.put(mChild, true);
+        mCache.put(mSibling, true);
+        mCache.put(mOtherWindowNode, true);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+        mRoot.recycle();
+        mParent.recycle();
+        mChild.recycle();
+        mSibling.recycle();
+        mOtherWindowNode.recycle();
+        assertFalse(ShadowAccessibilityNodeInfoCompat.areThereUnrecycledNodes(true));
+        ShadowAccessibilityNodeInfo.resetObtainedInstances();
+    }
+
+    @Test
+    public void put_resultsAvailable() {
+        assertEquals(5, mCache.size());
+        assertEquals(Boolean.FALSE, mCache.get(mParent));
+        assertEquals(Boolean.TRUE, mCache.get(mChild));
+        assertEquals(Boolean.TRUE, mCache.get(mOtherWindowNode));
+    }
+
+    @Test
+    public void textOnlyChange_dropsOnlyChangedNodeAndAncestors() {
+        mCache.mSource = mChild;
+        sendContentChangedEvent(AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+
+        assertNull(mCache.get(mChild));
+        assertNull(mCache.get(mParent));
+        assertNull(mCache.get(mRoot));
+        assertEquals(Boolean.TRUE, mCache.get(mSibling));
+        assertEquals(Boolean.TRUE, mCache.get(mOtherWindowNode));
+        assertEquals(2, mCache.size());
+    }
+
+    @Test
+    public void contentDescriptionChange_dropsOnlyChangedNodeAndAncestors() {
+        mCache.mSource = mSibling;
+        sendContentChangedEvent(AccessibilityEvent.CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION);
+
+        assertNull(mCache.get(mSibling));
+        assertNull(mCache.get(mRoot));
+        assertEquals(Boolean.FALSE, mCache.get(mParent));
+        assertEquals(Boolean.TRUE, mCache.get(mChild));
+    }
+
+    @Test
+    public void subtreeChange_dropsWholeWindow() {
+        mCache.mSource = mChild;
+        sendContentChangedEvent(AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE
+                | AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+
+        assertNull(mCache.get(mRoot));
+        assertNull(mCache.get(mSibling));
+        assertEquals(Boolean.TRUE, mCache.get(mOtherWindowNode));
+        assertEquals(1, mCache.size());
+    }
+
+    @Test
+    public void undefinedChange_dropsWholeWindow() {
+        mCache.mSource = mChild;
+        sendContentChangedEvent(AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED);
+
+        assertEquals(1, mCache.size());
+        assertEquals(Boolean.TRUE, mCache.get(mOtherWindowNode));
+    }
+
+    @Test
+    public void textChangeWithoutSource_dropsWholeWindow() {
+        sendContentChangedEvent(AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+
+        assertEquals(1, mCache.size());
+        assertEquals(Boolean.TRUE, mCache.get(mOtherWindowNode));
+    }
+
+    @Test
+    public void windowsChanged_dropsEverything() {
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_WINDOWS_CHANGED);
+        mCache.onAccessibilityEvent(event);
+        event.recycle();
+
+        assertEquals(0, mCache.size());
+        assertNull(mCache.get(mOtherWindowNode));
+    }
+
+    @Test
+    public void fullWindow_startsOverWithoutTouchingOtherWindows() {
+        /* The default window holds four nodes; fill it to the limit */
+        AccessibilityNodeInfoCompat[] extraNodes =
+                new AccessibilityNodeInfoCompat[SpeakingNodeCache.MAX_NODES_PER_WINDOW - 4];
+        for (int i = 0; i < extraNodes.length; i++) {
+            extraNodes[i] = new AccessibilityNodeInfoCompat(obtainNode(WINDOW_ID));
+            mCache.put(extraNodes[i], true);
+        }
+        assertEquals(SpeakingNodeCache.MAX_NODES_PER_WINDOW + 1, mCache.size());
+
+        /* Updating a cached node doesn't overflow */
+        mCache.put(mChild, false);
+        assertEquals(SpeakingNodeCache.MAX_NODES_PER_WINDOW + 1, mCache.size());
+        assertEquals(Boolean.FALSE, mCache.get(mChild));
+
+        /* A new node does, and only the new node remains in its window */
+        AccessibilityNodeInfoCompat overflowNode =
+                new AccessibilityNodeInfoCompat(obtainNode(WINDOW_ID));
+        mCache.put(overflowNode, true);
+        assertEquals(2, mCache.size());
+        assertEquals(Boolean.TRUE, mCache.get(overflowNode));
+        assertNull(mCache.get(mRoot));
+        assertNull(mCache.get(extraNodes[0]));
+        assertEquals(Boolean.TRUE, mCache.get(mOtherWindowNode));
+
+        overflowNode.recycle();
+        for (AccessibilityNodeInfoCompat node : extraNodes) {
+            node.recycle();
+        }
+    }
+
+    private static AccessibilityNodeInfo obtainNode(int windowId) {
+        AccessibilityNodeInfo node = AccessibilityNodeInfo.obtain();
+        ReflectionHelpers.setField(node, "mWindowId", windowId);
+        return node;
+    }
+
+    private void sendContentChangedEvent(int changeTypes) {
+        AccessibilityEvent event = AccessibilityEvent.obtain();
+        event.setEventType(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+        event.setContentChangeTypes(changeTypes);
+        ReflectionHelpers.setField(event, "mSourceWindowId", WINDOW_ID);
+        mCache.onAccessibilityEvent(event);
+        event.recycle();
+    }
+
+    private static ShadowAccessibilityNodeInfo getShadow(AccessibilityNodeInfo node) {
+        return (ShadowAccessibilityNodeInfo) ShadowExtractor.extract(node);
+    }
+
+    /**
+     * Reports a chosen node as the source of every event, since events obtained in tests aren't
+     * connected to a window.
+     */
+    private static class TestSpeakingNodeCache extends SpeakingNodeCache {
+        AccessibilityNodeInfoCompat mSource;
+
+        @Override
+        AccessibilityNodeInfoCompat getSource(AccessibilityEvent event) {
+            return (mSource == null) ? null : AccessibilityNodeInfoCompat.obtain(mSource);
+        }
+    }
+}
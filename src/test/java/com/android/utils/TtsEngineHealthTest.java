@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for TtsEngineHealth
+ */
+@Config(emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class TtsEngineHealthTest {
+    private static final String ENGINE = "com.example.tts";
+
+    private final SharedPreferences mPrefs = RuntimeEnvironment.application
+            .getSharedPreferences(TtsEngineHealth.PREFS_NAME, Context.MODE_PRIVATE);
+
+    @Test
+    public void record_computesAverages() {
+        TtsEngineHealth health = new TtsEngineHealth(mPrefs);
+        assertEquals(-1, health.getAverageInitTime(ENGINE));
+        assertEquals(-1, health.getAverageFirstAudioLatency(ENGINE));
+
+        health.recordInit(ENGINE, 300, true);
+        health.recordInit(ENGINE, 500, false);
+        health.recordFirstAudio(ENGINE, 40);
+        health.recordFirstAudio(ENGINE, 60);
+        health.recordSpeak(ENGINE, true);
+        health.recordSpeak(ENGINE, true);
+
+        assertEquals(400, health.getAverageInitTime(ENGINE));
+        assertEquals(50, health.getAverageFirstAudioLatency(ENGINE));
+        assertEquals(0.25f, health.getErrorRate(ENGINE), 0.001f);
+    }
+
+    @Test
+    public void isUnhealthy_needsEnoughAttempts() {
+        TtsEngineHealth health = new TtsEngineHealth(mPrefs);
+        health.recordSpeak(ENGINE, false);
+        health.recordSpeak(ENGINE, false);
+        assertFalse(health.isUnhealthy(ENGINE));
+
+        for (int i = 2; i < TtsEngineHealth.MIN_ATTEMPT_COUNT; i++) {
+            health.recordSpeak(ENGINE, true);
+        }
+        assertTrue(health.isUnhealthy(ENGINE));
+
+        for (int i = 0; i < TtsEngineHealth.MIN_ATTEMPT_COUNT; i++) {
+            health.recordSpeak(ENGINE, true);
+        }
+        assertFalse(health.isUnhealthy(ENGINE));
+    }
+
+    @Test
+    public void save_persistsAcrossInstances() {
+        TtsEngineHealth health = new TtsEngineHealth(mPrefs);
+        health.recordInit(ENGINE, 200, true);
+        health.recordSpeak(ENGINE, false);
+        health.save();
+
+        TtsEngineHealth restored = new TtsEngineHealth(mPrefs);
+        assertEquals(200, restored.getAverageInitTime(ENGINE));
+        assertEquals(0.5f, restored.getErrorRate(ENGINE), 0.001f);
+    }
+
+    @Test
+    public void record_halvesTotalsAtLimit() {
+        TtsEngineHealth health = new TtsEngineHealth(mPrefs);
+        for (int i = 0; i < TtsEngineHealth.MAX_ATTEMPT_COUNT; i++) {
+            health.recordSpeak(ENGINE, (i % 2) == 0);
+        }
+
+        assertEquals(0.5f, health.getErrorRate(ENGINE), 0.001f);
+        health.recordSpeak(ENGINE, true);
+        assertTrue(health.getErrorRate(ENGINE) < 0.5f);
+    }
+}
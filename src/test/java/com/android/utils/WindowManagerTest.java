@@ -17,6 +17,7 @@
 package com.android.utils;
 
 import android.annotation.TargetApi;
+import android.graphics.Rect;
 import android.os.Build;
 import android.view.accessibility.AccessibilityWindowInfo;
 
@@ -33,7 +34,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 
 @Config(emulateSdk = 18,
         shadows = {ShadowAccessibilityWindowInfo.class})
@@ -140,6 +143,42 @@ public class WindowManagerTest {
         assertEquals(windows.get(1).getId(), manager.getCurrentWindow().getId());
     }
 
+    @Test
+    public void testWindowQueriesById_useSnapshot() {
+        List<AccessibilityWindowInfo> windows = initList(3, 0);
+        ShadowAccessibilityWindowInfo shadowWindow =
+                (ShadowAccessibilityWindowInfo) ShadowExtractor.extract(windows.get(2));
+        shadowWindow.setType(AccessibilityWindowInfo.TYPE_INPUT_METHOD);
+        shadowWindow.setBoundsInScreen(new Rect(0, 100, 50, 200));
+        WindowManager manager = new WindowManager();
+        manager.setWindows(windows);
+
+        assertEquals(AccessibilityWindowInfo.TYPE_INPUT_METHOD, manager.getWindowType(2));
+        assertEquals(AccessibilityWindowInfo.TYPE_APPLICATION, manager.getWindowType(1));
+        assertEquals(WindowManager.WRONG_WINDOW_TYPE, manager.getWindowType(5));
+        assertTrue(manager.isInputWindowOnScreen());
+
+        Rect bounds = new Rect();
+        assertTrue(manager.getWindowBounds(2, bounds));
+        assertEquals(new Rect(0, 100, 50, 200), bounds);
+        assertFalse(manager.getWindowBounds(5, bounds));
+    }
+
+    @Test
+    public void testSetWindowsAgain_replacesSnapshot() {
+        List<AccessibilityWindowInfo> windows = initList(3, 0);
+        ShadowAccessibilityWindowInfo shadowWindow =
+                (ShadowAccessibilityWindowInfo) ShadowExtractor.extract(windows.get(2));
+        shadowWindow.setType(AccessibilityWindowInfo.TYPE_INPUT_METHOD);
+        WindowManager manager = new WindowManager();
+        manager.setWindows(windows);
+
+        manager.setWindows(initList(2, 1));
+        assertFalse(manager.isInputWindowOnScreen());
+        assertEquals(WindowManager.WRONG_WINDOW_TYPE, manager.getWindowType(2));
+        assertEquals(1, manager.getCurrentWindow().getId());
+    }
+
     private List<AccessibilityWindowInfo> initList(int listSize,
                                                    int accessibilityFocusedWindowIndex) {
         List<AccessibilityWindowInfo> windows = new ArrayList<>();
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils.picidae;
+
+import android.hardware.SensorManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Deterministic simulation of IntegratedTapDetector. Synthetic accelerometer and gyroscope
+ * timelines are fed through the real per-sensor detectors, and the taps reported to listeners are
+ * checked against the taps in the timeline for accuracy and detection latency.
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class IntegratedTapDetectorSimulationTest {
+    private static final long SAMPLE_PERIOD_MILLIS = 10;
+
+    private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+    /* Reported tap times must be this close to the real ones */
+    private static final long MAX_TIMESTAMP_ERROR_MILLIS = 2 * SAMPLE_PERIOD_MILLIS;
+
+    private static final long MAX_SINGLE_TAP_LATENCY_MILLIS = 150;
+
+    private static final long MAX_LATENCY_WITH_DOUBLE_TAPS_MILLIS = 750;
+
+    private IntegratedTapDetector mDetector;
+
+    private RecordingTapListener mListener;
+
+    @Before
+    public void setUp() {
+        mDetector = new IntegratedTapDetector(mock(SensorManager.class));
+        mListener = new RecordingTapListener();
+        mDetector.addListener(mListener);
+    }
+
+    @Test
+    public void quietTimeline_reportsNoTaps() {
+        new SensorTimeline(3000).play();
+        assertEquals(0, mListener.mSingleTapMillis.size());
+        assertEquals(0, mListener.mDoubleTapMillis.size());
+    }
+
+    @Test
+    public void separatedTaps_allReportedAsSingleTapsQuickly() {
+        long[] taps = {1000, 2000, 2300, 3500};
+        new SensorTimeline(5000).withTaps(taps).play();
+
+        assertTapsMatch(taps, mListener.mSingleTapMillis);
+        assertLatencyAtMost(MAX_SINGLE_TAP_LATENCY_MILLIS);
+        assertEquals(0, mListener.mDoubleTapMillis.size());
+    }
+
+    @Test
+    public void doubleTapsEnabled_closeTapsCombined() {
+        mDetector.setMaxDoubleTapSpacingNanos(500 * NANOS_PER_MILLI);
+        new SensorTimeline(5000).withTaps(1000, 2000, 2300, 3500).play();
+
+        assertTapsMatch(new long[] {1000, 3500}, mListener.mSingleTapMillis);
+        assertTapsMatch(new long[] {2000}, mListener.mDoubleTapMillis);
+        assertLatencyAtMost(MAX_LATENCY_WITH_DOUBLE_TAPS_MILLIS);
+    }
+
+    @Test
+    public void tapsCloserThanMinSpacing_secondIgnored() {
+        mDetector.setMinimumTapSpacingNanos(500 * NANOS_PER_MILLI);
+        new SensorTimeline(3000).withTaps(1000, 1300).play();
+
+        assertTapsMatch(new long[] {1000}, mListener.mSingleTapMillis);
+    }
+
+    @Test
+    public void accelerometerOnly_stillDetectsTaps() {
+        mDetector.useTapDetector(IntegratedTapDetector.TapDetector.ACCEL_ONLY_DETECTOR);
+        long[] taps = {1000, 2500};
+        new SensorTimeline(4000).withTaps(taps).play();
+
+        assertTapsMatch(taps, mListener.mSingleTapMillis);
+    }
+
+    @Test
+    public void removedListener_receivesNothing() {
+        mDetector.removeListener(mListener);
+        new SensorTimeline(3000).withTaps(1000).play();
+
+        assertEquals(0, mListener.mSingleTapMillis.size());
+    }
+
+    @Test
+    public void listenerRemovedDuringDelivery_laterListenersStillCalled() {
+        mDetector.setMaxDoubleTapSpacingNanos(500 * NANOS_PER_MILLI);
+        mDetector.removeListener(mListener);
+        mDetector.addListener(new IntegratedTapDetector.TapListener() {
+            @Override
+            public void onSingleTap(long timestampNanos) {
+                mDetector.removeListener(this);
+            }
+
+            @Override
+            public void onDoubleTap(long timestampNanos) {
+                mDetector.removeListener(this);
+            }
+        });
+        mDetector.addListener(mListener);
+
+        /* The timeline runs past the double tap timeout, so the last tap is emitted as single */
+        new SensorTimeline(3300).withTaps(1000, 1300, 2500).play();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertTapsMatch(new long[] {1000}, mListener.mDoubleTapMillis);
+        assertTapsMatch(new long[] {2500}, mListener.mSingleTapMillis);
+    }
+
+    private void assertTapsMatch(long[] expectedMillis, List<Long> actualMillis) {
+        assertEquals(expectedMillis.length, actualMillis.size());
+        for (int i = 0; i < expectedMillis.length; i++) {
+            assertTrue("Tap at " + actualMillis.get(i) + " expected at " + expectedMillis[i],
+                    Math.abs(actualMillis.get(i) - expectedMillis[i])
+                            <= MAX_TIMESTAMP_ERROR_MILLIS);
+        }
+    }
+
+    private void assertLatencyAtMost(long maxLatencyMillis) {
+        for (long latency : mListener.mLatenciesMillis) {
+            assertTrue("Latency " + latency + " exceeds " + maxLatencyMillis,
+                    latency <= maxLatencyMillis);
+        }
+    }
+
+    /*
+     * A recorded-style sensor timeline: low-level deterministic noise on both sensors, with a
+     * sharp impulse on each sensor at every tap.
+     */
+    private class SensorTimeline {
+        private final long mDurationMillis;
+
+        private long[] mTapMillis = new long[0];
+
+        public SensorTimeline(long durationMillis) {
+            mDurationMillis = durationMillis;
+        }
+
+        public SensorTimeline withTaps(long... tapMillis) {
+            mTapMillis = tapMillis;
+            return this;
+        }
+
+        public void play() {
+            float[] accelValues = new float[3];
+            float[] gyroValues = new float[3];
+            for (long millis = 0; millis < mDurationMillis; millis += SAMPLE_PERIOD_MILLIS) {
+                accelValues[0] = (float) (0.05 * Math.sin(millis * 0.37));
+                gyroValues[0] = (float) (0.01 * Math.sin(millis * 0.23));
+                for (long tap : mTapMillis) {
+                    if (tap == millis) {
+                        accelValues[0] += 8f;
+                        gyroValues[0] += 2f;
+                    }
+                }
+                mListener.mCurrentMillis = millis;
+                long nanos = millis * NANOS_PER_MILLI;
+                mDetector.onAccelerometerChanged(nanos, accelValues);
+                mDetector.onGyroscopeChanged(nanos, gyroValues);
+                ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            }
+        }
+    }
+
+    private static class RecordingTapListener implements IntegratedTapDetector.TapListener {
+        public final List<Long> mSingleTapMillis = new ArrayList<>();
+
+        public final List<Long> mDoubleTapMillis = new ArrayList<>();
+
+        public final List<Long> mLatenciesMillis = new ArrayList<>();
+
+        /* Time of the sample currently being processed in the timeline */
+        public long mCurrentMillis;
+
+        @Override
+        public void onSingleTap(long timestampNanos) {
+            record(mSingleTapMillis, timestampNanos);
+        }
+
+        @Override
+        public void onDoubleTap(long timestampNanos) {
+            record(mDoubleTapMillis, timestampNanos);
+        }
+
+        private void record(List<Long> taps, long timestampNanos) {
+            long tapMillis = timestampNanos / NANOS_PER_MILLI;
+            taps.add(tapMillis);
+            mLatenciesMillis.add(mCurrentMillis - tapMillis);
+        }
+    }
+}
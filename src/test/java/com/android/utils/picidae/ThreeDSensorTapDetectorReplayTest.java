@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.utils.picidae;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays sensor traces through ThreeDSensorTapDetector. At every sample the streaming energy
+ * window is checked against a reference list-based window, which is how the detector computed
+ * energy before it streamed, and the taps it reports are checked against the taps in the trace.
+ */
+@Config(manifest = Config.NONE, emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class ThreeDSensorTapDetectorReplayTest {
+    private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+    private static final long ENERGY_HISTORY_LENGTH_NANOS = 100 * NANOS_PER_MILLI;
+
+    private static final long MAX_PERMITTED_TIME_BETWEEN_SAMPLES_NANOS = 100 * NANOS_PER_MILLI;
+
+    private static final float MAX_ACCEL_SCALE = 30f;
+
+    private static final float MAX_GYRO_SCALE = 8f;
+
+    @Test
+    public void accelerometerAt100Hz_matchesReferenceAndFindsTaps() {
+        Trace trace = new Trace(10 * NANOS_PER_MILLI, 3000).withTaps(8f, 1000, 2000);
+        List<Long> taps = replay(trace, ThreeDSensorTapDetectorType.ACCELEROMETER,
+                MAX_ACCEL_SCALE);
+        assertTapsNear(new long[] {1000, 2000}, taps);
+    }
+
+    @Test
+    public void gyroscopeAt200Hz_matchesReferenceAndFindsTaps() {
+        Trace trace = new Trace(5 * NANOS_PER_MILLI, 3000).withTaps(2f, 700, 1800);
+        List<Long> taps = replay(trace, ThreeDSensorTapDetectorType.GYROSCOPE, MAX_GYRO_SCALE);
+        assertTapsNear(new long[] {700, 1800}, taps);
+    }
+
+    @Test
+    public void accelerometerAt50Hz_matchesReference() {
+        Trace trace = new Trace(20 * NANOS_PER_MILLI, 3000).withTaps(8f, 1000);
+        replay(trace, ThreeDSensorTapDetectorType.ACCELEROMETER, MAX_ACCEL_SCALE);
+    }
+
+    @Test
+    public void noisyTrace_matchesReferenceAndFindsNoTaps() {
+        Trace trace = new Trace(10 * NANOS_PER_MILLI, 3000).withNoise(2f);
+        List<Long> taps = replay(trace, ThreeDSensorTapDetectorType.ACCELEROMETER,
+                MAX_ACCEL_SCALE);
+        assertEquals(0, taps.size());
+    }
+
+    @Test
+    public void traceWithGap_resetsWindowLikeReference() {
+        Trace trace = new Trace(10 * NANOS_PER_MILLI, 3000).withTaps(8f, 2000).withGap(1000, 500);
+        List<Long> taps = replay(trace, ThreeDSensorTapDetectorType.ACCELEROMETER,
+                MAX_ACCEL_SCALE);
+        assertTapsNear(new long[] {2000}, taps);
+    }
+
+    @Test
+    public void veryHighRateTrace_windowGrowsAndMatchesReference() {
+        Trace trace = new Trace(NANOS_PER_MILLI, 1000).withTaps(8f, 500);
+        replay(trace, ThreeDSensorTapDetectorType.ACCELEROMETER, MAX_ACCEL_SCALE);
+    }
+
+    /*
+     * Run a trace through the detector, comparing its energy window with the reference at every
+     * sample. Returns the timestamps, in millis, of the reported taps.
+     */
+    private List<Long> replay(Trace trace, ThreeDSensorTapDetectorType type, float maxScale) {
+        final List<Long> tapMillis = new ArrayList<>();
+        ThreeDSensorTapDetector.TapListener listener = new ThreeDSensorTapDetector.TapListener() {
+            @Override
+            public void threeDSensorTapDetected(ThreeDSensorTapDetector detector, long timestamp,
+                    double tapConfidence) {
+                tapMillis.add(timestamp / NANOS_PER_MILLI);
+            }
+        };
+        ThreeDSensorTapDetector detector = new ThreeDSensorTapDetector(listener, maxScale, type);
+        ReferenceEnergyWindow reference = new ReferenceEnergyWindow();
+
+        float[] values = new float[3];
+        for (int i = 0; i < trace.mTimestamps.size(); i++) {
+            long timestamp = trace.mTimestamps.get(i);
+            values[0] = trace.mValues.get(i);
+            detector.onSensorChanged(timestamp, values);
+            reference.onSample(timestamp, detector.getLastConditionedMagnitudeSq());
+
+            assertEquals(reference.mEnergy, detector.getConditionedSignalEnergy(), 0f);
+            assertEquals(reference.mTimes.size(), detector.getEnergySampleCount());
+        }
+        return tapMillis;
+    }
+
+    private static void assertTapsNear(long[] expectedMillis, List<Long> actualMillis) {
+        assertEquals(expectedMillis.length, actualMillis.size());
+        for (int i = 0; i < expectedMillis.length; i++) {
+            assertTrue("Tap at " + actualMillis.get(i) + " expected at " + expectedMillis[i],
+                    Math.abs(actualMillis.get(i) - expectedMillis[i]) <= 20);
+        }
+    }
+
+    /* The list-based energy window the detector used before switching to a streaming window */
+    private static class ReferenceEnergyWindow {
+        public final LinkedList<Long> mTimes = new LinkedList<>();
+
+        public final LinkedList<Float> mValues = new LinkedList<>();
+
+        public float mEnergy = 0f;
+
+        private long mLastTimestamp = 0;
+
+        public void onSample(long timestamp, float magnitudeSq) {
+            if (Math.abs(timestamp - mLastTimestamp) > MAX_PERMITTED_TIME_BETWEEN_SAMPLES_NANOS) {
+                mTimes.clear();
+                mValues.clear();
+                mEnergy = 0f;
+            }
+            mLastTimestamp = timestamp;
+            mEnergy += magnitudeSq;
+            mTimes.addLast(timestamp);
+            mValues.addLast(magnitudeSq);
+            while (mTimes.getFirst() <= timestamp - ENERGY_HISTORY_LENGTH_NANOS) {
+                mEnergy -= mValues.getFirst();
+                mTimes.removeFirst();
+                mValues.removeFirst();
+            }
+        }
+    }
+
+    /* A single-axis sensor trace with deterministic noise and impulses for taps */
+    private static class Trace {
+        public final List<Long> mTimestamps = new ArrayList<>();
+
+        public final List<Float> mValues = new ArrayList<>();
+
+        private final long mPeriodNanos;
+
+        public Trace(long periodNanos, long durationMillis) {
+            mPeriodNanos = periodNanos;
+            for (long t = periodNanos; t < durationMillis * NANOS_PER_MILLI; t += periodNanos) {
+                mTimestamps.add(t);
+                mValues.add((float) (0.01 * Math.sin(t * 0.37e-6)));
+            }
+        }
+
+        public Trace withTaps(float magnitude, long... tapMillis) {
+            for (long millis : tapMillis) {
+                int index = indexAt(millis * NANOS_PER_MILLI);
+                mValues.set(index, mValues.get(index) + magnitude);
+            }
+            return this;
+        }
+
+        public Trace withNoise(float amplitude) {
+            for (int i = 0; i < mValues.size(); i++) {
+                float noise = (i % 2 == 0) ? amplitude : -amplitude;
+                mValues.set(i, mValues.get(i) + noise);
+            }
+            return this;
+        }
+
+        /* Drop samples to simulate the sensor pausing */
+        public Trace withGap(long startMillis, long lengthMillis) {
+            int start = indexAt(startMillis * NANOS_PER_MILLI);
+            int end = indexAt((startMillis + lengthMillis) * NANOS_PER_MILLI);
+            for (int i = end - 1; i >= start; i--) {
+                mTimestamps.remove(i);
+                mValues.remove(i);
+            }
+            return this;
+        }
+
+        private int indexAt(long nanos) {
+            return (int) (nanos / mPeriodNanos) - 1;
+        }
+    }
+}